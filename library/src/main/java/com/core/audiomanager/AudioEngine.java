@@ -0,0 +1,172 @@
+package com.core.audiomanager;
+
+import android.media.MediaPlayer;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的音频引擎
+ * 持有串行执行 native 调用的工作线程和 MediaPlayer 复用池，并限制同时借出的 MediaPlayer 数
+ * 同时持有进程内共享的音频焦点，所有播放器通过 {@link #getAudioFocus()} 申请和归还
+ * 除 get/getLooper/getPlayerPool/getAudioFocus/setMaxActivePlayers 外，其余方法只在工作线程中调用
+ * Created by wangzhen on 2019/3/25.
+ */
+public class AudioEngine {
+
+    //默认同时借出的 MediaPlayer 数
+    private static final int DEFAULT_MAX_ACTIVE_PLAYERS = 4;
+
+    private static volatile AudioEngine mInstance;
+    private final Looper mLooper;
+    private final MediaPlayerPool mPlayerPool;
+    private final AudioFocus mAudioFocus = new AudioFocus();
+    //已借出的 MediaPlayer，头部为最久未使用
+    private final ArrayList<ActivePlayer> mActivePlayers = new ArrayList<>();
+    private volatile int mMaxActivePlayers = DEFAULT_MAX_ACTIVE_PLAYERS;
+
+    public static AudioEngine get() {
+        if (mInstance == null) {
+            synchronized (AudioEngine.class) {
+                if (mInstance == null) {
+                    mInstance = new AudioEngine();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private AudioEngine() {
+        HandlerThread thread = new HandlerThread("AudioEngine");
+        thread.start();
+        mLooper = thread.getLooper();
+        mPlayerPool = new MediaPlayerPool(mLooper);
+    }
+
+    /**
+     * 获取工作线程 Looper
+     *
+     * @return Looper
+     */
+    public Looper getLooper() {
+        return mLooper;
+    }
+
+    public MediaPlayerPool getPlayerPool() {
+        return mPlayerPool;
+    }
+
+    /**
+     * 获取共享的音频焦点
+     *
+     * @return AudioFocus
+     */
+    public AudioFocus getAudioFocus() {
+        return mAudioFocus;
+    }
+
+    /**
+     * 设置同时借出的 MediaPlayer 上限，超出时回收最久未使用且未在播放的 MediaPlayer
+     *
+     * @param max 上限
+     */
+    public void setMaxActivePlayers(int max) {
+        mMaxActivePlayers = max;
+    }
+
+    public int getMaxActivePlayers() {
+        return mMaxActivePlayers;
+    }
+
+    /**
+     * 为持有者分配 MediaPlayer
+     *
+     * @param holder 持有者
+     * @return 达到上限且其余 MediaPlayer 都在播放时返回null
+     */
+    MediaPlayer obtainPlayer(PlayerHolder holder) {
+        while (mActivePlayers.size() >= mMaxActivePlayers) {
+            ActivePlayer victim = findEvictable();
+            if (victim == null) {
+                return null;
+            }
+            mActivePlayers.remove(victim);
+            victim.holder.onPlayerEvicted(victim.player);
+            mPlayerPool.recycle(victim.player);
+        }
+        MediaPlayer player = mPlayerPool.acquire();
+        if (player != null) {
+            mActivePlayers.add(new ActivePlayer(holder, player));
+        }
+        return player;
+    }
+
+    /**
+     * MediaPlayer 被使用，移到队尾
+     *
+     * @param player player
+     */
+    void touch(MediaPlayer player) {
+        int index = indexOf(player);
+        if (index >= 0) {
+            mActivePlayers.add(mActivePlayers.remove(index));
+        }
+    }
+
+    /**
+     * 归还 MediaPlayer
+     *
+     * @param player player
+     */
+    void recyclePlayer(MediaPlayer player) {
+        int index = indexOf(player);
+        if (index >= 0) {
+            mActivePlayers.remove(index);
+        }
+        mPlayerPool.recycle(player);
+    }
+
+    private int indexOf(MediaPlayer player) {
+        for (int i = 0; i < mActivePlayers.size(); i++) {
+            if (mActivePlayers.get(i).player == player) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ActivePlayer findEvictable() {
+        for (ActivePlayer active : mActivePlayers) {
+            if (!active.holder.isPlayerBusy(active.player)) {
+                return active;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从引擎借用 MediaPlayer 的对象
+     */
+    interface PlayerHolder {
+        /**
+         * MediaPlayer 是否正在使用，正在使用的不会被回收
+         */
+        boolean isPlayerBusy(MediaPlayer player);
+
+        /**
+         * MediaPlayer 被引擎回收，调用后不能再使用该对象
+         */
+        void onPlayerEvicted(MediaPlayer player);
+    }
+
+    private static class ActivePlayer {
+        final PlayerHolder holder;
+        final MediaPlayer player;
+
+        ActivePlayer(PlayerHolder holder, MediaPlayer player) {
+            this.holder = holder;
+            this.player = player;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.core.audiomanager;
+
+import android.content.Context;
+import android.media.AudioManager;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的音频焦点，由 {@link AudioEngine} 持有
+ * 第一个播放者开始播放时向系统申请焦点，最后一个播放者放弃时才归还，焦点变化分发给所有当前持有者
+ * 各播放器不再各自申请焦点，避免同一进程内的播放器互相打断
+ * Created by wangzhen on 2019/6/3.
+ */
+public class AudioFocus {
+
+    private final ArrayList<AudioManager.OnAudioFocusChangeListener> mOwners = new ArrayList<>();
+    private AudioManager mAudioManager;
+
+    private final AudioManager.OnAudioFocusChangeListener mSystemListener = new AudioManager.OnAudioFocusChangeListener() {
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            AudioManager.OnAudioFocusChangeListener[] owners;
+            synchronized (AudioFocus.this) {
+                owners = mOwners.toArray(new AudioManager.OnAudioFocusChangeListener[mOwners.size()]);
+            }
+            for (AudioManager.OnAudioFocusChangeListener owner : owners) {
+                owner.onAudioFocusChange(focusChange);
+            }
+        }
+    };
+
+    AudioFocus() {
+    }
+
+    /**
+     * 加入焦点持有者，是第一个持有者时向系统申请焦点，重复调用无副作用
+     *
+     * @param context context
+     * @param owner   持有者，焦点变化时回调，回调在主线程
+     */
+    public synchronized void request(Context context, AudioManager.OnAudioFocusChangeListener owner) {
+        if (mOwners.contains(owner)) return;
+        mOwners.add(owner);
+        if (mOwners.size() > 1) return;
+        if (mAudioManager == null) {
+            mAudioManager = (AudioManager) context.getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
+        }
+        if (mAudioManager != null) {
+            mAudioManager.requestAudioFocus(mSystemListener, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN_TRANSIENT);
+        }
+    }
+
+    /**
+     * 移除焦点持有者，最后一个持有者移除后归还系统焦点
+     *
+     * @param owner 持有者
+     */
+    public synchronized void abandon(AudioManager.OnAudioFocusChangeListener owner) {
+        if (!mOwners.remove(owner) || !mOwners.isEmpty()) return;
+        if (mAudioManager != null) {
+            mAudioManager.abandonAudioFocus(mSystemListener);
+        }
+    }
+
+    /**
+     * 当前持有者数
+     */
+    public synchronized int getOwnerCount() {
+        return mOwners.size();
+    }
+}
@@ -10,51 +10,111 @@ import android.os.Looper;
 import android.os.Message;
 import android.text.TextUtils;
 
+import com.core.audiomanager.catalog.RecordingCatalog;
 import com.core.audiomanager.callback.AudioCallback;
+import com.core.audiomanager.callback.AudioLevelListener;
 import com.core.audiomanager.callback.AudioPlayStateListener;
 import com.core.audiomanager.callback.AudioRecordStateListener;
+import com.core.audiomanager.callback.AudioSegmentListener;
+import com.core.audiomanager.callback.AudioTrimListener;
+import com.core.audiomanager.callback.CatalogReadyListener;
+import com.core.audiomanager.edit.AudioJoiner;
+import com.core.audiomanager.edit.AudioTrimmer;
+import com.core.audiomanager.encode.EncodeConfig;
+import com.core.audiomanager.encode.EncodeStage;
+import com.core.audiomanager.format.AudioInfo;
+import com.core.audiomanager.format.AudioProbe;
+import com.core.audiomanager.mix.BgmMonitorSource;
+import com.core.audiomanager.mix.MixTrack;
+import com.core.audiomanager.pcm.AudioRecordSource;
+import com.core.audiomanager.pcm.LevelMeter;
+import com.core.audiomanager.pcm.PcmRecorder;
+import com.core.audiomanager.pcm.PcmSource;
 import com.core.audiomanager.util.PathUtil;
+import com.core.audiomanager.waveform.WaveformIndexer;
+import com.core.audiomanager.waveform.WaveformReader;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.io.IOException;
+import java.util.ArrayList;
 
 /**
- * 在主线程中操作
  * 音频播放&录制管理类
+ * MediaPlayer/MediaRecorder 均由 {@link AudioEngine} 工作线程串行操作，对外接口不阻塞调用线程，状态在主线程回调
+ * 播放委托给默认的 {@link PlaySession}，需要同时播放多个音频时另行创建 PlaySession
+ * 提示音等界面短音效使用 {@link EffectPlayer}，不占用 MediaPlayer 和音频焦点
  * Created by wangzhen on 2018/9/18.
  */
 public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallback.PlayerCallback {
 
-    private static final int MSG_ERROR = 0x1;
-    private static final int MSG_COMPLETE = 0x2;
-    private static final int MSG_PREPARED = 0x3;
-    private static final int MSG_UPDATE_TIME = 0x4;
+    private static final int MSG_RECORD_ERROR = 0x5;
+    private static final int MSG_RECORD_COMPLETE = 0x6;
+    private static final int MSG_RECORD_PREPARED = 0x7;
+    private static final int MSG_CATALOG_READY = 0x8;
+
+    //工作线程指令
+    private static final int CMD_START_RECORD = 0x15;
+    private static final int CMD_STOP_RECORD = 0x16;
+    private static final int CMD_CANCEL_RECORD = 0x17;
+    private static final int CMD_DELETE_RECORD = 0x18;
+    private static final int CMD_PREWARM_PLAYER = 0x19;
+    private static final int CMD_ADD_RECORD = 0x1A;
+    private static final int CMD_PAUSE_RECORD = 0x1B;
+    private static final int CMD_RESUME_RECORD = 0x1C;
+    private static final int CMD_RECOVER_RECORD = 0x1D;
+    private static final int CMD_OPEN_CATALOG = 0x1E;
+    private static final int CMD_DELETE_SEGMENTS = 0x1F;
 
     private static AudioHelper mInstance;
     private Context context;
-    private MediaPlayer mMediaPlayer;
-    private MediaRecorder mMediaRecorder;
+    private volatile MediaRecorder mMediaRecorder;
     private AudioRecordStateListener mRecordStateListener;
-    private AudioPlayStateListener mPlayStateListener;
     //录音保存目录
-    private String mDir;
+    private volatile String mDir;
+    //工作线程打开的录音目录索引，切换目录后为null直到重新打开
+    private volatile RecordingCatalog mCatalog;
+    //工作线程当前索引对应的目录，只在工作线程访问
+    private String mCatalogDir;
+    private final Object mCatalogLock = new Object();
     //是否准备完毕
-    private boolean isPrepared;
+    private volatile boolean isPrepared;
     //当前录音文件完整路径
-    private static String mCurrRecordFilePath;
-    //音频播放位置
-    private int mCurrPlayPosition;
-    //音频url
-    private String mAudioUrl;
-    //是否循环播放
-    private boolean isLooping;
-    private AudioFocusChangeCallback focusChangeCallback;
-    //开始区间时间
-    private long mRangeStartTime;
-    //结束区间时间
-    private long mRangeEndTime;
+    private volatile String mCurrRecordFilePath = "";
+    //AMR 录音是否已暂停
+    private volatile boolean isRecordPaused;
+    //API 24 以下暂停后恢复录制的分段，停止时按帧追加到录音文件
+    private final ArrayList<String> mRecordParts = new ArrayList<>();
+    //工作线程，持有并串行操作 MediaRecorder
+    private final Handler workHandler;
+    //默认播放会话
+    private final PlaySession mPlaySession;
+    //录音编码配置
+    private volatile EncodeConfig mEncodeConfig = EncodeConfig.amr();
+    //WAV/AAC 录音使用的 PCM 管线
+    private PcmRecorder mPcmRecorder;
+    private volatile EncodeStage mEncodeStage;
+    private WaveformIndexer mWaveformIndexer;
+    //WAV/AAC 录音时是否生成波形索引
+    private volatile boolean isWaveformIndexEnabled = true;
+    //WAV/AAC 分段录音时长，0 表示不分段
+    private volatile int mSegmentMs;
+    private volatile AudioSegmentListener mSegmentListener;
+    //WAV/AAC 录音同步到存储设备的间隔，-1 使用默认值
+    private volatile int mSyncMs = -1;
+    //WAV/AAC 录音时监听的背景音乐，null 表示不播放
+    private volatile MixTrack mBgm;
+    private volatile int mBgmOutputMs = -1;
+    private volatile int mBgmInputMs = -1;
+    private volatile BgmMonitorSource mBgmMonitor;
+    //录音音量计
+    private final LevelMeter mLevelMeter = new LevelMeter();
+    //AMR_NB 录音时在工作线程按推送间隔读取 MediaRecorder 振幅
+    private final Runnable mAmplitudeSampler = new Runnable() {
+        @Override
+        public void run() {
+            sampleAmplitude();
+        }
+    };
 
     public static AudioHelper create(Context context) {
         if (mInstance == null) {
@@ -64,7 +124,6 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
                 }
             }
         }
-        mCurrRecordFilePath = "";
         return mInstance;
     }
 
@@ -72,6 +131,10 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
         if (ctx == null)
             throw new NullPointerException("Context不能为null");
         context = ctx.getApplicationContext();
+        workHandler = new WorkHandler(AudioEngine.get().getLooper());
+        mPlaySession = new PlaySession(context);
+        //打开录音目录时恢复上次异常退出时未完成的录音
+        workHandler.sendEmptyMessage(CMD_RECOVER_RECORD);
     }
 
     /**
@@ -80,22 +143,141 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
      * @param dir 目录
      */
     public void setDir(String dir) {
-        this.mDir = dir;
+        synchronized (mCatalogLock) {
+            this.mDir = dir;
+            mCatalog = null;
+        }
+        //在工作线程打开新目录并恢复未完成的录音
+        workHandler.sendEmptyMessage(CMD_RECOVER_RECORD);
+    }
+
+    /**
+     * 设置录音编码格式，下次开始录音时生效
+     * 默认 AMR_NB 由 MediaRecorder 编码；WAV/AAC 经 AudioRecord 采集后在独立线程编码
+     *
+     * @param config 编码配置
+     */
+    public void setEncodeConfig(EncodeConfig config) {
+        this.mEncodeConfig = config != null ? config : EncodeConfig.amr();
+    }
+
+    public EncodeConfig getEncodeConfig() {
+        return mEncodeConfig;
+    }
+
+    /**
+     * 设置 WAV/AAC 录音同步到存储设备的间隔，下次开始录音时生效
+     * 间隔内写入的数据在进程异常退出时可能丢失；慢速存储上间隔过短会降低写入吞吐
+     *
+     * @param syncMs ms，0 表示只在结束时同步
+     */
+    public void setSyncInterval(int syncMs) {
+        this.mSyncMs = syncMs;
+    }
+
+    /**
+     * 设置分段录音，下次开始录音时生效，只对 WAV/AAC 录音有效
+     * 录音过程中每满 segmentMs 写完一个可独立解码的分段并回调，可配合 {@link com.core.audiomanager.upload.SegmentUploader} 边录边传
+     * 停止录音后分段拼接为完整的录音文件，分段保留在录音文件旁的 .segments 目录中，不计入目录配额
+     * 使用 SegmentUploader 时由其 finish() 在上传完后删除，否则用完后调用 {@link #deleteRecordSegments(String)}
+     *
+     * @param segmentMs 分段时长 ms，0 表示不分段
+     * @param listener  分段回调
+     */
+    public void setSegmentDuration(int segmentMs, AudioSegmentListener listener) {
+        this.mSegmentMs = segmentMs;
+        this.mSegmentListener = listener;
+    }
+
+    /**
+     * 设置录音时通过低延迟 AudioTrack 播放的背景音乐，下次开始录音时生效，只对 WAV/AAC 录音有效
+     * 录音文件只包含麦克风数据，停止后通过 {@link #getBgmMonitor()} 获取按实测延迟对齐的混音音轨交给 {@link com.core.audiomanager.mix.AudioMixer}
+     *
+     * @param bgm 背景音乐及截取区间，null 表示不播放
+     */
+    public void setBgm(MixTrack bgm) {
+        this.mBgm = bgm;
+    }
+
+    /**
+     * 设置背景音乐监听的缓冲时长，越小延迟越低但越容易欠载，下次开始录音时生效
+     *
+     * @param outputMs AudioTrack 缓冲时长 ms，-1 使用默认值
+     * @param inputMs  AudioRecord 缓冲时长 ms，-1 使用默认值
+     */
+    public void setBgmBufferMs(int outputMs, int inputMs) {
+        this.mBgmOutputMs = outputMs;
+        this.mBgmInputMs = inputMs;
+    }
+
+    /**
+     * 获取最近一次带背景音乐录音的数据源，用于查看延迟、欠载次数和生成对齐的混音音轨
+     *
+     * @return 没有播放背景音乐时返回null
+     */
+    public BgmMonitorSource getBgmMonitor() {
+        return mBgmMonitor;
+    }
+
+    /**
+     * 设置 WAV/AAC 录音时是否同时生成波形索引，默认开启
+     * 索引保存在录音文件旁，通过 {@link #openWaveform(String)} 读取
+     *
+     * @param enabled true / false
+     */
+    public void setWaveformIndexEnabled(boolean enabled) {
+        this.isWaveformIndexEnabled = enabled;
+    }
+
+    /**
+     * 打开录音文件的波形索引
+     *
+     * @param path 录音文件路径
+     * @return 没有索引时返回null
+     */
+    public WaveformReader openWaveform(String path) {
+        return WaveformReader.open(path);
+    }
+
+    /**
+     * 获取当前 WAV/AAC 录音的编码阶段，用于查看编码吞吐量和队列深度
+     *
+     * @return AMR_NB 录音时返回null
+     */
+    public EncodeStage getEncodeStage() {
+        return mEncodeStage;
+    }
+
+    /**
+     * 设置录音音量回调，录音期间按音量计的推送间隔在主线程回调
+     *
+     * @param listener 回调
+     */
+    public void setLevelListener(AudioLevelListener listener) {
+        mLevelMeter.setListener(listener);
+    }
+
+    /**
+     * 获取音量计，用于设置推送间隔和峰值保持
+     *
+     * @return 音量计
+     */
+    public LevelMeter getLevelMeter() {
+        return mLevelMeter;
     }
 
     /**
      * 获取音频分贝大小
      * mMediaRecorder.getMaxAmplitude() 1-32767
+     * 推荐使用 {@link #setLevelListener(AudioLevelListener)}，不需要轮询
      *
      * @param maxLevel 最大级别
      * @return 1-maxLevel
      */
     public int getVoiceLevel(int maxLevel) {
-        if (isPrepared) {
-            try {
-                return maxLevel * mMediaRecorder.getMaxAmplitude() / 32768 + 1;
-            } catch (IllegalStateException e) {
-            }
+        //AMR 录音的振幅由工作线程采样，这里不直接访问 MediaRecorder
+        if (isPcmRecording() || isPrepared) {
+            return mLevelMeter.toLevel(maxLevel);
         }
         return 1;
     }
@@ -106,7 +288,34 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
      * @return
      */
     public MediaPlayer getPlayer() {
-        return mMediaPlayer;
+        return mPlaySession.getPlayer();
+    }
+
+    /**
+     * 获取默认播放会话
+     *
+     * @return 播放会话
+     */
+    public PlaySession getPlaySession() {
+        return mPlaySession;
+    }
+
+    /**
+     * 获取 MediaPlayer 复用池，用于调整池大小、空闲超时及查看命中统计
+     *
+     * @return 复用池
+     */
+    public MediaPlayerPool getPlayerPool() {
+        return AudioEngine.get().getPlayerPool();
+    }
+
+    /**
+     * 预热 MediaPlayer，后续播放直接复用
+     *
+     * @param count 数量
+     */
+    public void prewarmPlayer(int count) {
+        workHandler.obtainMessage(CMD_PREWARM_PLAYER, count, 0).sendToTarget();
     }
 
     /**
@@ -120,205 +329,460 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
 
     @Override
     public void startRecord() {
+        workHandler.sendEmptyMessage(CMD_START_RECORD);
+    }
+
+    /**
+     * 工作线程开始录音
+     */
+    private void innerStartRecord() {
+        if (isPcmRecording()) return;
+        EncodeConfig config = mEncodeConfig;
+        if (config.isPcmPipeline()) {
+            innerStartPcmRecord(config);
+            return;
+        }
+        mEncodeStage = null;
         if (mMediaRecorder == null) {
             mMediaRecorder = new MediaRecorder();
         } else {
             mMediaRecorder.reset();
         }
+        isRecordPaused = false;
+        mRecordParts.clear();
         try {
-            if (TextUtils.isEmpty(this.mDir))
-                this.mDir = PathUtil.getSpeechPath();
-            File dir = new File(mDir);
-            if (!dir.exists())
-                dir.mkdirs();
-            String fileName = generateFileName();
-            File file = new File(dir, fileName);
+            File file = createRecordFile(config.getExtension());
             mCurrRecordFilePath = file.getAbsolutePath();
-            //设置输出文件
-            mMediaRecorder.setOutputFile(file.getAbsolutePath());
-            //设置输入源
-            mMediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            //设置音频格式
-            mMediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.AMR_NB);
-            //设置音频编码
-            mMediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
-            mMediaRecorder.prepare();
-            mMediaRecorder.start();
+            innerGetCatalog().beginRecording(mCurrRecordFilePath);
+            startMediaRecorder(mCurrRecordFilePath);
             isPrepared = true;
-            if (mRecordStateListener != null) {
-                mRecordStateListener.onPrepared();
+            onMainRecordPrepared();
+        } catch (Exception e) {
+            onMainRecordError(e.getMessage());
+        }
+    }
+
+    /**
+     * 配置并启动 MediaRecorder
+     *
+     * @param path 输出文件
+     */
+    private void startMediaRecorder(String path) throws IOException {
+        //设置输出文件
+        mMediaRecorder.setOutputFile(path);
+        //设置输入源
+        mMediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
+        //设置音频格式
+        mMediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.AMR_NB);
+        //设置音频编码
+        mMediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
+        mMediaRecorder.prepare();
+        mMediaRecorder.start();
+        workHandler.postDelayed(mAmplitudeSampler, mLevelMeter.getUpdateInterval());
+    }
+
+    @Override
+    public void pauseRecord() {
+        workHandler.sendEmptyMessage(CMD_PAUSE_RECORD);
+    }
+
+    @Override
+    public void resumeRecord() {
+        workHandler.sendEmptyMessage(CMD_RESUME_RECORD);
+    }
+
+    /**
+     * 录音是否已暂停
+     */
+    public boolean isRecordPaused() {
+        return isPcmRecording() ? mPcmRecorder.isPaused() : isRecordPaused;
+    }
+
+    /**
+     * 工作线程暂停录音
+     * API 24 及以上直接暂停 MediaRecorder；以下结束当前文件，恢复时录制到新的分段
+     */
+    private void innerPauseRecord() {
+        if (isPcmRecording()) {
+            mPcmRecorder.pauseRecord();
+            mLevelMeter.reset();
+            return;
+        }
+        if (mMediaRecorder == null || !isPrepared || isRecordPaused) return;
+        workHandler.removeCallbacks(mAmplitudeSampler);
+        mLevelMeter.reset();
+        try {
+            if (Build.VERSION.SDK_INT >= 24) {
+                mMediaRecorder.pause();
+            } else {
+                stopRecordPart();
+                mMediaRecorder.reset();
             }
+            isRecordPaused = true;
+        } catch (RuntimeException e) {
+            onMainRecordError(e.getMessage());
+        }
+    }
+
+    /**
+     * 工作线程恢复录音
+     */
+    private void innerResumeRecord() {
+        if (isPcmRecording()) {
+            mPcmRecorder.resumeRecord();
+            return;
+        }
+        if (mMediaRecorder == null || !isRecordPaused) return;
+        try {
+            if (Build.VERSION.SDK_INT >= 24) {
+                mMediaRecorder.resume();
+                workHandler.postDelayed(mAmplitudeSampler, mLevelMeter.getUpdateInterval());
+            } else {
+                String part = mCurrRecordFilePath + ".part" + mRecordParts.size();
+                mRecordParts.add(part);
+                startMediaRecorder(part);
+            }
+            isRecordPaused = false;
         } catch (Exception e) {
-            if (mRecordStateListener != null) {
-                mRecordStateListener.onError(e.getMessage());
+            onMainRecordError(e.getMessage());
+        }
+    }
+
+    /**
+     * 结束当前分段，分段过短没有数据时丢弃该分段而不影响之前录制的内容
+     */
+    private void stopRecordPart() {
+        try {
+            mMediaRecorder.stop();
+        } catch (RuntimeException e) {
+            if (mRecordParts.isEmpty()) throw e;
+            new File(mRecordParts.remove(mRecordParts.size() - 1)).delete();
+        }
+    }
+
+    /**
+     * 分段按帧追加到录音文件后删除
+     */
+    private void joinRecordParts() throws IOException {
+        if (mRecordParts.isEmpty()) return;
+        try {
+            AudioJoiner.append(mCurrRecordFilePath, mRecordParts.toArray(new String[mRecordParts.size()]));
+        } finally {
+            deleteRecordParts();
+        }
+    }
+
+    private void deleteRecordParts() {
+        for (String part : mRecordParts) {
+            new File(part).delete();
+        }
+        mRecordParts.clear();
+    }
+
+    /**
+     * 工作线程开始 WAV/AAC 录音
+     *
+     * @param config 编码配置
+     */
+    private void innerStartPcmRecord(EncodeConfig config) {
+        try {
+            File file = createRecordFile(config.getExtension());
+            mCurrRecordFilePath = file.getAbsolutePath();
+            PcmSource source = mPcmRecorder != null ? mPcmRecorder.getSource() : null;
+            MixTrack bgm = mBgm;
+            //背景音乐的播放位置随数据源推进，每次录音使用新的数据源
+            if (source == null || bgm != null || source instanceof BgmMonitorSource
+                    || source.getSampleRate() != config.getSampleRate()
+                    || source.getChannelCount() != config.getChannelCount()) {
+                PcmSource newSource = new AudioRecordSource(MediaRecorder.AudioSource.MIC,
+                        config.getSampleRate(), config.getChannelCount());
+                if (bgm != null) {
+                    newSource = createBgmMonitor((AudioRecordSource) newSource, bgm);
+                }
+                PcmRecorder recorder = new PcmRecorder(newSource);
+                recorder.setRecordStateListener(mPcmRecordListener);
+                recorder.addConsumer(mLevelMeter);
+                mPcmRecorder = recorder;
+            }
+            if (mEncodeStage != null) {
+                mPcmRecorder.removeConsumer(mEncodeStage);
             }
+            if (mWaveformIndexer != null) {
+                mPcmRecorder.removeConsumer(mWaveformIndexer);
+                mWaveformIndexer = null;
+            }
+            mEncodeStage = new EncodeStage(mCurrRecordFilePath, config);
+            mEncodeStage.setSegmentDuration(mSegmentMs, mSegmentListener);
+            if (mSyncMs >= 0) {
+                mEncodeStage.setSyncInterval(mSyncMs);
+            }
+            innerGetCatalog().beginRecording(mCurrRecordFilePath);
+            mPcmRecorder.addConsumer(mEncodeStage);
+            //加在编码阶段之后，结束时可判断编码是否成功
+            if (isWaveformIndexEnabled) {
+                mWaveformIndexer = new WaveformIndexer(mCurrRecordFilePath);
+                mPcmRecorder.addConsumer(mWaveformIndexer);
+            }
+            mPcmRecorder.startRecord();
+        } catch (Exception e) {
+            onMainRecordError(e.getMessage());
         }
     }
 
     /**
-     * 生成文件名
+     * 工作线程创建背景音乐监听数据源，并在开始采集前解码背景音乐
+     */
+    private BgmMonitorSource createBgmMonitor(AudioRecordSource mic, MixTrack bgm) throws IOException {
+        BgmMonitorSource previous = mBgmMonitor;
+        if (previous != null) {
+            previous.releaseBgm();
+        }
+        BgmMonitorSource monitor = new BgmMonitorSource(mic, bgm);
+        if (mBgmOutputMs > 0) monitor.setOutputBufferMs(mBgmOutputMs);
+        if (mBgmInputMs > 0) monitor.setInputBufferMs(mBgmInputMs);
+        monitor.setTempDir(context.getCacheDir());
+        monitor.prepare();
+        mBgmMonitor = monitor;
+        return monitor;
+    }
+
+    /**
+     * 工作线程读取 MediaRecorder 振幅输入音量计
+     */
+    private void sampleAmplitude() {
+        if (!isPrepared || mMediaRecorder == null) return;
+        int interval = mLevelMeter.getUpdateInterval();
+        try {
+            mLevelMeter.feedAmplitude(mMediaRecorder.getMaxAmplitude(), interval);
+        } catch (IllegalStateException e) {
+            return;
+        }
+        workHandler.postDelayed(mAmplitudeSampler, interval);
+    }
+
+    private boolean isPcmRecording() {
+        return mPcmRecorder != null && mPcmRecorder.isRecording();
+    }
+
+    /**
+     * 获取录音目录索引，可分页查询已完成的录音
+     * 通过 getCatalog().getQuota() 设置目录配额
+     * 索引在工作线程打开，不在调用线程等待
      *
-     * @return 文件名
+     * @return 当前录音目录的索引，打开完成前和切换目录后返回null，可通过 {@link #getCatalog(CatalogReadyListener)} 等待
      */
-    private String generateFileName() {
-        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss", Locale.CHINA);
-        Date date = new Date(System.currentTimeMillis());
-        return format.format(date) + ".amr";
+    public RecordingCatalog getCatalog() {
+        return mCatalog;
+    }
+
+    /**
+     * 获取录音目录索引，打开完成后在主线程回调
+     *
+     * @param listener 回调
+     */
+    public void getCatalog(CatalogReadyListener listener) {
+        RecordingCatalog catalog = mCatalog;
+        if (catalog != null) {
+            Message.obtain(mainHandler, MSG_CATALOG_READY, new Object[]{listener, catalog}).sendToTarget();
+        } else {
+            Message.obtain(workHandler, CMD_OPEN_CATALOG, listener).sendToTarget();
+        }
+    }
+
+    /**
+     * 工作线程打开当前目录的索引，目录变化后重新打开
+     *
+     * @return 当前录音目录的索引
+     */
+    private RecordingCatalog innerGetCatalog() {
+        String dir = mDir;
+        String path = TextUtils.isEmpty(dir) ? PathUtil.getSpeechPath() : dir;
+        RecordingCatalog catalog = mCatalog;
+        if (catalog == null || !path.equals(mCatalogDir)) {
+            catalog = RecordingCatalog.open(path);
+            mCatalogDir = path;
+        }
+        synchronized (mCatalogLock) {
+            //打开期间目录已切换时不发布，等待 setDir 发出的重新打开
+            if (TextUtils.equals(dir, mDir))
+                mCatalog = catalog;
+        }
+        return catalog;
+    }
+
+    /**
+     * 创建录音文件，文件名由目录索引分配，不会重名
+     *
+     * @param extension 扩展名
+     * @return 文件
+     * @throws IOException 剩余空间不足
+     */
+    private File createRecordFile(String extension) throws IOException {
+        RecordingCatalog catalog = innerGetCatalog();
+        //提前失败，避免 MediaRecorder.start 或写入时才因磁盘已满出错
+        if (!catalog.getQuota().ensureFreeSpace())
+            throw new IOException("insufficient storage");
+        return catalog.newFile(extension);
+    }
+
+    /**
+     * 工作线程将完成的录音加入索引后回调
+     *
+     * @param path 录音文件路径
+     */
+    private void innerAddRecord(String path) {
+        innerGetCatalog().add(path);
+        onMainRecordComplete(path);
     }
 
     @Override
     public void cancelRecord() {
-        deleteRecordFile();
-        stopRecord();
+        workHandler.sendEmptyMessage(CMD_CANCEL_RECORD);
     }
 
     /**
      * 删除生成的录音文件
      */
     public void deleteRecordFile() {
+        workHandler.sendEmptyMessage(CMD_DELETE_RECORD);
+    }
+
+    /**
+     * 删除录音的分段目录，录音完成后调用，录音文件保留
+     *
+     * @param path 录音文件路径
+     */
+    public void deleteRecordSegments(String path) {
+        Message.obtain(workHandler, CMD_DELETE_SEGMENTS, path).sendToTarget();
+    }
+
+    /**
+     * 工作线程删除录音文件
+     */
+    private void innerDeleteRecordFile() {
+        deleteRecordParts();
         if (TextUtils.isEmpty(mCurrRecordFilePath)) return;
-        File file = new File(mCurrRecordFilePath);
-        if (file.exists())
-            file.delete();
+        //已加入索引的录音同时移除索引记录
+        RecordingCatalog catalog = innerGetCatalog();
+        if (!catalog.delete(mCurrRecordFilePath)) {
+            catalog.endRecording(mCurrRecordFilePath);
+            File file = new File(mCurrRecordFilePath);
+            if (file.exists())
+                file.delete();
+            WaveformReader.delete(mCurrRecordFilePath);
+            EncodeStage.deleteSegments(mCurrRecordFilePath);
+        }
         mCurrRecordFilePath = "";
     }
 
     @Override
     public void stopRecord() {
+        workHandler.sendEmptyMessage(CMD_STOP_RECORD);
+    }
+
+    /**
+     * 工作线程停止录音
+     */
+    private void innerStopRecord() {
+        if (isPcmRecording()) {
+            //完成回调由 PcmRecorder 在编码结束后发出
+            mPcmRecorder.stopRecord();
+            return;
+        }
         if (mMediaRecorder != null) {
             isPrepared = false;
+            workHandler.removeCallbacks(mAmplitudeSampler);
+            mLevelMeter.reset();
             try {
-                mMediaRecorder.stop();
+                //API 24 以下暂停时当前分段已结束
+                if (!isRecordPaused || Build.VERSION.SDK_INT >= 24) {
+                    stopRecordPart();
+                }
+                isRecordPaused = false;
                 mMediaRecorder.release();
                 mMediaRecorder = null;
+                joinRecordParts();
                 if (!TextUtils.isEmpty(mCurrRecordFilePath)) {
-                    if (mRecordStateListener != null) {
-                        mRecordStateListener.onComplete(mCurrRecordFilePath);
-                    }
+                    innerAddRecord(mCurrRecordFilePath);
                 } else {
-                    if (mRecordStateListener != null) {
-                        mRecordStateListener.onError("record file does not exist");
-                    }
-                }
-            } catch (RuntimeException e) {
-                deleteRecordFile();
-                if (mRecordStateListener != null) {
-                    mRecordStateListener.onError(e.getMessage());
+                    onMainRecordError("record file does not exist");
                 }
+            } catch (IOException | RuntimeException e) {
+                isRecordPaused = false;
+                innerDeleteRecordFile();
+                onMainRecordError(e.getMessage());
             }
         } else {
-            if (mRecordStateListener != null) {
-                mRecordStateListener.onError("mMediaRecorder为null");
-            }
+            onMainRecordError("mMediaRecorder为null");
         }
     }
 
     @Override
     public void startPlay(String audioUrl) {
-        mAudioUrl = audioUrl;
-        innerPlayer();
-    }
-
-    /**
-     * 播放音频
-     */
-    private void innerPlayer() {
-        if (TextUtils.isEmpty(mAudioUrl)) {
-            onMainError("invalid music url");
-            return;
-        }
-        if (mMediaPlayer == null) {
-            try {
-                mMediaPlayer = new MediaPlayer();
-            } catch (Exception e) {
-                //高通平台直接new MediaPlayer()可能会报错，暂时catch
-                onMainError(e.getMessage());
-            }
-        } else {
-            mMediaPlayer.reset();
-        }
-        if (mMediaPlayer == null) {
-            onMainError("MediaPlayer inner create failed.");
-            return;
-        }
-        mCurrPlayPosition = 0;
-
-        try {
-            mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            mMediaPlayer.setDataSource(mAudioUrl);
-            mMediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-                @Override
-                public void onCompletion(MediaPlayer mp) {
-                    if (mMediaPlayer != null) {
-                        if (mRangeStartTime > 0 && mRangeEndTime > 0 && mRangeEndTime > mRangeStartTime) {
-                            rangePlay(mRangeStartTime, mRangeEndTime);
-                        } else {
-                            onMainComplete();
-                            stopPlay();
-                        }
-                    }
-                }
-            });
-            mMediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
-                @Override
-                public boolean onError(MediaPlayer mp, int what, int extra) {
-                    onMainError("播放失败");
-                    return true;
-                }
-            });
-            mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-                @Override
-                public void onPrepared(MediaPlayer mp) {
-                    if (mMediaPlayer != null) {
-                        onMainPrepared();
-                        mMediaPlayer.start();
-                        obtainFocus();
-                    } else {
-                        onMainError("播放失败");
-                    }
-                }
-            });
-            mMediaPlayer.setLooping(isLooping);
-            mMediaPlayer.prepareAsync();
-        } catch (Exception e) {
-            onMainError(e.getMessage());
-        }
+        mPlaySession.startPlay(audioUrl);
     }
 
     @Override
     public void pausePlay() {
-        if (mMediaPlayer != null) {
-            if (mMediaPlayer.isPlaying()) {
-                mMediaPlayer.pause();
-                mCurrPlayPosition = mMediaPlayer.getCurrentPosition();
-                releaseFocus();
-            }
-        }
+        mPlaySession.pausePlay();
     }
 
     @Override
     public void resumePlay() {
-        if (mMediaPlayer != null) {
-            mMediaPlayer.seekTo(mCurrPlayPosition);
-            mMediaPlayer.start();
-            obtainFocus();
-        }
+        mPlaySession.resumePlay();
     }
 
     @Override
     public void stopPlay() {
-        mRangeStartTime = 0;
-        mRangeEndTime = 0;
-        if (mMediaPlayer != null) {
-            try {
-                releaseFocus();
-                mMediaPlayer.stop();
-                mMediaPlayer.release();
-                mMediaPlayer = null;
-            } catch (RuntimeException e) {
-                onMainError(e.getMessage());
-            }
-        }
+        mPlaySession.stopPlay();
+    }
+
+    /**
+     * 指定区间并播放
+     *
+     * @param leftTime  start
+     * @param rightTime end
+     */
+    public void rangePlay(long leftTime, long rightTime) {
+        mPlaySession.rangePlay(leftTime, rightTime);
+    }
+
+    /**
+     * 不准备 MediaPlayer 直接读取录音时长、格式和码率，结果会被缓存
+     *
+     * @param path 录音文件
+     * @return 格式不支持时返回null
+     */
+    public AudioInfo probe(String path) {
+        return AudioProbe.get().probe(path);
+    }
+
+    /**
+     * 无损裁剪录音的 [startMs, endMs] 到同目录下的新文件，在后台线程执行
+     *
+     * @param path     录音文件
+     * @param startMs  起点
+     * @param endMs    终点
+     * @param listener 回调
+     * @return 裁剪任务，可取消
+     */
+    public AudioTrimmer.TrimTask trimRecord(String path, long startMs, long endMs, AudioTrimListener listener) {
+        File src = new File(path);
+        String name = src.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        File dst = new File(src.getParentFile(), base + "_" + startMs + "-" + endMs + extension);
+        return AudioTrimmer.get().trim(path, dst.getAbsolutePath(), startMs, endMs, listener);
+    }
+
+    /**
+     * 拖动时试听指定位置，连续调用时只执行最新的 seek
+     *
+     * @param position 位置 ms
+     */
+    public void previewSeek(long position) {
+        mPlaySession.previewSeek(position);
     }
 
     /**
@@ -328,7 +792,7 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
         stopRecord();
         stopPlay();
         mRecordStateListener = null;
-        mPlayStateListener = null;
+        mPlaySession.setPlayStateListener(null);
     }
 
     /**
@@ -337,7 +801,7 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
      * @return 播放状态
      */
     public boolean isAudioPlaying() {
-        return mMediaPlayer != null && mMediaPlayer.isPlaying();
+        return mPlaySession.isAudioPlaying();
     }
 
     /**
@@ -346,7 +810,7 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
      * @return 音频url
      */
     public String getAudioUrl() {
-        return mAudioUrl;
+        return mPlaySession.getAudioUrl();
     }
 
     /**
@@ -355,7 +819,16 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
      * @param looping true / false
      */
     public void setLooping(boolean looping) {
-        isLooping = looping;
+        mPlaySession.setLooping(looping);
+    }
+
+    /**
+     * 设置是否缓存远程音频，开启后 http 音频经本地代理边下边播并缓存到磁盘
+     *
+     * @param enabled true / false
+     */
+    public void setCacheEnabled(boolean enabled) {
+        mPlaySession.setCacheEnabled(enabled);
     }
 
     public void setRecordStateListener(AudioRecordStateListener listener) {
@@ -363,144 +836,171 @@ public class AudioHelper implements AudioCallback.RecorderCallback, AudioCallbac
     }
 
     public void setPlayStateListener(AudioPlayStateListener listener) {
-        this.mPlayStateListener = listener;
-    }
-
-    /**
-     * 获取系统音频焦点
-     */
-    private void obtainFocus() {
-        android.media.AudioManager am = (android.media.AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-        if (am != null) {
-            focusChangeCallback = new AudioFocusChangeCallback();
-            am.requestAudioFocus(focusChangeCallback, android.media.AudioManager.STREAM_MUSIC, android.media.AudioManager.AUDIOFOCUS_GAIN_TRANSIENT);
-        }
-    }
-
-    /**
-     * 释放系统音频焦点
-     */
-    private void releaseFocus() {
-        android.media.AudioManager am = (android.media.AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-        if (am != null)
-            am.abandonAudioFocus(focusChangeCallback);
+        mPlaySession.setPlayStateListener(listener);
     }
 
     /**
-     * 主线程错误回调
+     * 录音出错主线程回调
      *
      * @param error error
      */
-    private void onMainError(String error) {
+    private void onMainRecordError(String error) {
         Message message = Message.obtain();
-        message.what = MSG_ERROR;
+        message.what = MSG_RECORD_ERROR;
         message.obj = error;
         mainHandler.sendMessage(message);
     }
 
     /**
-     * 准备完毕主线程回调
+     * 录音准备完毕主线程回调
      */
-    private void onMainPrepared() {
+    private void onMainRecordPrepared() {
         Message message = Message.obtain();
-        message.what = MSG_PREPARED;
+        message.what = MSG_RECORD_PREPARED;
         mainHandler.sendMessage(message);
     }
 
     /**
-     * 播放完毕主线程回调
+     * 录音完毕主线程回调
+     *
+     * @param path 录音文件路径
      */
-    private void onMainComplete() {
+    private void onMainRecordComplete(String path) {
         Message message = Message.obtain();
-        message.what = MSG_COMPLETE;
+        message.what = MSG_RECORD_COMPLETE;
+        message.obj = path;
         mainHandler.sendMessage(message);
     }
 
+    /**
+     * PCM 管线的状态已在主线程回调，直接转发；完成时先回到工作线程加入索引
+     */
+    private final AudioRecordStateListener mPcmRecordListener = new AudioRecordStateListener() {
+        @Override
+        public void onPrepared() {
+            if (mRecordStateListener != null) {
+                mRecordStateListener.onPrepared();
+            }
+        }
+
+        @Override
+        public void onComplete(String path) {
+            if (path != null) {
+                Message.obtain(workHandler, CMD_ADD_RECORD, path).sendToTarget();
+            } else if (mRecordStateListener != null) {
+                EncodeStage stage = mEncodeStage;
+                String error = stage != null ? stage.getError() : null;
+                mRecordStateListener.onError(error != null ? error : "record file does not exist");
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            if (mRecordStateListener != null) {
+                mRecordStateListener.onError(error != null ? error : "");
+            }
+        }
+    };
+
     private Handler mainHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
-                case MSG_ERROR:
-                    if (mPlayStateListener != null) {
+                case MSG_RECORD_ERROR:
+                    if (mRecordStateListener != null) {
                         String error = msg.obj != null ? String.valueOf(msg.obj) : "";
-                        mPlayStateListener.onError(error);
+                        mRecordStateListener.onError(error);
                     }
                     break;
-                case MSG_COMPLETE:
-                    if (mPlayStateListener != null) {
-                        mPlayStateListener.onComplete();
+                case MSG_RECORD_COMPLETE:
+                    if (mRecordStateListener != null) {
+                        mRecordStateListener.onComplete(String.valueOf(msg.obj));
                     }
                     break;
-                case MSG_PREPARED:
-                    if (mPlayStateListener != null) {
-                        mPlayStateListener.onPrepared();
+                case MSG_RECORD_PREPARED:
+                    if (mRecordStateListener != null) {
+                        mRecordStateListener.onPrepared();
                     }
                     break;
-                case MSG_UPDATE_TIME:
-                    if (mMediaPlayer != null && mRangeEndTime > 0) {
-                        int currentPosition = mMediaPlayer.getCurrentPosition();
-                        if (currentPosition >= mRangeEndTime) {
-                            rangePlay(mRangeStartTime, mRangeEndTime);
-                        } else {
-                            sendEmptyMessageDelayed(MSG_UPDATE_TIME, 1000);
-                        }
-                    }
+                case MSG_CATALOG_READY: {
+                    Object[] args = (Object[]) msg.obj;
+                    ((CatalogReadyListener) args[0]).onCatalogReady((RecordingCatalog) args[1]);
                     break;
+                }
             }
         }
     };
 
     /**
-     * 指定区间并播放
-     *
-     * @param leftTime  start
-     * @param rightTime end
+     * 工作线程，MediaRecorder 的 native 调用均在此串行执行
      */
-    public void rangePlay(long leftTime, long rightTime) {
-        mRangeStartTime = leftTime;
-        mRangeEndTime = rightTime;
-        if (mMediaPlayer != null) {
-            if (mRangeStartTime < 0) {
-                mRangeStartTime = 0;
-            }
-            if (mRangeEndTime > mMediaPlayer.getDuration()) {
-                mRangeEndTime = mMediaPlayer.getDuration();
-            }
-            if (Build.VERSION.SDK_INT < 26) {
-                mMediaPlayer.seekTo((int) leftTime);
-            } else {
-                mMediaPlayer.seekTo(leftTime, MediaPlayer.SEEK_CLOSEST_SYNC);
+    private class WorkHandler extends Handler {
+
+        WorkHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_START_RECORD:
+                    innerStartRecord();
+                    break;
+                case CMD_STOP_RECORD:
+                    innerStopRecord();
+                    break;
+                case CMD_PAUSE_RECORD:
+                    innerPauseRecord();
+                    break;
+                case CMD_RESUME_RECORD:
+                    innerResumeRecord();
+                    break;
+                case CMD_CANCEL_RECORD:
+                    if (isPcmRecording()) {
+                        //编码阶段在取消时删除未完成的文件
+                        mPcmRecorder.cancelRecord();
+                        innerGetCatalog().endRecording(mCurrRecordFilePath);
+                        mCurrRecordFilePath = "";
+                        break;
+                    }
+                    innerDeleteRecordFile();
+                    innerStopRecord();
+                    break;
+                case CMD_DELETE_RECORD:
+                    innerDeleteRecordFile();
+                    break;
+                case CMD_ADD_RECORD:
+                    innerAddRecord((String) msg.obj);
+                    break;
+                case CMD_RECOVER_RECORD:
+                    innerGetCatalog();
+                    break;
+                case CMD_DELETE_SEGMENTS:
+                    EncodeStage.deleteSegments((String) msg.obj);
+                    break;
+                case CMD_OPEN_CATALOG:
+                    Message.obtain(mainHandler, MSG_CATALOG_READY, new Object[]{msg.obj, innerGetCatalog()}).sendToTarget();
+                    break;
+                case CMD_PREWARM_PLAYER:
+                    AudioEngine.get().getPlayerPool().prewarm(msg.arg1);
+                    break;
             }
-            mMediaPlayer.start();
-            //开始计时
-            mainHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, 1000);
         }
     }
 
     /**
      * 系统音频焦点监听
      * Created by wangzhen on 2019/2/26.
+     *
+     * @deprecated 焦点已由 {@link AudioEngine#getAudioFocus()} 统一申请和分发，AudioHelper 不再注册此监听，
+     * 保留仅为兼容旧代码，回调转交默认的 {@link PlaySession}
      */
+    @Deprecated
     public class AudioFocusChangeCallback implements AudioManager.OnAudioFocusChangeListener {
 
         @Override
         public void onAudioFocusChange(int focusChange) {
-            switch (focusChange) {
-                // 音频焦点
-                case AudioManager.AUDIOFOCUS_LOSS: // 其他App请求焦点，未知时长
-                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT: // 其他App请求焦点，临时的
-                    onMainComplete();
-                    stopPlay();
-                    break;
-                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK: // 其他App请求焦点，临时的，可降低音量不用停止
-                    break;
-                case AudioManager.AUDIOFOCUS_GAIN: // 其他App放弃未知时长焦点
-                    break;
-                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT: // 其他App放弃临时焦点
-                    break;
-                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK: // 其他App放弃临时焦点
-                    break;
-            }
+            mPlaySession.handleFocusChange(focusChange);
         }
     }
 }
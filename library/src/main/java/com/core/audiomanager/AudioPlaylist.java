@@ -0,0 +1,502 @@
+package com.core.audiomanager;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import com.core.audiomanager.catalog.RecordingCatalog;
+import com.core.audiomanager.callback.AudioCallback;
+import com.core.audiomanager.callback.AudioPlaylistListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 无缝列表播放
+ * 当前音频播放时提前准备下一首，并通过 setNextMediaPlayer 衔接，连续播放语音消息时没有间隙和准备耗时
+ * Created by wangzhen on 2019/4/2.
+ */
+public class AudioPlaylist implements AudioCallback.PlayerCallback, AudioEngine.PlayerHolder {
+
+    private static final int MSG_ERROR = 0x1;
+    private static final int MSG_COMPLETE = 0x2;
+    private static final int MSG_PREPARED = 0x3;
+    private static final int MSG_TRACK_CHANGED = 0x4;
+
+    //工作线程指令
+    private static final int CMD_SET_PLAYLIST = 0x10;
+    private static final int CMD_ADD = 0x11;
+    private static final int CMD_PLAY = 0x12;
+    private static final int CMD_PAUSE_PLAY = 0x13;
+    private static final int CMD_RESUME_PLAY = 0x14;
+    private static final int CMD_STOP_PLAY = 0x15;
+    private static final int CMD_START_PLAY = 0x16;
+    private static final int CMD_FOCUS_PAUSE = 0x17;
+    private static final int CMD_FOCUS_RESUME = 0x18;
+
+    private final Context context;
+    private final AudioEngine mEngine;
+    private final Handler workHandler;
+    private volatile AudioPlaylistListener mListener;
+    //以下字段只在工作线程中访问
+    private final List<String> mUrls = new ArrayList<>();
+    private MediaPlayer mCurrent;
+    private MediaPlayer mNext;
+    //已准备的播放器及其数据源，持有期间文件不会被录音目录配额清理
+    private final Map<MediaPlayer, String> mPinnedUrls = new HashMap<>();
+    private boolean isCurrentPrepared;
+    private boolean isNextPrepared;
+    //本次播放是否已回调 onPrepared
+    private boolean isNotifiedPrepared;
+    private volatile int mIndex = -1;
+    private volatile boolean isPlaying;
+    private final AudioFocusChangeCallback focusChangeCallback = new AudioFocusChangeCallback();
+    //是否因临时失去焦点而暂停，重新获得焦点后自动恢复
+    private boolean isPausedByFocus;
+
+    public AudioPlaylist(Context ctx) {
+        if (ctx == null)
+            throw new NullPointerException("Context不能为null");
+        context = ctx.getApplicationContext();
+        mEngine = AudioEngine.get();
+        workHandler = new WorkHandler(mEngine.getLooper());
+    }
+
+    /**
+     * 设置播放列表，正在播放的音频不受影响
+     *
+     * @param urls 音频url列表
+     */
+    public void setPlaylist(List<String> urls) {
+        Message.obtain(workHandler, CMD_SET_PLAYLIST, new ArrayList<>(urls)).sendToTarget();
+    }
+
+    /**
+     * 追加到列表末尾
+     *
+     * @param url 音频url
+     */
+    public void add(String url) {
+        Message.obtain(workHandler, CMD_ADD, url).sendToTarget();
+    }
+
+    /**
+     * 从指定位置开始播放
+     *
+     * @param index 列表位置
+     */
+    public void play(int index) {
+        workHandler.obtainMessage(CMD_PLAY, index, 0).sendToTarget();
+    }
+
+    /**
+     * 播放指定音频，不在列表中时追加到末尾
+     *
+     * @param path 音频url
+     */
+    @Override
+    public void startPlay(String path) {
+        Message.obtain(workHandler, CMD_START_PLAY, path).sendToTarget();
+    }
+
+    @Override
+    public void pausePlay() {
+        workHandler.sendEmptyMessage(CMD_PAUSE_PLAY);
+    }
+
+    @Override
+    public void resumePlay() {
+        workHandler.sendEmptyMessage(CMD_RESUME_PLAY);
+    }
+
+    @Override
+    public void stopPlay() {
+        workHandler.sendEmptyMessage(CMD_STOP_PLAY);
+    }
+
+    /**
+     * 停止播放并释放监听
+     */
+    public void release() {
+        stopPlay();
+        mListener = null;
+    }
+
+    /**
+     * 获取当前播放位置
+     *
+     * @return 未播放时为-1
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public boolean isAudioPlaying() {
+        return isPlaying;
+    }
+
+    public void setPlaylistListener(AudioPlaylistListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public boolean isPlayerBusy(MediaPlayer player) {
+        return player == mCurrent;
+    }
+
+    /**
+     * 预备的下一首被引擎回收，当前音频结束后重新准备
+     */
+    @Override
+    public void onPlayerEvicted(MediaPlayer player) {
+        if (player == mNext) {
+            if (mCurrent != null && isCurrentPrepared) {
+                mCurrent.setNextMediaPlayer(null);
+            }
+            RecordingCatalog.unpin(mPinnedUrls.remove(player));
+            mNext = null;
+            isNextPrepared = false;
+        }
+    }
+
+    private void innerPlay(int index) {
+        innerStopPlay();
+        if (index < 0 || index >= mUrls.size()) {
+            onMainError("invalid playlist index " + index);
+            return;
+        }
+        mIndex = index;
+        mCurrent = preparePlayer(mUrls.get(index));
+        isPlaying = mCurrent != null;
+    }
+
+    /**
+     * 提前准备下一首
+     */
+    private void prepareNext() {
+        if (mNext != null || mIndex + 1 >= mUrls.size()) return;
+        mNext = preparePlayer(mUrls.get(mIndex + 1));
+        isNextPrepared = false;
+    }
+
+    private MediaPlayer preparePlayer(String url) {
+        MediaPlayer player = mEngine.obtainPlayer(this);
+        if (player == null) {
+            onMainError("MediaPlayer inner create failed.");
+            return null;
+        }
+        //先 pin 再打开，配额清理不会删除正在准备的文件
+        RecordingCatalog.pin(url);
+        mPinnedUrls.put(player, url);
+        try {
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            player.setDataSource(url);
+            player.setOnPreparedListener(mPreparedListener);
+            player.setOnCompletionListener(mCompletionListener);
+            player.setOnErrorListener(mErrorListener);
+            player.prepareAsync();
+            return player;
+        } catch (Exception e) {
+            recyclePlayer(player);
+            onMainError(e.getMessage());
+            return null;
+        }
+    }
+
+    private final MediaPlayer.OnPreparedListener mPreparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            if (mp == mCurrent) {
+                isCurrentPrepared = true;
+                mp.start();
+                obtainFocus();
+                if (!isNotifiedPrepared) {
+                    isNotifiedPrepared = true;
+                    onMainPrepared();
+                }
+                onMainTrackChanged(mIndex);
+                prepareNext();
+            } else if (mp == mNext) {
+                isNextPrepared = true;
+                if (mCurrent != null && isCurrentPrepared) {
+                    mCurrent.setNextMediaPlayer(mp);
+                }
+            }
+        }
+    };
+
+    private final MediaPlayer.OnCompletionListener mCompletionListener = new MediaPlayer.OnCompletionListener() {
+        @Override
+        public void onCompletion(MediaPlayer mp) {
+            if (mp != mCurrent) return;
+            advance();
+        }
+    };
+
+    private final MediaPlayer.OnErrorListener mErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            onMainError("播放失败");
+            if (mp == mNext) {
+                dropNext();
+            } else if (mp == mCurrent) {
+                //跳过出错的音频
+                advance();
+            }
+            return true;
+        }
+    };
+
+    /**
+     * 丢弃已准备的下一首
+     */
+    private void dropNext() {
+        if (mNext == null) return;
+        MediaPlayer next = mNext;
+        onPlayerEvicted(next);
+        recyclePlayer(next);
+    }
+
+    /**
+     * 当前音频结束，切换到下一首
+     * 下一首已准备好时 MediaPlayer 已自动开始播放，否则等待其准备完毕后开始
+     */
+    private void advance() {
+        MediaPlayer finished = mCurrent;
+        mCurrent = null;
+        if (mNext != null) {
+            mCurrent = mNext;
+            mNext = null;
+            mIndex++;
+            isCurrentPrepared = isNextPrepared;
+            isNextPrepared = false;
+            recyclePlayer(finished);
+            if (isCurrentPrepared) {
+                if (!mCurrent.isPlaying()) {
+                    //上一首出错时不会自动衔接
+                    mCurrent.start();
+                }
+                onMainTrackChanged(mIndex);
+                prepareNext();
+            }
+        } else if (mIndex + 1 < mUrls.size()) {
+            recyclePlayer(finished);
+            mIndex++;
+            isCurrentPrepared = false;
+            mCurrent = preparePlayer(mUrls.get(mIndex));
+            isPlaying = mCurrent != null;
+        } else {
+            mCurrent = finished;
+            innerStopPlay();
+            onMainComplete();
+        }
+    }
+
+    private void innerPausePlay() {
+        if (mCurrent != null && isCurrentPrepared && mCurrent.isPlaying()) {
+            mCurrent.pause();
+            isPlaying = false;
+            releaseFocus();
+        } else if (isPausedByFocus) {
+            //失去焦点期间主动暂停，重新获得焦点后不再恢复
+            releaseFocus();
+        }
+    }
+
+    private void innerResumePlay() {
+        if (mCurrent != null && isCurrentPrepared && !mCurrent.isPlaying()) {
+            mCurrent.start();
+            isPlaying = true;
+            isPausedByFocus = false;
+            obtainFocus();
+        }
+    }
+
+    /**
+     * 临时失去焦点，暂停但保留焦点持有，重新获得焦点后恢复
+     */
+    private void innerFocusPause() {
+        if (mCurrent != null && isCurrentPrepared && mCurrent.isPlaying()) {
+            mCurrent.pause();
+            isPlaying = false;
+            isPausedByFocus = true;
+        }
+    }
+
+    private void innerFocusResume() {
+        if (isPausedByFocus) {
+            innerResumePlay();
+        }
+    }
+
+    private void innerStopPlay() {
+        isPlaying = false;
+        isNotifiedPrepared = false;
+        dropNext();
+        if (mCurrent != null) {
+            MediaPlayer player = mCurrent;
+            mCurrent = null;
+            try {
+                releaseFocus();
+                if (isCurrentPrepared) {
+                    player.stop();
+                }
+            } catch (RuntimeException e) {
+                onMainError(e.getMessage());
+            }
+            recyclePlayer(player);
+        }
+        isCurrentPrepared = false;
+        isNextPrepared = false;
+        mIndex = -1;
+    }
+
+    /**
+     * 回收播放器并解除对数据源的 pin
+     */
+    private void recyclePlayer(MediaPlayer player) {
+        RecordingCatalog.unpin(mPinnedUrls.remove(player));
+        mEngine.recyclePlayer(player);
+    }
+
+    /**
+     * 加入共享的音频焦点
+     */
+    private void obtainFocus() {
+        mEngine.getAudioFocus().request(context, focusChangeCallback);
+    }
+
+    /**
+     * 退出共享的音频焦点
+     */
+    private void releaseFocus() {
+        isPausedByFocus = false;
+        mEngine.getAudioFocus().abandon(focusChangeCallback);
+    }
+
+    private void onMainError(String error) {
+        Message.obtain(mainHandler, MSG_ERROR, error).sendToTarget();
+    }
+
+    private void onMainPrepared() {
+        mainHandler.sendEmptyMessage(MSG_PREPARED);
+    }
+
+    private void onMainComplete() {
+        mainHandler.sendEmptyMessage(MSG_COMPLETE);
+    }
+
+    private void onMainTrackChanged(int index) {
+        Message.obtain(mainHandler, MSG_TRACK_CHANGED, index, 0, mUrls.get(index)).sendToTarget();
+    }
+
+    private Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            AudioPlaylistListener listener = mListener;
+            if (listener == null) return;
+            switch (msg.what) {
+                case MSG_ERROR:
+                    String error = msg.obj != null ? String.valueOf(msg.obj) : "";
+                    listener.onError(error);
+                    break;
+                case MSG_COMPLETE:
+                    listener.onComplete();
+                    break;
+                case MSG_PREPARED:
+                    listener.onPrepared();
+                    break;
+                case MSG_TRACK_CHANGED:
+                    listener.onTrackChanged(msg.arg1, (String) msg.obj);
+                    break;
+            }
+        }
+    };
+
+    /**
+     * 工作线程，MediaPlayer 的 native 调用均在此串行执行
+     */
+    private class WorkHandler extends Handler {
+
+        WorkHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_SET_PLAYLIST:
+                    mUrls.clear();
+                    mUrls.addAll((List<String>) msg.obj);
+                    //列表变化后重新准备下一首
+                    dropNext();
+                    if (mCurrent != null && isCurrentPrepared) {
+                        prepareNext();
+                    }
+                    break;
+                case CMD_ADD:
+                    mUrls.add((String) msg.obj);
+                    if (mCurrent != null && isCurrentPrepared) {
+                        prepareNext();
+                    }
+                    break;
+                case CMD_PLAY:
+                    innerPlay(msg.arg1);
+                    break;
+                case CMD_START_PLAY:
+                    int index = mUrls.indexOf(msg.obj);
+                    if (index < 0) {
+                        mUrls.add((String) msg.obj);
+                        index = mUrls.size() - 1;
+                    }
+                    innerPlay(index);
+                    break;
+                case CMD_PAUSE_PLAY:
+                    innerPausePlay();
+                    break;
+                case CMD_RESUME_PLAY:
+                    innerResumePlay();
+                    break;
+                case CMD_STOP_PLAY:
+                    innerStopPlay();
+                    break;
+                case CMD_FOCUS_PAUSE:
+                    innerFocusPause();
+                    break;
+                case CMD_FOCUS_RESUME:
+                    innerFocusResume();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 系统音频焦点监听
+     */
+    private class AudioFocusChangeCallback implements AudioManager.OnAudioFocusChangeListener {
+
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            switch (focusChange) {
+                case AudioManager.AUDIOFOCUS_LOSS: // 其他App请求焦点，未知时长
+                    onMainComplete();
+                    stopPlay();
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT: // 其他App请求焦点，临时的
+                    workHandler.sendEmptyMessage(CMD_FOCUS_PAUSE);
+                    break;
+                case AudioManager.AUDIOFOCUS_GAIN: // 其他App放弃未知时长焦点
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT: // 其他App放弃临时焦点
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK: // 其他App放弃临时焦点
+                    workHandler.sendEmptyMessage(CMD_FOCUS_RESUME);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.core.audiomanager;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 短音效播放，用于录音开始提示音、发送音等界面音效
+ * 音效注册时由 SoundPool 一次性解码到内存，之后触发只调用 SoundPool.play，不阻塞、不分配对象，多个音效可同时发声
+ * 不申请音频焦点，不打断 {@link AudioHelper} 和 {@link PlaySession} 的播放
+ * Created by wangzhen on 2019/5/31.
+ */
+public class EffectPlayer {
+
+    //可注册的音效数，音效 id 取 0 到 MAX_EFFECTS-1
+    public static final int MAX_EFFECTS = 32;
+    //默认同时发声数
+    private static final int DEFAULT_MAX_STREAMS = 4;
+
+    private static volatile EffectPlayer mInstance;
+    private final Context context;
+    private volatile SoundPool mSoundPool;
+    private int mMaxStreams = DEFAULT_MAX_STREAMS;
+    //音效 id 对应的 sound id，0 表示未注册
+    private final int[] mSoundIds = new int[MAX_EFFECTS];
+    //已载入完成的 sound id，0 表示未就绪，触发时只读这里
+    private final AtomicIntegerArray mReady = new AtomicIntegerArray(MAX_EFFECTS);
+    private volatile float mVolume = 1f;
+    private volatile int mMissedCount;
+
+    public static EffectPlayer create(Context context) {
+        if (mInstance == null) {
+            synchronized (EffectPlayer.class) {
+                if (mInstance == null) {
+                    mInstance = new EffectPlayer(context);
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private EffectPlayer(Context ctx) {
+        if (ctx == null)
+            throw new NullPointerException("Context不能为null");
+        context = ctx.getApplicationContext();
+    }
+
+    /**
+     * 设置同时发声数，超出时停止最早的音效，需在第一次注册前调用
+     *
+     * @param maxStreams 发声数
+     */
+    public synchronized void setMaxStreams(int maxStreams) {
+        mMaxStreams = maxStreams;
+    }
+
+    /**
+     * 设置所有音效的音量
+     *
+     * @param volume 0-1
+     */
+    public void setVolume(float volume) {
+        mVolume = volume;
+    }
+
+    /**
+     * 注册本地文件音效，已注册的 id 会被替换
+     *
+     * @param effect 音效 id
+     * @param path   文件路径
+     */
+    public synchronized void register(int effect, String path) {
+        checkEffect(effect);
+        replace(effect, getSoundPool().load(path, 1));
+    }
+
+    /**
+     * 注册 raw 资源音效
+     *
+     * @param effect 音效 id
+     * @param resId  R.raw.xxx
+     */
+    public synchronized void register(int effect, int resId) {
+        checkEffect(effect);
+        replace(effect, getSoundPool().load(context, resId, 1));
+    }
+
+    /**
+     * 注册 assets 音效，文件在 apk 中不能被压缩
+     *
+     * @param effect    音效 id
+     * @param assetName assets 中的文件名
+     */
+    public synchronized void registerAsset(int effect, String assetName) throws IOException {
+        checkEffect(effect);
+        AssetFileDescriptor afd = context.getAssets().openFd(assetName);
+        try {
+            replace(effect, getSoundPool().load(afd, 1));
+        } finally {
+            afd.close();
+        }
+    }
+
+    /**
+     * 注销音效并释放内存
+     *
+     * @param effect 音效 id
+     */
+    public synchronized void unregister(int effect) {
+        checkEffect(effect);
+        replace(effect, 0);
+    }
+
+    /**
+     * 音效是否已载入完成
+     *
+     * @param effect 音效 id
+     * @return 未注册或正在载入返回false
+     */
+    public boolean isLoaded(int effect) {
+        return effect >= 0 && effect < MAX_EFFECTS && mReady.get(effect) != 0;
+    }
+
+    /**
+     * 播放音效，可在任意线程调用
+     *
+     * @param effect 音效 id
+     * @return stream id，音效未就绪时返回0
+     */
+    public int play(int effect) {
+        return play(effect, 1f);
+    }
+
+    /**
+     * 播放音效，可在任意线程调用
+     *
+     * @param effect 音效 id
+     * @param volume 相对音量 0-1
+     * @return stream id，音效未就绪时返回0
+     */
+    public int play(int effect, float volume) {
+        int soundId = effect >= 0 && effect < MAX_EFFECTS ? mReady.get(effect) : 0;
+        SoundPool pool = mSoundPool;
+        if (soundId == 0 || pool == null) {
+            mMissedCount++;
+            return 0;
+        }
+        float v = volume * mVolume;
+        return pool.play(soundId, v, v, 1, 0, 1f);
+    }
+
+    /**
+     * 停止正在播放的音效
+     *
+     * @param streamId {@link #play(int)} 的返回值
+     */
+    public void stop(int streamId) {
+        SoundPool pool = mSoundPool;
+        if (pool != null && streamId != 0) {
+            pool.stop(streamId);
+        }
+    }
+
+    /**
+     * 因音效未载入完成而没有播放的次数
+     */
+    public int getMissedCount() {
+        return mMissedCount;
+    }
+
+    /**
+     * 释放所有音效，之后注册时重新创建
+     */
+    public synchronized void release() {
+        for (int i = 0; i < MAX_EFFECTS; i++) {
+            mSoundIds[i] = 0;
+            mReady.set(i, 0);
+        }
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+        }
+    }
+
+    private static void checkEffect(int effect) {
+        if (effect < 0 || effect >= MAX_EFFECTS) {
+            throw new IllegalArgumentException("effect must be in [0, " + MAX_EFFECTS + ")");
+        }
+    }
+
+    private void replace(int effect, int soundId) {
+        int old = mSoundIds[effect];
+        mReady.set(effect, 0);
+        mSoundIds[effect] = soundId;
+        if (old != 0 && mSoundPool != null) {
+            mSoundPool.unload(old);
+        }
+    }
+
+    private SoundPool getSoundPool() {
+        if (mSoundPool == null) {
+            SoundPool pool;
+            if (Build.VERSION.SDK_INT >= 21) {
+                pool = new SoundPool.Builder()
+                        .setMaxStreams(mMaxStreams)
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .setFlags(AudioAttributes.FLAG_LOW_LATENCY)
+                                .build())
+                        .build();
+            } else {
+                pool = new SoundPool(mMaxStreams, AudioManager.STREAM_MUSIC, 0);
+            }
+            pool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+                @Override
+                public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                    onLoaded(soundPool, sampleId, status);
+                }
+            });
+            mSoundPool = pool;
+        }
+        return mSoundPool;
+    }
+
+    /**
+     * 载入完成后标记为可播放，载入期间已被替换的忽略
+     */
+    private synchronized void onLoaded(SoundPool pool, int soundId, int status) {
+        if (pool != mSoundPool || status != 0) return;
+        for (int i = 0; i < MAX_EFFECTS; i++) {
+            if (mSoundIds[i] == soundId) {
+                mReady.set(i, soundId);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.core.audiomanager;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * MediaPlayer 复用池
+ * 停止播放后 reset 回收而不是 release，空闲超时后再释放 native 资源
+ * MediaPlayer 的回调投递到创建它的线程的 Looper，因此 acquire/prewarm 需在播放线程中调用
+ * Created by wangzhen on 2019/3/20.
+ */
+public class MediaPlayerPool {
+
+    //默认最大空闲数
+    private static final int DEFAULT_MAX_IDLE = 2;
+    //默认空闲超时 30s
+    private static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000;
+
+    private final ArrayDeque<IdlePlayer> mIdle = new ArrayDeque<>();
+    private final Handler mHandler;
+    private final Runnable mReaper = new Runnable() {
+        @Override
+        public void run() {
+            reap();
+        }
+    };
+    private final Runnable mTrimmer = new Runnable() {
+        @Override
+        public void run() {
+            trim();
+        }
+    };
+    private final Runnable mClearer = new Runnable() {
+        @Override
+        public void run() {
+            releaseAll();
+        }
+    };
+    private int mMaxIdle = DEFAULT_MAX_IDLE;
+    private long mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mCreateCount;
+    private long mReleaseCount;
+
+    /**
+     * @param looper 播放线程的 Looper，用于空闲回收
+     */
+    public MediaPlayerPool(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * 设置最大空闲数
+     *
+     * @param maxIdle 最大空闲数
+     */
+    public synchronized void setMaxIdle(int maxIdle) {
+        mMaxIdle = maxIdle;
+        //release 可能耗时，在播放线程中执行
+        mHandler.post(mTrimmer);
+    }
+
+    /**
+     * 设置空闲超时时间
+     *
+     * @param idleTimeout ms
+     */
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        mIdleTimeout = idleTimeout;
+        scheduleReap();
+    }
+
+    /**
+     * 获取一个可用的 MediaPlayer，处于 Idle 状态
+     *
+     * @return 创建失败返回null
+     */
+    public synchronized MediaPlayer acquire() {
+        IdlePlayer idle = mIdle.pollLast();
+        if (idle != null) {
+            mHitCount++;
+            return idle.player;
+        }
+        mMissCount++;
+        return create();
+    }
+
+    /**
+     * 回收 MediaPlayer，超过最大空闲数时直接释放
+     *
+     * @param player player
+     */
+    public synchronized void recycle(MediaPlayer player) {
+        if (player == null) return;
+        try {
+            player.reset();
+        } catch (RuntimeException e) {
+            release(player);
+            return;
+        }
+        player.setOnCompletionListener(null);
+        player.setOnErrorListener(null);
+        player.setOnPreparedListener(null);
+        player.setOnSeekCompleteListener(null);
+        if (mIdle.size() >= mMaxIdle) {
+            release(player);
+            return;
+        }
+        mIdle.offerLast(new IdlePlayer(player, SystemClock.uptimeMillis()));
+        scheduleReap();
+    }
+
+    /**
+     * 预热，提前创建 MediaPlayer
+     *
+     * @param count 数量，不超过最大空闲数
+     */
+    public synchronized void prewarm(int count) {
+        while (mIdle.size() < Math.min(count, mMaxIdle)) {
+            MediaPlayer player = create();
+            if (player == null) break;
+            mIdle.offerLast(new IdlePlayer(player, SystemClock.uptimeMillis()));
+        }
+        scheduleReap();
+    }
+
+    /**
+     * 释放全部空闲 MediaPlayer，在播放线程中执行
+     */
+    public synchronized void clear() {
+        mHandler.removeCallbacks(mReaper);
+        mHandler.post(mClearer);
+    }
+
+    private synchronized void trim() {
+        while (mIdle.size() > mMaxIdle) {
+            release(mIdle.pollFirst().player);
+        }
+    }
+
+    private synchronized void releaseAll() {
+        while (!mIdle.isEmpty()) {
+            release(mIdle.pollFirst().player);
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdle.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 0-1
+     */
+    public synchronized float getHitRate() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (float) mHitCount / total;
+    }
+
+    public synchronized long getCreateCount() {
+        return mCreateCount;
+    }
+
+    public synchronized long getReleaseCount() {
+        return mReleaseCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MediaPlayerPool{idle=" + mIdle.size()
+                + ", hit=" + mHitCount
+                + ", miss=" + mMissCount
+                + ", create=" + mCreateCount
+                + ", release=" + mReleaseCount + "}";
+    }
+
+    private MediaPlayer create() {
+        try {
+            MediaPlayer player = new MediaPlayer();
+            mCreateCount++;
+            return player;
+        } catch (Exception e) {
+            //高通平台直接new MediaPlayer()可能会报错
+            return null;
+        }
+    }
+
+    private void release(MediaPlayer player) {
+        try {
+            player.release();
+        } catch (RuntimeException ignored) {
+        }
+        mReleaseCount++;
+    }
+
+    private synchronized void reap() {
+        long now = SystemClock.uptimeMillis();
+        Iterator<IdlePlayer> it = mIdle.iterator();
+        while (it.hasNext()) {
+            IdlePlayer idle = it.next();
+            if (now - idle.idleSince >= mIdleTimeout) {
+                release(idle.player);
+                it.remove();
+            }
+        }
+        scheduleReap();
+    }
+
+    private void scheduleReap() {
+        mHandler.removeCallbacks(mReaper);
+        IdlePlayer oldest = mIdle.peekFirst();
+        if (oldest != null) {
+            long delay = oldest.idleSince + mIdleTimeout - SystemClock.uptimeMillis();
+            mHandler.postDelayed(mReaper, Math.max(0, delay));
+        }
+    }
+
+    private static class IdlePlayer {
+        final MediaPlayer player;
+        final long idleSince;
+
+        IdlePlayer(MediaPlayer player, long idleSince) {
+            this.player = player;
+            this.idleSince = idleSince;
+        }
+    }
+}
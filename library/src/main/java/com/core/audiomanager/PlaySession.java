@@ -0,0 +1,751 @@
+package com.core.audiomanager;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.text.TextUtils;
+
+import com.core.audiomanager.cache.AudioCache;
+import com.core.audiomanager.catalog.RecordingCatalog;
+import com.core.audiomanager.callback.AudioCallback;
+import com.core.audiomanager.callback.AudioPlayStateListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 独立的播放会话，每个会话拥有各自的监听和播放状态，可同时准备/播放多个音频
+ * 所有会话共享 {@link AudioEngine} 的工作线程和 MediaPlayer，超出上限时回收最久未使用的空闲会话
+ * Created by wangzhen on 2019/3/25.
+ */
+public class PlaySession implements AudioCallback.PlayerCallback, AudioEngine.PlayerHolder {
+
+    private static final int MSG_ERROR = 0x1;
+    private static final int MSG_COMPLETE = 0x2;
+    private static final int MSG_PREPARED = 0x3;
+    private static final int MSG_UPDATE_TIME = 0x4;
+    //区间播放提前唤醒时间(ms)，唤醒后再精确等待到区间终点
+    private static final long RANGE_WAKE_AHEAD = 20;
+    //区间终点容差(ms)
+    private static final long RANGE_TOLERANCE = 2;
+    //默认试听片段时长(ms)
+    private static final long DEFAULT_PREVIEW_SNIPPET = 300;
+
+    //工作线程指令
+    private static final int CMD_START_PLAY = 0x10;
+    private static final int CMD_PAUSE_PLAY = 0x11;
+    private static final int CMD_RESUME_PLAY = 0x12;
+    private static final int CMD_STOP_PLAY = 0x13;
+    private static final int CMD_RANGE_PLAY = 0x14;
+    private static final int CMD_PREPARE = 0x15;
+    private static final int CMD_PREVIEW_SEEK = 0x16;
+    private static final int CMD_PREVIEW_END = 0x17;
+    private static final int CMD_FOCUS_PAUSE = 0x18;
+    private static final int CMD_FOCUS_RESUME = 0x19;
+
+    //播放状态
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_PREPARING = 1;
+    private static final int STATE_PREPARED = 2;
+    private static final int STATE_STARTED = 3;
+    private static final int STATE_PAUSED = 4;
+
+    private final Context context;
+    private final AudioEngine mEngine;
+    private final Handler workHandler;
+    private volatile MediaPlayer mMediaPlayer;
+    private volatile AudioPlayStateListener mPlayStateListener;
+    private volatile int mState = STATE_IDLE;
+    //准备完毕后是否直接播放
+    private boolean isPlayWhenPrepared;
+    //音频播放位置
+    private int mCurrPlayPosition;
+    //音频url
+    private volatile String mAudioUrl;
+    //MediaPlayer 当前数据源对应的url
+    private String mDataSourceUrl;
+    //是否循环播放
+    private volatile boolean isLooping;
+    //是否缓存远程音频
+    private volatile boolean isCacheEnabled;
+    private final AudioFocusChangeCallback focusChangeCallback = new AudioFocusChangeCallback();
+    //是否因临时失去焦点而暂停，重新获得焦点后自动恢复
+    private boolean isPausedByFocus;
+    //开始区间时间
+    private long mRangeStartTime;
+    //结束区间时间
+    private long mRangeEndTime;
+    //区间播放是否正在等待 seek 完成
+    private boolean isRangeSeeking;
+    //最新的试听位置，-1 表示没有待执行的 seek
+    private final AtomicLong mPreviewTarget = new AtomicLong(-1);
+    //试听 seek 是否正在执行，同一时间只有一个
+    private boolean isPreviewSeeking;
+    //是否处于一轮试听中，从第一次试听 seek 到片段结束
+    private boolean isPreviewing;
+    //试听开始前是否在播放，试听结束后据此继续播放或暂停
+    private boolean isPlayingBeforePreview;
+    private volatile long mPreviewSnippet = DEFAULT_PREVIEW_SNIPPET;
+    private volatile long mPreviewIssued;
+    private final AtomicLong mPreviewDropped = new AtomicLong();
+
+    public PlaySession(Context ctx) {
+        if (ctx == null)
+            throw new NullPointerException("Context不能为null");
+        context = ctx.getApplicationContext();
+        mEngine = AudioEngine.get();
+        workHandler = new WorkHandler(mEngine.getLooper());
+    }
+
+    /**
+     * 获取当前播放对象，用于获取当前播放进度和总时长等信息
+     *
+     * @return 未持有时返回null
+     */
+    public MediaPlayer getPlayer() {
+        return mMediaPlayer;
+    }
+
+    /**
+     * 预先准备音频但不播放，之后 startPlay 同一 url 可立即开始
+     *
+     * @param audioUrl 音频url
+     */
+    public void prepare(String audioUrl) {
+        mAudioUrl = audioUrl;
+        Message.obtain(workHandler, CMD_PREPARE, audioUrl).sendToTarget();
+    }
+
+    @Override
+    public void startPlay(String audioUrl) {
+        mAudioUrl = audioUrl;
+        Message.obtain(workHandler, CMD_START_PLAY, audioUrl).sendToTarget();
+    }
+
+    @Override
+    public void pausePlay() {
+        workHandler.sendEmptyMessage(CMD_PAUSE_PLAY);
+    }
+
+    @Override
+    public void resumePlay() {
+        workHandler.sendEmptyMessage(CMD_RESUME_PLAY);
+    }
+
+    @Override
+    public void stopPlay() {
+        workHandler.sendEmptyMessage(CMD_STOP_PLAY);
+    }
+
+    /**
+     * 指定区间并播放
+     *
+     * @param leftTime  start
+     * @param rightTime end
+     */
+    public void rangePlay(long leftTime, long rightTime) {
+        Message.obtain(workHandler, CMD_RANGE_PLAY, new long[]{leftTime, rightTime}).sendToTarget();
+    }
+
+    /**
+     * 拖动时试听指定位置，seek 完成后播放一小段再暂停
+     * 同一时间只有一个 seek 在执行，执行期间的请求只保留最新的位置，被覆盖的直接丢弃
+     * 需已调用 prepare 或 startPlay
+     *
+     * @param position 位置 ms
+     */
+    public void previewSeek(long position) {
+        if (mPreviewTarget.getAndSet(Math.max(0, position)) >= 0) {
+            mPreviewDropped.incrementAndGet();
+        }
+        if (!workHandler.hasMessages(CMD_PREVIEW_SEEK)) {
+            workHandler.sendEmptyMessage(CMD_PREVIEW_SEEK);
+        }
+    }
+
+    /**
+     * 设置试听片段时长
+     *
+     * @param snippet ms，0 表示 seek 后不播放
+     */
+    public void setPreviewSnippet(long snippet) {
+        mPreviewSnippet = snippet;
+    }
+
+    /**
+     * 实际执行的试听 seek 次数
+     */
+    public long getPreviewSeekCount() {
+        return mPreviewIssued;
+    }
+
+    /**
+     * 被新位置覆盖而丢弃的试听请求数
+     */
+    public long getPreviewDroppedCount() {
+        return mPreviewDropped.get();
+    }
+
+    /**
+     * 停止播放并释放监听
+     */
+    public void release() {
+        stopPlay();
+        mPlayStateListener = null;
+    }
+
+    /**
+     * 音频是否正在播放
+     *
+     * @return 播放状态
+     */
+    public boolean isAudioPlaying() {
+        return mState == STATE_STARTED;
+    }
+
+    /**
+     * 获取当前播放的音频url
+     *
+     * @return 音频url
+     */
+    public String getAudioUrl() {
+        return mAudioUrl;
+    }
+
+    /**
+     * 设置循环模式
+     *
+     * @param looping true / false
+     */
+    public void setLooping(boolean looping) {
+        isLooping = looping;
+    }
+
+    /**
+     * 设置是否缓存远程音频，开启后 http 音频经本地代理边下边播并缓存到磁盘
+     *
+     * @param enabled true / false
+     */
+    public void setCacheEnabled(boolean enabled) {
+        isCacheEnabled = enabled;
+    }
+
+    public void setPlayStateListener(AudioPlayStateListener listener) {
+        this.mPlayStateListener = listener;
+    }
+
+    @Override
+    public boolean isPlayerBusy(MediaPlayer player) {
+        return mState == STATE_STARTED || isPausedByFocus || (mState == STATE_PREPARING && isPlayWhenPrepared);
+    }
+
+    /**
+     * 被引擎回收 MediaPlayer，下次播放时重新准备
+     */
+    @Override
+    public void onPlayerEvicted(MediaPlayer player) {
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        workHandler.removeMessages(CMD_PREVIEW_END);
+        isRangeSeeking = false;
+        isPreviewSeeking = false;
+        isPreviewing = false;
+        mState = STATE_IDLE;
+        setDataSourceUrl(null);
+        mMediaPlayer = null;
+        releaseFocus();
+    }
+
+    /**
+     * 工作线程准备音频
+     *
+     * @param play 准备完毕后是否播放
+     */
+    private void innerPrepare(boolean play) {
+        if (TextUtils.isEmpty(mAudioUrl)) {
+            onMainError("invalid music url");
+            return;
+        }
+        if (mMediaPlayer == null) {
+            mMediaPlayer = mEngine.obtainPlayer(this);
+        } else {
+            workHandler.removeMessages(MSG_UPDATE_TIME);
+            mMediaPlayer.reset();
+            mEngine.touch(mMediaPlayer);
+        }
+        if (mMediaPlayer == null) {
+            onMainError("MediaPlayer inner create failed.");
+            return;
+        }
+        setDataSourceUrl(mAudioUrl);
+        mCurrPlayPosition = 0;
+        mRangeStartTime = 0;
+        mRangeEndTime = 0;
+        isRangeSeeking = false;
+        isPreviewSeeking = false;
+        isPreviewing = false;
+        isPlayWhenPrepared = play;
+
+        try {
+            mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            if (isCacheEnabled) {
+                mMediaPlayer.setDataSource(AudioCache.get(context).getPlayUrl(mAudioUrl));
+            } else {
+                mMediaPlayer.setDataSource(mAudioUrl);
+            }
+            mMediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                @Override
+                public void onCompletion(MediaPlayer mp) {
+                    if (mMediaPlayer != null) {
+                        if (mRangeEndTime > 0 && mRangeEndTime > mRangeStartTime) {
+                            innerRangePlay(mRangeStartTime, mRangeEndTime);
+                        } else {
+                            onMainComplete();
+                            innerStopPlay();
+                        }
+                    }
+                }
+            });
+            mMediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                @Override
+                public boolean onError(MediaPlayer mp, int what, int extra) {
+                    onMainError("播放失败");
+                    return true;
+                }
+            });
+            mMediaPlayer.setOnSeekCompleteListener(new MediaPlayer.OnSeekCompleteListener() {
+                @Override
+                public void onSeekComplete(MediaPlayer mp) {
+                    if (mMediaPlayer != null && isPreviewSeeking) {
+                        isPreviewSeeking = false;
+                        onPreviewSeekComplete();
+                    } else if (mMediaPlayer != null && isRangeSeeking) {
+                        isRangeSeeking = false;
+                        innerStart();
+                        scheduleRangeCheck();
+                    }
+                }
+            });
+            mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(MediaPlayer mp) {
+                    if (mMediaPlayer != null) {
+                        mState = STATE_PREPARED;
+                        onMainPrepared();
+                        if (isPlayWhenPrepared) {
+                            innerStart();
+                        }
+                        //准备期间收到的试听请求
+                        innerPreviewSeek();
+                    } else {
+                        onMainError("播放失败");
+                    }
+                }
+            });
+            mMediaPlayer.setLooping(isLooping);
+            mState = STATE_PREPARING;
+            mMediaPlayer.prepareAsync();
+        } catch (Exception e) {
+            mState = STATE_IDLE;
+            setDataSourceUrl(null);
+            onMainError(e.getMessage());
+        }
+    }
+
+    /**
+     * 工作线程播放，已准备好同一 url 时直接开始
+     */
+    private void innerStartPlay(String url) {
+        boolean sameUrl = TextUtils.equals(url, mDataSourceUrl) && mMediaPlayer != null;
+        mAudioUrl = url;
+        RecordingCatalog.notePlayed(url);
+        if (sameUrl && mState == STATE_PREPARED) {
+            innerStart();
+        } else if (sameUrl && mState == STATE_PREPARING) {
+            isPlayWhenPrepared = true;
+            mEngine.touch(mMediaPlayer);
+        } else {
+            innerPrepare(true);
+        }
+    }
+
+    /**
+     * 更新当前数据源，持有期间文件不会被录音目录配额清理
+     *
+     * @param url 数据源url
+     */
+    private void setDataSourceUrl(String url) {
+        if (TextUtils.equals(url, mDataSourceUrl)) return;
+        RecordingCatalog.unpin(mDataSourceUrl);
+        mDataSourceUrl = url;
+        RecordingCatalog.pin(url);
+    }
+
+    private void innerStart() {
+        mMediaPlayer.start();
+        mState = STATE_STARTED;
+        isPausedByFocus = false;
+        obtainFocus();
+        mEngine.touch(mMediaPlayer);
+    }
+
+    private void innerPausePlay() {
+        if (mMediaPlayer != null) {
+            if (mState == STATE_STARTED && mMediaPlayer.isPlaying()) {
+                workHandler.removeMessages(MSG_UPDATE_TIME);
+                mMediaPlayer.pause();
+                mState = STATE_PAUSED;
+                mCurrPlayPosition = mMediaPlayer.getCurrentPosition();
+                releaseFocus();
+            } else if (isPausedByFocus) {
+                //失去焦点期间主动暂停，重新获得焦点后不再恢复
+                releaseFocus();
+            }
+        }
+    }
+
+    /**
+     * 临时失去焦点，暂停但保留焦点持有，重新获得焦点后恢复
+     */
+    private void innerFocusPause() {
+        if (mMediaPlayer == null || mState != STATE_STARTED) return;
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        workHandler.removeMessages(CMD_PREVIEW_END);
+        isRangeSeeking = false;
+        isPreviewing = false;
+        try {
+            if (mMediaPlayer.isPlaying()) {
+                mMediaPlayer.pause();
+            }
+            mCurrPlayPosition = mMediaPlayer.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            onMainError(e.getMessage());
+        }
+        mState = STATE_PAUSED;
+        isPausedByFocus = true;
+    }
+
+    private void innerFocusResume() {
+        if (isPausedByFocus && mState == STATE_PAUSED) {
+            innerResumePlay();
+        }
+    }
+
+    private void innerResumePlay() {
+        if (mMediaPlayer != null && mState == STATE_PAUSED) {
+            mMediaPlayer.seekTo(mCurrPlayPosition);
+            innerStart();
+            scheduleRangeCheck();
+        }
+    }
+
+    private void innerStopPlay() {
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        workHandler.removeMessages(CMD_PREVIEW_END);
+        mPreviewTarget.set(-1);
+        isPreviewSeeking = false;
+        isPreviewing = false;
+        mRangeStartTime = 0;
+        mRangeEndTime = 0;
+        isRangeSeeking = false;
+        isPlayWhenPrepared = false;
+        mState = STATE_IDLE;
+        setDataSourceUrl(null);
+        if (mMediaPlayer != null) {
+            MediaPlayer player = mMediaPlayer;
+            mMediaPlayer = null;
+            try {
+                releaseFocus();
+                player.stop();
+            } catch (RuntimeException e) {
+                onMainError(e.getMessage());
+            }
+            mEngine.recyclePlayer(player);
+        }
+    }
+
+    private void innerRangePlay(long leftTime, long rightTime) {
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        workHandler.removeMessages(CMD_PREVIEW_END);
+        mPreviewTarget.set(-1);
+        isPreviewSeeking = false;
+        isPreviewing = false;
+        mRangeStartTime = leftTime;
+        mRangeEndTime = rightTime;
+        if (mMediaPlayer != null) {
+            if (mRangeStartTime < 0) {
+                mRangeStartTime = 0;
+            }
+            try {
+                if (mRangeEndTime > mMediaPlayer.getDuration()) {
+                    mRangeEndTime = mMediaPlayer.getDuration();
+                }
+                //先暂停在区间终点，seek 完成后再从起点播放，避免越过右边界
+                if (mMediaPlayer.isPlaying()) {
+                    mMediaPlayer.pause();
+                }
+                isRangeSeeking = true;
+                if (Build.VERSION.SDK_INT < 26) {
+                    mMediaPlayer.seekTo((int) mRangeStartTime);
+                } else {
+                    mMediaPlayer.seekTo(mRangeStartTime, MediaPlayer.SEEK_CLOSEST);
+                }
+            } catch (IllegalStateException e) {
+                isRangeSeeking = false;
+                onMainError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 工作线程执行试听 seek，已有 seek 在执行时等其完成后再取最新位置
+     */
+    private void innerPreviewSeek() {
+        if (mMediaPlayer == null || isPreviewSeeking
+                || (mState != STATE_PREPARED && mState != STATE_STARTED && mState != STATE_PAUSED)) {
+            return;
+        }
+        long target = mPreviewTarget.getAndSet(-1);
+        if (target < 0) return;
+        if (!isPreviewing) {
+            //区间播放正在 seek 时也视为播放中
+            isPreviewing = true;
+            isPlayingBeforePreview = mState == STATE_STARTED;
+        }
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        workHandler.removeMessages(CMD_PREVIEW_END);
+        isRangeSeeking = false;
+        try {
+            isPreviewSeeking = true;
+            mPreviewIssued++;
+            if (Build.VERSION.SDK_INT < 26) {
+                mMediaPlayer.seekTo((int) target);
+            } else {
+                mMediaPlayer.seekTo(target, MediaPlayer.SEEK_CLOSEST);
+            }
+        } catch (IllegalStateException e) {
+            isPreviewSeeking = false;
+            onMainError(e.getMessage());
+        }
+    }
+
+    /**
+     * 试听 seek 完成，有更新的位置时继续 seek
+     * 试听前在播放时从新位置继续播放并恢复区间循环，否则播放片段后暂停
+     */
+    private void onPreviewSeekComplete() {
+        if (isPausedByFocus) {
+            isPreviewing = false;
+            return;
+        }
+        if (mPreviewTarget.get() >= 0) {
+            innerPreviewSeek();
+            return;
+        }
+        if (isPlayingBeforePreview) {
+            isPreviewing = false;
+            if (mState != STATE_STARTED || !mMediaPlayer.isPlaying()) {
+                innerStart();
+            }
+            scheduleRangeCheck();
+            return;
+        }
+        long snippet = mPreviewSnippet;
+        if (snippet <= 0) {
+            isPreviewing = false;
+            return;
+        }
+        if (mState != STATE_STARTED) {
+            innerStart();
+        }
+        scheduleRangeCheck();
+        workHandler.sendEmptyMessageDelayed(CMD_PREVIEW_END, snippet);
+    }
+
+    /**
+     * 试听片段结束，恢复试听前的暂停状态
+     */
+    private void innerPreviewEnd() {
+        isPreviewing = false;
+        if (isPlayingBeforePreview) {
+            scheduleRangeCheck();
+        } else {
+            innerPausePlay();
+        }
+    }
+
+    /**
+     * 按剩余时长安排下一次区间检查：距终点较远时只唤醒一次，临近终点时再精确等待
+     */
+    private void scheduleRangeCheck() {
+        workHandler.removeMessages(MSG_UPDATE_TIME);
+        if (mMediaPlayer == null || mRangeEndTime <= 0 || isRangeSeeking || !mMediaPlayer.isPlaying()) {
+            return;
+        }
+        long remaining = mRangeEndTime - mMediaPlayer.getCurrentPosition();
+        if (remaining <= RANGE_TOLERANCE) {
+            innerRangePlay(mRangeStartTime, mRangeEndTime);
+        } else if (remaining > RANGE_WAKE_AHEAD) {
+            workHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, remaining - RANGE_WAKE_AHEAD);
+        } else {
+            workHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, remaining - RANGE_TOLERANCE);
+        }
+    }
+
+    /**
+     * 加入共享的音频焦点
+     */
+    private void obtainFocus() {
+        mEngine.getAudioFocus().request(context, focusChangeCallback);
+    }
+
+    /**
+     * 退出共享的音频焦点
+     */
+    private void releaseFocus() {
+        isPausedByFocus = false;
+        mEngine.getAudioFocus().abandon(focusChangeCallback);
+    }
+
+    /**
+     * 处理焦点变化，可在任意线程调用
+     *
+     * @param focusChange AudioManager.AUDIOFOCUS_*
+     */
+    void handleFocusChange(int focusChange) {
+        focusChangeCallback.onAudioFocusChange(focusChange);
+    }
+
+    /**
+     * 主线程错误回调
+     *
+     * @param error error
+     */
+    private void onMainError(String error) {
+        Message message = Message.obtain();
+        message.what = MSG_ERROR;
+        message.obj = error;
+        mainHandler.sendMessage(message);
+    }
+
+    /**
+     * 准备完毕主线程回调
+     */
+    private void onMainPrepared() {
+        Message message = Message.obtain();
+        message.what = MSG_PREPARED;
+        mainHandler.sendMessage(message);
+    }
+
+    /**
+     * 播放完毕主线程回调
+     */
+    private void onMainComplete() {
+        Message message = Message.obtain();
+        message.what = MSG_COMPLETE;
+        mainHandler.sendMessage(message);
+    }
+
+    private Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            AudioPlayStateListener listener = mPlayStateListener;
+            if (listener == null) return;
+            switch (msg.what) {
+                case MSG_ERROR:
+                    String error = msg.obj != null ? String.valueOf(msg.obj) : "";
+                    listener.onError(error);
+                    break;
+                case MSG_COMPLETE:
+                    listener.onComplete();
+                    break;
+                case MSG_PREPARED:
+                    listener.onPrepared();
+                    break;
+            }
+        }
+    };
+
+    /**
+     * 工作线程，MediaPlayer 的 native 调用均在此串行执行
+     */
+    private class WorkHandler extends Handler {
+
+        WorkHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_PREPARE:
+                    mAudioUrl = (String) msg.obj;
+                    innerPrepare(false);
+                    break;
+                case CMD_START_PLAY:
+                    innerStartPlay((String) msg.obj);
+                    break;
+                case CMD_PAUSE_PLAY:
+                    //试听中主动暂停，试听结束后保持暂停
+                    isPlayingBeforePreview = false;
+                    innerPausePlay();
+                    break;
+                case CMD_RESUME_PLAY:
+                    isPlayingBeforePreview = true;
+                    innerResumePlay();
+                    break;
+                case CMD_STOP_PLAY:
+                    innerStopPlay();
+                    break;
+                case CMD_RANGE_PLAY:
+                    long[] range = (long[]) msg.obj;
+                    innerRangePlay(range[0], range[1]);
+                    break;
+                case MSG_UPDATE_TIME:
+                    scheduleRangeCheck();
+                    break;
+                case CMD_PREVIEW_SEEK:
+                    innerPreviewSeek();
+                    break;
+                case CMD_PREVIEW_END:
+                    innerPreviewEnd();
+                    break;
+                case CMD_FOCUS_PAUSE:
+                    innerFocusPause();
+                    break;
+                case CMD_FOCUS_RESUME:
+                    innerFocusResume();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 系统音频焦点监听
+     */
+    private class AudioFocusChangeCallback implements AudioManager.OnAudioFocusChangeListener {
+
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            switch (focusChange) {
+                // 音频焦点
+                case AudioManager.AUDIOFOCUS_LOSS: // 其他App请求焦点，未知时长
+                    onMainComplete();
+                    stopPlay();
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT: // 其他App请求焦点，临时的
+                    workHandler.sendEmptyMessage(CMD_FOCUS_PAUSE);
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK: // 其他App请求焦点，临时的，可降低音量不用停止
+                    break;
+                case AudioManager.AUDIOFOCUS_GAIN: // 其他App放弃未知时长焦点
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT: // 其他App放弃临时焦点
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK: // 其他App放弃临时焦点
+                    workHandler.sendEmptyMessage(CMD_FOCUS_RESUME);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.core.audiomanager.cache;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 远程音频缓存入口
+ * 重复播放已缓存的音频不产生网络请求
+ * Created by wangzhen on 2019/3/12.
+ */
+public class AudioCache {
+
+    private static final String TAG = "AudioCache";
+    private static final String DIR_NAME = "audio-cache";
+    //默认缓存上限 100M
+    private static final long DEFAULT_MAX_BYTES = 100 * 1024 * 1024;
+
+    private static volatile AudioCache mInstance;
+    private final DiskLruStore mStore;
+    private final AudioProxyServer mProxyServer;
+
+    public static AudioCache get(Context context) {
+        if (mInstance == null) {
+            synchronized (AudioCache.class) {
+                if (mInstance == null) {
+                    File dir = new File(context.getApplicationContext().getCacheDir(), DIR_NAME);
+                    mInstance = new AudioCache(dir, DEFAULT_MAX_BYTES);
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    public AudioCache(File dir, long maxBytes) {
+        mStore = new DiskLruStore(dir, maxBytes);
+        mProxyServer = new AudioProxyServer(mStore);
+    }
+
+    /**
+     * 获取用于 MediaPlayer 的播放地址，非 http 地址或代理启动失败时原样返回
+     *
+     * @param url 源地址
+     * @return 代理地址
+     */
+    public String getPlayUrl(String url) {
+        if (!isRemote(url)) return url;
+        try {
+            mProxyServer.start();
+        } catch (IOException e) {
+            Log.w(TAG, "proxy start failed", e);
+            return url;
+        }
+        return mProxyServer.getProxyUrl(url);
+    }
+
+    /**
+     * 是否已完整缓存
+     *
+     * @param url 源地址
+     * @return true / false
+     */
+    public boolean isCached(String url) {
+        return !TextUtils.isEmpty(url) && mStore.get(DiskLruStore.keyOf(url)) != null;
+    }
+
+    /**
+     * 设置缓存上限
+     *
+     * @param maxBytes 字节数
+     */
+    public void setMaxBytes(long maxBytes) {
+        mStore.setMaxBytes(maxBytes);
+    }
+
+    public long size() {
+        return mStore.size();
+    }
+
+    public void clear() {
+        mStore.clear();
+    }
+
+    public void shutdown() {
+        mProxyServer.shutdown();
+    }
+
+    static boolean isRemote(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+}
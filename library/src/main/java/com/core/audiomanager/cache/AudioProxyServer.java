@@ -0,0 +1,393 @@
+package com.core.audiomanager.cache;
+
+import android.util.Log;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地回环 HTTP 代理
+ * MediaPlayer 请求 http://127.0.0.1:port/?url=xxx，已缓存的数据直接从磁盘返回，其余部分边下边播
+ * Created by wangzhen on 2019/3/12.
+ */
+public class AudioProxyServer {
+
+    private static final String TAG = "AudioProxyServer";
+    private static final String PARAM_URL = "url=";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    //请求位置超过已下载位置太多时直接透传源站，不等待顺序下载
+    private static final long FAR_SEEK_BYTES = 512 * 1024;
+
+    private final DiskLruStore mStore;
+    private final Map<String, CacheFill> mFills = new HashMap<>();
+    private final ExecutorService mExecutor;
+    private ServerSocket mServerSocket;
+    private Thread mAcceptThread;
+
+    public AudioProxyServer(DiskLruStore store) {
+        mStore = store;
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AudioProxy-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 启动代理，重复调用无副作用
+     */
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null) return;
+        mServerSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "AudioProxy-accept");
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (mServerSocket == null) return;
+        IoUtil.closeQuietly(mServerSocket);
+        mServerSocket = null;
+    }
+
+    public synchronized int getPort() {
+        return mServerSocket != null ? mServerSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * 获取代理地址
+     *
+     * @param url 源地址
+     * @return 代理地址
+     */
+    public String getProxyUrl(String url) {
+        try {
+            return "http://127.0.0.1:" + getPort() + "/?" + PARAM_URL + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return url;
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket server;
+        synchronized (this) {
+            server = mServerSocket;
+        }
+        while (server != null && !server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    Log.w(TAG, "accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) return;
+            String url = parseUrl(requestLine);
+            long rangeStart = -1;
+            long rangeEnd = -1;
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                if (line.toLowerCase(Locale.US).startsWith("range:")) {
+                    long[] range = parseRange(line.substring(6).trim());
+                    rangeStart = range[0];
+                    rangeEnd = range[1];
+                }
+            }
+            OutputStream out = socket.getOutputStream();
+            if (url == null) {
+                writeHead(out, "404 Not Found", null, 0, -1, -1, -1);
+                return;
+            }
+            serve(url, rangeStart, rangeEnd, out);
+        } catch (SocketException ignored) {
+            //MediaPlayer seek 时会主动断开连接
+        } catch (IOException e) {
+            Log.w(TAG, "serve failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            IoUtil.closeQuietly(socket);
+        }
+    }
+
+    private void serve(String url, long rangeStart, long rangeEnd, OutputStream out) throws IOException, InterruptedException {
+        String key = DiskLruStore.keyOf(url);
+        mStore.lock(key);
+        try {
+            File cached = mStore.get(key);
+            if (cached != null) {
+                serveFile(cached, guessContentType(url, null), rangeStart, rangeEnd, out);
+                return;
+            }
+            CacheFill fill = obtainFill(url, key);
+            try {
+                String error = fill.awaitHeader();
+                if (error != null) {
+                    writeHead(out, "502 Bad Gateway", null, 0, -1, -1, -1);
+                    return;
+                }
+                long start = rangeStart < 0 ? 0 : rangeStart;
+                if (start > fill.getAvailable() + FAR_SEEK_BYTES) {
+                    serveDirect(url, rangeStart, rangeEnd, out);
+                    return;
+                }
+                RandomAccessFile raf;
+                try {
+                    raf = new RandomAccessFile(fill.getPartFile(), "r");
+                } catch (FileNotFoundException e) {
+                    //下载已完成并转为完整缓存
+                    cached = mStore.get(key);
+                    if (cached != null) {
+                        serveFile(cached, guessContentType(url, fill.getContentType()), rangeStart, rangeEnd, out);
+                    } else {
+                        writeHead(out, "502 Bad Gateway", null, 0, -1, -1, -1);
+                    }
+                    return;
+                }
+                serveFill(fill, raf, guessContentType(url, fill.getContentType()), rangeStart, rangeEnd, out);
+            } finally {
+                releaseFill(fill);
+            }
+        } finally {
+            mStore.unlock(key);
+        }
+    }
+
+    private CacheFill obtainFill(String url, String key) {
+        synchronized (mFills) {
+            CacheFill fill = mFills.get(key);
+            if (fill == null) {
+                fill = new CacheFill(mStore, url, key);
+                mFills.put(key, fill);
+                mExecutor.execute(fill);
+            }
+            fill.acquire();
+            return fill;
+        }
+    }
+
+    private void releaseFill(CacheFill fill) {
+        synchronized (mFills) {
+            if (fill.release() && mFills.get(fill.key) == fill) {
+                mFills.remove(fill.key);
+            }
+        }
+    }
+
+    /**
+     * 完整缓存，无网络请求
+     */
+    private void serveFile(File file, String contentType, long rangeStart, long rangeEnd, OutputStream out) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long total = raf.length();
+            long start = rangeStart < 0 ? 0 : rangeStart;
+            long end = rangeEnd < 0 || rangeEnd >= total ? total - 1 : rangeEnd;
+            if (start > end) {
+                writeHead(out, "416 Range Not Satisfiable", contentType, 0, -1, -1, total);
+                return;
+            }
+            writeRangeHead(out, contentType, rangeStart >= 0, start, end, total);
+            raf.seek(start);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) break;
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            out.flush();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 边下边播，从临时文件读取已下载的数据
+     */
+    private void serveFill(CacheFill fill, RandomAccessFile raf, String contentType, long rangeStart, long rangeEnd, OutputStream out) throws IOException, InterruptedException {
+        try {
+            long total = fill.getTotalLength();
+            long start = rangeStart < 0 ? 0 : rangeStart;
+            long end = total < 0 ? -1 : (rangeEnd < 0 || rangeEnd >= total ? total - 1 : rangeEnd);
+            if (total >= 0 && start > end) {
+                writeHead(out, "416 Range Not Satisfiable", contentType, 0, -1, -1, total);
+                return;
+            }
+            if (total < 0) {
+                writeHead(out, "200 OK", contentType, -1, -1, -1, -1);
+            } else {
+                writeRangeHead(out, contentType, rangeStart >= 0, start, end, total);
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = start;
+            while (end < 0 || position <= end) {
+                long available = fill.awaitData(position);
+                if (available < 0) break;
+                long limit = end < 0 ? available : Math.min(available, end + 1);
+                raf.seek(position);
+                while (position < limit) {
+                    int read = raf.read(buffer, 0, (int) Math.min(buffer.length, limit - position));
+                    if (read < 0) break;
+                    out.write(buffer, 0, read);
+                    position += read;
+                }
+            }
+            out.flush();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 远距离 seek，直接透传源站数据，不写入缓存
+     */
+    private void serveDirect(String url, long rangeStart, long rangeEnd, OutputStream out) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        InputStream in = null;
+        try {
+            conn.setRequestProperty("Range", "bytes=" + rangeStart + "-" + (rangeEnd >= 0 ? rangeEnd : ""));
+            int code = conn.getResponseCode();
+            StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(code).append(' ').append(conn.getResponseMessage()).append("\r\n");
+            appendHeader(head, "Content-Type", conn.getContentType());
+            appendHeader(head, "Content-Length", conn.getHeaderField("Content-Length"));
+            appendHeader(head, "Content-Range", conn.getHeaderField("Content-Range"));
+            head.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+            out.write(head.toString().getBytes("US-ASCII"));
+            in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in != null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            out.flush();
+        } finally {
+            IoUtil.closeQuietly(in);
+            conn.disconnect();
+        }
+    }
+
+    private void writeRangeHead(OutputStream out, String contentType, boolean partial, long start, long end, long total) throws IOException {
+        if (partial) {
+            writeHead(out, "206 Partial Content", contentType, end - start + 1, start, end, total);
+        } else {
+            writeHead(out, "200 OK", contentType, total, -1, -1, -1);
+        }
+    }
+
+    private void writeHead(OutputStream out, String status, String contentType, long length,
+                           long start, long end, long total) throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        appendHeader(head, "Content-Type", contentType);
+        if (length >= 0) {
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        if (start >= 0) {
+            head.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(total).append("\r\n");
+        } else if (total >= 0) {
+            head.append("Content-Range: bytes */").append(total).append("\r\n");
+        }
+        head.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+        out.write(head.toString().getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    private static void appendHeader(StringBuilder head, String name, String value) {
+        if (value != null) {
+            head.append(name).append(": ").append(value).append("\r\n");
+        }
+    }
+
+    /**
+     * GET /?url=xxx HTTP/1.1
+     */
+    private static String parseUrl(String requestLine) throws UnsupportedEncodingException {
+        int index = requestLine.indexOf(PARAM_URL);
+        if (index < 0) return null;
+        int end = requestLine.indexOf(' ', index);
+        String encoded = end < 0 ? requestLine.substring(index + PARAM_URL.length())
+                : requestLine.substring(index + PARAM_URL.length(), end);
+        return URLDecoder.decode(encoded, "UTF-8");
+    }
+
+    /**
+     * bytes=100- / bytes=100-199
+     */
+    private static long[] parseRange(String value) {
+        long[] range = new long[]{-1, -1};
+        if (!value.startsWith("bytes=")) return range;
+        String spec = value.substring(6);
+        int dash = spec.indexOf('-');
+        if (dash <= 0) return range;
+        try {
+            range[0] = Long.parseLong(spec.substring(0, dash).trim());
+            String end = spec.substring(dash + 1).trim();
+            int comma = end.indexOf(',');
+            if (comma >= 0) end = end.substring(0, comma);
+            if (end.length() > 0) range[1] = Long.parseLong(end);
+        } catch (NumberFormatException e) {
+            range[0] = -1;
+            range[1] = -1;
+        }
+        return range;
+    }
+
+    private static String guessContentType(String url, String contentType) {
+        if (contentType != null) return contentType;
+        String guess = URLConnection.guessContentTypeFromName(url);
+        return guess != null ? guess : "audio/mpeg";
+    }
+}
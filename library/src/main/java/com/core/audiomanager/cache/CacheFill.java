@@ -0,0 +1,196 @@
+package com.core.audiomanager.cache;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 单个 url 的下载填充任务，多个代理连接共享同一个任务
+ * 已下载的部分保存在临时文件中，下次从断点处用 Range 请求续传
+ * Created by wangzhen on 2019/3/12.
+ */
+class CacheFill implements Runnable {
+
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    final String url;
+    final String key;
+    private final DiskLruStore mStore;
+    private final File mPartFile;
+
+    //已写入临时文件的字节数
+    private volatile long mAvailable;
+    //总长度，未知为-1
+    private volatile long mTotalLength = -1;
+    private volatile String mContentType;
+    private volatile boolean isHeaderReady;
+    private volatile boolean isFinished;
+    private volatile boolean isCancelled;
+    private volatile String mError;
+    private int mClients;
+
+    CacheFill(DiskLruStore store, String url, String key) {
+        this.mStore = store;
+        this.url = url;
+        this.key = key;
+        this.mPartFile = store.getPartial(key);
+    }
+
+    File getPartFile() {
+        return mPartFile;
+    }
+
+    long getTotalLength() {
+        return mTotalLength;
+    }
+
+    String getContentType() {
+        return mContentType;
+    }
+
+    long getAvailable() {
+        return mAvailable;
+    }
+
+    synchronized void acquire() {
+        mClients++;
+    }
+
+    /**
+     * @return 是否已无连接使用，此时未完成的下载会被取消并保留断点
+     */
+    synchronized boolean release() {
+        mClients--;
+        if (mClients <= 0 && !isFinished) {
+            isCancelled = true;
+            notifyAll();
+        }
+        return mClients <= 0;
+    }
+
+    @Override
+    public void run() {
+        HttpURLConnection conn = null;
+        RandomAccessFile raf = null;
+        InputStream in = null;
+        try {
+            long offset = mPartFile.exists() ? mPartFile.length() : 0;
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
+            int code = conn.getResponseCode();
+            long length = parseLong(conn.getHeaderField("Content-Length"));
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                long total = parseTotal(conn.getHeaderField("Content-Range"));
+                mTotalLength = total >= 0 ? total : (length >= 0 ? offset + length : -1);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                //源站不支持 Range，从头下载
+                offset = 0;
+                mTotalLength = length;
+            } else if (code == 416 && offset > 0) {
+                //断点已是完整文件
+                mTotalLength = offset;
+            } else {
+                throw new IOException("http " + code);
+            }
+            mContentType = conn.getContentType();
+
+            raf = new RandomAccessFile(mPartFile, "rw");
+            raf.setLength(offset);
+            raf.seek(offset);
+            mAvailable = offset;
+            signalHeaderReady();
+
+            if (mTotalLength < 0 || offset < mTotalLength) {
+                in = conn.getInputStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while (!isCancelled && (read = in.read(buffer)) != -1) {
+                    raf.write(buffer, 0, read);
+                    synchronized (this) {
+                        mAvailable += read;
+                        notifyAll();
+                    }
+                }
+            }
+            raf.close();
+            raf = null;
+            //长度已知时下载完整即转为缓存，最后一个连接恰好在此之前断开也不影响
+            if (mTotalLength >= 0 ? mAvailable == mTotalLength : !isCancelled) {
+                mTotalLength = mAvailable;
+                mStore.commit(key);
+            }
+        } catch (IOException e) {
+            mError = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            IoUtil.closeQuietly(in);
+            IoUtil.closeQuietly(raf);
+            if (conn != null) {
+                conn.disconnect();
+            }
+            synchronized (this) {
+                isHeaderReady = true;
+                isFinished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void signalHeaderReady() {
+        isHeaderReady = true;
+        notifyAll();
+    }
+
+    /**
+     * 等待源站响应头
+     *
+     * @return 出错时返回错误信息
+     */
+    synchronized String awaitHeader() throws InterruptedException {
+        while (!isHeaderReady) {
+            wait();
+        }
+        return mError;
+    }
+
+    /**
+     * 等待 position 之后有数据可读
+     *
+     * @param position 读取位置
+     * @return 可读到的位置，没有更多数据时返回-1
+     */
+    synchronized long awaitData(long position) throws InterruptedException {
+        while (mAvailable <= position && !isFinished && !isCancelled) {
+            wait();
+        }
+        return mAvailable > position ? mAvailable : -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Content-Range: bytes 100-199/200
+     */
+    private static long parseTotal(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        return slash < 0 ? -1 : parseLong(contentRange.substring(slash + 1));
+    }
+}
@@ -0,0 +1,214 @@
+package com.core.audiomanager.cache;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以 url 为 key 的磁盘 LRU 存储
+ * 完整文件为 key.data，下载中的文件为 key.part；访问顺序通过文件修改时间持久化
+ * Created by wangzhen on 2019/3/12.
+ */
+public class DiskLruStore {
+
+    private static final String SUFFIX_DATA = ".data";
+    private static final String SUFFIX_PART = ".part";
+
+    private final File mDir;
+    private long mMaxBytes;
+    private long mSize;
+    //access-order，头部为最久未使用
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    //正在读写的 key，不参与淘汰
+    private final Map<String, Integer> mInUse = new HashMap<>();
+
+    public DiskLruStore(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        if (!dir.exists())
+            dir.mkdirs();
+        load();
+    }
+
+    /**
+     * 启动时按修改时间恢复 LRU 顺序
+     */
+    private void load() {
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long l = o1.lastModified();
+                long r = o2.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX_DATA)) {
+                Entry entry = new Entry(file);
+                mEntries.put(name.substring(0, name.length() - SUFFIX_DATA.length()), entry);
+                mSize += entry.length;
+            }
+        }
+    }
+
+    /**
+     * url 转 key
+     *
+     * @param url url
+     * @return md5
+     */
+    public static String keyOf(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    /**
+     * 获取完整缓存文件
+     *
+     * @param key key
+     * @return 未缓存返回null
+     */
+    public synchronized File get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (!entry.file.exists()) {
+            //文件已被外部删除，按记录的长度扣除
+            mEntries.remove(key);
+            mSize -= entry.length;
+            return null;
+        }
+        entry.file.setLastModified(System.currentTimeMillis());
+        return entry.file;
+    }
+
+    /**
+     * 获取下载中的临时文件，可能包含上次未下载完的数据
+     *
+     * @param key key
+     * @return 临时文件
+     */
+    public File getPartial(String key) {
+        return new File(mDir, key + SUFFIX_PART);
+    }
+
+    /**
+     * 临时文件下载完毕，转为完整缓存
+     *
+     * @param key key
+     * @return 完整缓存文件
+     */
+    public synchronized File commit(String key) {
+        File part = getPartial(key);
+        File data = new File(mDir, key + SUFFIX_DATA);
+        if (!part.renameTo(data)) {
+            return null;
+        }
+        Entry entry = new Entry(data);
+        Entry old = mEntries.put(key, entry);
+        if (old != null) {
+            mSize -= old.length;
+        }
+        mSize += entry.length;
+        trim();
+        return data;
+    }
+
+    public synchronized void lock(String key) {
+        Integer count = mInUse.get(key);
+        mInUse.put(key, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void unlock(String key) {
+        Integer count = mInUse.get(key);
+        if (count == null || count <= 1) {
+            mInUse.remove(key);
+        } else {
+            mInUse.put(key, count - 1);
+        }
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * 清空未被占用的缓存
+     */
+    public synchronized void clear() {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (mInUse.containsKey(entry.getKey())) continue;
+            mSize -= entry.getValue().length;
+            entry.getValue().file.delete();
+            it.remove();
+        }
+        File[] parts = mDir.listFiles();
+        if (parts == null) return;
+        for (File file : parts) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX_PART)
+                    && !mInUse.containsKey(name.substring(0, name.length() - SUFFIX_PART.length()))) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 超过上限时从最久未使用开始淘汰
+     */
+    private void trim() {
+        if (mSize <= mMaxBytes) return;
+        List<String> evicted = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            if (mSize <= mMaxBytes) break;
+            if (mInUse.containsKey(entry.getKey())) continue;
+            mSize -= entry.getValue().length;
+            entry.getValue().file.delete();
+            evicted.add(entry.getKey());
+        }
+        for (String key : evicted) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * 记录加入时的长度，文件被外部删除后仍能正确扣除
+     */
+    private static class Entry {
+        final File file;
+        final long length;
+
+        Entry(File file) {
+            this.file = file;
+            this.length = file.length();
+        }
+    }
+}
@@ -15,6 +15,16 @@ public interface AudioCallback {
          */
         void startRecord();
 
+        /**
+         * 暂停录制，恢复后继续写入同一个文件
+         */
+        void pauseRecord();
+
+        /**
+         * 恢复录制
+         */
+        void resumeRecord();
+
         /**
          * 取消录制
          */
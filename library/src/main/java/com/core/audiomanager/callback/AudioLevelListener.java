@@ -0,0 +1,16 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 录音音量回调，在主线程按固定频率推送
+ * Created by wangzhen on 2019/4/18.
+ */
+public interface AudioLevelListener {
+    /**
+     * 音量更新
+     *
+     * @param rmsDb      有效值 dBFS
+     * @param peakDb     峰值 dBFS
+     * @param peakHoldDb 峰值保持 dBFS
+     */
+    void onLevel(float rmsDb, float peakDb, float peakHoldDb);
+}
@@ -0,0 +1,24 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 混音回调，在主线程执行
+ * Created by wangzhen on 2019/5/24.
+ */
+public interface AudioMixListener {
+    /**
+     * 进度
+     *
+     * @param progress 0-100
+     */
+    void onProgress(int progress);
+
+    /**
+     * 混音完成
+     */
+    void onComplete(String path);
+
+    /**
+     * 发生错误或被取消
+     */
+    void onError(String error);
+}
@@ -0,0 +1,16 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 列表播放状态回调
+ * onPrepared 在第一首准备完毕时回调，onComplete 在整个列表播放完毕时回调
+ * Created by wangzhen on 2019/4/2.
+ */
+public interface AudioPlaylistListener extends AudioPlayStateListener {
+    /**
+     * 切换到新的音频
+     *
+     * @param index 列表位置
+     * @param url   音频url
+     */
+    void onTrackChanged(int index, String url);
+}
@@ -0,0 +1,16 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 分段录音回调，在主线程执行
+ * Created by wangzhen on 2019/5/17.
+ */
+public interface AudioSegmentListener {
+    /**
+     * 一个分段已写完，可以独立解码
+     *
+     * @param index    分段序号，从0开始
+     * @param path     分段文件
+     * @param duration 分段时长 ms
+     */
+    void onSegment(int index, String path, long duration);
+}
@@ -0,0 +1,16 @@
+package com.core.audiomanager.callback;
+
+import com.core.audiomanager.catalog.RecordingCatalog;
+
+/**
+ * 录音目录索引打开完成的回调，在主线程执行
+ * Created by wangzhen on 2019/6/5.
+ */
+public interface CatalogReadyListener {
+    /**
+     * 索引已打开，异常退出时未完成的录音已恢复
+     *
+     * @param catalog 当前录音目录的索引
+     */
+    void onCatalogReady(RecordingCatalog catalog);
+}
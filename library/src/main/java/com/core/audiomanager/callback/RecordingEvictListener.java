@@ -0,0 +1,15 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 录音目录超出配额后清理的回调，在主线程执行
+ * Created by wangzhen on 2019/5/15.
+ */
+public interface RecordingEvictListener {
+    /**
+     * 清理完成
+     *
+     * @param count          删除的录音数
+     * @param reclaimedBytes 释放的字节数
+     */
+    void onEvicted(int count, long reclaimedBytes);
+}
@@ -0,0 +1,20 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 分段上传回调，在主线程执行
+ * Created by wangzhen on 2019/5/17.
+ */
+public interface SegmentUploadListener {
+    /**
+     * 分段上传成功
+     *
+     * @param index 分段序号
+     * @param path  分段文件
+     */
+    void onUploaded(int index, String path);
+
+    /**
+     * 重试后仍失败
+     */
+    void onUploadFailed(int index, String path, String error);
+}
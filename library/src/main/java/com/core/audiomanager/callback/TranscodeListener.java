@@ -0,0 +1,31 @@
+package com.core.audiomanager.callback;
+
+/**
+ * 批量转码回调，在主线程执行
+ * Created by wangzhen on 2019/5/29.
+ */
+public interface TranscodeListener {
+    /**
+     * 进度
+     *
+     * @param processed      已处理的文件数，包括失败和跳过的
+     * @param total          本次需要处理的文件数
+     * @param filesPerSecond 不计暂停时间的处理速度
+     * @param bytesSaved     已节省的字节数
+     */
+    void onProgress(int processed, int total, float filesPerSecond, long bytesSaved);
+
+    /**
+     * 因应用在前台或电量低暂停，或条件恢复后继续
+     */
+    void onPauseChanged(boolean paused);
+
+    /**
+     * 全部处理完成或被取消
+     *
+     * @param transcoded 转码成功的文件数
+     * @param failed     失败的文件数
+     * @param bytesSaved 节省的字节数
+     */
+    void onComplete(int transcoded, int failed, long bytesSaved);
+}
@@ -0,0 +1,103 @@
+package com.core.audiomanager.catalog;
+
+import java.io.File;
+
+/**
+ * 录音目录中的一条录音
+ * Created by wangzhen on 2019/5/13.
+ */
+public class Recording {
+
+    private final File mDir;
+    private final long mId;
+    private final int mFormat;
+    private final long mCreateTime;
+    private final long mDurationUs;
+    private final long mSize;
+    private final int mBitRate;
+    private volatile long mLastPlayTime;
+
+    Recording(File dir, long id, int format, long createTime, long durationUs, long size, int bitRate) {
+        mDir = dir;
+        mId = id;
+        mFormat = format;
+        mCreateTime = createTime;
+        mDurationUs = durationUs;
+        mSize = size;
+        mBitRate = bitRate;
+    }
+
+    /**
+     * 唯一 id，同时决定文件名
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * 编码格式 {@link com.core.audiomanager.encode.EncodeConfig} FORMAT_*
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public String getName() {
+        return RecordingCatalog.nameOf(mId, mFormat);
+    }
+
+    public String getPath() {
+        return new File(mDir, getName()).getAbsolutePath();
+    }
+
+    /**
+     * 录制完成时间 ms
+     */
+    public long getCreateTime() {
+        return mCreateTime;
+    }
+
+    /**
+     * 时长 us，无法解析时为0
+     */
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    /**
+     * 时长 ms
+     */
+    public long getDuration() {
+        return mDurationUs / 1000;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * 平均码率 bps
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 最近一次播放时间 ms，未播放过为0
+     */
+    public long getLastPlayTime() {
+        return mLastPlayTime;
+    }
+
+    void setLastPlayTime(long lastPlayTime) {
+        mLastPlayTime = lastPlayTime;
+    }
+
+    @Override
+    public String toString() {
+        return "Recording{id=" + mId
+                + ", format=" + mFormat
+                + ", createTime=" + mCreateTime
+                + ", durationUs=" + mDurationUs
+                + ", size=" + mSize + "}";
+    }
+}
@@ -0,0 +1,795 @@
+package com.core.audiomanager.catalog;
+
+import com.core.audiomanager.encode.EncodeConfig;
+import com.core.audiomanager.edit.AudioJoiner;
+import com.core.audiomanager.edit.AudioRepair;
+import com.core.audiomanager.encode.EncodeStage;
+import com.core.audiomanager.format.AudioInfo;
+import com.core.audiomanager.format.AudioProbe;
+import com.core.audiomanager.util.IoUtil;
+import com.core.audiomanager.waveform.WaveformReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 录音目录索引
+ * 录音文件名由单调递增的 id 生成，同一毫秒内多次录音也不会重名
+ * 索引是目录下只追加的定长记录文件，录音完成时追加一条，删除时追加一条删除记录，打开时顺序读入即可，不需要遍历目录
+ * 删除、播放记录过多时在后台线程重写索引
+ * 正在录制的文件记录在 {@link RecordingJournal} 中，进程异常退出后下次打开目录时修复并加入索引
+ * 可通过 {@link #getQuota()} 限制目录大小，正在播放的文件由 {@link #pin(String)} 保护，正在录制的文件完成前不在索引中
+ * Created by wangzhen on 2019/5/13.
+ */
+public class RecordingCatalog {
+
+    private static final String INDEX_NAME = ".catalog";
+    //恢复时读写出错的录音改名后缀
+    private static final String BROKEN_SUFFIX = ".broken";
+    private static final int MAGIC = 0x52434154; // "RCAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    //op(1) format(1) reserved(2) bitRate(4) id(8) createTime(8) durationUs(8) size(8)
+    private static final int RECORD_SIZE = 40;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DELETE = 2;
+    //createTime 位置记录播放时间
+    private static final byte OP_PLAY = 3;
+
+    //无效记录超过该数且多于有效记录时重写索引
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private static final Map<String, RecordingCatalog> mCatalogs = new HashMap<>();
+    //正在打开的目录及其锁
+    private static final Map<String, Object> mOpening = new HashMap<>();
+    //正在使用的文件路径及引用数，不会被配额清理
+    private static final Map<String, Integer> mPinned = new HashMap<>();
+
+    private final File mDir;
+    private final File mIndexFile;
+    //按 id 升序
+    private final ArrayList<Recording> mRecordings = new ArrayList<>();
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private RandomAccessFile mIndex;
+    private long mLastId;
+    private int mGarbageCount;
+    private RecordingQuota mQuota;
+    private final RecordingJournal mJournal;
+    //打开目录时从异常中断中恢复的录音
+    private final ArrayList<Recording> mRecovered = new ArrayList<>();
+
+    /**
+     * 获取目录对应的索引，同一目录共用一个实例
+     * 首次打开时读入索引并恢复未完成的录音，耗时较长，不要在主线程调用
+     * 读入在全局锁外进行，只按目录串行，不阻塞其他目录和 {@link #notePlayed(String)}
+     *
+     * @param dir 录音目录
+     * @return 索引
+     */
+    public static RecordingCatalog open(String dir) {
+        String key = new File(dir).getAbsolutePath();
+        Object lock;
+        synchronized (mCatalogs) {
+            RecordingCatalog catalog = mCatalogs.get(key);
+            if (catalog != null) return catalog;
+            lock = mOpening.get(key);
+            if (lock == null) {
+                lock = new Object();
+                mOpening.put(key, lock);
+            }
+        }
+        //同一目录只恢复一次，等待中的线程在前一个打开完成后直接取得结果
+        synchronized (lock) {
+            synchronized (mCatalogs) {
+                RecordingCatalog catalog = mCatalogs.get(key);
+                if (catalog != null) return catalog;
+            }
+            RecordingCatalog catalog = new RecordingCatalog(new File(key));
+            synchronized (mCatalogs) {
+                mCatalogs.put(key, catalog);
+                mOpening.remove(key);
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * 标记文件正在使用，配额清理时跳过
+     *
+     * @param path 文件路径
+     */
+    public static void pin(String path) {
+        if (path == null) return;
+        synchronized (mPinned) {
+            Integer count = mPinned.get(path);
+            mPinned.put(path, count == null ? 1 : count + 1);
+        }
+    }
+
+    public static void unpin(String path) {
+        if (path == null) return;
+        synchronized (mPinned) {
+            Integer count = mPinned.get(path);
+            if (count == null) return;
+            if (count <= 1) {
+                mPinned.remove(path);
+            } else {
+                mPinned.put(path, count - 1);
+            }
+        }
+    }
+
+    /**
+     * 文件未被使用时标记为使用中
+     *
+     * @param path 文件路径
+     * @return 已被其他使用者标记时返回false
+     */
+    public static boolean tryPin(String path) {
+        if (path == null) return false;
+        synchronized (mPinned) {
+            if (mPinned.containsKey(path)) return false;
+            mPinned.put(path, 1);
+            return true;
+        }
+    }
+
+    /**
+     * 解除标记，没有其他使用者时删除文件；持有 pin 锁直到删除完成，期间开始的播放会等待
+     *
+     * @param path 文件路径
+     * @return 是否删除
+     */
+    public static boolean unpinAndDelete(String path) {
+        if (path == null) return false;
+        synchronized (mPinned) {
+            Integer count = mPinned.get(path);
+            unpin(path);
+            return (count == null || count <= 1) && new File(path).delete();
+        }
+    }
+
+    public static boolean isPinned(String path) {
+        synchronized (mPinned) {
+            return mPinned.containsKey(path);
+        }
+    }
+
+    /**
+     * 记录播放时间，用于按最近播放清理；只更新已打开的索引
+     *
+     * @param path 文件路径
+     */
+    public static void notePlayed(String path) {
+        if (path == null) return;
+        File parent = new File(path).getAbsoluteFile().getParentFile();
+        if (parent == null) return;
+        RecordingCatalog catalog;
+        synchronized (mCatalogs) {
+            catalog = mCatalogs.get(parent.getAbsolutePath());
+        }
+        if (catalog != null) {
+            Recording recording = catalog.find(path);
+            if (recording != null) {
+                catalog.markPlayed(recording, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private RecordingCatalog(File dir) {
+        mDir = dir;
+        mIndexFile = new File(dir, INDEX_NAME);
+        if (!dir.exists())
+            dir.mkdirs();
+        load();
+        mJournal = new RecordingJournal(dir);
+        recover();
+    }
+
+    /**
+     * id 对应的文件名
+     *
+     * @param id     id
+     * @param format 编码格式
+     * @return 文件名
+     */
+    static String nameOf(long id, int format) {
+        return id + extensionOf(format);
+    }
+
+    private static String extensionOf(int format) {
+        switch (format) {
+            case EncodeConfig.FORMAT_WAV:
+                return ".wav";
+            case EncodeConfig.FORMAT_AAC:
+                return ".aac";
+            default:
+                return ".amr";
+        }
+    }
+
+    private static int formatOf(String extension) {
+        if (".wav".equals(extension)) return EncodeConfig.FORMAT_WAV;
+        if (".aac".equals(extension)) return EncodeConfig.FORMAT_AAC;
+        if (".amr".equals(extension)) return EncodeConfig.FORMAT_AMR_NB;
+        return -1;
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    /**
+     * 目录配额，默认不限制
+     */
+    public synchronized RecordingQuota getQuota() {
+        if (mQuota == null) {
+            mQuota = new RecordingQuota(this);
+        }
+        return mQuota;
+    }
+
+    /**
+     * 分配新的录音文件，只生成不重复的路径，录音完成后通过 {@link #add(String)} 加入索引
+     *
+     * @param extension 扩展名
+     * @return 文件
+     */
+    public synchronized File newFile(String extension) {
+        long id = Math.max(System.currentTimeMillis(), mLastId + 1);
+        File file = new File(mDir, id + extension);
+        //其他进程或旧版本写入的同名文件
+        while (file.exists()) {
+            id++;
+            file = new File(mDir, id + extension);
+        }
+        mLastId = id;
+        return file;
+    }
+
+    /**
+     * 记录正在录制的文件，异常退出后下次打开目录时恢复
+     *
+     * @param path 由 {@link #newFile(String)} 分配的文件
+     */
+    public void beginRecording(String path) {
+        mJournal.add(new File(path).getName());
+    }
+
+    /**
+     * 录制结束但未加入索引，如取消或出错
+     *
+     * @param path 文件路径
+     */
+    public void endRecording(String path) {
+        mJournal.remove(new File(path).getName());
+    }
+
+    /**
+     * 打开目录时从异常中断中恢复的录音
+     */
+    public synchronized List<Recording> getRecovered() {
+        return new ArrayList<>(mRecovered);
+    }
+
+    /**
+     * 录音完成后加入索引，同时结束录制记录
+     *
+     * @param path 由 {@link #newFile(String)} 分配的文件
+     * @return 不属于该目录或文件名不是索引分配的返回null
+     */
+    public Recording add(String path) {
+        File file = new File(path);
+        if (!mDir.equals(file.getAbsoluteFile().getParentFile())) return null;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0) return null;
+        int format = formatOf(name.substring(dot));
+        long id;
+        try {
+            id = Long.parseLong(name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (format < 0 || !file.exists()) return null;
+        mJournal.remove(name);
+        AudioInfo info = AudioProbe.get().probe(path);
+        long durationUs = info != null ? info.getDurationUs() : 0;
+        int bitRate = info != null ? info.getBitRate() : 0;
+        Recording recording = new Recording(mDir, id, format, System.currentTimeMillis(),
+                durationUs, file.length(), bitRate);
+        synchronized (this) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                mRecordings.set(index, recording);
+            } else {
+                mRecordings.add(-index - 1, recording);
+            }
+            mLastId = Math.max(mLastId, id);
+            append(OP_ADD, recording);
+            if (mQuota != null) {
+                mQuota.trimAsync();
+            }
+        }
+        return recording;
+    }
+
+    /**
+     * 用转码后的文件替换录音，保留 id、创建时间和播放时间，原文件由调用方删除
+     *
+     * @param id   录音 id
+     * @param path 转码后的文件，文件名为 id 加新格式的扩展名
+     * @return 录音不在索引中或文件名不匹配时返回null
+     */
+    public Recording replace(long id, String path) {
+        File file = new File(path);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || !name.substring(0, dot).equals(String.valueOf(id))) return null;
+        int format = formatOf(name.substring(dot));
+        if (format < 0 || !file.exists() || !mDir.equals(file.getAbsoluteFile().getParentFile())) return null;
+        AudioInfo info = AudioProbe.get().probe(path);
+        long durationUs = info != null ? info.getDurationUs() : 0;
+        int bitRate = info != null ? info.getBitRate() : 0;
+        synchronized (this) {
+            int index = indexOf(id);
+            if (index < 0) return null;
+            Recording old = mRecordings.get(index);
+            Recording recording = new Recording(mDir, id, format, old.getCreateTime(),
+                    durationUs > 0 ? durationUs : old.getDurationUs(), file.length(), bitRate);
+            recording.setLastPlayTime(old.getLastPlayTime());
+            mRecordings.set(index, recording);
+            append(OP_ADD, recording);
+            mGarbageCount++;
+            scheduleCompact();
+            return recording;
+        }
+    }
+
+    /**
+     * 从索引中移除并删除文件
+     *
+     * @param id id
+     * @return 是否存在
+     */
+    public boolean delete(long id) {
+        Recording recording;
+        synchronized (this) {
+            int index = indexOf(id);
+            if (index < 0) return false;
+            recording = mRecordings.remove(index);
+            append(OP_DELETE, recording);
+            mGarbageCount++;
+            scheduleCompact();
+        }
+        String path = recording.getPath();
+        new File(path).delete();
+        WaveformReader.delete(path);
+        EncodeStage.deleteSegments(path);
+        return true;
+    }
+
+    /**
+     * 配额清理，未被占用时删除
+     *
+     * @param recording 录音
+     * @return 是否删除
+     */
+    boolean evict(Recording recording) {
+        //持有 pin 锁直到删除完成，期间开始的播放会等待
+        synchronized (mPinned) {
+            return !mPinned.containsKey(recording.getPath()) && delete(recording.getId());
+        }
+    }
+
+    private synchronized void markPlayed(Recording recording, long time) {
+        if (indexOf(recording.getId()) < 0) return;
+        recording.setLastPlayTime(time);
+        append(OP_PLAY, recording);
+        mGarbageCount++;
+        scheduleCompact();
+    }
+
+    /**
+     * 当前全部录音的副本
+     */
+    synchronized ArrayList<Recording> snapshot() {
+        return new ArrayList<>(mRecordings);
+    }
+
+    /**
+     * 按路径删除
+     *
+     * @param path 文件路径
+     * @return 是否在索引中
+     */
+    public boolean delete(String path) {
+        Recording recording = find(path);
+        return recording != null && delete(recording.getId());
+    }
+
+    public synchronized Recording get(long id) {
+        int index = indexOf(id);
+        return index >= 0 ? mRecordings.get(index) : null;
+    }
+
+    /**
+     * 按路径查找
+     *
+     * @param path 文件路径
+     * @return 不在索引中返回null
+     */
+    public Recording find(String path) {
+        String name = new File(path).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0) return null;
+        try {
+            Recording recording = get(Long.parseLong(name.substring(0, dot)));
+            return recording != null && recording.getName().equals(name) ? recording : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public synchronized int getCount() {
+        return mRecordings.size();
+    }
+
+    /**
+     * 录音总大小
+     */
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (int i = 0; i < mRecordings.size(); i++) {
+            total += mRecordings.get(i).getSize();
+        }
+        return total;
+    }
+
+    /**
+     * 分页查询
+     *
+     * @param offset      起始位置
+     * @param limit       条数
+     * @param newestFirst 是否按时间倒序
+     * @return 列表
+     */
+    public synchronized List<Recording> query(int offset, int limit, boolean newestFirst) {
+        int count = mRecordings.size();
+        if (offset < 0 || limit <= 0 || offset >= count) return Collections.emptyList();
+        int end = Math.min(count, offset + limit);
+        ArrayList<Recording> page = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++) {
+            page.add(mRecordings.get(newestFirst ? count - 1 - i : i));
+        }
+        return page;
+    }
+
+    /**
+     * 关闭索引文件，之后再调用写操作时重新打开
+     */
+    public synchronized void close() {
+        if (mIndex != null) {
+            IoUtil.closeQuietly(mIndex);
+            mIndex = null;
+        }
+    }
+
+    private int indexOf(long id) {
+        int low = 0;
+        int high = mRecordings.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = mRecordings.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 读入索引，末尾未写完整的记录被截掉
+     */
+    private synchronized void load() {
+        if (!mIndexFile.exists()) return;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mIndexFile, "rw");
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                file.setLength(0);
+                return;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                file.setLength(0);
+                return;
+            }
+            HashMap<Long, Recording> live = new HashMap<>();
+            int position = HEADER_SIZE;
+            for (; position + RECORD_SIZE <= length; position += RECORD_SIZE) {
+                Recording recording = readRecord(buffer, position);
+                byte op = buffer.get(position);
+                if (op == OP_ADD) {
+                    Recording old = live.put(recording.getId(), recording);
+                    if (old != null) {
+                        recording.setLastPlayTime(old.getLastPlayTime());
+                    }
+                } else if (op == OP_PLAY) {
+                    Recording played = live.get(recording.getId());
+                    if (played != null) {
+                        played.setLastPlayTime(recording.getCreateTime());
+                    }
+                    mGarbageCount++;
+                } else {
+                    live.remove(recording.getId());
+                    mGarbageCount++;
+                }
+                mLastId = Math.max(mLastId, recording.getId());
+            }
+            if (position != length) {
+                file.setLength(position);
+            }
+            mRecordings.addAll(live.values());
+            Collections.sort(mRecordings, new Comparator<Recording>() {
+                @Override
+                public int compare(Recording o1, Recording o2) {
+                    return o1.getId() < o2.getId() ? -1 : (o1.getId() == o2.getId() ? 0 : 1);
+                }
+            });
+        } catch (IOException e) {
+            mRecordings.clear();
+        } finally {
+            IoUtil.closeQuietly(file);
+        }
+    }
+
+    /**
+     * 恢复上次异常退出时正在录制的文件
+     * 分段录音修复各分段后重新拼接，API 24 以下暂停产生的 AMR 分段修复后追加
+     * 无法修复的文件删除，修复时读写出错的文件连同分段改名为 .broken 保留
+     */
+    private void recover() {
+        for (String name : mJournal.getEntries()) {
+            String path = new File(mDir, name).getAbsolutePath();
+            Recording recording = null;
+            try {
+                if (recoverFile(path)) {
+                    recording = add(path);
+                } else {
+                    discard(path);
+                }
+            } catch (IOException e) {
+                quarantine(path);
+            }
+            if (recording != null) {
+                synchronized (this) {
+                    mRecovered.add(recording);
+                }
+            } else {
+                mJournal.remove(name);
+            }
+        }
+    }
+
+    /**
+     * 修复文件
+     *
+     * @return 没有可用数据时返回false
+     * @throws IOException 读写出错，文件可能仍有可用数据
+     */
+    private static boolean recoverFile(String path) throws IOException {
+        File segmentDir = EncodeStage.segmentDirOf(path);
+        String[] names = segmentDir.list();
+        if (names != null && names.length > 0) {
+            Arrays.sort(names);
+            ArrayList<String> segments = new ArrayList<>();
+            for (String name : names) {
+                String segment = new File(segmentDir, name).getPath();
+                if (AudioRepair.repair(segment)) {
+                    segments.add(segment);
+                } else {
+                    new File(segment).delete();
+                }
+            }
+            if (segments.isEmpty()) {
+                segmentDir.delete();
+                return false;
+            }
+            AudioJoiner.join(path, segments.toArray(new String[segments.size()]));
+            //上传中断的分段不会再使用，拼接完成后删除
+            EncodeStage.deleteSegments(path);
+            return true;
+        }
+        ArrayList<String> parts = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            File part = new File(path + ".part" + i);
+            if (!part.exists()) break;
+            if (AudioRepair.repair(part.getPath())) {
+                parts.add(part.getPath());
+            }
+        }
+        if (!AudioRepair.repair(path)) return false;
+        if (!parts.isEmpty()) {
+            AudioJoiner.append(path, parts.toArray(new String[parts.size()]));
+        }
+        deleteParts(path);
+        return true;
+    }
+
+    /**
+     * 删除无法修复的文件
+     */
+    private static void discard(String path) {
+        new File(path).delete();
+        WaveformReader.delete(path);
+        EncodeStage.deleteSegments(path);
+        deleteParts(path);
+    }
+
+    /**
+     * 修复出错的文件连同分段改名为 path.broken 保留，不加入索引
+     */
+    private static void quarantine(String path) {
+        String broken = path + BROKEN_SUFFIX;
+        new File(path).renameTo(new File(broken));
+        EncodeStage.segmentDirOf(path).renameTo(EncodeStage.segmentDirOf(broken));
+        for (int i = 0; ; i++) {
+            File part = new File(path + ".part" + i);
+            if (!part.exists()) break;
+            part.renameTo(new File(broken + ".part" + i));
+        }
+        WaveformReader.delete(path);
+    }
+
+    private static void deleteParts(String path) {
+        for (int i = 0; ; i++) {
+            File part = new File(path + ".part" + i);
+            if (!part.exists()) break;
+            part.delete();
+        }
+    }
+
+    private Recording readRecord(ByteBuffer buffer, int position) {
+        int format = buffer.get(position + 1);
+        int bitRate = buffer.getInt(position + 4);
+        long id = buffer.getLong(position + 8);
+        long createTime = buffer.getLong(position + 16);
+        long durationUs = buffer.getLong(position + 24);
+        long size = buffer.getLong(position + 32);
+        return new Recording(mDir, id, format, createTime, durationUs, size, bitRate);
+    }
+
+    private void fillRecord(byte op, Recording recording) {
+        mRecord.clear();
+        putRecord(mRecord, op, recording);
+        mRecord.flip();
+    }
+
+    private static void putRecord(ByteBuffer buffer, byte op, Recording recording) {
+        buffer.put(op);
+        buffer.put((byte) recording.getFormat());
+        buffer.putShort((short) 0);
+        buffer.putInt(recording.getBitRate());
+        buffer.putLong(recording.getId());
+        buffer.putLong(op == OP_PLAY ? recording.getLastPlayTime() : recording.getCreateTime());
+        buffer.putLong(recording.getDurationUs());
+        buffer.putLong(recording.getSize());
+    }
+
+    /**
+     * 追加一条记录，写失败时内存中的索引仍然有效，下次重写时补齐
+     */
+    private void append(byte op, Recording recording) {
+        try {
+            RandomAccessFile index = openIndex();
+            FileChannel channel = index.getChannel();
+            channel.position(channel.size());
+            writeRecord(channel, op, recording);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void writeRecord(FileChannel channel, byte op, Recording recording) throws IOException {
+        fillRecord(op, recording);
+        while (mRecord.hasRemaining()) {
+            channel.write(mRecord);
+        }
+    }
+
+    private RandomAccessFile openIndex() throws IOException {
+        if (mIndex == null) {
+            mIndex = new RandomAccessFile(mIndexFile, "rw");
+            if (mIndex.length() < HEADER_SIZE) {
+                mIndex.setLength(0);
+                writeHeader(mIndex.getChannel());
+            }
+        }
+        return mIndex;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private boolean needsCompact() {
+        return mGarbageCount > COMPACT_THRESHOLD && mGarbageCount > mRecordings.size();
+    }
+
+    private void scheduleCompact() {
+        if (needsCompact()) {
+            RecordingQuota.compactAsync(this);
+        }
+    }
+
+    synchronized void compactIfNeeded() {
+        if (needsCompact()) {
+            compact();
+        }
+    }
+
+    /**
+     * 只保留有效记录重写索引，整个索引在内存中拼好后一次写入临时文件再替换
+     */
+    private void compact() {
+        int count = mRecordings.size();
+        for (int i = 0; i < mRecordings.size(); i++) {
+            if (mRecordings.get(i).getLastPlayTime() > 0) count++;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        for (int i = 0; i < mRecordings.size(); i++) {
+            Recording recording = mRecordings.get(i);
+            putRecord(buffer, OP_ADD, recording);
+            if (recording.getLastPlayTime() > 0) {
+                putRecord(buffer, OP_PLAY, recording);
+            }
+        }
+        buffer.flip();
+        File tmp = new File(mDir, INDEX_NAME + ".tmp");
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(tmp, "rw");
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            file.close();
+            file = null;
+            close();
+            if (tmp.renameTo(mIndexFile)) {
+                mGarbageCount = 0;
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        } finally {
+            IoUtil.closeQuietly(file);
+        }
+    }
+}
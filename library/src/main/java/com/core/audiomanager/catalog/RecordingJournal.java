@@ -0,0 +1,91 @@
+package com.core.audiomanager.catalog;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * 正在录制的文件日志，每行一个文件名
+ * 开始录制时写入，完成或取消时移除；进程异常退出后留下的条目在下次打开目录时恢复
+ * 每次修改写入临时文件并 sync 后替换，条目很少，重写代价可以忽略
+ * Created by wangzhen on 2019/5/22.
+ */
+class RecordingJournal {
+
+    private static final String JOURNAL_NAME = ".journal";
+
+    private final File mFile;
+    private final LinkedHashSet<String> mEntries = new LinkedHashSet<>();
+
+    RecordingJournal(File dir) {
+        mFile = new File(dir, JOURNAL_NAME);
+        read();
+    }
+
+    /**
+     * 上次运行留下的条目
+     */
+    synchronized List<String> getEntries() {
+        return new ArrayList<>(mEntries);
+    }
+
+    synchronized void add(String name) {
+        if (mEntries.add(name)) {
+            write();
+        }
+    }
+
+    synchronized void remove(String name) {
+        if (mEntries.remove(name)) {
+            write();
+        }
+    }
+
+    private void read() {
+        if (!mFile.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    mEntries.add(line);
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            IoUtil.closeQuietly(reader);
+        }
+    }
+
+    private void write() {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (String entry : mEntries) {
+                sb.append(entry).append('\n');
+            }
+            out = new FileOutputStream(tmp);
+            out.write(sb.toString().getBytes("UTF-8"));
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        } finally {
+            IoUtil.closeQuietly(out);
+        }
+    }
+}
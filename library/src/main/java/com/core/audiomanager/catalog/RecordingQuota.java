@@ -0,0 +1,231 @@
+package com.core.audiomanager.catalog;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+
+import com.core.audiomanager.callback.RecordingEvictListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * 录音目录配额
+ * 按大小和/或条数限制目录，超出时在后台线程按录制时间或最近播放时间删除最旧的录音
+ * 被 {@link RecordingCatalog#pin(String)} 标记的文件不会被删除
+ * Created by wangzhen on 2019/5/15.
+ */
+public class RecordingQuota {
+
+    //按录制时间清理
+    public static final int POLICY_OLDEST = 0;
+    //按最近播放时间清理，未播放过的按录制时间
+    public static final int POLICY_LEAST_RECENTLY_PLAYED = 1;
+
+    private static final int MSG_TRIM = 0x1;
+    private static final int MSG_EVICTED = 0x2;
+    private static final int MSG_COMPACT = 0x3;
+
+    //开始录音前要求的默认剩余空间
+    private static final long DEFAULT_MIN_FREE_BYTES = 8 * 1024 * 1024;
+
+    private static Handler mTrimHandler;
+
+    private final RecordingCatalog mCatalog;
+    private volatile long mMaxBytes;
+    private volatile int mMaxCount;
+    private volatile int mPolicy = POLICY_OLDEST;
+    private volatile long mMinFreeBytes = DEFAULT_MIN_FREE_BYTES;
+    private volatile RecordingEvictListener mEvictListener;
+    private volatile long mReclaimedBytes;
+
+    RecordingQuota(RecordingCatalog catalog) {
+        mCatalog = catalog;
+    }
+
+    /**
+     * 设置目录总大小上限，0 表示不限制
+     *
+     * @param maxBytes 字节数
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimAsync();
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * 设置录音条数上限，0 表示不限制
+     *
+     * @param maxCount 条数
+     */
+    public void setMaxCount(int maxCount) {
+        mMaxCount = maxCount;
+        trimAsync();
+    }
+
+    public int getMaxCount() {
+        return mMaxCount;
+    }
+
+    /**
+     * 设置清理顺序
+     *
+     * @param policy POLICY_OLDEST / POLICY_LEAST_RECENTLY_PLAYED
+     */
+    public void setPolicy(int policy) {
+        mPolicy = policy;
+    }
+
+    /**
+     * 设置开始录音前要求的剩余空间
+     *
+     * @param minFreeBytes 字节数
+     */
+    public void setMinFreeBytes(long minFreeBytes) {
+        mMinFreeBytes = minFreeBytes;
+    }
+
+    public void setEvictListener(RecordingEvictListener listener) {
+        mEvictListener = listener;
+    }
+
+    /**
+     * 累计释放的字节数
+     */
+    public long getReclaimedBytes() {
+        return mReclaimedBytes;
+    }
+
+    public boolean isLimited() {
+        return mMaxBytes > 0 || mMaxCount > 0;
+    }
+
+    /**
+     * 在后台线程清理，连续调用合并为一次
+     */
+    public void trimAsync() {
+        if (!isLimited()) return;
+        Handler handler = getTrimHandler();
+        handler.removeMessages(MSG_TRIM, this);
+        Message.obtain(handler, MSG_TRIM, this).sendToTarget();
+    }
+
+    /**
+     * 在当前线程清理到配额以内
+     *
+     * @return 释放的字节数
+     */
+    public synchronized long trim() {
+        long maxBytes = mMaxBytes;
+        int maxCount = mMaxCount;
+        if (maxBytes <= 0 && maxCount <= 0) return 0;
+        ArrayList<Recording> recordings = mCatalog.snapshot();
+        long total = 0;
+        for (int i = 0; i < recordings.size(); i++) {
+            total += recordings.get(i).getSize();
+        }
+        int count = recordings.size();
+        if ((maxBytes <= 0 || total <= maxBytes) && (maxCount <= 0 || count <= maxCount)) return 0;
+
+        Collections.sort(recordings, mPolicy == POLICY_LEAST_RECENTLY_PLAYED ? BY_LAST_USE : BY_CREATE_TIME);
+        long reclaimed = 0;
+        int evicted = 0;
+        for (int i = 0; i < recordings.size(); i++) {
+            if ((maxBytes <= 0 || total <= maxBytes) && (maxCount <= 0 || count <= maxCount)) break;
+            Recording recording = recordings.get(i);
+            if (mCatalog.evict(recording)) {
+                total -= recording.getSize();
+                count--;
+                reclaimed += recording.getSize();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            mReclaimedBytes += reclaimed;
+            onMainEvicted(evicted, reclaimed);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 开始录音前检查剩余空间，不足时先按配额清理
+     *
+     * @return 剩余空间是否足够
+     */
+    public boolean ensureFreeSpace() {
+        long minFreeBytes = mMinFreeBytes;
+        if (mCatalog.getDir().getUsableSpace() >= minFreeBytes) return true;
+        trim();
+        return mCatalog.getDir().getUsableSpace() >= minFreeBytes;
+    }
+
+    private void onMainEvicted(int count, long reclaimedBytes) {
+        Message.obtain(mainHandler, MSG_EVICTED, count, 0, new Object[]{this, reclaimedBytes}).sendToTarget();
+    }
+
+    /**
+     * 在清理线程重写索引，避免在播放或录音线程写文件
+     *
+     * @param catalog 索引
+     */
+    static void compactAsync(RecordingCatalog catalog) {
+        Handler handler = getTrimHandler();
+        handler.removeMessages(MSG_COMPACT, catalog);
+        Message.obtain(handler, MSG_COMPACT, catalog).sendToTarget();
+    }
+
+    private static synchronized Handler getTrimHandler() {
+        if (mTrimHandler == null) {
+            HandlerThread thread = new HandlerThread("RecordingQuota");
+            thread.start();
+            mTrimHandler = new Handler(thread.getLooper()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    if (msg.what == MSG_TRIM) {
+                        ((RecordingQuota) msg.obj).trim();
+                    } else if (msg.what == MSG_COMPACT) {
+                        ((RecordingCatalog) msg.obj).compactIfNeeded();
+                    }
+                }
+            };
+        }
+        return mTrimHandler;
+    }
+
+    private static final Comparator<Recording> BY_CREATE_TIME = new Comparator<Recording>() {
+        @Override
+        public int compare(Recording o1, Recording o2) {
+            return compareLong(o1.getCreateTime(), o2.getCreateTime());
+        }
+    };
+
+    private static final Comparator<Recording> BY_LAST_USE = new Comparator<Recording>() {
+        @Override
+        public int compare(Recording o1, Recording o2) {
+            return compareLong(Math.max(o1.getLastPlayTime(), o1.getCreateTime()),
+                    Math.max(o2.getLastPlayTime(), o2.getCreateTime()));
+        }
+    };
+
+    private static int compareLong(long l, long r) {
+        return l < r ? -1 : (l == r ? 0 : 1);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            if (msg.what != MSG_EVICTED) return;
+            Object[] args = (Object[]) msg.obj;
+            RecordingEvictListener listener = ((RecordingQuota) args[0]).mEvictListener;
+            if (listener != null) {
+                listener.onEvicted(msg.arg1, (Long) args[1]);
+            }
+        }
+    };
+}
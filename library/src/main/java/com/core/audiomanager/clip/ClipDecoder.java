@@ -0,0 +1,188 @@
+package com.core.audiomanager.clip;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import com.core.audiomanager.format.WavFormat;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把整个短音频解码到 short[]
+ * 16位 WAV 直接从映射的 data 区拷贝；其他格式经 MediaExtractor/MediaCodec 解码，按预估时长预分配数组
+ * Created by wangzhen on 2019/5/30.
+ */
+final class ClipDecoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    /**
+     * 解码出的采样，数组由分配器提供
+     */
+    static final class Result {
+        short[] samples;
+        int length;
+        int sampleRate;
+        int channelCount;
+    }
+
+    /**
+     * 采样数组分配器
+     */
+    interface Allocator {
+        short[] obtain(int minLength);
+
+        void recycle(short[] array);
+    }
+
+    private ClipDecoder() {
+    }
+
+    /**
+     * 解码
+     *
+     * @param path       文件
+     * @param maxUs      最长时长，超出时返回null
+     * @param estimateUs 预估时长，用于预分配，未知时为0
+     * @param allocator  分配器
+     * @return 超出时长返回null
+     */
+    static Result decode(String path, long maxUs, long estimateUs, Allocator allocator) throws IOException {
+        Result result = readWav(path, maxUs, allocator);
+        if (result != null) return result.samples != null ? result : null;
+        return decodeWithCodec(path, maxUs, estimateUs, allocator);
+    }
+
+    /**
+     * @return 不是16位 WAV 返回null，超出时长返回 samples 为null 的结果
+     */
+    private static Result readWav(String path, long maxUs, Allocator allocator) throws IOException {
+        FileInputStream in = new FileInputStream(path);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 64 * 1024));
+            if (size < 12 || header.get(0) != 'R' || header.get(8) != 'W') return null;
+            WavFormat wav = WavFormat.parse(header, size);
+            if (wav.getAudioFormat() != WavFormat.FORMAT_PCM || wav.getBitsPerSample() != 16) return null;
+            Result result = new Result();
+            result.sampleRate = wav.getSampleRate();
+            result.channelCount = wav.getChannelCount();
+            if (wav.getDurationUs() > maxUs) return result;
+            int length = (int) (wav.getDataSize() / 2);
+            ShortBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, wav.getDataOffset(), length * 2L)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            result.samples = allocator.obtain(length);
+            data.get(result.samples, 0, length);
+            result.length = length;
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Result decodeWithCodec(String path, long maxUs, long estimateUs, Allocator allocator)
+            throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        Result result = new Result();
+        boolean success = false;
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("no audio track: " + path);
+            result.sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            result.channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            //多预留一帧解码输出的余量，预估准确时不需要扩容
+            result.samples = allocator.obtain((int) (estimateUs * result.sampleRate / 1000000L)
+                    * result.channelCount + 4096);
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[index], 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    result.sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    result.channelCount = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer output = outputBuffers[index];
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        ShortBuffer samples = output.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+                        int count = samples.remaining();
+                        ensureCapacity(result, result.length + count, allocator);
+                        samples.get(result.samples, result.length, count);
+                        result.length += count;
+                        long durationUs = (long) (result.length / result.channelCount) * 1000000L / result.sampleRate;
+                        if (durationUs > maxUs) {
+                            codec.releaseOutputBuffer(index, false);
+                            return null;
+                        }
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            if (result.length == 0) throw new IOException("empty audio: " + path);
+            success = true;
+            return result;
+        } finally {
+            if (!success && result.samples != null) {
+                allocator.recycle(result.samples);
+            }
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (RuntimeException ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static void ensureCapacity(Result result, int length, Allocator allocator) {
+        if (length <= result.samples.length) return;
+        short[] larger = allocator.obtain(Math.max(length, result.samples.length * 3 / 2));
+        System.arraycopy(result.samples, 0, larger, 0, result.length);
+        allocator.recycle(result.samples);
+        result.samples = larger;
+    }
+}
@@ -0,0 +1,482 @@
+package com.core.audiomanager.clip;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.text.TextUtils;
+
+import com.core.audiomanager.AudioEngine;
+import com.core.audiomanager.AudioFocus;
+import com.core.audiomanager.callback.AudioCallback;
+import com.core.audiomanager.callback.AudioPlayStateListener;
+
+import java.io.File;
+
+/**
+ * 短音频播放器，解码结果取自 {@link PcmClipCache}，经 MODE_STATIC 的 AudioTrack 播放
+ * 同一音频再次播放只需重置播放位置，seek 直接设置播放帧位置，区间循环由 AudioTrack 的循环点完成，都不经过解码
+ * 超过缓存最长时长的音频请使用 {@link com.core.audiomanager.PlaySession}
+ * Created by wangzhen on 2019/5/30.
+ */
+public class ClipPlayer implements AudioCallback.PlayerCallback {
+
+    private static final int MSG_ERROR = 0x1;
+    private static final int MSG_COMPLETE = 0x2;
+    private static final int MSG_PREPARED = 0x3;
+
+    //工作线程指令
+    private static final int CMD_START_PLAY = 0x10;
+    private static final int CMD_PAUSE_PLAY = 0x11;
+    private static final int CMD_RESUME_PLAY = 0x12;
+    private static final int CMD_STOP_PLAY = 0x13;
+    private static final int CMD_RANGE_PLAY = 0x14;
+    private static final int CMD_SEEK = 0x15;
+    private static final int CMD_RELEASE = 0x16;
+    private static final int CMD_FOCUS_PAUSE = 0x17;
+    private static final int CMD_FOCUS_RESUME = 0x18;
+
+    //播放状态
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_PAUSED = 2;
+
+    private static Looper sLooper;
+
+    private final Context context;
+    private final Handler workHandler;
+    private final PcmClipCache mCache;
+    private volatile AudioPlayStateListener mPlayStateListener;
+    private volatile boolean isLooping;
+    private volatile int mState = STATE_IDLE;
+    private volatile AudioTrack mTrack;
+    //当前载入 AudioTrack 的音频
+    private String mClipKey;
+    private volatile String mAudioUrl;
+    private volatile int mSampleRate;
+    private volatile int mFrameCount;
+    private final AudioFocus mAudioFocus;
+    //是否因临时失去焦点而暂停，重新获得焦点后自动恢复
+    private boolean isPausedByFocus;
+
+    public ClipPlayer(Context ctx) {
+        if (ctx == null)
+            throw new NullPointerException("Context不能为null");
+        context = ctx.getApplicationContext();
+        mCache = PcmClipCache.get();
+        mAudioFocus = AudioEngine.get().getAudioFocus();
+        workHandler = new WorkHandler(getLooper());
+    }
+
+    /**
+     * 所有 ClipPlayer 共享的工作线程
+     */
+    private static synchronized Looper getLooper() {
+        if (sLooper == null) {
+            HandlerThread thread = new HandlerThread("ClipPlayer");
+            thread.start();
+            sLooper = thread.getLooper();
+        }
+        return sLooper;
+    }
+
+    /**
+     * 预先解码到缓存，不影响当前播放
+     *
+     * @param path 本地文件
+     */
+    public void preload(final String path) {
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mCache.release(mCache.acquire(path));
+                } catch (Exception ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void startPlay(String path) {
+        mAudioUrl = path;
+        Message.obtain(workHandler, CMD_START_PLAY, path).sendToTarget();
+    }
+
+    @Override
+    public void pausePlay() {
+        workHandler.sendEmptyMessage(CMD_PAUSE_PLAY);
+    }
+
+    @Override
+    public void resumePlay() {
+        workHandler.sendEmptyMessage(CMD_RESUME_PLAY);
+    }
+
+    @Override
+    public void stopPlay() {
+        workHandler.sendEmptyMessage(CMD_STOP_PLAY);
+    }
+
+    /**
+     * 在区间内循环播放当前音频，需已调用 startPlay
+     *
+     * @param leftTime  start ms
+     * @param rightTime end ms
+     */
+    public void rangePlay(long leftTime, long rightTime) {
+        Message.obtain(workHandler, CMD_RANGE_PLAY, new long[]{leftTime, rightTime}).sendToTarget();
+    }
+
+    /**
+     * 跳到指定位置，保持当前播放或暂停状态
+     *
+     * @param position ms
+     */
+    public void seekTo(long position) {
+        workHandler.removeMessages(CMD_SEEK);
+        Message.obtain(workHandler, CMD_SEEK, position).sendToTarget();
+    }
+
+    /**
+     * 停止播放并释放 AudioTrack 和监听
+     */
+    public void release() {
+        mPlayStateListener = null;
+        workHandler.sendEmptyMessage(CMD_RELEASE);
+    }
+
+    public boolean isAudioPlaying() {
+        return mState == STATE_STARTED;
+    }
+
+    public String getAudioUrl() {
+        return mAudioUrl;
+    }
+
+    /**
+     * 当前播放位置
+     *
+     * @return ms
+     */
+    public long getCurrentPosition() {
+        AudioTrack track = mTrack;
+        int sampleRate = mSampleRate;
+        if (track == null || sampleRate <= 0) return 0;
+        return (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) * 1000 / sampleRate;
+    }
+
+    /**
+     * 当前音频时长
+     *
+     * @return ms
+     */
+    public long getDuration() {
+        int sampleRate = mSampleRate;
+        return sampleRate > 0 ? mFrameCount * 1000L / sampleRate : 0;
+    }
+
+    /**
+     * 设置循环模式
+     *
+     * @param looping true / false
+     */
+    public void setLooping(boolean looping) {
+        isLooping = looping;
+    }
+
+    public void setPlayStateListener(AudioPlayStateListener listener) {
+        this.mPlayStateListener = listener;
+    }
+
+    /**
+     * 工作线程播放，已载入同一音频时从头开始，否则从缓存取出写入新的 AudioTrack
+     */
+    private void innerStartPlay(String path) {
+        if (TextUtils.isEmpty(path)) {
+            onMainError("invalid music url");
+            return;
+        }
+        File file = new File(path);
+        String key = PcmClipCache.keyOf(file);
+        try {
+            if (mTrack == null || !key.equals(mClipKey)) {
+                if (!load(path)) return;
+                mClipKey = key;
+            } else {
+                mTrack.stop();
+                mTrack.reloadStaticData();
+            }
+            onMainPrepared();
+            mTrack.setLoopPoints(0, isLooping ? mFrameCount : 0, isLooping ? -1 : 0);
+            mTrack.setNotificationMarkerPosition(isLooping ? 0 : mFrameCount);
+            innerStart();
+        } catch (IllegalStateException e) {
+            innerStopPlay();
+            onMainError(e.getMessage());
+        }
+    }
+
+    /**
+     * 把缓存中的音频写入新建的 AudioTrack
+     *
+     * @return 是否成功
+     */
+    private boolean load(String path) {
+        releaseTrack();
+        PcmClip clip;
+        try {
+            clip = mCache.acquire(path);
+        } catch (Exception e) {
+            onMainError(e.getMessage());
+            return false;
+        }
+        if (clip == null) {
+            onMainError("audio not found or too long for clip cache");
+            return false;
+        }
+        try {
+            int channelMask = clip.getChannelCount() == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+            AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, clip.getSampleRate(), channelMask,
+                    AudioFormat.ENCODING_PCM_16BIT, clip.length * 2, AudioTrack.MODE_STATIC);
+            //静态模式下写入后状态才变为 STATE_INITIALIZED
+            int written = track.write(clip.samples, 0, clip.length);
+            if (written < clip.length || track.getState() != AudioTrack.STATE_INITIALIZED) {
+                track.release();
+                onMainError("AudioTrack init failed");
+                return false;
+            }
+            track.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener() {
+                @Override
+                public void onMarkerReached(AudioTrack t) {
+                    if (t == mTrack && mState == STATE_STARTED) {
+                        onMainComplete();
+                        innerStopPlay();
+                    }
+                }
+
+                @Override
+                public void onPeriodicNotification(AudioTrack t) {
+                }
+            }, workHandler);
+            mTrack = track;
+            mSampleRate = clip.getSampleRate();
+            mFrameCount = clip.getFrameCount();
+            return true;
+        } finally {
+            //数据已拷入 AudioTrack
+            mCache.release(clip);
+        }
+    }
+
+    private void innerStart() {
+        mTrack.play();
+        mState = STATE_STARTED;
+        isPausedByFocus = false;
+        obtainFocus();
+    }
+
+    private void innerPausePlay() {
+        if (mTrack != null && mState == STATE_STARTED) {
+            mTrack.pause();
+            mState = STATE_PAUSED;
+            releaseFocus();
+        } else if (isPausedByFocus) {
+            //失去焦点期间主动暂停，重新获得焦点后不再恢复
+            releaseFocus();
+        }
+    }
+
+    /**
+     * 临时失去焦点，暂停但保留焦点持有，重新获得焦点后恢复
+     */
+    private void innerFocusPause() {
+        if (mTrack != null && mState == STATE_STARTED) {
+            mTrack.pause();
+            mState = STATE_PAUSED;
+            isPausedByFocus = true;
+        }
+    }
+
+    private void innerFocusResume() {
+        if (isPausedByFocus) {
+            innerResumePlay();
+        }
+    }
+
+    private void innerResumePlay() {
+        if (mTrack != null && mState == STATE_PAUSED) {
+            innerStart();
+        }
+    }
+
+    /**
+     * 停止但保留 AudioTrack，再次播放同一音频时不需要重新写入
+     */
+    private void innerStopPlay() {
+        if (mTrack != null && mState != STATE_IDLE) {
+            try {
+                mTrack.pause();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+        mState = STATE_IDLE;
+        releaseFocus();
+    }
+
+    private void innerRangePlay(long leftTime, long rightTime) {
+        if (mTrack == null) return;
+        int start = (int) Math.max(0, Math.min(mFrameCount, leftTime * mSampleRate / 1000));
+        int end = (int) Math.max(0, Math.min(mFrameCount, rightTime * mSampleRate / 1000));
+        if (end <= start) return;
+        try {
+            mTrack.pause();
+            mTrack.setNotificationMarkerPosition(0);
+            mTrack.setLoopPoints(start, end, -1);
+            mTrack.setPlaybackHeadPosition(start);
+            innerStart();
+        } catch (IllegalStateException e) {
+            onMainError(e.getMessage());
+        }
+    }
+
+    private void innerSeek(long position) {
+        if (mTrack == null || mState == STATE_IDLE) return;
+        int frame = (int) Math.max(0, Math.min(mFrameCount, position * mSampleRate / 1000));
+        try {
+            mTrack.pause();
+            mTrack.setPlaybackHeadPosition(frame);
+            if (mState == STATE_STARTED) {
+                mTrack.play();
+            }
+        } catch (IllegalStateException e) {
+            onMainError(e.getMessage());
+        }
+    }
+
+    private void releaseTrack() {
+        if (mTrack != null) {
+            mTrack.release();
+            mTrack = null;
+            mClipKey = null;
+            mSampleRate = 0;
+            mFrameCount = 0;
+        }
+    }
+
+    /**
+     * 加入共享的音频焦点
+     */
+    private void obtainFocus() {
+        mAudioFocus.request(context, focusChangeCallback);
+    }
+
+    /**
+     * 退出共享的音频焦点
+     */
+    private void releaseFocus() {
+        isPausedByFocus = false;
+        mAudioFocus.abandon(focusChangeCallback);
+    }
+
+    private final AudioManager.OnAudioFocusChangeListener focusChangeCallback = new AudioManager.OnAudioFocusChangeListener() {
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            switch (focusChange) {
+                case AudioManager.AUDIOFOCUS_LOSS:
+                    onMainComplete();
+                    stopPlay();
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+                    workHandler.sendEmptyMessage(CMD_FOCUS_PAUSE);
+                    break;
+                case AudioManager.AUDIOFOCUS_GAIN:
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT:
+                case AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK:
+                    workHandler.sendEmptyMessage(CMD_FOCUS_RESUME);
+                    break;
+            }
+        }
+    };
+
+    private void onMainError(String error) {
+        Message.obtain(mainHandler, MSG_ERROR, error).sendToTarget();
+    }
+
+    private void onMainPrepared() {
+        mainHandler.sendEmptyMessage(MSG_PREPARED);
+    }
+
+    private void onMainComplete() {
+        mainHandler.sendEmptyMessage(MSG_COMPLETE);
+    }
+
+    private Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            AudioPlayStateListener listener = mPlayStateListener;
+            if (listener == null) return;
+            switch (msg.what) {
+                case MSG_ERROR:
+                    String error = msg.obj != null ? String.valueOf(msg.obj) : "";
+                    listener.onError(error);
+                    break;
+                case MSG_COMPLETE:
+                    listener.onComplete();
+                    break;
+                case MSG_PREPARED:
+                    listener.onPrepared();
+                    break;
+            }
+        }
+    };
+
+    /**
+     * 工作线程，AudioTrack 调用均在此串行执行
+     */
+    private class WorkHandler extends Handler {
+
+        WorkHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_START_PLAY:
+                    innerStartPlay((String) msg.obj);
+                    break;
+                case CMD_PAUSE_PLAY:
+                    innerPausePlay();
+                    break;
+                case CMD_RESUME_PLAY:
+                    innerResumePlay();
+                    break;
+                case CMD_STOP_PLAY:
+                    innerStopPlay();
+                    break;
+                case CMD_RANGE_PLAY:
+                    long[] range = (long[]) msg.obj;
+                    innerRangePlay(range[0], range[1]);
+                    break;
+                case CMD_SEEK:
+                    innerSeek((Long) msg.obj);
+                    break;
+                case CMD_RELEASE:
+                    innerStopPlay();
+                    releaseTrack();
+                    break;
+                case CMD_FOCUS_PAUSE:
+                    innerFocusPause();
+                    break;
+                case CMD_FOCUS_RESUME:
+                    innerFocusResume();
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.core.audiomanager.clip;
+
+/**
+ * 解码后缓存在内存中的 16位交错 PCM
+ * 采样数组来自 {@link PcmClipCache} 的复用池，长度可能大于有效采样数
+ * Created by wangzhen on 2019/5/30.
+ */
+public final class PcmClip {
+
+    final String key;
+    final short[] samples;
+    final int length;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    //正在使用的次数，被淘汰后归零时采样数组回到复用池
+    int refCount;
+    boolean isEvicted;
+
+    PcmClip(String key, short[] samples, int length, int sampleRate, int channelCount) {
+        this.key = key;
+        this.samples = samples;
+        this.length = length;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * 帧数
+     */
+    public int getFrameCount() {
+        return length / mChannelCount;
+    }
+
+    /**
+     * 时长
+     *
+     * @return ms
+     */
+    public long getDuration() {
+        return getFrameCount() * 1000L / mSampleRate;
+    }
+
+    /**
+     * 占用的内存
+     *
+     * @return 字节数
+     */
+    public long getByteSize() {
+        return samples.length * 2L;
+    }
+}
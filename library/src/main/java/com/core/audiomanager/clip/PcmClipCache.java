@@ -0,0 +1,226 @@
+package com.core.audiomanager.clip;
+
+import com.core.audiomanager.format.AudioInfo;
+import com.core.audiomanager.format.AudioProbe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解码后的短音频 PCM 缓存，按总字节数限制，超出时淘汰最久未使用的
+ * 结果按 路径+修改时间+大小 缓存，文件变化后重新解码；淘汰的采样数组放入复用池，下次解码时优先复用
+ * 通过 {@link #acquire(String)} 取得的片段在 {@link #release(PcmClip)} 之前不会被复用
+ * Created by wangzhen on 2019/5/30.
+ */
+public class PcmClipCache implements ClipDecoder.Allocator {
+
+    //默认缓存大小
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    //默认可缓存的最长时长 ms
+    private static final long DEFAULT_MAX_CLIP_MS = 60 * 1000;
+    //复用池占缓存大小的比例
+    private static final int POOL_RATIO = 4;
+
+    private static volatile PcmClipCache mInstance;
+    private final LinkedHashMap<String, PcmClip> mClips = new LinkedHashMap<>(16, 0.75f, true);
+    //复用池，按长度升序
+    private final ArrayList<short[]> mPool = new ArrayList<>();
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private volatile long mMaxClipMs = DEFAULT_MAX_CLIP_MS;
+    private long mBytes;
+    private long mPoolBytes;
+    private long mHitCount;
+    private long mMissCount;
+
+    public static PcmClipCache get() {
+        if (mInstance == null) {
+            synchronized (PcmClipCache.class) {
+                if (mInstance == null) {
+                    mInstance = new PcmClipCache();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private PcmClipCache() {
+    }
+
+    /**
+     * 设置缓存大小
+     *
+     * @param maxBytes 字节数
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * 设置可缓存的最长时长，更长的音频不缓存
+     *
+     * @param maxMs ms
+     */
+    public void setMaxClipDuration(long maxMs) {
+        mMaxClipMs = maxMs;
+    }
+
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 清空缓存和复用池，正在使用的片段释放后不再复用
+     */
+    public synchronized void evictAll() {
+        for (PcmClip clip : mClips.values()) {
+            clip.isEvicted = true;
+        }
+        mClips.clear();
+        mBytes = 0;
+        mPool.clear();
+        mPoolBytes = 0;
+    }
+
+    /**
+     * 取得解码后的片段，未缓存时在调用线程解码，用完后调用 {@link #release(PcmClip)}
+     *
+     * @param path 本地文件
+     * @return 文件不存在或超过最长时长时返回null
+     */
+    public PcmClip acquire(String path) throws IOException {
+        File file = new File(path);
+        if (!file.isFile()) return null;
+        String key = keyOf(file);
+        synchronized (this) {
+            PcmClip clip = mClips.get(key);
+            if (clip != null) {
+                mHitCount++;
+                clip.refCount++;
+                return clip;
+            }
+            mMissCount++;
+        }
+        long maxUs = mMaxClipMs * 1000;
+        AudioInfo info = AudioProbe.get().probe(path);
+        long estimateUs = info != null ? info.getDurationUs() : 0;
+        if (estimateUs > maxUs) return null;
+        ClipDecoder.Result result = ClipDecoder.decode(path, maxUs, estimateUs, this);
+        if (result == null) return null;
+        PcmClip clip = new PcmClip(key, result.samples, result.length, result.sampleRate, result.channelCount);
+        synchronized (this) {
+            clip.refCount++;
+            //同时解码同一文件时保留先放入的
+            PcmClip existing = mClips.get(key);
+            if (existing != null) {
+                existing.refCount++;
+                release(clip);
+                return existing;
+            }
+            mClips.put(key, clip);
+            mBytes += clip.getByteSize();
+            trimToSize();
+        }
+        return clip;
+    }
+
+    /**
+     * 缓存键，文件修改后变化
+     */
+    static String keyOf(File file) {
+        return file.getPath() + '|' + file.lastModified() + '|' + file.length();
+    }
+
+    /**
+     * 归还片段
+     *
+     * @param clip 片段
+     */
+    public synchronized void release(PcmClip clip) {
+        if (clip == null || clip.refCount <= 0) return;
+        clip.refCount--;
+        if (clip.refCount == 0 && (clip.isEvicted || mClips.get(clip.key) != clip)) {
+            recycle(clip.samples);
+        }
+    }
+
+    /**
+     * 从缓存中移除文件，文件被修改或删除时调用
+     *
+     * @param path 文件
+     */
+    public synchronized void remove(String path) {
+        String prefix = new File(path).getPath() + '|';
+        Iterator<Map.Entry<String, PcmClip>> it = mClips.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PcmClip> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                it.remove();
+                evicted(entry.getValue());
+            }
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<PcmClip> it = mClips.values().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            PcmClip clip = it.next();
+            it.remove();
+            evicted(clip);
+        }
+    }
+
+    private void evicted(PcmClip clip) {
+        mBytes -= clip.getByteSize();
+        clip.isEvicted = true;
+        if (clip.refCount == 0) {
+            recycle(clip.samples);
+        }
+    }
+
+    /**
+     * 从复用池取不小于 minLength 且不超过其两倍的数组，没有时新建
+     */
+    @Override
+    public synchronized short[] obtain(int minLength) {
+        for (int i = 0; i < mPool.size(); i++) {
+            short[] array = mPool.get(i);
+            if (array.length >= minLength) {
+                if (array.length > minLength * 2L) break;
+                mPool.remove(i);
+                mPoolBytes -= array.length * 2L;
+                return array;
+            }
+        }
+        return new short[minLength];
+    }
+
+    @Override
+    public synchronized void recycle(short[] array) {
+        long bytes = array.length * 2L;
+        long limit = mMaxBytes / POOL_RATIO;
+        if (bytes > limit) return;
+        //池满时丢弃最小的
+        while (mPoolBytes + bytes > limit && !mPool.isEmpty()) {
+            mPoolBytes -= mPool.remove(0).length * 2L;
+        }
+        int index = 0;
+        while (index < mPool.size() && mPool.get(index).length < array.length) {
+            index++;
+        }
+        mPool.add(index, array);
+        mPoolBytes += bytes;
+    }
+}
@@ -0,0 +1,144 @@
+package com.core.audiomanager.edit;
+
+import com.core.audiomanager.format.AdtsFormat;
+import com.core.audiomanager.format.AmrFormat;
+import com.core.audiomanager.format.WavFormat;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 同格式音频按帧拼接，不重新编码
+ * AMR 跳过后续文件的文件头，ADTS 直接首尾相接，WAV 拼接数据部分后更新文件头中的长度
+ * 数据经 FileChannel.transferTo 在内核中拷贝，目标文件只追加写
+ * Created by wangzhen on 2019/5/20.
+ */
+public final class AudioJoiner {
+
+    //解析文件头时映射的大小
+    private static final int HEADER_MAP_SIZE = 64 * 1024;
+
+    private static final int TYPE_AMR = 1;
+    private static final int TYPE_ADTS = 2;
+    private static final int TYPE_WAV = 3;
+
+    private AudioJoiner() {
+    }
+
+    /**
+     * 拼接为新文件
+     *
+     * @param dst   目标文件，已存在时覆盖
+     * @param parts 按顺序拼接的文件，格式相同
+     * @throws IOException 读写失败或格式不支持
+     */
+    public static void join(String dst, String[] parts) throws IOException {
+        if (parts.length == 0) throw new IOException("nothing to join");
+        RandomAccessFile out = new RandomAccessFile(dst, "rw");
+        try {
+            out.setLength(0);
+            FileChannel target = out.getChannel();
+            FileInputStream in = new FileInputStream(parts[0]);
+            try {
+                FileChannel channel = in.getChannel();
+                transfer(channel, 0, channel.size(), target);
+            } finally {
+                in.close();
+            }
+            appendParts(out, parts, 1);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 追加到已有文件末尾
+     *
+     * @param dst   目标文件
+     * @param parts 按顺序追加的文件，格式与目标文件相同
+     * @throws IOException 读写失败或格式不支持
+     */
+    public static void append(String dst, String[] parts) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(dst, "rw");
+        try {
+            appendParts(out, parts, 0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void appendParts(RandomAccessFile out, String[] parts, int from) throws IOException {
+        FileChannel target = out.getChannel();
+        ByteBuffer header = mapHeader(target);
+        int type = typeOf(header);
+        WavFormat wav = null;
+        long end = target.size();
+        if (type == TYPE_WAV) {
+            wav = WavFormat.parse(header, end);
+            //data 之后的 chunk 被丢弃
+            end = wav.getDataOffset() + wav.getDataSize();
+        }
+        target.position(end);
+        for (int i = from; i < parts.length; i++) {
+            FileInputStream in = new FileInputStream(parts[i]);
+            try {
+                FileChannel channel = in.getChannel();
+                long size = channel.size();
+                if (size == 0) continue;
+                ByteBuffer partHeader = mapHeader(channel);
+                if (typeOf(partHeader) != type) throw new IOException("format mismatch: " + parts[i]);
+                long offset = 0;
+                long length = size;
+                if (type == TYPE_AMR) {
+                    offset = AmrFormat.headerSize(partHeader);
+                    length = size - offset;
+                } else if (type == TYPE_WAV) {
+                    WavFormat part = WavFormat.parse(partHeader, size);
+                    if (part.getBlockAlign() != wav.getBlockAlign() || part.getSampleRate() != wav.getSampleRate())
+                        throw new IOException("wav format mismatch: " + parts[i]);
+                    offset = part.getDataOffset();
+                    length = part.getDataSize();
+                }
+                transfer(channel, offset, length, target);
+            } finally {
+                in.close();
+            }
+        }
+        long total = target.position();
+        target.truncate(total);
+        if (type == TYPE_WAV) {
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            size.putInt(0, (int) Math.min(0xFFFFFFFFL, total - 8));
+            target.write(size, 4);
+            size.clear();
+            size.putInt(0, (int) Math.min(0xFFFFFFFFL, total - wav.getDataOffset()));
+            target.write(size, wav.getDataOffset() - 4);
+        }
+    }
+
+    private static ByteBuffer mapHeader(FileChannel channel) throws IOException {
+        long size = Math.min(channel.size(), HEADER_MAP_SIZE);
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private static int typeOf(ByteBuffer header) throws IOException {
+        if (AmrFormat.headerSize(header) > 0) return TYPE_AMR;
+        if (header.limit() >= 12 && header.get(0) == 'R' && header.get(8) == 'W') return TYPE_WAV;
+        if (AdtsFormat.isFrame(header, 0)) return TYPE_ADTS;
+        throw new IOException("unsupported format");
+    }
+
+    private static void transfer(FileChannel src, long offset, long length, FileChannel target) throws IOException {
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            long transferred = src.transferTo(position, end - position, target);
+            if (transferred <= 0) break;
+            position += transferred;
+        }
+    }
+}
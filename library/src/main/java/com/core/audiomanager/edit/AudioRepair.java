@@ -0,0 +1,78 @@
+package com.core.audiomanager.edit;
+
+import com.core.audiomanager.format.AdtsFormat;
+import com.core.audiomanager.format.AmrFormat;
+import com.core.audiomanager.format.WavFormat;
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 修复异常中断的录音文件
+ * AMR/ADTS 截掉末尾不完整的帧，WAV 按实际数据长度补全文件头
+ * Created by wangzhen on 2019/5/22.
+ */
+public final class AudioRepair {
+
+    private AudioRepair() {
+    }
+
+    /**
+     * 修复文件
+     *
+     * @param path 文件路径
+     * @return 修复后是否包含可播放的数据
+     */
+    public static boolean repair(String path) {
+        if (!new File(path).exists()) return false;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(path, "rw");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) return false;
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long end;
+            if (AmrFormat.headerSize(map) > 0) {
+                end = AmrFormat.offsetOfFrame(map, AmrFormat.countFrames(map));
+                if (end <= AmrFormat.headerSize(map)) return false;
+            } else if (size >= 12 && map.get(0) == 'R' && map.get(8) == 'W') {
+                WavFormat wav = WavFormat.parse(map, size);
+                if (wav.getDataSize() == 0) return false;
+                end = wav.getDataOffset() + wav.getDataSize();
+                ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                value.putInt(0, (int) Math.min(0xFFFFFFFFL, end - 8));
+                channel.write(value, 4);
+                value.clear();
+                value.putInt(0, (int) Math.min(0xFFFFFFFFL, wav.getDataSize()));
+                channel.write(value, wav.getDataOffset() - 4);
+            } else if (AdtsFormat.isFrame(map, 0)) {
+                int position = 0;
+                while (AdtsFormat.isFrame(map, position)) {
+                    int length = AdtsFormat.frameLength(map, position);
+                    if (length < 7 || position + length > size) break;
+                    position += length;
+                }
+                if (position == 0) return false;
+                end = position;
+            } else {
+                return false;
+            }
+            if (end < size) {
+                channel.truncate(end);
+            }
+            channel.force(false);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            IoUtil.closeQuietly(raf);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.core.audiomanager.edit;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+
+import com.core.audiomanager.callback.AudioTrimListener;
+import com.core.audiomanager.encode.WavHeader;
+import com.core.audiomanager.format.AdtsFormat;
+import com.core.audiomanager.format.AmrFormat;
+import com.core.audiomanager.format.WavFormat;
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 无损裁剪，不重新编码
+ * AMR/AAC(ADTS) 按帧对齐复制，WAV 按采样帧对齐复制，数据经 FileChannel.transferTo 在内核中拷贝
+ * 裁剪在单独的线程中排队执行，进度和结果在主线程回调
+ * Created by wangzhen on 2019/5/6.
+ */
+public class AudioTrimmer {
+
+    private static final int MSG_PROGRESS = 0x1;
+    private static final int MSG_COMPLETE = 0x2;
+    private static final int MSG_ERROR = 0x3;
+
+    //每次 transferTo 的字节数，完成一块回调一次进度
+    private static final long CHUNK_SIZE = 1024 * 1024;
+
+    private static volatile AudioTrimmer mInstance;
+    private final Handler workHandler;
+
+    public static AudioTrimmer get() {
+        if (mInstance == null) {
+            synchronized (AudioTrimmer.class) {
+                if (mInstance == null) {
+                    mInstance = new AudioTrimmer();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private AudioTrimmer() {
+        HandlerThread thread = new HandlerThread("AudioTrimmer");
+        thread.start();
+        workHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 裁剪 [startMs, endMs] 到新文件
+     *
+     * @param srcPath  源文件，支持 .amr/.aac(ADTS)/.wav
+     * @param dstPath  目标文件，已存在时覆盖
+     * @param startMs  起点
+     * @param endMs    终点
+     * @param listener 回调
+     * @return 任务，可取消
+     */
+    public TrimTask trim(String srcPath, String dstPath, long startMs, long endMs, AudioTrimListener listener) {
+        final TrimTask task = new TrimTask(srcPath, dstPath, startMs, endMs, listener);
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * 裁剪任务
+     */
+    public static class TrimTask {
+
+        private final String mSrcPath;
+        private final String mDstPath;
+        private final long mStartMs;
+        private final long mEndMs;
+        private final AudioTrimListener mListener;
+        private volatile boolean isCancelled;
+        private int mLastProgress = -1;
+
+        TrimTask(String srcPath, String dstPath, long startMs, long endMs, AudioTrimListener listener) {
+            mSrcPath = srcPath;
+            mDstPath = dstPath;
+            mStartMs = startMs;
+            mEndMs = endMs;
+            mListener = listener;
+        }
+
+        /**
+         * 取消，未完成的目标文件会被删除
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public String getDstPath() {
+            return mDstPath;
+        }
+
+        private void run() {
+            File src = new File(mSrcPath);
+            File dst = new File(mDstPath);
+            File temp = new File(mDstPath + ".tmp");
+            if (isCancelled) {
+                onMainError("cancelled");
+                return;
+            }
+            if (!src.isFile()) {
+                onMainError("file does not exist");
+                return;
+            }
+            if (mStartMs < 0 || mEndMs <= mStartMs) {
+                onMainError("invalid range " + mStartMs + "-" + mEndMs);
+                return;
+            }
+            FileInputStream in = null;
+            RandomAccessFile out = null;
+            boolean success = false;
+            try {
+                in = new FileInputStream(src);
+                out = new RandomAccessFile(temp, "rw");
+                out.setLength(0);
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                MappedByteBuffer map = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
+                if (AmrFormat.headerSize(map) > 0) {
+                    trimAmr(map, inChannel, outChannel);
+                } else if (AdtsFormat.isFrame(map, 0)) {
+                    trimAdts(map, inChannel, outChannel);
+                } else {
+                    trimWav(map, inChannel, outChannel);
+                }
+                outChannel.force(false);
+                success = !isCancelled;
+            } catch (IOException e) {
+                onMainError(e.getMessage());
+                return;
+            } finally {
+                IoUtil.closeQuietly(in);
+                IoUtil.closeQuietly(out);
+                if (!success) {
+                    temp.delete();
+                }
+            }
+            if (isCancelled) {
+                onMainError("cancelled");
+            } else if (temp.renameTo(dst) || (dst.delete() && temp.renameTo(dst))) {
+                onMainProgress(100);
+                onMainComplete(dst.getAbsolutePath());
+            } else {
+                temp.delete();
+                onMainError("rename failed");
+            }
+        }
+
+        /**
+         * 复制文件头和起止帧之间的数据
+         */
+        private void trimAmr(ByteBuffer map, FileChannel in, FileChannel out) throws IOException {
+            int headerSize = AmrFormat.headerSize(map);
+            long startFrame = mStartMs / AmrFormat.FRAME_DURATION;
+            long endFrame = (mEndMs + AmrFormat.FRAME_DURATION - 1) / AmrFormat.FRAME_DURATION;
+            int start = AmrFormat.offsetOfFrame(map, startFrame);
+            int end = AmrFormat.offsetOfFrame(map, endFrame);
+            transfer(in, 0, headerSize, out, false);
+            transfer(in, start, end - start, out, true);
+        }
+
+        private void trimAdts(ByteBuffer map, FileChannel in, FileChannel out) throws IOException {
+            int sampleRate = AdtsFormat.sampleRate(map, 0);
+            if (sampleRate == 0) throw new IOException("invalid adts header");
+            long startSample = mStartMs * sampleRate / 1000;
+            long endSample = mEndMs * sampleRate / 1000;
+            //终点向上取整到帧边界
+            long frameSamples = AdtsFormat.samplesInFrame(map, 0);
+            endSample = (endSample + frameSamples - 1) / frameSamples * frameSamples;
+            int start = AdtsFormat.offsetOfSample(map, startSample);
+            int end = AdtsFormat.offsetOfSample(map, endSample);
+            transfer(in, start, end - start, out, true);
+        }
+
+        /**
+         * 写入新的文件头，data 按采样帧对齐复制
+         */
+        private void trimWav(ByteBuffer map, FileChannel in, FileChannel out) throws IOException {
+            WavFormat format = WavFormat.parse(map, in.size());
+            if (format.getBlockAlign() == 0) throw new IOException("invalid wav header");
+            long start = format.offsetOfTime(mStartMs * 1000);
+            long end = format.offsetOfTime(mEndMs * 1000);
+            ByteBuffer header = WavHeader.create(format.getSampleRate(), format.getChannelCount(),
+                    format.getBitsPerSample(), end - start);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            transfer(in, format.getDataOffset() + start, end - start, out, true);
+        }
+
+        /**
+         * 分块 transferTo，每块回调一次进度
+         *
+         * @param reportProgress 是否计入进度
+         */
+        private void transfer(FileChannel in, long position, long count, FileChannel out,
+                              boolean reportProgress) throws IOException {
+            long done = 0;
+            while (done < count && !isCancelled) {
+                long chunk = Math.min(CHUNK_SIZE, count - done);
+                long transferred = in.transferTo(position + done, chunk, out);
+                if (transferred <= 0) throw new IOException("transfer failed");
+                done += transferred;
+                if (reportProgress) {
+                    onMainProgress((int) (done * 99 / count));
+                }
+            }
+        }
+
+        private void onMainProgress(int progress) {
+            if (progress == mLastProgress) return;
+            mLastProgress = progress;
+            Message.obtain(mainHandler, MSG_PROGRESS, progress, 0, this).sendToTarget();
+        }
+
+        private void onMainComplete(String path) {
+            Message.obtain(mainHandler, MSG_COMPLETE, new Object[]{this, path}).sendToTarget();
+        }
+
+        private void onMainError(String error) {
+            Message.obtain(mainHandler, MSG_ERROR, new Object[]{this, error}).sendToTarget();
+        }
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_PROGRESS: {
+                    TrimTask task = (TrimTask) msg.obj;
+                    if (task.mListener != null) {
+                        task.mListener.onProgress(msg.arg1);
+                    }
+                    break;
+                }
+                case MSG_COMPLETE: {
+                    Object[] args = (Object[]) msg.obj;
+                    TrimTask task = (TrimTask) args[0];
+                    if (task.mListener != null) {
+                        task.mListener.onComplete((String) args[1]);
+                    }
+                    break;
+                }
+                case MSG_ERROR: {
+                    Object[] args = (Object[]) msg.obj;
+                    TrimTask task = (TrimTask) args[0];
+                    if (task.mListener != null) {
+                        String error = args[1] != null ? String.valueOf(args[1]) : "";
+                        task.mListener.onError(error);
+                    }
+                    break;
+                }
+            }
+        }
+    };
+}
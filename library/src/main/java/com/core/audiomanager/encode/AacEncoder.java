@@ -0,0 +1,163 @@
+package com.core.audiomanager.encode;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * MediaCodec AAC-LC 编码，输出带 ADTS 头的 .aac 裸流
+ * Created by wangzhen on 2019/4/16.
+ */
+class AacEncoder implements PcmEncoder {
+
+    //dequeue 超时 us
+    private static final long TIMEOUT_US = 10000;
+    //结束时等待输出的最长次数
+    private static final int MAX_EOS_TRIES = 100;
+    private static final int ADTS_SIZE = 7;
+    private static final int[] SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000,
+            24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private final int mBitRate;
+    private final byte[] mAdts = new byte[ADTS_SIZE];
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+    private MediaCodec mCodec;
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+    private ChannelWriter mWriter;
+    private int mSampleRate;
+    private int mChannelCount;
+    private long mQueuedSamples;
+
+    AacEncoder(int bitRate) {
+        mBitRate = bitRate;
+    }
+
+    @Override
+    public void start(int sampleRate, int channelCount, ChannelWriter writer) throws IOException {
+        int freqIndex = indexOfSampleRate(sampleRate);
+        if (freqIndex < 0) {
+            throw new IOException("unsupported sample rate " + sampleRate);
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mWriter = writer;
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channelCount);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, mBitRate);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 16 * 1024);
+        mCodec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+        //ADTS 头中不随帧变化的部分
+        int profile = 2;
+        mAdts[0] = (byte) 0xFF;
+        mAdts[1] = (byte) 0xF1;
+        mAdts[2] = (byte) (((profile - 1) << 6) | (freqIndex << 2) | (channelCount >> 2));
+        mAdts[6] = (byte) 0xFC;
+    }
+
+    @Override
+    public void encode(short[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+            if (index < 0) {
+                drain(false);
+                continue;
+            }
+            ByteBuffer input = mInputBuffers[index];
+            input.clear();
+            input.order(ByteOrder.nativeOrder());
+            int count = Math.min(end - offset, input.remaining() >> 1);
+            for (int i = 0; i < count; i++) {
+                input.putShort(buffer[offset++]);
+            }
+            long ptsUs = mQueuedSamples / mChannelCount * 1000000L / mSampleRate;
+            mCodec.queueInputBuffer(index, 0, count << 1, ptsUs, 0);
+            mQueuedSamples += count;
+            drain(false);
+        }
+    }
+
+    /**
+     * ADTS 每帧自带帧头，不需要更新
+     */
+    @Override
+    public void checkpoint() {
+    }
+
+    @Override
+    public void finish() throws IOException {
+        int index;
+        int tries = 0;
+        while ((index = mCodec.dequeueInputBuffer(TIMEOUT_US)) < 0 && tries++ < MAX_EOS_TRIES) {
+            drain(false);
+        }
+        if (index >= 0) {
+            long ptsUs = mQueuedSamples / mChannelCount * 1000000L / mSampleRate;
+            mCodec.queueInputBuffer(index, 0, 0, ptsUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            drain(true);
+        }
+    }
+
+    /**
+     * 取出已编码的数据写入文件
+     *
+     * @param endOfStream 是否等待到流结束
+     */
+    private void drain(boolean endOfStream) throws IOException {
+        int tries = 0;
+        while (true) {
+            int index = mCodec.dequeueOutputBuffer(mInfo, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || tries++ >= MAX_EOS_TRIES) return;
+            } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                mOutputBuffers = mCodec.getOutputBuffers();
+            } else if (index >= 0) {
+                if ((mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && mInfo.size > 0) {
+                    ByteBuffer output = mOutputBuffers[index];
+                    output.position(mInfo.offset);
+                    output.limit(mInfo.offset + mInfo.size);
+                    writeAdts(mInfo.size + ADTS_SIZE);
+                    mWriter.put(output);
+                }
+                mCodec.releaseOutputBuffer(index, false);
+                if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+            }
+        }
+    }
+
+    private void writeAdts(int frameLength) throws IOException {
+        mAdts[3] = (byte) (((mChannelCount & 3) << 6) | (frameLength >> 11));
+        mAdts[4] = (byte) ((frameLength & 0x7FF) >> 3);
+        mAdts[5] = (byte) (((frameLength & 7) << 5) | 0x1F);
+        mWriter.put(mAdts, 0, ADTS_SIZE);
+    }
+
+    private static int indexOfSampleRate(int sampleRate) {
+        for (int i = 0; i < SAMPLE_RATES.length; i++) {
+            if (SAMPLE_RATES[i] == sampleRate) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void release() {
+        if (mCodec != null) {
+            try {
+                mCodec.stop();
+            } catch (RuntimeException ignored) {
+            }
+            mCodec.release();
+            mCodec = null;
+        }
+        mWriter = null;
+    }
+}
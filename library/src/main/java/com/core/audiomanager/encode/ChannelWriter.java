@@ -0,0 +1,116 @@
+package com.core.audiomanager.encode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 批量写入 FileChannel
+ * 数据先写入直接缓冲区，写满后一次性写入文件，减少系统调用次数
+ * Created by wangzhen on 2019/4/16.
+ */
+class ChannelWriter {
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer;
+    //已写入的字节数，包括缓冲区中未落盘的部分
+    private long mPosition;
+
+    /**
+     * @param channel   文件
+     * @param batchSize 批量写入大小
+     */
+    ChannelWriter(FileChannel channel, int batchSize) {
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocateDirect(batchSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 写入小端16位采样
+     */
+    void putShorts(short[] src, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            if (mBuffer.remaining() < 2) {
+                flush();
+            }
+            int count = Math.min(end - offset, mBuffer.remaining() >> 1);
+            for (int i = 0; i < count; i++) {
+                mBuffer.putShort(src[offset++]);
+            }
+            mPosition += count << 1;
+        }
+    }
+
+    void put(byte[] src, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            if (!mBuffer.hasRemaining()) {
+                flush();
+            }
+            int count = Math.min(end - offset, mBuffer.remaining());
+            mBuffer.put(src, offset, count);
+            offset += count;
+            mPosition += count;
+        }
+    }
+
+    /**
+     * 写入 src 的剩余部分
+     */
+    void put(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (length > mBuffer.remaining()) {
+            flush();
+        }
+        if (length > mBuffer.capacity()) {
+            while (src.hasRemaining()) {
+                mChannel.write(src);
+            }
+        } else {
+            mBuffer.put(src);
+        }
+        mPosition += length;
+    }
+
+    /**
+     * 在指定位置覆盖写入，用于补全文件头
+     */
+    void writeAt(ByteBuffer src, long position) throws IOException {
+        flush();
+        while (src.hasRemaining()) {
+            position += mChannel.write(src, position);
+        }
+    }
+
+    /**
+     * 缓冲区落盘
+     */
+    void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * 缓冲区落盘并同步到存储设备
+     */
+    void sync() throws IOException {
+        flush();
+        mChannel.force(false);
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    long position() {
+        return mPosition;
+    }
+
+    FileChannel getChannel() {
+        return mChannel;
+    }
+}
@@ -0,0 +1,109 @@
+package com.core.audiomanager.encode;
+
+/**
+ * 录音编码配置
+ * AMR_NB 由 MediaRecorder 直接编码；WAV/AAC 由 PCM 管线采集后在独立线程中编码写入文件
+ * Created by wangzhen on 2019/4/16.
+ */
+public class EncodeConfig {
+
+    public static final int FORMAT_AMR_NB = 0;
+    public static final int FORMAT_WAV = 1;
+    public static final int FORMAT_AAC = 2;
+
+    //默认 AAC 码率
+    private static final int DEFAULT_AAC_BIT_RATE = 32000;
+
+    private final int mFormat;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBitRate;
+
+    /**
+     * @param format       FORMAT_*
+     * @param sampleRate   采样率，AMR_NB 固定8000
+     * @param channelCount 声道数 1/2
+     * @param bitRate      码率 bps，仅 AAC 有效
+     */
+    public EncodeConfig(int format, int sampleRate, int channelCount, int bitRate) {
+        mFormat = format;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBitRate = bitRate;
+    }
+
+    public static EncodeConfig amr() {
+        return new EncodeConfig(FORMAT_AMR_NB, 8000, 1, 12200);
+    }
+
+    public static EncodeConfig wav(int sampleRate) {
+        return new EncodeConfig(FORMAT_WAV, sampleRate, 1, sampleRate * 16);
+    }
+
+    public static EncodeConfig aac(int sampleRate, int bitRate) {
+        return new EncodeConfig(FORMAT_AAC, sampleRate, 1, bitRate > 0 ? bitRate : DEFAULT_AAC_BIT_RATE);
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * 是否经 PCM 管线编码
+     */
+    public boolean isPcmPipeline() {
+        return mFormat != FORMAT_AMR_NB;
+    }
+
+    /**
+     * 文件扩展名
+     *
+     * @return 带点的扩展名
+     */
+    public String getExtension() {
+        switch (mFormat) {
+            case FORMAT_WAV:
+                return ".wav";
+            case FORMAT_AAC:
+                return ".aac";
+            default:
+                return ".amr";
+        }
+    }
+
+    /**
+     * 创建编码器
+     *
+     * @return AMR_NB 返回null
+     */
+    PcmEncoder createEncoder() {
+        switch (mFormat) {
+            case FORMAT_WAV:
+                return new WavEncoder();
+            case FORMAT_AAC:
+                return new AacEncoder(mBitRate);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EncodeConfig{format=" + mFormat
+                + ", sampleRate=" + mSampleRate
+                + ", channelCount=" + mChannelCount
+                + ", bitRate=" + mBitRate + "}";
+    }
+}
@@ -0,0 +1,505 @@
+package com.core.audiomanager.encode;
+
+import android.os.Process;
+
+import com.core.audiomanager.callback.AudioSegmentListener;
+import com.core.audiomanager.edit.AudioJoiner;
+import com.core.audiomanager.pcm.PcmConsumer;
+import com.core.audiomanager.pcm.PcmFileOutput;
+import com.core.audiomanager.pcm.PcmRingBuffer;
+import com.core.audiomanager.util.IoUtil;
+import com.core.audiomanager.util.MainExecutor;
+import com.core.audiomanager.util.ThreadUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 编码阶段，作为 {@link PcmConsumer} 挂在 PCM 管线上
+ * 分发线程只把数据拷入独立的环形缓冲区，编码与写文件在单独的编码线程中进行，编码慢时不阻塞采集
+ * 输出经 FileChannel 批量写入，按同步间隔更新文件头并 force 到存储设备，进程异常退出时最多丢失一个间隔的数据
+ * 设置分段时长后按时长轮换输出到 path.segments 目录下可独立解码的分段文件，结束时由 {@link AudioJoiner} 拼接为完整文件
+ * Created by wangzhen on 2019/4/16.
+ */
+public class EncodeStage implements PcmConsumer, PcmFileOutput {
+
+    //每次编码的时长 ms
+    private static final int BLOCK_MS = 20;
+    //默认队列时长 ms
+    private static final int DEFAULT_QUEUE_MS = 5000;
+    //默认批量写入大小
+    private static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    //默认同步间隔 ms
+    private static final int DEFAULT_SYNC_MS = 2000;
+    //编码线程空闲等待 ns
+    private static final long PARK_NANOS = 5000000L;
+
+    private static final String SEGMENT_DIR_SUFFIX = ".segments";
+
+    private final String mOutputPath;
+    private final EncodeConfig mConfig;
+    private int mQueueMs = DEFAULT_QUEUE_MS;
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+    private int mSyncMs = DEFAULT_SYNC_MS;
+    private int mSegmentMs;
+    private AudioSegmentListener mSegmentListener;
+    private Executor mCallbackExecutor;
+    private final ArrayList<String> mSegmentPaths = new ArrayList<>();
+
+    private PcmRingBuffer mQueue;
+    private Thread mEncodeThread;
+    private volatile boolean isStopping;
+    private volatile boolean isCancelled;
+    private volatile String mError;
+
+    private int mSamplesPerSecond;
+    private volatile long mEncodedSamples;
+    private volatile long mEncodeNanos;
+    private volatile long mEncodedBytes;
+    private volatile long mDroppedSamples;
+    private volatile int mMaxQueueDepth;
+    private volatile int mSyncCount;
+    private volatile long mSyncNanos;
+
+    /**
+     * @param outputPath 输出文件
+     * @param config     编码配置，格式不能是 AMR_NB
+     */
+    public EncodeStage(String outputPath, EncodeConfig config) {
+        if (!config.isPcmPipeline())
+            throw new IllegalArgumentException("unsupported format " + config.getFormat());
+        mOutputPath = outputPath;
+        mConfig = config;
+    }
+
+    /**
+     * 设置队列时长，编码线程落后超过该时长时丢弃数据
+     *
+     * @param queueMs ms
+     */
+    public void setQueueDuration(int queueMs) {
+        mQueueMs = queueMs;
+    }
+
+    /**
+     * 设置批量写入大小
+     *
+     * @param batchSize 字节数
+     */
+    public void setBatchSize(int batchSize) {
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * 设置同步间隔，间隔越短异常退出时丢失的数据越少，但频繁 force 会降低慢速存储上的写入吞吐
+     *
+     * @param syncMs ms，0 表示只在结束时同步
+     */
+    public void setSyncInterval(int syncMs) {
+        mSyncMs = syncMs;
+    }
+
+    /**
+     * 设置分段时长，开始录制前调用
+     *
+     * @param segmentMs 分段时长 ms，0 表示不分段
+     * @param listener  分段写完的回调
+     */
+    public void setSegmentDuration(int segmentMs, AudioSegmentListener listener) {
+        setSegmentDuration(segmentMs, listener, null);
+    }
+
+    /**
+     * 设置分段时长，开始录制前调用
+     *
+     * @param segmentMs        分段时长 ms，0 表示不分段
+     * @param listener         分段写完的回调
+     * @param callbackExecutor 回调的执行线程，为null时在主线程回调
+     */
+    public void setSegmentDuration(int segmentMs, AudioSegmentListener listener, Executor callbackExecutor) {
+        mSegmentMs = segmentMs;
+        mSegmentListener = listener;
+        mCallbackExecutor = callbackExecutor != null || listener == null ? callbackExecutor : new MainExecutor();
+    }
+
+    /**
+     * 已写完的分段文件
+     */
+    public synchronized String[] getSegmentPaths() {
+        return mSegmentPaths.toArray(new String[mSegmentPaths.size()]);
+    }
+
+    /**
+     * 分段目录
+     *
+     * @param outputPath 输出文件
+     * @return 目录
+     */
+    public static File segmentDirOf(String outputPath) {
+        return new File(outputPath + SEGMENT_DIR_SUFFIX);
+    }
+
+    /**
+     * 分段文件对应的输出文件
+     *
+     * @param segmentPath 分段文件
+     * @return 不在分段目录中时返回null
+     */
+    public static String outputPathOf(String segmentPath) {
+        File dir = new File(segmentPath).getParentFile();
+        if (dir == null || !dir.getName().endsWith(SEGMENT_DIR_SUFFIX)) return null;
+        String path = dir.getPath();
+        return path.substring(0, path.length() - SEGMENT_DIR_SUFFIX.length());
+    }
+
+    /**
+     * 删除输出文件对应的分段目录
+     *
+     * @param outputPath 输出文件
+     */
+    public static void deleteSegments(String outputPath) {
+        File dir = segmentDirOf(outputPath);
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public EncodeConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * 出错或取消时返回null
+     */
+    @Override
+    public String getOutputPath() {
+        return mError == null && !isCancelled ? mOutputPath : null;
+    }
+
+    /**
+     * 编码错误信息
+     *
+     * @return 没有错误时返回null
+     */
+    public String getError() {
+        return mError;
+    }
+
+    @Override
+    public void onStart(int sampleRate, int channelCount) {
+        mSamplesPerSecond = sampleRate * channelCount;
+        mQueue = new PcmRingBuffer(mSamplesPerSecond / 1000 * mQueueMs);
+        isStopping = false;
+        isCancelled = false;
+        mError = null;
+        mEncodedSamples = 0;
+        mEncodeNanos = 0;
+        mEncodedBytes = 0;
+        mDroppedSamples = 0;
+        mMaxQueueDepth = 0;
+        mSyncCount = 0;
+        mSyncNanos = 0;
+        synchronized (this) {
+            mSegmentPaths.clear();
+        }
+        final int rate = sampleRate;
+        final int channels = channelCount;
+        mEncodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encodeLoop(rate, channels);
+            }
+        }, "EncodeStage");
+        mEncodeThread.start();
+    }
+
+    @Override
+    public void onPcm(short[] buffer, int offset, int length) {
+        int written = mQueue.write(buffer, offset, length);
+        if (written < length) {
+            mDroppedSamples += length - written;
+        }
+        int depth = mQueue.available();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        LockSupport.unpark(mEncodeThread);
+    }
+
+    /**
+     * 等待编码线程写完剩余数据，保证录制完成回调时文件已完整
+     */
+    @Override
+    public void onStop(boolean cancelled) {
+        isCancelled = cancelled;
+        isStopping = true;
+        Thread thread = mEncodeThread;
+        if (thread == null) return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mEncodeThread = null;
+    }
+
+    private void encodeLoop(int sampleRate, int channelCount) {
+        ThreadUtil.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        short[] block = new short[sampleRate * channelCount * BLOCK_MS / 1000];
+        //分段边界对齐到完整的采样帧
+        long segmentSamples = (long) sampleRate * mSegmentMs / 1000 * channelCount;
+        long syncNanos = mSyncMs * 1000000L;
+        long lastSync = System.nanoTime();
+        Output output = null;
+        long closedBytes = 0;
+        boolean success = false;
+        try {
+            while (!isCancelled) {
+                int length = block.length;
+                if (segmentSamples > 0 && output != null) {
+                    length = (int) Math.min(length, segmentSamples - output.samples);
+                }
+                int read = mQueue.read(block, 0, length);
+                if (read > 0) {
+                    if (output == null) {
+                        output = openOutput(segmentSamples > 0, sampleRate, channelCount);
+                    }
+                    long begin = System.nanoTime();
+                    output.encoder.encode(block, 0, read);
+                    mEncodeNanos += System.nanoTime() - begin;
+                    mEncodedSamples += read;
+                    output.samples += read;
+                    mEncodedBytes = closedBytes + output.writer.position();
+                    if (segmentSamples > 0 && output.samples >= segmentSamples) {
+                        closedBytes += closeSegment(output, sampleRate * channelCount);
+                        output = null;
+                        lastSync = System.nanoTime();
+                    } else if (syncNanos > 0 && System.nanoTime() - lastSync >= syncNanos) {
+                        output.sync();
+                        lastSync = System.nanoTime();
+                    }
+                } else if (!isStopping) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else if (mQueue.available() == 0) {
+                    break;
+                }
+            }
+            if (!isCancelled) {
+                if (segmentSamples > 0 && output != null) {
+                    closeSegment(output, sampleRate * channelCount);
+                    output = null;
+                }
+                String[] segments = getSegmentPaths();
+                if (segments.length > 0) {
+                    AudioJoiner.join(mOutputPath, segments);
+                    closedBytes = new File(mOutputPath).length();
+                } else {
+                    if (output == null) {
+                        output = openOutput(false, sampleRate, channelCount);
+                    }
+                    output.finish();
+                    closedBytes = output.writer.position();
+                }
+                mEncodedBytes = closedBytes;
+                success = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            mError = "encode failed: " + e.getMessage();
+        } finally {
+            if (output != null) {
+                output.release();
+                if (!success) {
+                    output.file.delete();
+                }
+            }
+            if (!success) {
+                new File(mOutputPath).delete();
+                if (isCancelled) {
+                    deleteSegments(mOutputPath);
+                }
+            }
+        }
+    }
+
+    private Output openOutput(boolean segmented, int sampleRate, int channelCount) throws IOException {
+        File file;
+        if (segmented) {
+            File dir = segmentDirOf(mOutputPath);
+            if (!dir.exists())
+                dir.mkdirs();
+            file = new File(dir, String.format(Locale.US, "%03d%s", mSegmentPaths.size(), mConfig.getExtension()));
+        } else {
+            file = new File(mOutputPath);
+        }
+        Output output = new Output(file, mConfig.createEncoder());
+        try {
+            output.raf = new RandomAccessFile(file, "rw");
+            output.raf.setLength(0);
+            output.writer = new ChannelWriter(output.raf.getChannel(), mBatchSize);
+            output.encoder.start(sampleRate, channelCount, output.writer);
+        } catch (IOException | RuntimeException e) {
+            output.release();
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * 写完当前分段并通知
+     *
+     * @return 分段字节数
+     */
+    private long closeSegment(Output output, int samplesPerSecond) throws IOException {
+        output.finish();
+        output.release();
+        long bytes = output.writer.position();
+        String path = output.file.getAbsolutePath();
+        int index;
+        synchronized (this) {
+            index = mSegmentPaths.size();
+            mSegmentPaths.add(path);
+        }
+        final AudioSegmentListener listener = mSegmentListener;
+        if (listener != null) {
+            final int segment = index;
+            final String segmentPath = path;
+            final long duration = output.samples * 1000 / samplesPerSecond;
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onSegment(segment, segmentPath, duration);
+                }
+            });
+        }
+        return bytes;
+    }
+
+    /**
+     * 持续编码吞吐量，不含等待数据的时间
+     *
+     * @return 采样/秒
+     */
+    public double getThroughput() {
+        long nanos = mEncodeNanos;
+        return nanos == 0 ? 0 : mEncodedSamples * 1e9 / nanos;
+    }
+
+    /**
+     * 实时倍率，大于1表示编码快于采集
+     */
+    public double getRealtimeFactor() {
+        return mSamplesPerSecond == 0 ? 0 : getThroughput() / mSamplesPerSecond;
+    }
+
+    /**
+     * 当前排队待编码的采样数
+     */
+    public int getQueueDepth() {
+        PcmRingBuffer queue = mQueue;
+        return queue == null ? 0 : queue.available();
+    }
+
+    /**
+     * 本次录制中队列的最大深度
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    /**
+     * 因队列满丢弃的采样数
+     */
+    public long getDroppedSamples() {
+        return mDroppedSamples;
+    }
+
+    public long getEncodedSamples() {
+        return mEncodedSamples;
+    }
+
+    /**
+     * 同步次数
+     */
+    public int getSyncCount() {
+        return mSyncCount;
+    }
+
+    /**
+     * 平均每次同步耗时 ms
+     */
+    public double getAverageSyncTime() {
+        int count = mSyncCount;
+        return count == 0 ? 0 : mSyncNanos / 1e6 / count;
+    }
+
+    /**
+     * 已输出的字节数
+     */
+    public long getEncodedBytes() {
+        return mEncodedBytes;
+    }
+
+    /**
+     * 单个输出文件及其编码器
+     */
+    private class Output {
+        final File file;
+        final PcmEncoder encoder;
+        RandomAccessFile raf;
+        ChannelWriter writer;
+        long samples;
+
+        Output(File file, PcmEncoder encoder) {
+            this.file = file;
+            this.encoder = encoder;
+        }
+
+        void finish() throws IOException {
+            encoder.finish();
+            syncWriter(writer);
+        }
+
+        /**
+         * 提交已编码的数据和文件头
+         */
+        void sync() throws IOException {
+            encoder.checkpoint();
+            syncWriter(writer);
+        }
+
+        void release() {
+            encoder.release();
+            if (raf != null) {
+                IoUtil.closeQuietly(raf);
+                raf = null;
+            }
+        }
+    }
+
+    private void syncWriter(ChannelWriter writer) throws IOException {
+        long begin = System.nanoTime();
+        writer.sync();
+        mSyncNanos += System.nanoTime() - begin;
+        mSyncCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodeStage{config=" + mConfig
+                + ", throughput=" + (long) getThroughput()
+                + ", queue=" + getQueueDepth()
+                + ", maxQueue=" + mMaxQueueDepth
+                + ", dropped=" + mDroppedSamples
+                + ", syncs=" + mSyncCount
+                + ", bytes=" + mEncodedBytes + "}";
+    }
+}
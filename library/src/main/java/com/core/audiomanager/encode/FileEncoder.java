@@ -0,0 +1,79 @@
+package com.core.audiomanager.encode;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 在调用线程中把 PCM 同步编码到文件，用于离线转码
+ * 与 {@link EncodeStage} 使用相同的编码器和批量写入，不经过环形缓冲区
+ * Created by wangzhen on 2019/5/29.
+ */
+public class FileEncoder {
+
+    //批量写入大小
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private final PcmEncoder mEncoder;
+    private final RandomAccessFile mFile;
+    private final ChannelWriter mWriter;
+
+    private FileEncoder(PcmEncoder encoder, RandomAccessFile file) {
+        mEncoder = encoder;
+        mFile = file;
+        mWriter = new ChannelWriter(file.getChannel(), BATCH_SIZE);
+    }
+
+    /**
+     * 创建编码器，文件已存在时覆盖
+     *
+     * @param file         输出文件
+     * @param config       编码配置，只使用格式和码率
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     * @return 编码器
+     */
+    public static FileEncoder open(File file, EncodeConfig config, int sampleRate, int channelCount)
+            throws IOException {
+        PcmEncoder encoder = config.createEncoder();
+        if (encoder == null) throw new IOException("unsupported format " + config);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileEncoder fileEncoder = new FileEncoder(encoder, raf);
+        try {
+            raf.setLength(0);
+            encoder.start(sampleRate, channelCount, fileEncoder.mWriter);
+        } catch (IOException | RuntimeException e) {
+            fileEncoder.release();
+            throw e;
+        }
+        return fileEncoder;
+    }
+
+    /**
+     * 编码一块交错采样
+     */
+    public void encode(short[] buffer, int offset, int length) throws IOException {
+        mEncoder.encode(buffer, offset, length);
+    }
+
+    /**
+     * 编码剩余数据、补全文件头并同步到存储设备
+     *
+     * @return 文件大小
+     */
+    public long finish() throws IOException {
+        mEncoder.finish();
+        mWriter.sync();
+        return mWriter.position();
+    }
+
+    /**
+     * 释放编码器并关闭文件，出错时也要调用
+     */
+    public void release() {
+        mEncoder.release();
+        IoUtil.closeQuietly(mFile);
+    }
+}
@@ -0,0 +1,38 @@
+package com.core.audiomanager.encode;
+
+import java.io.IOException;
+
+/**
+ * PCM 编码器，只在 {@link EncodeStage} 的编码线程中调用
+ * Created by wangzhen on 2019/4/16.
+ */
+interface PcmEncoder {
+    /**
+     * 开始编码
+     *
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     * @param writer       输出
+     */
+    void start(int sampleRate, int channelCount, ChannelWriter writer) throws IOException;
+
+    /**
+     * 编码一块交错采样
+     */
+    void encode(short[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * 按已写入的数据更新文件头，使文件在中途被打断时仍可播放
+     */
+    void checkpoint() throws IOException;
+
+    /**
+     * 编码剩余数据并补全文件头
+     */
+    void finish() throws IOException;
+
+    /**
+     * 释放资源，出错时也会调用
+     */
+    void release();
+}
@@ -0,0 +1,43 @@
+package com.core.audiomanager.encode;
+
+import java.io.IOException;
+
+/**
+ * 16位 PCM WAV 编码，先写入占位文件头，结束时补全长度
+ * Created by wangzhen on 2019/4/16.
+ */
+class WavEncoder implements PcmEncoder {
+
+    private ChannelWriter mWriter;
+    private int mSampleRate;
+    private int mChannelCount;
+
+    @Override
+    public void start(int sampleRate, int channelCount, ChannelWriter writer) throws IOException {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mWriter = writer;
+        writer.put(WavHeader.create(sampleRate, channelCount, 16, 0));
+    }
+
+    @Override
+    public void encode(short[] buffer, int offset, int length) throws IOException {
+        mWriter.putShorts(buffer, offset, length);
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        finish();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        long dataSize = mWriter.position() - WavHeader.SIZE;
+        mWriter.writeAt(WavHeader.create(mSampleRate, mChannelCount, 16, dataSize), 0);
+    }
+
+    @Override
+    public void release() {
+        mWriter = null;
+    }
+}
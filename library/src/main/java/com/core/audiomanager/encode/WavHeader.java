@@ -0,0 +1,46 @@
+package com.core.audiomanager.encode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 44字节的 PCM WAV 文件头
+ * Created by wangzhen on 2019/4/16.
+ */
+public class WavHeader {
+
+    public static final int SIZE = 44;
+
+    private WavHeader() {
+    }
+
+    /**
+     * 生成文件头
+     *
+     * @param sampleRate    采样率
+     * @param channelCount  声道数
+     * @param bitsPerSample 位深
+     * @param dataSize      数据字节数
+     * @return position 为0的小端缓冲区
+     */
+    public static ByteBuffer create(int sampleRate, int channelCount, int bitsPerSample, long dataSize) {
+        ByteBuffer header = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int blockAlign = channelCount * bitsPerSample / 8;
+        long riffSize = Math.min(dataSize + SIZE - 8, 0xFFFFFFFFL);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) riffSize);
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) Math.min(dataSize, 0xFFFFFFFFL - SIZE + 8));
+        header.flip();
+        return header;
+    }
+}
@@ -0,0 +1,80 @@
+package com.core.audiomanager.format;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ADTS 封装的 AAC 裸流解析，每帧自带7或9字节头，包含帧长和采样率
+ * Created by wangzhen on 2019/5/6.
+ */
+public final class AdtsFormat {
+
+    //每个 raw data block 的采样数
+    public static final int SAMPLES_PER_BLOCK = 1024;
+
+    private static final int[] SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000,
+            24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private AdtsFormat() {
+    }
+
+    /**
+     * position 处是否为 ADTS 帧头
+     */
+    public static boolean isFrame(ByteBuffer buffer, int position) {
+        return position + 7 <= buffer.limit()
+                && (buffer.get(position) & 0xFF) == 0xFF
+                && (buffer.get(position + 1) & 0xF6) == 0xF0;
+    }
+
+    /**
+     * 帧总长度，包含帧头
+     */
+    public static int frameLength(ByteBuffer buffer, int position) {
+        return ((buffer.get(position + 3) & 0x03) << 11)
+                | ((buffer.get(position + 4) & 0xFF) << 3)
+                | ((buffer.get(position + 5) & 0xE0) >> 5);
+    }
+
+    /**
+     * 采样率
+     *
+     * @return 索引无效时返回0
+     */
+    public static int sampleRate(ByteBuffer buffer, int position) {
+        int index = (buffer.get(position + 2) & 0x3C) >> 2;
+        return index < SAMPLE_RATES.length ? SAMPLE_RATES[index] : 0;
+    }
+
+    public static int channelCount(ByteBuffer buffer, int position) {
+        return ((buffer.get(position + 2) & 0x01) << 2) | ((buffer.get(position + 3) & 0xC0) >> 6);
+    }
+
+    /**
+     * 帧内采样数
+     */
+    public static int samplesInFrame(ByteBuffer buffer, int position) {
+        return ((buffer.get(position + 6) & 0x03) + 1) * SAMPLES_PER_BLOCK;
+    }
+
+    /**
+     * 查找包含 sample 的帧的起始位置
+     *
+     * @param buffer 整个文件
+     * @param sample 采样序号
+     * @return 超出文件时返回文件末尾
+     */
+    public static int offsetOfSample(ByteBuffer buffer, long sample) {
+        int position = 0;
+        int limit = buffer.limit();
+        long samples = 0;
+        while (isFrame(buffer, position)) {
+            int samplesInFrame = samplesInFrame(buffer, position);
+            if (samples + samplesInFrame > sample) break;
+            int length = frameLength(buffer, position);
+            if (length < 7) break;
+            samples += samplesInFrame;
+            position += length;
+        }
+        return Math.min(position, limit);
+    }
+}
@@ -0,0 +1,100 @@
+package com.core.audiomanager.format;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AMR 文件(RFC 4867 存储格式)解析
+ * 文件以 "#!AMR\n" 或 "#!AMR-WB\n" 开头，之后每帧20ms，帧长由帧头的 FT 决定
+ * Created by wangzhen on 2019/5/6.
+ */
+public final class AmrFormat {
+
+    public static final byte[] MAGIC_NB = {'#', '!', 'A', 'M', 'R', '\n'};
+    public static final byte[] MAGIC_WB = {'#', '!', 'A', 'M', 'R', '-', 'W', 'B', '\n'};
+    //每帧时长 ms
+    public static final int FRAME_DURATION = 20;
+
+    //按 FT 索引的帧数据长度，不含1字节帧头
+    private static final int[] NB_FRAME_SIZES = {12, 13, 15, 17, 19, 20, 26, 31, 5, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] WB_FRAME_SIZES = {17, 23, 32, 36, 40, 46, 50, 58, 60, 5, 0, 0, 0, 0, 0, 0};
+
+    private AmrFormat() {
+    }
+
+    /**
+     * 文件头长度
+     *
+     * @param buffer 从文件开头映射的缓冲区
+     * @return 不是 AMR 文件时返回0
+     */
+    public static int headerSize(ByteBuffer buffer) {
+        if (startsWith(buffer, MAGIC_WB)) return MAGIC_WB.length;
+        if (startsWith(buffer, MAGIC_NB)) return MAGIC_NB.length;
+        return 0;
+    }
+
+    public static boolean isWideband(ByteBuffer buffer) {
+        return startsWith(buffer, MAGIC_WB);
+    }
+
+    /**
+     * 帧总长度，包含帧头
+     *
+     * @param header    帧头字节
+     * @param wideband  是否 AMR-WB
+     * @return 帧头无效时返回-1
+     */
+    public static int frameSize(int header, boolean wideband) {
+        //帧头最高位和最低两位为填充位，必须为0
+        if ((header & 0x83) != 0) return -1;
+        int ft = (header >> 3) & 0x0F;
+        return 1 + (wideband ? WB_FRAME_SIZES[ft] : NB_FRAME_SIZES[ft]);
+    }
+
+    /**
+     * 查找第 frameIndex 帧的起始位置
+     *
+     * @param buffer     整个文件
+     * @param frameIndex 帧序号
+     * @return 超出文件时返回文件末尾，遇到无效帧时返回该帧位置
+     */
+    public static int offsetOfFrame(ByteBuffer buffer, long frameIndex) {
+        boolean wideband = isWideband(buffer);
+        int position = headerSize(buffer);
+        int limit = buffer.limit();
+        for (long i = 0; i < frameIndex && position < limit; i++) {
+            int size = frameSize(buffer.get(position) & 0xFF, wideband);
+            if (size < 0) break;
+            position += size;
+        }
+        return Math.min(position, limit);
+    }
+
+    /**
+     * 统计完整帧数，末尾不完整的帧和无效帧之后的数据不计入
+     *
+     * @param buffer 整个文件
+     * @return 帧数
+     */
+    public static long countFrames(ByteBuffer buffer) {
+        boolean wideband = isWideband(buffer);
+        int position = headerSize(buffer);
+        int limit = buffer.limit();
+        long count = 0;
+        while (position < limit) {
+            int size = frameSize(buffer.get(position) & 0xFF, wideband);
+            if (size < 0 || position + size > limit) break;
+            position += size;
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] magic) {
+        if (buffer.limit() < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(i) != magic[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.core.audiomanager.format;
+
+/**
+ * 音频文件元数据
+ * Created by wangzhen on 2019/5/9.
+ */
+public class AudioInfo {
+
+    public static final int FORMAT_AMR_NB = 1;
+    public static final int FORMAT_AMR_WB = 2;
+    public static final int FORMAT_AAC_ADTS = 3;
+    public static final int FORMAT_WAV = 4;
+
+    private final String mPath;
+    private final int mFormat;
+    private final long mDurationUs;
+    private final int mBitRate;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final long mSize;
+    private final long mLastModified;
+
+    AudioInfo(String path, int format, long durationUs, int bitRate, int sampleRate, int channelCount,
+              long size, long lastModified) {
+        mPath = path;
+        mFormat = format;
+        mDurationUs = durationUs;
+        mBitRate = bitRate;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mSize = size;
+        mLastModified = lastModified;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 格式 FORMAT_*
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * 时长 us
+     */
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    /**
+     * 时长 ms
+     */
+    public long getDuration() {
+        return mDurationUs / 1000;
+    }
+
+    /**
+     * 平均码率 bps
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioInfo{path=" + mPath
+                + ", format=" + mFormat
+                + ", durationUs=" + mDurationUs
+                + ", bitRate=" + mBitRate
+                + ", sampleRate=" + mSampleRate
+                + ", channelCount=" + mChannelCount
+                + ", size=" + mSize + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.core.audiomanager.format;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 不经 MediaPlayer.prepare 直接读取时长等信息
+ * 文件以只读方式内存映射：AMR 统计帧数，AAC(ADTS) 逐帧累加采样数，WAV 只解析文件头
+ * 结果按 路径+修改时间+大小 缓存，文件变化后自动重新读取
+ * Created by wangzhen on 2019/5/9.
+ */
+public class AudioProbe {
+
+    //默认缓存条数
+    private static final int DEFAULT_CACHE_SIZE = 2048;
+    //WAV 只映射文件头部分
+    private static final int WAV_HEADER_MAP_SIZE = 64 * 1024;
+
+    private static volatile AudioProbe mInstance;
+    private final LinkedHashMap<String, AudioInfo> mCache;
+    private int mMaxSize = DEFAULT_CACHE_SIZE;
+    private long mHitCount;
+    private long mMissCount;
+
+    public static AudioProbe get() {
+        if (mInstance == null) {
+            synchronized (AudioProbe.class) {
+                if (mInstance == null) {
+                    mInstance = new AudioProbe();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private AudioProbe() {
+        mCache = new LinkedHashMap<String, AudioInfo>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AudioInfo> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * 设置缓存条数
+     *
+     * @param maxSize 条数
+     */
+    public synchronized void setCacheSize(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public synchronized void clearCache() {
+        mCache.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 读取音频信息，可在任意线程调用
+     *
+     * @param path 文件路径
+     * @return 文件不存在或格式不支持时返回null
+     */
+    public AudioInfo probe(String path) {
+        File file = new File(path);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (size == 0 || lastModified == 0) return null;
+        String key = path + '|' + lastModified + '|' + size;
+        synchronized (this) {
+            AudioInfo info = mCache.get(key);
+            if (info != null) {
+                mHitCount++;
+                return info;
+            }
+            mMissCount++;
+        }
+        AudioInfo info;
+        try {
+            info = read(path, size, lastModified);
+        } catch (IOException e) {
+            return null;
+        }
+        if (info != null) {
+            synchronized (this) {
+                mCache.put(key, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 获取时长
+     *
+     * @param path 文件路径
+     * @return ms，不支持时返回-1
+     */
+    public long getDuration(String path) {
+        AudioInfo info = probe(path);
+        return info != null ? info.getDuration() : -1;
+    }
+
+    private static AudioInfo read(String path, long size, long lastModified) throws IOException {
+        FileInputStream in = new FileInputStream(path);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WAV_HEADER_MAP_SIZE));
+            if (head.limit() >= 12 && head.get(0) == 'R' && head.get(8) == 'W') {
+                return readWav(path, head, size, lastModified);
+            }
+            if (size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer map = size <= head.limit() ? head
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (AmrFormat.headerSize(map) > 0) {
+                return readAmr(path, map, size, lastModified);
+            }
+            if (AdtsFormat.isFrame(map, 0)) {
+                return readAdts(path, map, size, lastModified);
+            }
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static AudioInfo readWav(String path, MappedByteBuffer head, long size, long lastModified)
+            throws IOException {
+        WavFormat wav = WavFormat.parse(head, size);
+        int bitRate = wav.getSampleRate() * wav.getBlockAlign() * 8;
+        return new AudioInfo(path, AudioInfo.FORMAT_WAV, wav.getDurationUs(), bitRate,
+                wav.getSampleRate(), wav.getChannelCount(), size, lastModified);
+    }
+
+    private static AudioInfo readAmr(String path, MappedByteBuffer map, long size, long lastModified) {
+        boolean wideband = AmrFormat.isWideband(map);
+        long frames = AmrFormat.countFrames(map);
+        long durationUs = frames * AmrFormat.FRAME_DURATION * 1000;
+        long dataSize = size - AmrFormat.headerSize(map);
+        int bitRate = durationUs == 0 ? 0 : (int) (dataSize * 8 * 1000000L / durationUs);
+        return new AudioInfo(path, wideband ? AudioInfo.FORMAT_AMR_WB : AudioInfo.FORMAT_AMR_NB,
+                durationUs, bitRate, wideband ? 16000 : 8000, 1, size, lastModified);
+    }
+
+    private static AudioInfo readAdts(String path, MappedByteBuffer map, long size, long lastModified) {
+        int sampleRate = AdtsFormat.sampleRate(map, 0);
+        int channelCount = AdtsFormat.channelCount(map, 0);
+        if (sampleRate == 0) return null;
+        long samples = 0;
+        int position = 0;
+        int limit = map.limit();
+        while (AdtsFormat.isFrame(map, position)) {
+            int length = AdtsFormat.frameLength(map, position);
+            if (length < 7 || position + length > limit) break;
+            samples += AdtsFormat.samplesInFrame(map, position);
+            position += length;
+        }
+        long durationUs = samples * 1000000L / sampleRate;
+        int bitRate = durationUs == 0 ? 0 : (int) (position * 8L * 1000000L / durationUs);
+        return new AudioInfo(path, AudioInfo.FORMAT_AAC_ADTS, durationUs, bitRate,
+                sampleRate, channelCount, size, lastModified);
+    }
+}
@@ -0,0 +1,130 @@
+package com.core.audiomanager.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * WAV 文件头解析，按 RIFF chunk 查找 fmt 和 data
+ * data 长度未写入或超出文件时以文件实际长度为准，可读取未正常结束的录音
+ * Created by wangzhen on 2019/5/6.
+ */
+public final class WavFormat {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_FLOAT = 3;
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private int mAudioFormat;
+    private int mChannelCount;
+    private int mSampleRate;
+    private int mBitsPerSample;
+    private int mBlockAlign;
+    private long mDataOffset;
+    private long mDataSize;
+
+    private WavFormat() {
+    }
+
+    /**
+     * 解析文件头
+     *
+     * @param buffer     从文件开头映射的缓冲区，至少包含到 data chunk 头
+     * @param fileLength 文件长度
+     * @return 解析结果
+     * @throws IOException 不是 WAV 文件
+     */
+    public static WavFormat parse(ByteBuffer buffer, long fileLength) throws IOException {
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < 12 || buf.getInt(0) != 0x46464952 || buf.getInt(8) != 0x45564157) {
+            throw new IOException("not a wav file");
+        }
+        WavFormat format = new WavFormat();
+        boolean hasFmt = false;
+        int position = 12;
+        while (position + 8 <= buf.limit()) {
+            int id = buf.getInt(position);
+            long size = buf.getInt(position + 4) & 0xFFFFFFFFL;
+            int body = position + 8;
+            if (id == 0x20746d66) {
+                //fmt
+                if (body + 16 > buf.limit()) break;
+                format.mAudioFormat = buf.getShort(body) & 0xFFFF;
+                format.mChannelCount = buf.getShort(body + 2) & 0xFFFF;
+                format.mSampleRate = buf.getInt(body + 4);
+                format.mBlockAlign = buf.getShort(body + 12) & 0xFFFF;
+                format.mBitsPerSample = buf.getShort(body + 14) & 0xFFFF;
+                hasFmt = true;
+            } else if (id == 0x61746164) {
+                //data
+                if (!hasFmt) break;
+                format.mDataOffset = body;
+                long available = fileLength - body;
+                format.mDataSize = size == 0 || size > available ? available : size;
+                if (format.mBlockAlign > 0) {
+                    format.mDataSize -= format.mDataSize % format.mBlockAlign;
+                }
+                return format;
+            }
+            //chunk 按偶数字节对齐
+            position = (int) Math.min(Integer.MAX_VALUE, body + size + (size & 1));
+        }
+        throw new IOException("wav data chunk not found");
+    }
+
+    public int getAudioFormat() {
+        return mAudioFormat;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * 每帧字节数
+     */
+    public int getBlockAlign() {
+        return mBlockAlign;
+    }
+
+    public long getDataOffset() {
+        return mDataOffset;
+    }
+
+    public long getDataSize() {
+        return mDataSize;
+    }
+
+    /**
+     * 帧数
+     */
+    public long getFrameCount() {
+        return mBlockAlign == 0 ? 0 : mDataSize / mBlockAlign;
+    }
+
+    /**
+     * 时长 us
+     */
+    public long getDurationUs() {
+        return mSampleRate == 0 ? 0 : getFrameCount() * 1000000L / mSampleRate;
+    }
+
+    /**
+     * 时间对应的 data 内字节偏移，按帧对齐
+     *
+     * @param timeUs 时间 us
+     * @return 不超过 data 长度
+     */
+    public long offsetOfTime(long timeUs) {
+        long frame = timeUs * mSampleRate / 1000000L;
+        return Math.max(0, Math.min(mDataSize, frame * mBlockAlign));
+    }
+}
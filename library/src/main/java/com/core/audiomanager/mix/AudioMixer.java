@@ -0,0 +1,475 @@
+package com.core.audiomanager.mix;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+
+import com.core.audiomanager.callback.AudioMixListener;
+import com.core.audiomanager.encode.WavHeader;
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 离线混音，输出 16位 WAV
+ * 各音轨先并行解码为 PCM，再把输出按块分给与 CPU 核数相同的工作线程，各线程使用预分配的数组重采样、加增益和淡入淡出后相加，
+ * 按位置直接写入输出文件；任务在单独的线程中排队执行，进度和结果在主线程回调
+ * Created by wangzhen on 2019/5/24.
+ */
+public class AudioMixer {
+
+    private static final int MSG_PROGRESS = 0x1;
+    private static final int MSG_COMPLETE = 0x2;
+    private static final int MSG_ERROR = 0x3;
+
+    //每块的输出帧数
+    private static final int CHUNK_FRAMES = 16 * 1024;
+    //解码阶段占总进度的比例
+    private static final int DECODE_PROGRESS = 30;
+
+    private static volatile AudioMixer mInstance;
+    private final Handler workHandler;
+    private final ExecutorService mExecutor;
+    private final int mThreadCount;
+
+    public static AudioMixer get() {
+        if (mInstance == null) {
+            synchronized (AudioMixer.class) {
+                if (mInstance == null) {
+                    mInstance = new AudioMixer();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    private AudioMixer() {
+        HandlerThread thread = new HandlerThread("AudioMixer");
+        thread.start();
+        workHandler = new Handler(thread.getLooper());
+        mThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        mExecutor = Executors.newFixedThreadPool(mThreadCount, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AudioMixer-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 混音，输出采样率和声道数取各音轨的最大值
+     *
+     * @param tracks   音轨
+     * @param dstPath  输出 WAV 文件，已存在时覆盖
+     * @param listener 回调
+     * @return 任务，可取消
+     */
+    public MixTask mix(List<MixTrack> tracks, String dstPath, AudioMixListener listener) {
+        return mix(tracks, dstPath, 0, 0, listener);
+    }
+
+    /**
+     * 混音
+     *
+     * @param tracks       音轨
+     * @param dstPath      输出 WAV 文件，已存在时覆盖
+     * @param sampleRate   输出采样率，0 取各音轨最大值
+     * @param channelCount 输出声道数，0 取各音轨最大值
+     * @param listener     回调
+     * @return 任务，可取消
+     */
+    public MixTask mix(List<MixTrack> tracks, String dstPath, int sampleRate, int channelCount,
+                       AudioMixListener listener) {
+        final MixTask task = new MixTask(new ArrayList<>(tracks), dstPath, sampleRate, channelCount, listener);
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                task.run(mExecutor, mThreadCount);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * 混音任务
+     */
+    public static class MixTask implements PcmDecoder.Cancellable {
+
+        private final List<MixTrack> mTracks;
+        private final String mDstPath;
+        private final int mSampleRate;
+        private final int mChannelCount;
+        private final AudioMixListener mListener;
+        private volatile boolean isCancelled;
+        private final AtomicInteger mDoneChunks = new AtomicInteger();
+        private final AtomicInteger mLastProgress = new AtomicInteger(-1);
+        private volatile long mElapsed;
+
+        MixTask(List<MixTrack> tracks, String dstPath, int sampleRate, int channelCount, AudioMixListener listener) {
+            mTracks = tracks;
+            mDstPath = dstPath;
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            mListener = listener;
+        }
+
+        /**
+         * 取消，未完成的输出文件会被删除
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public String getDstPath() {
+            return mDstPath;
+        }
+
+        /**
+         * 完成时的总耗时 ms
+         */
+        public long getElapsed() {
+            return mElapsed;
+        }
+
+        private void run(ExecutorService executor, int threadCount) {
+            long begin = System.currentTimeMillis();
+            if (mTracks.isEmpty()) {
+                onMainError("no track");
+                return;
+            }
+            File temp = new File(mDstPath + ".tmp");
+            PcmDecoder.Source[] sources = new PcmDecoder.Source[mTracks.size()];
+            RandomAccessFile raf = null;
+            boolean success = false;
+            try {
+                decodeAll(executor, sources);
+                Mix mix = new Mix(mTracks, sources, mSampleRate, mChannelCount);
+                long dataSize = mix.frames * mix.channelCount * 2;
+                raf = new RandomAccessFile(temp, "rw");
+                raf.setLength(0);
+                FileChannel channel = raf.getChannel();
+                channel.write(WavHeader.create(mix.sampleRate, mix.channelCount, 16, dataSize), 0);
+
+                int chunkCount = (int) ((mix.frames + CHUNK_FRAMES - 1) / CHUNK_FRAMES);
+                AtomicInteger nextChunk = new AtomicInteger();
+                int workers = Math.min(threadCount, Math.max(1, chunkCount));
+                List<Future<?>> futures = new ArrayList<>(workers);
+                for (int i = 0; i < workers; i++) {
+                    futures.add(executor.submit(new MixWorker(this, mix, channel, nextChunk, chunkCount)));
+                }
+                await(futures);
+                if (isCancelled) throw new IOException("cancelled");
+                channel.force(false);
+                raf.close();
+                raf = null;
+                File dst = new File(mDstPath);
+                dst.delete();
+                if (!temp.renameTo(dst)) throw new IOException("rename failed");
+                success = true;
+                mElapsed = System.currentTimeMillis() - begin;
+                onMainComplete(mDstPath);
+            } catch (IOException e) {
+                onMainError(e.getMessage() != null ? e.getMessage() : e.toString());
+            } finally {
+                IoUtil.closeQuietly(raf);
+                for (PcmDecoder.Source source : sources) {
+                    if (source != null) source.release();
+                }
+                if (!success) {
+                    temp.delete();
+                }
+            }
+        }
+
+        /**
+         * 并行解码各音轨
+         */
+        private void decodeAll(ExecutorService executor, final PcmDecoder.Source[] sources) throws IOException {
+            List<Future<?>> futures = new ArrayList<>(sources.length);
+            for (int i = 0; i < sources.length; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        File temp = new File(mDstPath + ".track" + index + ".pcm");
+                        sources[index] = PcmDecoder.decode(mTracks.get(index), temp, MixTask.this);
+                        onProgress(DECODE_PROGRESS * (index + 1) / sources.length);
+                        return null;
+                    }
+                }));
+            }
+            await(futures);
+            if (isCancelled) throw new IOException("cancelled");
+        }
+
+        private void await(List<Future<?>> futures) throws IOException {
+            IOException error = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    isCancelled = true;
+                    if (error == null) {
+                        Throwable cause = e.getCause();
+                        error = cause instanceof IOException ? (IOException) cause
+                                : new IOException(String.valueOf(cause));
+                    }
+                } catch (InterruptedException e) {
+                    isCancelled = true;
+                    Thread.currentThread().interrupt();
+                    error = new IOException("interrupted");
+                }
+            }
+            if (error != null) throw error;
+        }
+
+        void onChunkDone(int chunkCount) {
+            int done = mDoneChunks.incrementAndGet();
+            onProgress(DECODE_PROGRESS + (100 - DECODE_PROGRESS) * done / chunkCount);
+        }
+
+        /**
+         * 进度变化时回调，多个线程同时调用时只回调一次
+         */
+        private void onProgress(int progress) {
+            int last = mLastProgress.get();
+            if (progress > last && mLastProgress.compareAndSet(last, progress)) {
+                Message.obtain(mainHandler, MSG_PROGRESS, progress, 0, this).sendToTarget();
+            }
+        }
+
+        private void onMainComplete(String path) {
+            Message.obtain(mainHandler, MSG_COMPLETE, new Object[]{this, path}).sendToTarget();
+        }
+
+        private void onMainError(String error) {
+            Message.obtain(mainHandler, MSG_ERROR, new Object[]{this, error}).sendToTarget();
+        }
+    }
+
+    /**
+     * 一次混音的输出参数和各音轨在输出中的位置
+     */
+    private static final class Mix {
+        final int sampleRate;
+        final int channelCount;
+        final long frames;
+        final PcmDecoder.Source[] sources;
+        //以下均以输出帧为单位
+        final long[] offsets;
+        final long[] lengths;
+        final long[] fadeIns;
+        final long[] fadeOuts;
+        //源帧 / 输出帧
+        final double[] steps;
+        final float[] gains;
+
+        Mix(List<MixTrack> tracks, PcmDecoder.Source[] sources, int sampleRate, int channelCount) {
+            int rate = sampleRate;
+            int channels = channelCount;
+            for (PcmDecoder.Source source : sources) {
+                if (sampleRate <= 0) rate = Math.max(rate, source.sampleRate);
+                if (channelCount <= 0) channels = Math.max(channels, source.channelCount);
+            }
+            this.sampleRate = rate;
+            this.channelCount = Math.min(2, channels);
+            this.sources = sources;
+            int count = sources.length;
+            offsets = new long[count];
+            lengths = new long[count];
+            fadeIns = new long[count];
+            fadeOuts = new long[count];
+            steps = new double[count];
+            gains = new float[count];
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                MixTrack track = tracks.get(i);
+                PcmDecoder.Source source = sources[i];
+                steps[i] = (double) source.sampleRate / rate;
+                offsets[i] = track.getOffsetMs() * rate / 1000;
+                lengths[i] = (long) (source.frames / steps[i]);
+                fadeIns[i] = Math.min(lengths[i], track.getFadeInMs() * rate / 1000);
+                fadeOuts[i] = Math.min(lengths[i], track.getFadeOutMs() * rate / 1000);
+                gains[i] = track.getGain();
+                total = Math.max(total, offsets[i] + lengths[i]);
+            }
+            frames = total;
+        }
+    }
+
+    /**
+     * 混音工作线程，循环领取输出块直到全部完成，所用数组在创建时一次性分配
+     */
+    private static final class MixWorker implements Runnable {
+        private final MixTask mTask;
+        private final Mix mMix;
+        private final FileChannel mChannel;
+        private final AtomicInteger mNextChunk;
+        private final int mChunkCount;
+        private final float[] mAccumulator;
+        private final ByteBuffer mOutput;
+
+        MixWorker(MixTask task, Mix mix, FileChannel channel, AtomicInteger nextChunk, int chunkCount) {
+            mTask = task;
+            mMix = mix;
+            mChannel = channel;
+            mNextChunk = nextChunk;
+            mChunkCount = chunkCount;
+            mAccumulator = new float[CHUNK_FRAMES * mix.channelCount];
+            mOutput = ByteBuffer.allocateDirect(CHUNK_FRAMES * mix.channelCount * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void run() {
+            int chunk;
+            while (!mTask.isCancelled() && (chunk = mNextChunk.getAndIncrement()) < mChunkCount) {
+                long start = (long) chunk * CHUNK_FRAMES;
+                int frames = (int) Math.min(CHUNK_FRAMES, mMix.frames - start);
+                mixChunk(start, frames);
+                try {
+                    writeChunk(start, frames);
+                } catch (IOException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+                mTask.onChunkDone(mChunkCount);
+            }
+        }
+
+        private void mixChunk(long start, int frames) {
+            int channels = mMix.channelCount;
+            float[] acc = mAccumulator;
+            Arrays.fill(acc, 0, frames * channels, 0f);
+            for (int t = 0; t < mMix.sources.length; t++) {
+                long offset = mMix.offsets[t];
+                long length = mMix.lengths[t];
+                long from = Math.max(start, offset);
+                long to = Math.min(start + frames, offset + length);
+                if (from >= to) continue;
+                PcmDecoder.Source source = mMix.sources[t];
+                ShortBuffer samples = source.samples;
+                int srcChannels = source.channelCount;
+                long lastFrame = source.frames - 1;
+                double step = mMix.steps[t];
+                float gain = mMix.gains[t];
+                long fadeIn = mMix.fadeIns[t];
+                long fadeOut = mMix.fadeOuts[t];
+                for (long i = from; i < to; i++) {
+                    long local = i - offset;
+                    float g = gain;
+                    if (local < fadeIn) {
+                        g *= (float) local / fadeIn;
+                    }
+                    long remain = length - local;
+                    if (remain < fadeOut) {
+                        g *= (float) remain / fadeOut;
+                    }
+                    double position = local * step;
+                    long index = (long) position;
+                    float fraction = (float) (position - index);
+                    long next = index < lastFrame ? index + 1 : index;
+                    int base = (int) (i - start) * channels;
+                    int i0 = (int) (index * srcChannels);
+                    int i1 = (int) (next * srcChannels);
+                    if (srcChannels > channels) {
+                        //下混：源声道 sc 计入输出声道 sc % channels，每个输出声道取其源声道的平均
+                        for (int c = 0; c < channels; c++) {
+                            float s0 = 0f;
+                            float s1 = 0f;
+                            int n = 0;
+                            for (int sc = c; sc < srcChannels; sc += channels) {
+                                s0 += samples.get(i0 + sc);
+                                s1 += samples.get(i1 + sc);
+                                n++;
+                            }
+                            s0 /= n;
+                            s1 /= n;
+                            acc[base + c] += (s0 + (s1 - s0) * fraction) * g;
+                        }
+                    } else {
+                        for (int c = 0; c < channels; c++) {
+                            int sc = c < srcChannels ? c : srcChannels - 1;
+                            float s0 = samples.get(i0 + sc);
+                            float s1 = samples.get(i1 + sc);
+                            acc[base + c] += (s0 + (s1 - s0) * fraction) * g;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void writeChunk(long start, int frames) throws IOException {
+            int count = frames * mMix.channelCount;
+            ByteBuffer out = mOutput;
+            out.clear();
+            float[] acc = mAccumulator;
+            for (int i = 0; i < count; i++) {
+                float value = acc[i];
+                if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+                else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+                out.putShort((short) value);
+            }
+            out.flip();
+            long position = WavHeader.SIZE + start * mMix.channelCount * 2;
+            while (out.hasRemaining()) {
+                position += mChannel.write(out, position);
+            }
+        }
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_PROGRESS: {
+                    MixTask task = (MixTask) msg.obj;
+                    if (task.mListener != null) {
+                        task.mListener.onProgress(msg.arg1);
+                    }
+                    break;
+                }
+                case MSG_COMPLETE: {
+                    Object[] args = (Object[]) msg.obj;
+                    MixTask task = (MixTask) args[0];
+                    if (task.mListener != null) {
+                        task.mListener.onComplete((String) args[1]);
+                    }
+                    break;
+                }
+                case MSG_ERROR: {
+                    Object[] args = (Object[]) msg.obj;
+                    MixTask task = (MixTask) args[0];
+                    if (task.mListener != null) {
+                        task.mListener.onError((String) args[1]);
+                    }
+                    break;
+                }
+            }
+        }
+    };
+}
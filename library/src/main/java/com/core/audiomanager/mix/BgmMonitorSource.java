@@ -0,0 +1,390 @@
+package com.core.audiomanager.mix;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import com.core.audiomanager.pcm.AudioRecordSource;
+import com.core.audiomanager.pcm.PcmSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 边放背景音乐边录音的数据源
+ * 包装麦克风数据源，每读取一块麦克风数据就向 AudioTrack 写入等时长的背景音乐，两者按采样数同步推进
+ * 通过 AudioTrack/AudioRecord 的时间戳测量麦克风每一帧录制时实际听到的背景音乐位置，
+ * 混音时按 {@link #createMixTracks(String)} 对齐即可做到采样级同步；暂停恢复后背景音乐从暂停时写入的位置继续，对齐关系不变
+ * 录音文件只包含麦克风数据
+ * Created by wangzhen on 2019/5/27.
+ */
+public class BgmMonitorSource implements PcmSource {
+
+    //默认 AudioTrack 缓冲时长 ms
+    private static final int DEFAULT_OUTPUT_BUFFER_MS = 40;
+    //开始时跳过的测量次数，等待输出稳定
+    private static final int WARMUP_MEASUREMENTS = 20;
+
+    private final AudioRecordSource mMic;
+    private final MixTrack mBgm;
+    private int mOutputBufferMs = DEFAULT_OUTPUT_BUFFER_MS;
+    private File mTempDir = new File(System.getProperty("java.io.tmpdir"));
+    private volatile float mBgmVolume = 1f;
+    private volatile float mMonitorGain;
+
+    private PcmDecoder.Source mBgmPcm;
+    private AudioTrack mTrack;
+    private short[] mOutput = new short[0];
+    //AudioTimestamp 在 API 19 加入，第一次测量时创建
+    private AudioTimestamp mTrackTimestamp;
+    private AudioTimestamp mMicTimestamp;
+
+    //本次录制累计的麦克风帧数，暂停恢复后继续累计
+    private long mMicFrames;
+    //本次打开麦克风时已累计的帧数
+    private long mSessionMicFrames;
+    //已写入的背景音乐帧数，即背景音乐播放位置
+    private long mBgmFrames;
+    //当前 AudioTrack 创建后写入的帧数
+    private long mTrackWritten;
+    private volatile int mUnderruns;
+    private boolean isStarved;
+    private int mMeasureSkip;
+    private volatile int mMeasureCount;
+    private volatile double mAlignmentSum;
+
+    /**
+     * @param mic 麦克风数据源
+     * @param bgm 背景音乐及截取区间，只使用区间，偏移、增益和淡入淡出在混音时使用
+     */
+    public BgmMonitorSource(AudioRecordSource mic, MixTrack bgm) {
+        mMic = mic;
+        mBgm = bgm;
+    }
+
+    /**
+     * 设置 AudioTrack 缓冲时长，越小延迟越低但越容易欠载，开始录制前调用
+     *
+     * @param bufferMs ms
+     */
+    public void setOutputBufferMs(int bufferMs) {
+        mOutputBufferMs = bufferMs;
+    }
+
+    /**
+     * 设置麦克风缓冲时长，小于系统最小值时使用最小值，开始录制前调用
+     *
+     * @param bufferMs ms
+     */
+    public void setInputBufferMs(int bufferMs) {
+        mMic.setBufferSize(mMic.getSampleRate() * mMic.getChannelCount() * 2 / 1000 * bufferMs);
+    }
+
+    /**
+     * 设置监听时背景音乐的音量
+     *
+     * @param volume 0-1
+     */
+    public void setBgmVolume(float volume) {
+        mBgmVolume = volume;
+    }
+
+    /**
+     * 设置耳返增益，把麦克风数据混入监听输出，0 表示关闭
+     *
+     * @param gain 增益
+     */
+    public void setMonitorGain(float gain) {
+        mMonitorGain = gain;
+    }
+
+    public MixTrack getBgm() {
+        return mBgm;
+    }
+
+    /**
+     * 设置非 WAV 背景音乐解码后的临时文件目录，默认为 java.io.tmpdir
+     *
+     * @param dir 目录
+     */
+    public void setTempDir(File dir) {
+        mTempDir = dir;
+    }
+
+    /**
+     * 预先解码背景音乐，不调用时在开始录制时解码
+     */
+    public synchronized void prepare() throws IOException {
+        if (mBgmPcm != null) return;
+        File temp = new File(mTempDir, "bgm_" + System.nanoTime() + ".pcm");
+        mBgmPcm = PcmDecoder.decode(mBgm, temp, new PcmDecoder.Cancellable() {
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mMic.getSampleRate();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mMic.getChannelCount();
+    }
+
+    @Override
+    public void start() throws IOException {
+        prepare();
+        mTrack = createTrack(mBgmPcm.sampleRate, mBgmPcm.channelCount);
+        mTrackWritten = 0;
+        mSessionMicFrames = mMicFrames;
+        isStarved = false;
+        mMeasureSkip = WARMUP_MEASUREMENTS;
+        mMic.start();
+        mTrack.play();
+    }
+
+    private AudioTrack createTrack(int sampleRate, int channelCount) throws IOException {
+        int channelMask = channelCount == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+        int minSize = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minSize <= 0) throw new IOException("unsupported bgm sample rate " + sampleRate);
+        int bufferSize = Math.max(minSize, sampleRate * channelCount * 2 / 1000 * mOutputBufferMs);
+        AudioTrack track;
+        if (Build.VERSION.SDK_INT >= 26) {
+            track = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setSampleRate(sampleRate)
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setChannelMask(channelMask)
+                            .build())
+                    .setBufferSizeInBytes(bufferSize)
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                    .build();
+        } else {
+            track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelMask,
+                    AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+        }
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            throw new IOException("AudioTrack init failed");
+        }
+        return track;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        int read = mMic.read(buffer, offset, length);
+        if (read <= 0) return read;
+        int micChannels = mMic.getChannelCount();
+        mMicFrames += read / micChannels;
+        //按采样数同步：写到与已采集的麦克风数据等时长的位置
+        long target = mMicFrames * mBgmPcm.sampleRate / mMic.getSampleRate();
+        int frames = (int) (target - mBgmFrames);
+        if (frames > 0) {
+            fillOutput(frames, buffer, offset, read / micChannels);
+            writeOutput(frames * mBgmPcm.channelCount);
+            mBgmFrames += frames;
+        }
+        measure();
+        return read;
+    }
+
+    /**
+     * 取出背景音乐，需要耳返时按最近邻把麦克风数据混入
+     */
+    private void fillOutput(int frames, short[] mic, int micOffset, int micFrames) {
+        int channels = mBgmPcm.channelCount;
+        int count = frames * channels;
+        if (mOutput.length < count) {
+            mOutput = new short[count];
+        }
+        short[] out = mOutput;
+        float volume = mBgmVolume;
+        long available = Math.max(0, Math.min(frames, mBgmPcm.frames - mBgmFrames));
+        int base = (int) (mBgmFrames * channels);
+        int bgmSamples = (int) available * channels;
+        for (int i = 0; i < bgmSamples; i++) {
+            out[i] = (short) (mBgmPcm.samples.get(base + i) * volume);
+        }
+        for (int i = bgmSamples; i < count; i++) {
+            out[i] = 0;
+        }
+        float gain = mMonitorGain;
+        if (gain > 0 && micFrames > 0) {
+            int micChannels = mMic.getChannelCount();
+            for (int f = 0; f < frames; f++) {
+                int m = micOffset + (int) ((long) f * micFrames / frames) * micChannels;
+                for (int c = 0; c < channels; c++) {
+                    int value = out[f * channels + c] + (int) (mic[m] * gain);
+                    out[f * channels + c] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+                }
+            }
+        }
+    }
+
+    private void writeOutput(int samples) throws IOException {
+        int written = 0;
+        while (written < samples) {
+            int result = mTrack.write(mOutput, written, samples - written);
+            if (result < 0) throw new IOException("AudioTrack write error " + result);
+            if (result == 0) break;
+            written += result;
+        }
+        mTrackWritten += written / mBgmPcm.channelCount;
+        if (Build.VERSION.SDK_INT < 24) {
+            //写入前播放位置已追上写入位置，视为一次欠载
+            long played = mTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+            boolean starved = played + written / mBgmPcm.channelCount >= mTrackWritten;
+            if (starved && !isStarved && mTrackWritten > written / mBgmPcm.channelCount) {
+                mUnderruns++;
+            }
+            isStarved = starved;
+        }
+    }
+
+    /**
+     * 测量麦克风当前帧录制时听到的背景音乐位置
+     */
+    private void measure() {
+        if (Build.VERSION.SDK_INT < 19) return;
+        if (mTrackTimestamp == null) {
+            mTrackTimestamp = new AudioTimestamp();
+            mMicTimestamp = new AudioTimestamp();
+        }
+        if (!mTrack.getTimestamp(mTrackTimestamp)) return;
+        if (mMeasureSkip > 0) {
+            mMeasureSkip--;
+            return;
+        }
+        long micFrame;
+        long micNanos;
+        AudioRecord record = mMic.getAudioRecord();
+        if (Build.VERSION.SDK_INT >= 24 && record != null
+                && record.getTimestamp(mMicTimestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == 0) {
+            //AudioRecord 帧位置从本次 start 开始计数
+            micFrame = mSessionMicFrames + mMicTimestamp.framePosition;
+            micNanos = mMicTimestamp.nanoTime;
+        } else {
+            //没有输入时间戳时以读取返回的时刻近似最后一帧的录制时刻
+            micFrame = mMicFrames;
+            micNanos = System.nanoTime();
+        }
+        int rate = mBgmPcm.sampleRate;
+        //AudioTrack 帧位置从本次创建开始计数，换算到背景音乐位置
+        long trackBase = mBgmFrames - mTrackWritten;
+        double heard = trackBase + mTrackTimestamp.framePosition
+                + (micNanos - mTrackTimestamp.nanoTime) * rate / 1e9;
+        double alignment = heard - (double) micFrame * rate / mMic.getSampleRate();
+        mAlignmentSum += alignment;
+        mMeasureCount++;
+    }
+
+    @Override
+    public void stop() {
+        if (mTrack != null) {
+            try {
+                mTrack.pause();
+                mTrack.flush();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+        mMic.stop();
+    }
+
+    @Override
+    public void release() {
+        if (mTrack != null) {
+            if (Build.VERSION.SDK_INT >= 24) {
+                mUnderruns += mTrack.getUnderrunCount();
+            }
+            mTrack.release();
+            mTrack = null;
+        }
+        mMic.release();
+    }
+
+    /**
+     * 释放解码背景音乐产生的临时文件，录制结束且不再需要混音时调用
+     */
+    public synchronized void releaseBgm() {
+        if (mBgmPcm != null) {
+            mBgmPcm.release();
+            mBgmPcm = null;
+        }
+    }
+
+    /**
+     * 麦克风第0帧录制时听到的背景音乐位置，相对截取区间起点
+     * 负数表示背景音乐晚于录音开始被听到
+     *
+     * @return us，尚未测量时返回0
+     */
+    public long getAlignmentUs() {
+        int count = mMeasureCount;
+        PcmDecoder.Source bgm = mBgmPcm;
+        if (count == 0 || bgm == null) return 0;
+        return (long) (mAlignmentSum / count * 1000000L / bgm.sampleRate);
+    }
+
+    /**
+     * 写入到听到的往返延迟
+     *
+     * @return ms
+     */
+    public double getLatencyMs() {
+        return -getAlignmentUs() / 1000.0;
+    }
+
+    public int getMeasurementCount() {
+        return mMeasureCount;
+    }
+
+    /**
+     * 欠载次数，API 24 以下按播放位置追上写入位置估算
+     */
+    public int getUnderrunCount() {
+        AudioTrack track = mTrack;
+        if (Build.VERSION.SDK_INT >= 24 && track != null) {
+            return mUnderruns + track.getUnderrunCount();
+        }
+        return mUnderruns;
+    }
+
+    /**
+     * 按测量结果对齐的混音音轨，录音在前，背景音乐在后
+     *
+     * @param voicePath 录音文件
+     * @return 音轨
+     */
+    public List<MixTrack> createMixTracks(String voicePath) {
+        MixTrack voice = new MixTrack(voicePath);
+        MixTrack bgm = new MixTrack(mBgm.getPath());
+        bgm.setGain(mBgm.getGain());
+        bgm.setFade(mBgm.getFadeInMs(), mBgm.getFadeOutMs());
+        long alignmentMs = getAlignmentUs() / 1000;
+        if (alignmentMs >= 0) {
+            bgm.setRange(mBgm.getStartMs() + alignmentMs, mBgm.getEndMs());
+        } else {
+            bgm.setRange(mBgm.getStartMs(), mBgm.getEndMs());
+            bgm.setOffset(-alignmentMs);
+        }
+        List<MixTrack> tracks = new ArrayList<>(2);
+        tracks.add(voice);
+        tracks.add(bgm);
+        return tracks;
+    }
+}
@@ -0,0 +1,93 @@
+package com.core.audiomanager.mix;
+
+/**
+ * 参与混音的一条音轨
+ * 取源文件的 [startMs, endMs) 放在输出的 offsetMs 处，按增益和淡入淡出混合
+ * Created by wangzhen on 2019/5/24.
+ */
+public class MixTrack {
+
+    private final String mPath;
+    private long mStartMs;
+    //0 表示到文件末尾
+    private long mEndMs;
+    private long mOffsetMs;
+    private float mGain = 1f;
+    private long mFadeInMs;
+    private long mFadeOutMs;
+
+    /**
+     * @param path 音频文件，WAV 直接读取，其他格式经 MediaCodec 解码
+     */
+    public MixTrack(String path) {
+        mPath = path;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 设置源文件截取区间
+     *
+     * @param startMs 起点
+     * @param endMs   终点，0 表示到文件末尾
+     */
+    public void setRange(long startMs, long endMs) {
+        mStartMs = Math.max(0, startMs);
+        mEndMs = endMs;
+    }
+
+    public long getStartMs() {
+        return mStartMs;
+    }
+
+    public long getEndMs() {
+        return mEndMs;
+    }
+
+    /**
+     * 设置在输出中的起始位置
+     *
+     * @param offsetMs ms
+     */
+    public void setOffset(long offsetMs) {
+        mOffsetMs = Math.max(0, offsetMs);
+    }
+
+    public long getOffsetMs() {
+        return mOffsetMs;
+    }
+
+    /**
+     * 设置线性增益，1 为原音量
+     *
+     * @param gain 增益
+     */
+    public void setGain(float gain) {
+        mGain = Math.max(0, gain);
+    }
+
+    public float getGain() {
+        return mGain;
+    }
+
+    /**
+     * 设置淡入淡出时长
+     *
+     * @param fadeInMs  淡入 ms
+     * @param fadeOutMs 淡出 ms
+     */
+    public void setFade(long fadeInMs, long fadeOutMs) {
+        mFadeInMs = Math.max(0, fadeInMs);
+        mFadeOutMs = Math.max(0, fadeOutMs);
+    }
+
+    public long getFadeInMs() {
+        return mFadeInMs;
+    }
+
+    public long getFadeOutMs() {
+        return mFadeOutMs;
+    }
+}
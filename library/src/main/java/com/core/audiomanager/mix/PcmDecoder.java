@@ -0,0 +1,205 @@
+package com.core.audiomanager.mix;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import com.core.audiomanager.format.WavFormat;
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把音轨的截取区间解码为 16位 PCM
+ * 16位 WAV 直接映射 data 区间；其他格式经 MediaExtractor/MediaCodec 解码到临时文件后映射
+ * Created by wangzhen on 2019/5/24.
+ */
+final class PcmDecoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    /**
+     * 解码结果，采样只通过绝对位置读取，可被多个线程共享
+     */
+    static final class Source {
+        final ShortBuffer samples;
+        final int sampleRate;
+        final int channelCount;
+        final long frames;
+        private final File mTempFile;
+
+        Source(ShortBuffer samples, int sampleRate, int channelCount, File tempFile) {
+            this.samples = samples;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.frames = samples.limit() / channelCount;
+            mTempFile = tempFile;
+        }
+
+        void release() {
+            if (mTempFile != null) {
+                mTempFile.delete();
+            }
+        }
+    }
+
+    interface Cancellable {
+        boolean isCancelled();
+    }
+
+    private PcmDecoder() {
+    }
+
+    /**
+     * 解码音轨
+     *
+     * @param track    音轨
+     * @param tempFile 非 WAV 时存放 PCM 的临时文件
+     * @param cancel   取消标志
+     * @return 解码结果
+     */
+    static Source decode(MixTrack track, File tempFile, Cancellable cancel) throws IOException {
+        Source source = mapWav(track);
+        return source != null ? source : decodeWithCodec(track, tempFile, cancel);
+    }
+
+    private static Source mapWav(MixTrack track) throws IOException {
+        FileInputStream in = new FileInputStream(track.getPath());
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 64 * 1024));
+            if (size < 12 || header.get(0) != 'R' || header.get(8) != 'W') return null;
+            WavFormat wav = WavFormat.parse(header, size);
+            if (wav.getAudioFormat() != WavFormat.FORMAT_PCM || wav.getBitsPerSample() != 16) return null;
+            long start = wav.offsetOfTime(track.getStartMs() * 1000);
+            long end = track.getEndMs() > 0 ? wav.offsetOfTime(track.getEndMs() * 1000) : wav.getDataSize();
+            if (end <= start) throw new IOException("empty range: " + track.getPath());
+            ShortBuffer samples = channel.map(FileChannel.MapMode.READ_ONLY, wav.getDataOffset() + start, end - start)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            return new Source(samples, wav.getSampleRate(), wav.getChannelCount(), null);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Source decodeWithCodec(MixTrack track, File tempFile, Cancellable cancel) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        RandomAccessFile raf = null;
+        try {
+            extractor.setDataSource(track.getPath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("no audio track: " + track.getPath());
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            long startUs = track.getStartMs() * 1000;
+            long endUs = track.getEndMs() > 0 ? track.getEndMs() * 1000 : Long.MAX_VALUE;
+            if (startUs > 0) {
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            raf = new RandomAccessFile(tempFile, "rw");
+            raf.setLength(0);
+            FileChannel out = raf.getChannel();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (cancel.isCancelled()) throw new IOException("cancelled");
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[index], 0);
+                        long sampleTime = extractor.getSampleTime();
+                        if (size < 0 || sampleTime >= endUs) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, sampleTime, 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        writeRange(outputBuffers[index], info, sampleRate, channelCount, startUs, endUs, out);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            long length = out.size();
+            if (length == 0) throw new IOException("empty range: " + track.getPath());
+            ShortBuffer samples = out.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            return new Source(samples, sampleRate, channelCount, tempFile);
+        } catch (IOException | RuntimeException e) {
+            tempFile.delete();
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage());
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (RuntimeException ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+            IoUtil.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 写入解码输出中落在 [startUs, endUs) 的部分
+     */
+    private static void writeRange(ByteBuffer buffer, MediaCodec.BufferInfo info, int sampleRate, int channelCount,
+                                   long startUs, long endUs, FileChannel out) throws IOException {
+        int frameBytes = channelCount * 2;
+        long frames = info.size / frameBytes;
+        long skip = 0;
+        if (info.presentationTimeUs < startUs) {
+            skip = Math.min(frames, (startUs - info.presentationTimeUs) * sampleRate / 1000000L);
+        }
+        long keep = frames - skip;
+        if (endUs != Long.MAX_VALUE) {
+            long endFrame = (endUs - info.presentationTimeUs) * sampleRate / 1000000L;
+            keep = Math.min(keep, endFrame - skip);
+        }
+        if (keep <= 0) return;
+        ByteBuffer range = buffer.duplicate();
+        range.position(info.offset + (int) (skip * frameBytes));
+        range.limit(range.position() + (int) (keep * frameBytes));
+        while (range.hasRemaining()) {
+            out.write(range);
+        }
+    }
+}
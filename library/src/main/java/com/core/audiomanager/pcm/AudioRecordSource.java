@@ -0,0 +1,115 @@
+package com.core.audiomanager.pcm;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.io.IOException;
+
+/**
+ * 基于 AudioRecord 的麦克风数据源
+ * Created by wangzhen on 2019/4/10.
+ */
+public class AudioRecordSource implements PcmSource {
+
+    //默认采样率
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mAudioSource;
+    private int mBufferSize;
+    private AudioRecord mAudioRecord;
+
+    public AudioRecordSource() {
+        this(MediaRecorder.AudioSource.MIC, DEFAULT_SAMPLE_RATE, 1);
+    }
+
+    /**
+     * @param audioSource  MediaRecorder.AudioSource
+     * @param sampleRate   采样率
+     * @param channelCount 声道数 1/2
+     */
+    public AudioRecordSource(int audioSource, int sampleRate, int channelCount) {
+        mAudioSource = audioSource;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    /**
+     * 设置 AudioRecord 内部缓冲区大小，小于系统最小值时使用最小值
+     *
+     * @param bufferSize 字节数
+     */
+    public void setBufferSize(int bufferSize) {
+        mBufferSize = bufferSize;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * 获取 AudioRecord，未开始时为null
+     *
+     * @return AudioRecord
+     */
+    public AudioRecord getAudioRecord() {
+        return mAudioRecord;
+    }
+
+    @Override
+    public void start() throws IOException {
+        int channelConfig = mChannelCount == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minSize = AudioRecord.getMinBufferSize(mSampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        if (minSize <= 0) {
+            throw new IOException("unsupported sample rate " + mSampleRate);
+        }
+        mAudioRecord = new AudioRecord(mAudioSource, mSampleRate, channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT, Math.max(minSize * 2, mBufferSize));
+        if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            release();
+            throw new IOException("AudioRecord init failed");
+        }
+        mAudioRecord.startRecording();
+        if (mAudioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            release();
+            throw new IOException("AudioRecord start failed, microphone may be in use");
+        }
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        AudioRecord record = mAudioRecord;
+        if (record == null) return -1;
+        int read = record.read(buffer, offset, length);
+        if (read < 0) {
+            throw new IOException("AudioRecord read error " + read);
+        }
+        return read;
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioRecord != null) {
+            try {
+                mAudioRecord.stop();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mAudioRecord != null) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+        }
+    }
+}
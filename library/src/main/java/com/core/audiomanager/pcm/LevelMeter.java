@@ -0,0 +1,194 @@
+package com.core.audiomanager.pcm;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.core.audiomanager.callback.AudioLevelListener;
+
+/**
+ * 音量计，按块计算 RMS/峰值 dBFS，带峰值保持与衰减
+ * 按设定的间隔在主线程推送，更新过程中不创建对象；主线程未处理完上一次推送时只更新数值不重复投递
+ * Created by wangzhen on 2019/4/18.
+ */
+public class LevelMeter implements PcmConsumer {
+
+    //静音下限 dBFS
+    public static final float MIN_DB = -96f;
+    //默认推送间隔 ms，对应60fps
+    private static final int DEFAULT_INTERVAL = 16;
+    //默认峰值保持时长 ms
+    private static final int DEFAULT_HOLD = 1000;
+    //默认衰减速度 dB/s
+    private static final float DEFAULT_DECAY = 20f;
+    //转换为级别时的下限 dBFS
+    private static final float LEVEL_FLOOR_DB = -60f;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mNotify = new Runnable() {
+        @Override
+        public void run() {
+            isPosted = false;
+            AudioLevelListener listener = mListener;
+            if (listener != null) {
+                listener.onLevel(mRmsDb, mPeakDb, mPeakHoldDb);
+            }
+        }
+    };
+    private volatile AudioLevelListener mListener;
+    private volatile int mInterval = DEFAULT_INTERVAL;
+    private volatile int mHoldMs = DEFAULT_HOLD;
+    private volatile float mDecay = DEFAULT_DECAY;
+
+    private volatile float mRmsDb = MIN_DB;
+    private volatile float mPeakDb = MIN_DB;
+    private volatile float mPeakHoldDb = MIN_DB;
+    private volatile boolean isPosted;
+
+    //以下只在数据线程中访问
+    private int mWindowSamples;
+    private int mWindowMs;
+    private int mCount;
+    private long mSumSquares;
+    private int mPeak;
+    private int mHoldRemain;
+
+    public void setListener(AudioLevelListener listener) {
+        mListener = listener;
+    }
+
+    public AudioLevelListener getListener() {
+        return mListener;
+    }
+
+    /**
+     * 设置推送间隔，下次开始录制时生效
+     *
+     * @param interval ms
+     */
+    public void setUpdateInterval(int interval) {
+        mInterval = Math.max(1, interval);
+    }
+
+    public int getUpdateInterval() {
+        return mInterval;
+    }
+
+    /**
+     * 设置峰值保持
+     *
+     * @param holdMs 保持时长 ms
+     * @param decay  保持结束后的衰减速度 dB/s
+     */
+    public void setPeakHold(int holdMs, float decay) {
+        mHoldMs = holdMs;
+        mDecay = decay;
+    }
+
+    public float getRmsDb() {
+        return mRmsDb;
+    }
+
+    public float getPeakDb() {
+        return mPeakDb;
+    }
+
+    public float getPeakHoldDb() {
+        return mPeakHoldDb;
+    }
+
+    /**
+     * 将峰值换算为级别，兼容 getVoiceLevel
+     *
+     * @param maxLevel 最大级别
+     * @return 1-maxLevel
+     */
+    public int toLevel(int maxLevel) {
+        float ratio = (mPeakDb - LEVEL_FLOOR_DB) / -LEVEL_FLOOR_DB;
+        if (ratio <= 0) return 1;
+        return Math.min(maxLevel, 1 + (int) (ratio * (maxLevel - 1) + 0.5f));
+    }
+
+    @Override
+    public void onStart(int sampleRate, int channelCount) {
+        mWindowMs = mInterval;
+        mWindowSamples = Math.max(1, sampleRate * channelCount / 1000 * mWindowMs);
+        mCount = 0;
+        mSumSquares = 0;
+        mPeak = 0;
+        reset();
+    }
+
+    @Override
+    public void onPcm(short[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int sample = buffer[i];
+            mSumSquares += sample * sample;
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > mPeak) {
+                mPeak = abs;
+            }
+            if (++mCount >= mWindowSamples) {
+                publish(Math.sqrt((double) mSumSquares / mCount), mPeak, mWindowMs);
+                mCount = 0;
+                mSumSquares = 0;
+                mPeak = 0;
+            }
+        }
+    }
+
+    @Override
+    public void onStop(boolean cancelled) {
+        reset();
+    }
+
+    /**
+     * 输入 MediaRecorder.getMaxAmplitude() 的结果，只有峰值，RMS 以峰值代替
+     *
+     * @param amplitude 自上次调用以来的最大振幅 0-32767
+     * @param elapsedMs 距上次调用的时长 ms
+     */
+    public void feedAmplitude(int amplitude, int elapsedMs) {
+        publish(amplitude, amplitude, elapsedMs);
+    }
+
+    /**
+     * 恢复到静音并推送
+     */
+    public void reset() {
+        mHoldRemain = 0;
+        mRmsDb = MIN_DB;
+        mPeakDb = MIN_DB;
+        mPeakHoldDb = MIN_DB;
+        post();
+    }
+
+    private void publish(double rms, int peak, int elapsedMs) {
+        float peakDb = toDb(peak);
+        float holdDb = mPeakHoldDb;
+        if (peakDb >= holdDb) {
+            holdDb = peakDb;
+            mHoldRemain = mHoldMs;
+        } else if (mHoldRemain > 0) {
+            mHoldRemain -= elapsedMs;
+        } else {
+            holdDb = Math.max(peakDb, holdDb - mDecay * elapsedMs / 1000f);
+        }
+        mRmsDb = toDb(rms);
+        mPeakDb = peakDb;
+        mPeakHoldDb = holdDb;
+        post();
+    }
+
+    private void post() {
+        if (mListener != null && !isPosted) {
+            isPosted = true;
+            mainHandler.post(mNotify);
+        }
+    }
+
+    private static float toDb(double amplitude) {
+        if (amplitude < 1) return MIN_DB;
+        return Math.max(MIN_DB, (float) (20 * Math.log10(amplitude / 32768)));
+    }
+}
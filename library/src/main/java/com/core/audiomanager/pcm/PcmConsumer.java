@@ -0,0 +1,32 @@
+package com.core.audiomanager.pcm;
+
+/**
+ * PCM 数据消费者，如编码器、音量计、网络发送等
+ * 所有回调都在 {@link PcmRecorder} 的分发线程中执行，buffer 会被复用，不能在回调外持有
+ * Created by wangzhen on 2019/4/10.
+ */
+public interface PcmConsumer {
+    /**
+     * 开始录制
+     *
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     */
+    void onStart(int sampleRate, int channelCount);
+
+    /**
+     * 一块 PCM 数据
+     *
+     * @param buffer 交错采样
+     * @param offset 偏移
+     * @param length 采样数
+     */
+    void onPcm(short[] buffer, int offset, int length);
+
+    /**
+     * 录制结束
+     *
+     * @param cancelled 是否取消
+     */
+    void onStop(boolean cancelled);
+}
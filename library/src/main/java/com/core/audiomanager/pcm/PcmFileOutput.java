@@ -0,0 +1,14 @@
+package com.core.audiomanager.pcm;
+
+/**
+ * 输出文件的消费者，录制完成时 {@link PcmRecorder} 以其路径回调 onComplete
+ * Created by wangzhen on 2019/4/10.
+ */
+public interface PcmFileOutput {
+    /**
+     * 获取输出文件路径
+     *
+     * @return 路径
+     */
+    String getOutputPath();
+}
@@ -0,0 +1,368 @@
+package com.core.audiomanager.pcm;
+
+import android.os.Process;
+
+import com.core.audiomanager.callback.AudioCallback;
+import com.core.audiomanager.callback.AudioRecordStateListener;
+import com.core.audiomanager.util.MainExecutor;
+import com.core.audiomanager.util.ThreadUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于 PCM 的录音管线
+ * 采集线程从 {@link PcmSource} 读取数据写入预分配的环形缓冲区，分发线程按块取出交给各个 {@link PcmConsumer}
+ * 录制过程中不按帧分配内存；消费者处理过慢导致缓冲区写满时丢弃数据并计入 overrun
+ * 暂停时释放数据源，恢复后重新开始采集，消费者收到的是连续的数据，输出仍为一个文件
+ * 停止后立即重新开始时不阻塞调用线程，新一次录制的线程先等待上一次的线程退出再打开数据源和回调消费者
+ * Created by wangzhen on 2019/4/10.
+ */
+public class PcmRecorder implements AudioCallback.RecorderCallback {
+
+    //每块时长 ms
+    private static final int BLOCK_MS = 10;
+    //环形缓冲区时长 ms
+    private static final int DEFAULT_RING_MS = 2000;
+    //分发线程空闲等待 ns
+    private static final long PARK_NANOS = BLOCK_MS * 1000000L / 2;
+
+    private final PcmSource mSource;
+    private final Executor mCallbackExecutor;
+    private final List<PcmConsumer> mConsumers = new ArrayList<>();
+    private volatile AudioRecordStateListener mRecordStateListener;
+    private int mRingMs = DEFAULT_RING_MS;
+    //当前录制，停止后仍保留到下一次开始
+    private volatile Session mSession;
+
+    public PcmRecorder() {
+        this(new AudioRecordSource());
+    }
+
+    public PcmRecorder(PcmSource source) {
+        this(source, null);
+    }
+
+    /**
+     * @param source           数据源
+     * @param callbackExecutor 状态回调的执行线程，为null时在主线程回调
+     */
+    public PcmRecorder(PcmSource source, Executor callbackExecutor) {
+        mSource = source;
+        mCallbackExecutor = callbackExecutor != null ? callbackExecutor : new MainExecutor();
+    }
+
+    public PcmSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * 添加消费者，开始录制后添加的在下次录制时生效
+     *
+     * @param consumer 消费者
+     */
+    public void addConsumer(PcmConsumer consumer) {
+        synchronized (mConsumers) {
+            if (!mConsumers.contains(consumer)) {
+                mConsumers.add(consumer);
+            }
+        }
+    }
+
+    public void removeConsumer(PcmConsumer consumer) {
+        synchronized (mConsumers) {
+            mConsumers.remove(consumer);
+        }
+    }
+
+    /**
+     * 设置环形缓冲区时长
+     *
+     * @param ringMs ms
+     */
+    public void setRingDuration(int ringMs) {
+        mRingMs = ringMs;
+    }
+
+    public void setRecordStateListener(AudioRecordStateListener listener) {
+        mRecordStateListener = listener;
+    }
+
+    public boolean isRecording() {
+        Session session = mSession;
+        return session != null && session.isRecording;
+    }
+
+    public boolean isPaused() {
+        Session session = mSession;
+        return session != null && session.isPaused;
+    }
+
+    /**
+     * 因缓冲区写满丢弃的采样数
+     */
+    public long getOverrunSamples() {
+        Session session = mSession;
+        return session != null ? session.overrunSamples : 0;
+    }
+
+    /**
+     * 已采集的采样数
+     */
+    public long getCapturedSamples() {
+        Session session = mSession;
+        return session != null ? session.capturedSamples : 0;
+    }
+
+    /**
+     * 开始录制，上一次录制的线程未退出时由新线程等待，调用线程不阻塞
+     */
+    @Override
+    public synchronized void startRecord() {
+        if (isRecording()) return;
+        final PcmConsumer[] consumers;
+        synchronized (mConsumers) {
+            consumers = mConsumers.toArray(new PcmConsumer[mConsumers.size()]);
+        }
+        final Session previous = mSession;
+        final Session session = new Session(consumers, mSource.getSampleRate(), mSource.getChannelCount(), mRingMs);
+        session.dispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                join(previous != null ? previous.dispatchThread : null);
+                dispatchLoop(session);
+            }
+        }, "PcmRecorder-dispatch");
+        session.captureThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                join(previous != null ? previous.captureThread : null);
+                captureLoop(session);
+            }
+        }, "PcmRecorder-capture");
+        mSession = session;
+        session.dispatchThread.start();
+        session.captureThread.start();
+    }
+
+    @Override
+    public void pauseRecord() {
+        Session session = mSession;
+        if (session != null && session.isRecording) {
+            session.isPaused = true;
+        }
+    }
+
+    @Override
+    public void resumeRecord() {
+        Session session = mSession;
+        if (session == null) return;
+        synchronized (session) {
+            session.isPaused = false;
+            session.notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void cancelRecord() {
+        Session session = mSession;
+        if (session == null) return;
+        session.isCancelled = true;
+        stopRecord();
+    }
+
+    @Override
+    public synchronized void stopRecord() {
+        Session session = mSession;
+        if (session == null) return;
+        //采集线程在当前块读取完毕后退出并释放数据源
+        synchronized (session) {
+            session.isRecording = false;
+            session.notifyAll();
+        }
+    }
+
+    /**
+     * 暂停期间阻塞采集线程，直到恢复或停止
+     */
+    private static void awaitResume(Session session) {
+        synchronized (session) {
+            while (session.isPaused && session.isRecording) {
+                try {
+                    session.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待上一次录制的线程退出，停止后立即重新开始时最多等待一个数据块
+     */
+    private static void join(Thread thread) {
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void captureLoop(Session session) {
+        ThreadUtil.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        Thread dispatch = session.dispatchThread;
+        PcmRingBuffer ring = session.ring;
+        short[] block = new short[session.blockSize];
+        try {
+            //开始前已被停止
+            if (!session.isRecording) return;
+            mSource.start();
+            onMainPrepared();
+            while (session.isRecording) {
+                if (session.isPaused) {
+                    //释放麦克风，恢复时重新打开
+                    mSource.stop();
+                    mSource.release();
+                    awaitResume(session);
+                    if (!session.isRecording) break;
+                    mSource.start();
+                    continue;
+                }
+                int read = mSource.read(block, 0, block.length);
+                if (read < 0) break;
+                if (read == 0) continue;
+                session.capturedSamples += read;
+                int written = ring.write(block, 0, read);
+                if (written < read) {
+                    session.overrunSamples += read - written;
+                }
+                LockSupport.unpark(dispatch);
+            }
+        } catch (Exception e) {
+            session.isFailed = true;
+            onMainError(e.getMessage());
+        } finally {
+            mSource.stop();
+            mSource.release();
+            session.isRecording = false;
+            session.isCapturing = false;
+            LockSupport.unpark(dispatch);
+        }
+    }
+
+    private void dispatchLoop(Session session) {
+        ThreadUtil.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        PcmConsumer[] consumers = session.consumers;
+        PcmRingBuffer ring = session.ring;
+        short[] block = new short[session.blockSize];
+        for (PcmConsumer consumer : consumers) {
+            consumer.onStart(session.sampleRate, session.channelCount);
+        }
+        try {
+            while (true) {
+                int read = ring.read(block, 0, block.length);
+                if (read > 0) {
+                    if (!session.isCancelled) {
+                        for (PcmConsumer consumer : consumers) {
+                            consumer.onPcm(block, 0, read);
+                        }
+                    }
+                } else if (session.isCapturing) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else if (ring.available() == 0) {
+                    break;
+                }
+            }
+        } finally {
+            boolean discard = session.isCancelled || session.isFailed;
+            for (PcmConsumer consumer : consumers) {
+                consumer.onStop(discard);
+            }
+            if (!discard) {
+                onMainComplete(getOutputPath(consumers));
+            }
+        }
+    }
+
+    /**
+     * 录音文件路径，由输出文件的消费者提供
+     */
+    private static String getOutputPath(PcmConsumer[] consumers) {
+        for (PcmConsumer consumer : consumers) {
+            if (consumer instanceof PcmFileOutput) {
+                return ((PcmFileOutput) consumer).getOutputPath();
+            }
+        }
+        return null;
+    }
+
+    private void onMainError(final String error) {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                AudioRecordStateListener listener = mRecordStateListener;
+                if (listener != null) {
+                    listener.onError(error != null ? error : "");
+                }
+            }
+        });
+    }
+
+    private void onMainPrepared() {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                AudioRecordStateListener listener = mRecordStateListener;
+                if (listener != null) {
+                    listener.onPrepared();
+                }
+            }
+        });
+    }
+
+    private void onMainComplete(final String path) {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                AudioRecordStateListener listener = mRecordStateListener;
+                if (listener != null) {
+                    listener.onComplete(path);
+                }
+            }
+        });
+    }
+
+    /**
+     * 一次录制的线程和状态，停止后与下一次录制互不影响
+     */
+    private static class Session {
+        final PcmConsumer[] consumers;
+        final int sampleRate;
+        final int channelCount;
+        final int blockSize;
+        final PcmRingBuffer ring;
+        Thread captureThread;
+        Thread dispatchThread;
+        volatile boolean isRecording = true;
+        //采集线程是否仍在运行，分发线程在其结束且缓冲区取空后退出
+        volatile boolean isCapturing = true;
+        volatile boolean isCancelled;
+        //采集出错，已回调 onError，不再回调 onComplete
+        volatile boolean isFailed;
+        volatile boolean isPaused;
+        volatile long overrunSamples;
+        volatile long capturedSamples;
+
+        Session(PcmConsumer[] consumers, int sampleRate, int channelCount, int ringMs) {
+            this.consumers = consumers;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.blockSize = sampleRate * channelCount * BLOCK_MS / 1000;
+            this.ring = new PcmRingBuffer(sampleRate * channelCount / 1000 * ringMs);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.core.audiomanager.pcm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者/单消费者无锁环形缓冲区
+ * 容量为2的幂，读写位置单调递增，读写过程不分配内存
+ * Created by wangzhen on 2019/4/10.
+ */
+public class PcmRingBuffer {
+
+    private final short[] mBuffer;
+    private final int mMask;
+    //写位置，只由生产者修改
+    private final AtomicLong mWritePos = new AtomicLong();
+    //读位置，只由消费者修改
+    private final AtomicLong mReadPos = new AtomicLong();
+
+    /**
+     * @param minCapacity 最小容量(采样数)，向上取2的幂
+     */
+    public PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        mBuffer = new short[capacity];
+        mMask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * 可读采样数
+     */
+    public int available() {
+        return (int) (mWritePos.get() - mReadPos.get());
+    }
+
+    /**
+     * 可写采样数
+     */
+    public int remaining() {
+        return mBuffer.length - available();
+    }
+
+    /**
+     * 生产者写入，空间不足时只写入能容纳的部分
+     *
+     * @return 写入的采样数
+     */
+    public int write(short[] src, int offset, int length) {
+        long write = mWritePos.get();
+        int free = mBuffer.length - (int) (write - mReadPos.get());
+        int count = Math.min(free, length);
+        if (count <= 0) return 0;
+        int start = (int) (write & mMask);
+        int first = Math.min(count, mBuffer.length - start);
+        System.arraycopy(src, offset, mBuffer, start, first);
+        if (count > first) {
+            System.arraycopy(src, offset + first, mBuffer, 0, count - first);
+        }
+        mWritePos.lazySet(write + count);
+        return count;
+    }
+
+    /**
+     * 消费者读取
+     *
+     * @return 读取的采样数
+     */
+    public int read(short[] dst, int offset, int length) {
+        long read = mReadPos.get();
+        int count = Math.min((int) (mWritePos.get() - read), length);
+        if (count <= 0) return 0;
+        int start = (int) (read & mMask);
+        int first = Math.min(count, mBuffer.length - start);
+        System.arraycopy(mBuffer, start, dst, offset, first);
+        if (count > first) {
+            System.arraycopy(mBuffer, 0, dst, offset + first, count - first);
+        }
+        mReadPos.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * 清空，只能在读写线程都停止时调用
+     */
+    public void clear() {
+        mReadPos.set(0);
+        mWritePos.set(0);
+    }
+}
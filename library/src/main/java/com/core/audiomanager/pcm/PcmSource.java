@@ -0,0 +1,40 @@
+package com.core.audiomanager.pcm;
+
+import java.io.IOException;
+
+/**
+ * PCM 数据源，16bit 交错采样
+ * 与 Android 无关，JVM 测试可使用合成数据源驱动整个录制管线
+ * Created by wangzhen on 2019/4/10.
+ */
+public interface PcmSource {
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * 开始采集
+     */
+    void start() throws IOException;
+
+    /**
+     * 阻塞读取采样
+     *
+     * @param buffer 目标数组
+     * @param offset 偏移
+     * @param length 最大采样数
+     * @return 读取的采样数，数据结束返回-1
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * 停止采集
+     */
+    void stop();
+
+    /**
+     * 释放资源
+     */
+    void release();
+}
@@ -0,0 +1,95 @@
+package com.core.audiomanager.pcm;
+
+/**
+ * 合成正弦波数据源，不依赖录音设备，用于 JVM 测试和调试
+ * Created by wangzhen on 2019/4/10.
+ */
+public class SineWaveSource implements PcmSource {
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final double mFrequency;
+    private final double mAmplitude;
+    //总帧数，-1 为无限
+    private final long mTotalFrames;
+    //是否按实时速度产生数据
+    private final boolean isRealtime;
+    private long mFrame;
+    private long mStartNanos;
+    private volatile boolean isStopped;
+
+    /**
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     * @param frequency    频率 Hz
+     * @param amplitude    幅度 0-1
+     * @param durationMs   时长，-1 为无限
+     * @param realtime     是否按实时速度产生数据
+     */
+    public SineWaveSource(int sampleRate, int channelCount, double frequency, double amplitude,
+                          long durationMs, boolean realtime) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mFrequency = frequency;
+        mAmplitude = amplitude;
+        mTotalFrames = durationMs < 0 ? -1 : durationMs * sampleRate / 1000;
+        isRealtime = realtime;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public void start() {
+        mFrame = 0;
+        mStartNanos = System.nanoTime();
+        isStopped = false;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (isStopped || (mTotalFrames >= 0 && mFrame >= mTotalFrames)) return -1;
+        int frames = length / mChannelCount;
+        if (mTotalFrames >= 0) {
+            frames = (int) Math.min(frames, mTotalFrames - mFrame);
+        }
+        if (isRealtime) {
+            long due = mStartNanos + (mFrame + frames) * 1000000000L / mSampleRate;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+        double step = 2 * Math.PI * mFrequency / mSampleRate;
+        int index = offset;
+        for (int i = 0; i < frames; i++) {
+            short value = (short) (Math.sin(step * (mFrame + i)) * mAmplitude * Short.MAX_VALUE);
+            for (int c = 0; c < mChannelCount; c++) {
+                buffer[index++] = value;
+            }
+        }
+        mFrame += frames;
+        return frames * mChannelCount;
+    }
+
+    @Override
+    public void stop() {
+        isStopped = true;
+    }
+
+    @Override
+    public void release() {
+    }
+}
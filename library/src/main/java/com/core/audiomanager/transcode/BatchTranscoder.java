@@ -0,0 +1,638 @@
+package com.core.audiomanager.transcode;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+
+import com.core.audiomanager.callback.TranscodeListener;
+import com.core.audiomanager.catalog.Recording;
+import com.core.audiomanager.catalog.RecordingCatalog;
+import com.core.audiomanager.encode.EncodeConfig;
+import com.core.audiomanager.encode.FileEncoder;
+import com.core.audiomanager.util.ThreadUtil;
+import com.core.audiomanager.waveform.WaveformReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台批量转码，把目录或录音索引中的旧录音转为目标格式
+ * 与 CPU 核数相同的后台优先级线程逐个取文件，边解码边编码，不产生 PCM 临时文件；
+ * 应用在前台或电量低且未充电时暂停，条件恢复后继续；暂停时放弃正在转码的文件以释放编解码器，下次转码时重新处理；进度和结果在主线程回调
+ * 应用在前台或电量低且未充电时暂停，条件恢复后继续；进度和结果在主线程回调
+ * Created by wangzhen on 2019/5/29.
+ */
+public class BatchTranscoder {
+
+    private static final int MSG_PROGRESS = 0x1;
+    private static final int MSG_PAUSE = 0x2;
+    private static final int MSG_COMPLETE = 0x3;
+
+    //检查前台和电量的间隔 ms
+    private static final int CHECK_INTERVAL_MS = 2000;
+    //默认最低电量百分比
+    private static final int DEFAULT_MIN_BATTERY = 20;
+    //进度回调最小间隔 ms
+    private static final int PROGRESS_INTERVAL_MS = 200;
+    private static final long TIMEOUT_US = 10000;
+    private static final String TEMP_SUFFIX = ".tmp";
+    //可转码的录音格式
+    private static final String[] SOURCE_EXTENSIONS = {".amr", ".wav", ".aac"};
+    private static final String CATALOG_NAME = ".catalog";
+    //录音目录中正在录制的文件日志，只在索引管理的目录中出现
+    private static final String JOURNAL_NAME = ".journal";
+
+    private final Context mContext;
+    private final EncodeConfig mConfig;
+    private final Handler workHandler;
+    private final int mThreadCount;
+    private volatile int mMinBatteryLevel = DEFAULT_MIN_BATTERY;
+    private volatile boolean isPauseInForeground = true;
+    private volatile TranscodeListener mListener;
+
+    private volatile boolean isRunning;
+    private volatile boolean isCancelled;
+    private volatile boolean isPaused;
+    private final Object mPauseLock = new Object();
+    private ExecutorService mExecutor;
+    private RecordingCatalog mCatalog;
+    private TranscodeLog mLog;
+    private List<File> mFiles;
+    private final AtomicInteger mNext = new AtomicInteger();
+    private final AtomicInteger mActiveWorkers = new AtomicInteger();
+
+    private volatile int mTotal;
+    private final AtomicInteger mProcessed = new AtomicInteger();
+    private final AtomicInteger mTranscoded = new AtomicInteger();
+    private final AtomicInteger mFailed = new AtomicInteger();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+    //不计暂停的运行时间
+    private volatile long mActiveNanos;
+    private volatile long mActiveSince;
+    private volatile long mLastProgressTime;
+
+    /**
+     * @param context context
+     * @param config  目标格式和码率，采样率和声道数沿用原文件
+     */
+    public BatchTranscoder(Context context, EncodeConfig config) {
+        if (!config.isPcmPipeline()) {
+            throw new IllegalArgumentException("unsupported format " + config.getFormat());
+        }
+        mContext = context.getApplicationContext();
+        mConfig = config;
+        mThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        HandlerThread thread = new HandlerThread("BatchTranscoder");
+        thread.start();
+        workHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 设置电量低于该百分比且未充电时暂停，0 表示不检查
+     *
+     * @param percent 0-100
+     */
+    public void setMinBatteryLevel(int percent) {
+        mMinBatteryLevel = percent;
+    }
+
+    /**
+     * 设置应用在前台时是否暂停，默认暂停
+     *
+     * @param pause true / false
+     */
+    public void setPauseInForeground(boolean pause) {
+        isPauseInForeground = pause;
+    }
+
+    public void setListener(TranscodeListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 转码目录下的录音，目录由 {@link RecordingCatalog} 管理时同时更新索引
+     * 有录制日志的目录即使还没有索引文件也按索引处理，正在录制的文件不在索引中，不会被转码
+     *
+     * @param dir 目录
+     * @return 已有任务在运行时返回false
+     */
+    public boolean start(String dir) {
+        File file = new File(dir);
+        if (new File(file, CATALOG_NAME).exists() || new File(file, JOURNAL_NAME).exists()) {
+            return start(RecordingCatalog.open(dir));
+        }
+        return start(file, null);
+    }
+
+    /**
+     * 转码索引中的录音，转码后的录音保留 id 和创建时间
+     *
+     * @param catalog 录音索引
+     * @return 已有任务在运行时返回false
+     */
+    public boolean start(RecordingCatalog catalog) {
+        return start(catalog.getDir(), catalog);
+    }
+
+    private synchronized boolean start(final File dir, final RecordingCatalog catalog) {
+        if (isRunning) return false;
+        isRunning = true;
+        isCancelled = false;
+        isPaused = false;
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                innerStart(dir, catalog);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 取消，正在转码的文件保持原样，已完成的不会回退
+     */
+    public void cancel() {
+        isCancelled = true;
+        synchronized (mPauseLock) {
+            mPauseLock.notifyAll();
+        }
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public int getTotalCount() {
+        return mTotal;
+    }
+
+    public int getProcessedCount() {
+        return mProcessed.get();
+    }
+
+    public int getTranscodedCount() {
+        return mTranscoded.get();
+    }
+
+    public int getFailedCount() {
+        return mFailed.get();
+    }
+
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    /**
+     * 不计暂停时间的处理速度
+     *
+     * @return 文件数/秒
+     */
+    public float getFilesPerSecond() {
+        long nanos = mActiveNanos;
+        long since = mActiveSince;
+        if (since > 0) {
+            nanos += System.nanoTime() - since;
+        }
+        return nanos > 0 ? mProcessed.get() * 1e9f / nanos : 0;
+    }
+
+    private void innerStart(File dir, RecordingCatalog catalog) {
+        mCatalog = catalog;
+        mLog = new TranscodeLog(dir);
+        mFiles = collect(dir, catalog);
+        mTotal = mFiles.size();
+        mNext.set(0);
+        mProcessed.set(0);
+        mTranscoded.set(0);
+        mFailed.set(0);
+        mBytesSaved.set(0);
+        mActiveNanos = 0;
+        mActiveSince = System.nanoTime();
+        if (mFiles.isEmpty()) {
+            finish();
+            return;
+        }
+        checkConditions.run();
+        mExecutor = Executors.newFixedThreadPool(mThreadCount, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchTranscoder-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mActiveWorkers.set(mThreadCount);
+        for (int i = 0; i < mThreadCount; i++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    workLoop();
+                }
+            });
+        }
+    }
+
+    /**
+     * 列出需要转码的文件，同时清理上次中断留下的临时文件和已转码但未删除的原文件
+     */
+    private List<File> collect(File dir, RecordingCatalog catalog) {
+        String target = mConfig.getExtension();
+        ArrayList<File> files = new ArrayList<>();
+        if (catalog != null) {
+            List<Recording> recordings = catalog.query(0, catalog.getCount(), false);
+            for (Recording recording : recordings) {
+                if (recording.getFormat() != mConfig.getFormat()) {
+                    files.add(new File(recording.getPath()));
+                } else {
+                    deleteStaleSources(new File(recording.getPath()));
+                }
+            }
+        } else {
+            File[] all = dir.listFiles();
+            if (all == null) return files;
+            for (File file : all) {
+                String name = file.getName();
+                if (name.startsWith(".") || !file.isFile()) continue;
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    if (name.endsWith(target + TEMP_SUFFIX)) file.delete();
+                    continue;
+                }
+                String ext = extensionOf(name);
+                if (ext != null && !ext.equals(target)) {
+                    files.add(file);
+                }
+            }
+        }
+        ArrayList<File> pending = new ArrayList<>(files.size());
+        for (File file : files) {
+            new File(targetOf(file).getPath() + TEMP_SUFFIX).delete();
+            Character status = mLog.get(file.getName());
+            if (status == null) {
+                pending.add(file);
+            } else if (status == TranscodeLog.DONE && targetOf(file).exists()
+                    && RecordingCatalog.tryPin(file.getPath())) {
+                if (RecordingCatalog.unpinAndDelete(file.getPath())) {
+                    WaveformReader.delete(file.getPath());
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 删除已转码录音旁同 id 的其他格式文件
+     * 索引已指向转码结果但原文件未删除时（删除前进程退出或原文件正在播放）留下，按索引列出时不会再被处理
+     *
+     * @param target 索引中的转码结果
+     */
+    private void deleteStaleSources(File target) {
+        String name = target.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0) return;
+        String id = name.substring(0, dot);
+        for (String ext : SOURCE_EXTENSIONS) {
+            if (ext.equals(mConfig.getExtension())) continue;
+            File source = new File(target.getParentFile(), id + ext);
+            String path = source.getPath();
+            if (source.exists() && RecordingCatalog.tryPin(path) && RecordingCatalog.unpinAndDelete(path)) {
+                WaveformReader.delete(path);
+            }
+        }
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0) return null;
+        String ext = name.substring(dot);
+        return Arrays.asList(SOURCE_EXTENSIONS).contains(ext) ? ext : null;
+    }
+
+    private File targetOf(File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(source.getParentFile(), name.substring(0, dot) + mConfig.getExtension());
+    }
+
+    private void workLoop() {
+        ThreadUtil.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        //每个线程复用同一块缓冲区
+        short[] block = new short[16 * 1024];
+        try {
+            while (!isCancelled) {
+                awaitResume();
+                int index = mNext.getAndIncrement();
+                if (index >= mFiles.size() || isCancelled) break;
+                transcodeFile(mFiles.get(index), block);
+            }
+        } finally {
+            if (mActiveWorkers.decrementAndGet() == 0) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish();
+                    }
+                });
+            }
+        }
+    }
+
+    private void transcodeFile(File source, short[] block) {
+        String path = source.getPath();
+        //正在播放的录音留到下次处理；转码期间持有 pin，配额清理不会删除原文件
+        if (!source.exists() || !RecordingCatalog.tryPin(path)) {
+            mProcessed.incrementAndGet();
+            notifyProgress();
+            return;
+        }
+        boolean unpinned = false;
+        try {
+            File target = targetOf(source);
+            File temp = new File(target.getPath() + TEMP_SUFFIX);
+            long sourceSize = source.length();
+            char status;
+            try {
+                long targetSize = transcode(source, temp, block);
+                if (targetSize >= sourceSize) {
+                    temp.delete();
+                    status = TranscodeLog.KEPT;
+                } else {
+                    if (!temp.renameTo(target)) throw new IOException("rename failed");
+                    if (mCatalog != null) {
+                        mCatalog.replace(Long.parseLong(target.getName().substring(0,
+                                target.getName().lastIndexOf('.'))), target.getPath());
+                    }
+                    status = TranscodeLog.DONE;
+                    mTranscoded.incrementAndGet();
+                    mBytesSaved.addAndGet(sourceSize - targetSize);
+                }
+            } catch (PausedException e) {
+                //暂停时放弃当前文件，释放编解码器，下次转码时重新处理
+                temp.delete();
+                status = 0;
+            } catch (IOException | RuntimeException e) {
+                temp.delete();
+                if (isCancelled) return;
+                status = TranscodeLog.FAILED;
+                mFailed.incrementAndGet();
+            }
+            if (status != 0) {
+                try {
+                    mLog.append(status, source.getName());
+                } catch (IOException ignored) {
+                }
+            }
+            if (status == TranscodeLog.DONE) {
+                unpinned = true;
+                //转码期间开始播放原文件时保留，下次转码时清理
+                if (RecordingCatalog.unpinAndDelete(path)) {
+                    WaveformReader.delete(path);
+                }
+            }
+        } finally {
+            if (!unpinned) {
+                RecordingCatalog.unpin(path);
+            }
+        }
+        mProcessed.incrementAndGet();
+        notifyProgress();
+    }
+
+    /**
+     * 解码原文件并直接编码到临时文件
+     *
+     * @return 输出大小
+     */
+    private long transcode(File source, File temp, short[] block) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        FileEncoder encoder = null;
+        try {
+            extractor.setDataSource(source.getPath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("no audio track: " + source);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (isCancelled) throw new IOException("cancelled");
+                if (isPaused) throw new PausedException();
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[index], 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        if (encoder == null) {
+                            //采样率和声道数以解码输出为准
+                            encoder = FileEncoder.open(temp, mConfig, sampleRate, channelCount);
+                        }
+                        ByteBuffer output = outputBuffers[index];
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        ShortBuffer samples = output.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+                        while (samples.hasRemaining()) {
+                            int count = Math.min(block.length, samples.remaining());
+                            samples.get(block, 0, count);
+                            encoder.encode(block, 0, count);
+                        }
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            if (encoder == null) throw new IOException("empty audio: " + source);
+            return encoder.finish();
+        } finally {
+            if (encoder != null) {
+                encoder.release();
+            }
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (RuntimeException ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    /**
+     * 转码过程中暂停，放弃当前文件
+     */
+    private static class PausedException extends IOException {
+        PausedException() {
+            super("paused");
+        }
+    }
+
+    /**
+     * 暂停期间阻塞工作线程，直到恢复或取消
+     */
+    private void awaitResume() {
+        synchronized (mPauseLock) {
+            while (isPaused && !isCancelled) {
+                try {
+                    mPauseLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 工作线程定时检查前台和电量
+     */
+    private final Runnable checkConditions = new Runnable() {
+        @Override
+        public void run() {
+            if (!isRunning) return;
+            setPaused((isPauseInForeground && isForeground()) || isBatteryLow());
+            workHandler.postDelayed(this, CHECK_INTERVAL_MS);
+        }
+    };
+
+    private void setPaused(boolean paused) {
+        if (paused == isPaused) return;
+        synchronized (mPauseLock) {
+            isPaused = paused;
+            if (paused) {
+                mActiveNanos += System.nanoTime() - mActiveSince;
+                mActiveSince = 0;
+            } else {
+                mActiveSince = System.nanoTime();
+                mPauseLock.notifyAll();
+            }
+        }
+        Message.obtain(mainHandler, MSG_PAUSE, paused ? 1 : 0, 0).sendToTarget();
+    }
+
+    private static boolean isForeground() {
+        ActivityManager.RunningAppProcessInfo info = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(info);
+        return info.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+    }
+
+    private boolean isBatteryLow() {
+        int min = mMinBatteryLevel;
+        if (min <= 0) return false;
+        Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) return false;
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if (status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL) {
+            return false;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 / scale < min;
+    }
+
+    /**
+     * 工作线程结束本次任务
+     */
+    private void finish() {
+        workHandler.removeCallbacks(checkConditions);
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+        if (mActiveSince > 0) {
+            mActiveNanos += System.nanoTime() - mActiveSince;
+            mActiveSince = 0;
+        }
+        mLog.close();
+        mFiles = null;
+        mCatalog = null;
+        synchronized (this) {
+            isRunning = false;
+        }
+        mainHandler.sendEmptyMessage(MSG_COMPLETE);
+    }
+
+    private void notifyProgress() {
+        long now = System.currentTimeMillis();
+        if (now - mLastProgressTime < PROGRESS_INTERVAL_MS && mProcessed.get() < mTotal) return;
+        mLastProgressTime = now;
+        mainHandler.sendEmptyMessage(MSG_PROGRESS);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            TranscodeListener listener = mListener;
+            if (listener == null) return;
+            switch (msg.what) {
+                case MSG_PROGRESS:
+                    listener.onProgress(mProcessed.get(), mTotal, getFilesPerSecond(), mBytesSaved.get());
+                    break;
+                case MSG_PAUSE:
+                    listener.onPauseChanged(msg.arg1 == 1);
+                    break;
+                case MSG_COMPLETE:
+                    listener.onComplete(mTranscoded.get(), mFailed.get(), mBytesSaved.get());
+                    break;
+            }
+        }
+    };
+}
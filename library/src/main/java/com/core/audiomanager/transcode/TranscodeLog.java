@@ -0,0 +1,92 @@
+package com.core.audiomanager.transcode;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+/**
+ * 转码进度日志，每处理完一个文件追加一行 "状态 文件名"
+ * 进程被杀后重新开始时跳过已记录的文件；末尾未写完整的行被忽略
+ * Created by wangzhen on 2019/5/29.
+ */
+class TranscodeLog {
+
+    static final char DONE = 'D';
+    //转码后不比原文件小，保留原文件
+    static final char KEPT = 'K';
+    static final char FAILED = 'F';
+
+    private static final String LOG_NAME = ".transcode";
+
+    private final File mFile;
+    private final HashMap<String, Character> mEntries = new HashMap<>();
+    private FileOutputStream mOut;
+
+    TranscodeLog(File dir) {
+        mFile = new File(dir, LOG_NAME);
+        read();
+    }
+
+    /**
+     * 文件上次的处理结果
+     *
+     * @return 未处理返回null
+     */
+    synchronized Character get(String name) {
+        return mEntries.get(name);
+    }
+
+    synchronized void append(char status, String name) throws IOException {
+        if (mOut == null) {
+            boolean truncated = endsWithPartialLine();
+            mOut = new FileOutputStream(mFile, true);
+            if (truncated) {
+                mOut.write('\n');
+            }
+        }
+        mOut.write((status + " " + name + "\n").getBytes("UTF-8"));
+        mEntries.put(name, status);
+    }
+
+    synchronized void close() {
+        if (mOut != null) {
+            IoUtil.closeQuietly(mOut);
+            mOut = null;
+        }
+    }
+
+    private boolean endsWithPartialLine() throws IOException {
+        if (mFile.length() == 0) return false;
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        } finally {
+            file.close();
+        }
+    }
+
+    private void read() {
+        if (!mFile.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 2 && line.charAt(1) == ' ') {
+                    mEntries.put(line.substring(2), line.charAt(0));
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            IoUtil.closeQuietly(reader);
+        }
+    }
+}
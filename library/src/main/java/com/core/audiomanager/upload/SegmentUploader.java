@@ -0,0 +1,262 @@
+package com.core.audiomanager.upload;
+
+import com.core.audiomanager.callback.AudioSegmentListener;
+import com.core.audiomanager.callback.SegmentUploadListener;
+import com.core.audiomanager.encode.EncodeStage;
+import com.core.audiomanager.util.IoUtil;
+import com.core.audiomanager.util.MainExecutor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 边录边传，分段写完后按顺序 POST 到指定 url
+ * 请求体为分段文件内容，X-Segment-Index 头为分段序号；失败时按退避重试，之后的分段等待重试结束以保证顺序
+ * 录音完成后调用 {@link #finish()}，剩余分段上传完后删除已全部上传的分段目录并结束上传线程
+ * Created by wangzhen on 2019/5/17.
+ */
+public class SegmentUploader implements AudioSegmentListener {
+
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 15 * 1000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BACKOFF_MS = 1000;
+
+    private final String mUrl;
+    private final Executor mCallbackExecutor;
+    //单线程按顺序上传
+    private final ExecutorService mUploadExecutor;
+    private final Map<String, String> mHeaders = new LinkedHashMap<>();
+    //取消时计数归零，唤醒正在退避等待的重试
+    private final CountDownLatch mCancelSignal = new CountDownLatch(1);
+    private volatile int mMaxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long mRetryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+    private volatile SegmentUploadListener mListener;
+    private volatile boolean isCancelled;
+    private volatile long mUploadedBytes;
+    //以下字段只在上传线程访问
+    //收到的分段所属的录音
+    private final Set<String> mRecordings = new LinkedHashSet<>();
+    //有分段上传失败的录音，分段保留
+    private final Set<String> mFailedRecordings = new HashSet<>();
+
+    /**
+     * @param url 上传地址
+     */
+    public SegmentUploader(String url) {
+        this(url, null);
+    }
+
+    /**
+     * @param url              上传地址
+     * @param callbackExecutor 上传回调的执行线程，为null时在主线程回调
+     */
+    public SegmentUploader(String url, Executor callbackExecutor) {
+        mUrl = url;
+        mCallbackExecutor = callbackExecutor != null ? callbackExecutor : new MainExecutor();
+        mUploadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "SegmentUploader");
+            }
+        });
+    }
+
+    /**
+     * 添加请求头，如录音 id、鉴权信息
+     */
+    public synchronized void setHeader(String name, String value) {
+        mHeaders.put(name, value);
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        mMaxRetries = maxRetries;
+    }
+
+    /**
+     * 设置第一次重试前的等待时间，之后每次加倍
+     *
+     * @param backoffMs ms
+     */
+    public void setRetryBackoff(long backoffMs) {
+        mRetryBackoffMs = backoffMs;
+    }
+
+    public void setUploadListener(SegmentUploadListener listener) {
+        mListener = listener;
+    }
+
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    @Override
+    public void onSegment(final int index, final String path, long duration) {
+        try {
+            mUploadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    uploadWithRetry(index, path);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //已 finish 或 cancel，之后的分段不再上传
+        }
+    }
+
+    /**
+     * 不再接收新的分段，已收到的分段上传完后删除分段目录并结束上传线程
+     * 分段在录音停止时拼接为完整文件，需在录音完成回调之后调用；有分段上传失败的录音保留分段目录
+     */
+    public void finish() {
+        try {
+            mUploadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deleteUploadedSegments();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //已 finish 或 cancel
+        }
+        mUploadExecutor.shutdown();
+    }
+
+    /**
+     * 取消未开始的上传并结束上传线程，正在退避等待的重试立即放弃
+     */
+    public void cancel() {
+        isCancelled = true;
+        mCancelSignal.countDown();
+        mUploadExecutor.shutdownNow();
+    }
+
+    /**
+     * 等待 {@link #finish()} 或 {@link #cancel()} 后上传线程结束
+     *
+     * @return 超时返回false
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mUploadExecutor.awaitTermination(timeout, unit);
+    }
+
+    private void uploadWithRetry(final int index, final String path) {
+        String recording = EncodeStage.outputPathOf(path);
+        if (recording != null) {
+            mRecordings.add(recording);
+        }
+        String error = null;
+        for (int attempt = 0; attempt <= mMaxRetries && !isCancelled; attempt++) {
+            if (attempt > 0) {
+                try {
+                    if (mCancelSignal.await(mRetryBackoffMs << (attempt - 1), TimeUnit.MILLISECONDS)) return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                upload(index, path);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SegmentUploadListener listener = mListener;
+                        if (listener != null) listener.onUploaded(index, path);
+                    }
+                });
+                return;
+            } catch (IOException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+        }
+        if (recording != null) {
+            mFailedRecordings.add(recording);
+        }
+        if (!isCancelled) {
+            final String message = error;
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SegmentUploadListener listener = mListener;
+                    if (listener != null) listener.onUploadFailed(index, path, message);
+                }
+            });
+        }
+    }
+
+    private void deleteUploadedSegments() {
+        if (isCancelled) return;
+        for (String recording : mRecordings) {
+            if (!mFailedRecordings.contains(recording)) {
+                EncodeStage.deleteSegments(recording);
+            }
+        }
+        mRecordings.clear();
+    }
+
+    private void upload(int index, String path) throws IOException {
+        File file = new File(path);
+        HttpURLConnection conn = null;
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            conn = (HttpURLConnection) new URL(mUrl).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode((int) file.length());
+            conn.setRequestProperty("Content-Type", contentTypeOf(path));
+            conn.setRequestProperty("X-Segment-Index", String.valueOf(index));
+            synchronized (this) {
+                for (Map.Entry<String, String> header : mHeaders.entrySet()) {
+                    conn.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            in = new FileInputStream(file);
+            out = conn.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+            int code = conn.getResponseCode();
+            if (code < 200 || code >= 300) {
+                throw new IOException("http " + code);
+            }
+            mUploadedBytes += file.length();
+        } finally {
+            IoUtil.closeQuietly(in);
+            IoUtil.closeQuietly(out);
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    private static String contentTypeOf(String path) {
+        if (path.endsWith(".wav")) return "audio/wav";
+        if (path.endsWith(".aac")) return "audio/aac";
+        if (path.endsWith(".amr")) return "audio/amr";
+        return "application/octet-stream";
+    }
+}
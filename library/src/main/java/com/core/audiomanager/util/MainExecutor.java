@@ -0,0 +1,20 @@
+package com.core.audiomanager.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 在主线程执行，用作回调的默认线程
+ * Created by wangzhen on 2019/6/4.
+ */
+public class MainExecutor implements Executor {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+        mHandler.post(command);
+    }
+}
@@ -0,0 +1,25 @@
+package com.core.audiomanager.util;
+
+import android.os.Process;
+
+/**
+ * 工作线程设置
+ * Created by wangzhen on 2019/6/5.
+ */
+public class ThreadUtil {
+
+    private ThreadUtil() {
+    }
+
+    /**
+     * 设置当前线程优先级，JVM 测试中没有 native 实现时忽略
+     *
+     * @param priority Process.THREAD_PRIORITY_XXX
+     */
+    public static void setThreadPriority(int priority) {
+        try {
+            Process.setThreadPriority(priority);
+        } catch (RuntimeException | UnsatisfiedLinkError ignored) {
+        }
+    }
+}
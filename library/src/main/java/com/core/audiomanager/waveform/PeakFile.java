@@ -0,0 +1,37 @@
+package com.core.audiomanager.waveform;
+
+/**
+ * 波形峰值索引文件格式，小端
+ * <pre>
+ * header: magic(int) version(short) levelCount(short) sampleRate(int) channelCount(int) totalFrames(long)
+ * level:  framesPerPeak(int) peakCount(int) offset(int)，共 levelCount 项
+ * data:   每个峰值两个字节 min/max，为采样值的高8位
+ * </pre>
+ * 第0级每 BASE_FRAMES 帧一个峰值，之后每级合并 LEVEL_FACTOR 个上一级峰值
+ * Created by wangzhen on 2019/4/22.
+ */
+final class PeakFile {
+
+    static final int MAGIC = 0x4b414550;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int LEVEL_ENTRY_SIZE = 12;
+    static final String SUFFIX = ".peaks";
+
+    //第0级每个峰值对应的帧数
+    static final int BASE_FRAMES = 256;
+    //相邻两级的倍数
+    static final int LEVEL_FACTOR = 4;
+    //最多级数
+    static final int MAX_LEVELS = 6;
+
+    private PeakFile() {
+    }
+
+    /**
+     * 音频文件对应的索引文件路径
+     */
+    static String pathOf(String audioPath) {
+        return audioPath + SUFFIX;
+    }
+}
@@ -0,0 +1,191 @@
+package com.core.audiomanager.waveform;
+
+import com.core.audiomanager.pcm.PcmConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 录音时生成多级 min/max 波形索引，录制结束后写入音频文件旁的 .peaks 文件
+ * 作为 {@link PcmConsumer} 加在编码阶段之后，编码失败或取消时不生成索引
+ * Created by wangzhen on 2019/4/22.
+ */
+public class WaveformIndexer implements PcmConsumer {
+
+    private final String mAudioPath;
+    private int mSampleRate;
+    private int mChannelCount;
+    private long mTotalFrames;
+
+    //各级峰值，min/max 交错
+    private final byte[][] mLevels = new byte[PeakFile.MAX_LEVELS][];
+    private final int[] mCounts = new int[PeakFile.MAX_LEVELS];
+    //第0级当前峰值累积
+    private int mMin;
+    private int mMax;
+    private int mSamples;
+    private int mSamplesPerPeak;
+
+    /**
+     * @param audioPath 录音文件路径
+     */
+    public WaveformIndexer(String audioPath) {
+        mAudioPath = audioPath;
+    }
+
+    public String getAudioPath() {
+        return mAudioPath;
+    }
+
+    @Override
+    public void onStart(int sampleRate, int channelCount) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mSamplesPerPeak = PeakFile.BASE_FRAMES * channelCount;
+        mTotalFrames = 0;
+        mSamples = 0;
+        mMin = Short.MAX_VALUE;
+        mMax = Short.MIN_VALUE;
+        //按一分钟预分配第0级，之后成倍扩容
+        int initial = sampleRate / PeakFile.BASE_FRAMES * 60 * 2;
+        for (int i = 0; i < PeakFile.MAX_LEVELS; i++) {
+            mLevels[i] = new byte[Math.max(64, initial)];
+            mCounts[i] = 0;
+            initial /= PeakFile.LEVEL_FACTOR;
+        }
+    }
+
+    @Override
+    public void onPcm(short[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int sample = buffer[i];
+            if (sample < mMin) mMin = sample;
+            if (sample > mMax) mMax = sample;
+            if (++mSamples >= mSamplesPerPeak) {
+                flushPeak();
+            }
+        }
+        mTotalFrames += length / mChannelCount;
+    }
+
+    @Override
+    public void onStop(boolean cancelled) {
+        if (cancelled) return;
+        if (mSamples > 0) {
+            flushPeak();
+        }
+        flushPartialLevels();
+        //编码失败时音频文件已被删除
+        if (!new File(mAudioPath).exists()) return;
+        try {
+            write();
+        } catch (IOException ignored) {
+            new File(PeakFile.pathOf(mAudioPath)).delete();
+        }
+    }
+
+    private void flushPeak() {
+        append(0, (byte) (mMin >> 8), (byte) (mMax >> 8));
+        mSamples = 0;
+        mMin = Short.MAX_VALUE;
+        mMax = Short.MIN_VALUE;
+    }
+
+    /**
+     * 追加峰值，凑满 LEVEL_FACTOR 个时合并到下一级
+     */
+    private void append(int level, byte min, byte max) {
+        byte[] peaks = mLevels[level];
+        int index = mCounts[level] << 1;
+        if (index + 2 > peaks.length) {
+            peaks = mLevels[level] = Arrays.copyOf(peaks, peaks.length << 1);
+        }
+        peaks[index] = min;
+        peaks[index + 1] = max;
+        int count = ++mCounts[level];
+        if (level + 1 < PeakFile.MAX_LEVELS && count % PeakFile.LEVEL_FACTOR == 0) {
+            byte mergedMin = Byte.MAX_VALUE;
+            byte mergedMax = Byte.MIN_VALUE;
+            for (int i = index + 2 - PeakFile.LEVEL_FACTOR * 2; i <= index; i += 2) {
+                if (peaks[i] < mergedMin) mergedMin = peaks[i];
+                if (peaks[i + 1] > mergedMax) mergedMax = peaks[i + 1];
+            }
+            append(level + 1, mergedMin, mergedMax);
+        }
+    }
+
+    /**
+     * 每级末尾不足 LEVEL_FACTOR 个的峰值也合并到下一级
+     */
+    private void flushPartialLevels() {
+        for (int level = 0; level + 1 < PeakFile.MAX_LEVELS; level++) {
+            int remain = mCounts[level] % PeakFile.LEVEL_FACTOR;
+            if (remain == 0) continue;
+            byte[] peaks = mLevels[level];
+            byte mergedMin = Byte.MAX_VALUE;
+            byte mergedMax = Byte.MIN_VALUE;
+            for (int i = (mCounts[level] - remain) << 1; i < mCounts[level] << 1; i += 2) {
+                if (peaks[i] < mergedMin) mergedMin = peaks[i];
+                if (peaks[i + 1] > mergedMax) mergedMax = peaks[i + 1];
+            }
+            append(level + 1, mergedMin, mergedMax);
+        }
+    }
+
+    /**
+     * 写入临时文件后重命名，读取方不会看到写了一半的索引
+     */
+    private void write() throws IOException {
+        int levelCount = 1;
+        while (levelCount < PeakFile.MAX_LEVELS && mCounts[levelCount] > 0) {
+            levelCount++;
+        }
+        int dataOffset = PeakFile.HEADER_SIZE + levelCount * PeakFile.LEVEL_ENTRY_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(PeakFile.MAGIC);
+        header.putShort(PeakFile.VERSION);
+        header.putShort((short) levelCount);
+        header.putInt(mSampleRate);
+        header.putInt(mChannelCount);
+        header.putLong(mTotalFrames);
+        int offset = dataOffset;
+        int framesPerPeak = PeakFile.BASE_FRAMES;
+        for (int i = 0; i < levelCount; i++) {
+            header.putInt(framesPerPeak);
+            header.putInt(mCounts[i]);
+            header.putInt(offset);
+            offset += mCounts[i] << 1;
+            framesPerPeak *= PeakFile.LEVEL_FACTOR;
+        }
+        header.flip();
+
+        File target = new File(PeakFile.pathOf(mAudioPath));
+        File temp = new File(target.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (int i = 0; i < levelCount; i++) {
+                ByteBuffer data = ByteBuffer.wrap(mLevels[i], 0, mCounts[i] << 1);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("rename failed");
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.core.audiomanager.waveform;
+
+import com.core.audiomanager.util.IoUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取 {@link WaveformIndexer} 生成的波形索引，文件以只读方式内存映射，读取时不解码音频
+ * Created by wangzhen on 2019/4/22.
+ */
+public class WaveformReader {
+
+    private final MappedByteBuffer mBuffer;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final long mTotalFrames;
+    private final int[] mFramesPerPeak;
+    private final int[] mPeakCounts;
+    private final int[] mOffsets;
+
+    private WaveformReader(MappedByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < PeakFile.HEADER_SIZE || buffer.getInt(0) != PeakFile.MAGIC
+                || buffer.getShort(4) != PeakFile.VERSION) {
+            throw new IOException("invalid peak file");
+        }
+        int levelCount = buffer.getShort(6);
+        if (levelCount < 0 || PeakFile.HEADER_SIZE + (long) levelCount * PeakFile.LEVEL_ENTRY_SIZE > buffer.limit()) {
+            throw new IOException("invalid level count " + levelCount);
+        }
+        mSampleRate = buffer.getInt(8);
+        mChannelCount = buffer.getInt(12);
+        mTotalFrames = buffer.getLong(16);
+        mFramesPerPeak = new int[levelCount];
+        mPeakCounts = new int[levelCount];
+        mOffsets = new int[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            int entry = PeakFile.HEADER_SIZE + i * PeakFile.LEVEL_ENTRY_SIZE;
+            mFramesPerPeak[i] = buffer.getInt(entry);
+            mPeakCounts[i] = buffer.getInt(entry + 4);
+            mOffsets[i] = buffer.getInt(entry + 8);
+            if (mFramesPerPeak[i] <= 0 || mPeakCounts[i] < 0 || mOffsets[i] < 0) {
+                throw new IOException("invalid level " + i);
+            }
+            if (mOffsets[i] + ((long) mPeakCounts[i] << 1) > buffer.limit()) {
+                throw new IOException("truncated peak file");
+            }
+        }
+        mBuffer = buffer;
+    }
+
+    /**
+     * 打开音频文件对应的波形索引
+     *
+     * @param audioPath 音频文件路径
+     * @return 索引不存在或已损坏时返回null
+     */
+    public static WaveformReader open(String audioPath) {
+        File file = new File(PeakFile.pathOf(audioPath));
+        if (!file.isFile()) return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            //映射在通道关闭后仍然有效
+            return new WaveformReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            return null;
+        } finally {
+            IoUtil.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 音频文件是否已有波形索引
+     */
+    public static boolean exists(String audioPath) {
+        return new File(PeakFile.pathOf(audioPath)).isFile();
+    }
+
+    /**
+     * 删除音频文件对应的波形索引
+     */
+    public static void delete(String audioPath) {
+        new File(PeakFile.pathOf(audioPath)).delete();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public long getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    public long getDuration() {
+        return mSampleRate == 0 ? 0 : mTotalFrames * 1000 / mSampleRate;
+    }
+
+    public int getLevelCount() {
+        return mPeakCounts.length;
+    }
+
+    public int getFramesPerPeak(int level) {
+        return mFramesPerPeak[level];
+    }
+
+    public int getPeakCount(int level) {
+        return mPeakCounts[level];
+    }
+
+    /**
+     * 峰值最小值
+     *
+     * @return -1~1
+     */
+    public float getMin(int level, int index) {
+        return mBuffer.get(mOffsets[level] + (index << 1)) / 128f;
+    }
+
+    /**
+     * 峰值最大值
+     *
+     * @return -1~1
+     */
+    public float getMax(int level, int index) {
+        return mBuffer.get(mOffsets[level] + (index << 1) + 1) / 128f;
+    }
+
+    /**
+     * 选择每个峰值不超过 framesPerPixel 帧的最粗一级
+     *
+     * @param framesPerPixel 每像素帧数
+     * @return 级别
+     */
+    public int chooseLevel(double framesPerPixel) {
+        int level = 0;
+        while (level + 1 < mFramesPerPeak.length && mFramesPerPeak[level + 1] <= framesPerPixel) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 计算时间区间内每个像素的 min/max，用于绘制
+     *
+     * @param startMs 起始时间
+     * @param endMs   结束时间
+     * @param min     输出，长度为像素数
+     * @param max     输出，长度与 min 相同
+     */
+    public void getPeaks(long startMs, long endMs, float[] min, float[] max) {
+        int pixels = min.length;
+        if (pixels == 0 || endMs <= startMs || mPeakCounts.length == 0) return;
+        double startFrame = startMs * (double) mSampleRate / 1000;
+        double framesPerPixel = (endMs - startMs) * (double) mSampleRate / 1000 / pixels;
+        int level = chooseLevel(framesPerPixel);
+        int framesPerPeak = mFramesPerPeak[level];
+        int count = mPeakCounts[level];
+        int base = mOffsets[level];
+        for (int x = 0; x < pixels; x++) {
+            int from = (int) ((startFrame + x * framesPerPixel) / framesPerPeak);
+            int to = (int) Math.ceil((startFrame + (x + 1) * framesPerPixel) / framesPerPeak);
+            to = Math.min(Math.max(to, from + 1), count);
+            int lo = Byte.MAX_VALUE;
+            int hi = Byte.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                int peakMin = mBuffer.get(base + (i << 1));
+                int peakMax = mBuffer.get(base + (i << 1) + 1);
+                if (peakMin < lo) lo = peakMin;
+                if (peakMax > hi) hi = peakMax;
+            }
+            if (lo > hi) {
+                lo = 0;
+                hi = 0;
+            }
+            min[x] = lo / 128f;
+            max[x] = hi / 128f;
+        }
+    }
+}
@@ -3,19 +3,29 @@ package com.core.audiomanager.widget;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.widget.OverScroller;
 
 import com.core.audiomanager.R;
+import com.core.audiomanager.waveform.WaveformReader;
 
+/**
+ * 区间选择控件
+ * 游标位置以 0-1 的连续值保存；设置时长后按毫秒取值，松手不吸附刻度，支持甩动和方向键微调
+ * 未设置时长时保持按刻度吸附的行为
+ */
 public class RangeSlider extends ViewGroup {
     private static final String TAG = "RangeSlider";
     private static final int DEFAULT_LINE_SIZE = 1;
@@ -25,6 +35,13 @@ public class RangeSlider extends ViewGroup {
     private static final int DEFAULT_TICK_INTERVAL = 1;
     private static final int DEFAULT_MASK_BACKGROUND = 0xA0000000;
     private static final int DEFAULT_LINE_COLOR = 0xFF000000;
+    private static final int DEFAULT_WAVE_COLOR = 0x80000000;
+    //最大缩放级别，2^6=64倍
+    private static final int MAX_ZOOM_LEVEL = 6;
+    //默认方向键微调步长 ms
+    private static final long DEFAULT_NUDGE_STEP = 100;
+    //按住 shift 时的步长倍数
+    private static final int NUDGE_FAST_FACTOR = 10;
     public static final int TYPE_LEFT = 1;
     public static final int TYPE_RIGHT = 2;
 
@@ -32,6 +49,7 @@ public class RangeSlider extends ViewGroup {
     private final ThumbView mLeftThumb, mRightThumb;
 
     private int mTouchSlop;
+    private int mMinFlingVelocity, mMaxFlingVelocity;
     private int mOriginalX, mLastX;
 
     private int mThumbWidth;
@@ -46,6 +64,35 @@ public class RangeSlider extends ViewGroup {
     private boolean mIsDragging;
 
     private OnRangeChangeListener mRangeChangeListener;
+    private OnRangeMoveListener mRangeMoveListener;
+    private OnRangeTimeListener mRangeTimeListener;
+
+    private final WaveformRenderer mWaveformRenderer;
+    private final ScaleGestureDetector mScaleDetector;
+    //缩放级别，可见部分为整体的 1/2^level
+    private int mZoomLevel;
+    //视窗起点 0-1
+    private double mViewStart;
+    //捏合累计的缩放倍数，每满2倍切换一级
+    private float mScaleAccum = 1f;
+    //放大后拖动空白处平移视窗
+    private boolean mIsPanning;
+
+    //总时长 ms，0 表示按刻度吸附
+    private long mDuration;
+    //连续模式下区间最小时长 ms
+    private long mMinRangeTime;
+    private long mNudgeStep = DEFAULT_NUDGE_STEP;
+    //方向键控制的游标
+    private ThumbView mKeyThumb;
+
+    private final OverScroller mScroller;
+    private VelocityTracker mVelocityTracker;
+    //正在甩动的游标
+    private ThumbView mFlingThumb;
+
+    private ValueAnimator mResetAnimator;
+    private double mResetLeftFrom, mResetRightFrom;
 
     public RangeSlider(Context context) {
         this(context, null);
@@ -67,12 +114,20 @@ public class RangeSlider extends ViewGroup {
         mLinePaint = new Paint();
         mLinePaint.setColor(array.getColor(R.styleable.RangeSlider_lineColor, DEFAULT_LINE_COLOR));
 
-        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        mWaveformRenderer = new WaveformRenderer(array.getColor(R.styleable.RangeSlider_waveColor, DEFAULT_WAVE_COLOR));
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+        mScroller = new OverScroller(context);
+
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
 
         Drawable lDrawable = array.getDrawable(R.styleable.RangeSlider_leftThumbDrawable);
         Drawable rDrawable = array.getDrawable(R.styleable.RangeSlider_rightThumbDrawable);
         mLeftThumb = new ThumbView(context, mThumbWidth, lDrawable == null ? new ColorDrawable(DEFAULT_LINE_COLOR) : lDrawable);
         mRightThumb = new ThumbView(context, mThumbWidth, rDrawable == null ? new ColorDrawable(DEFAULT_LINE_COLOR) : rDrawable);
+        mKeyThumb = mLeftThumb;
         setTickCount(array.getInteger(R.styleable.RangeSlider_tickCount, DEFAULT_TICK_END));
         setRangeIndex(array.getInteger(R.styleable.RangeSlider_leftThumbIndex, DEFAULT_TICK_START),
                 array.getInteger(R.styleable.RangeSlider_rightThumbIndex, mTickCount));
@@ -82,6 +137,7 @@ public class RangeSlider extends ViewGroup {
         addView(mRightThumb);
 
         setWillNotDraw(false);
+        setFocusable(true);
     }
 
     public void setThumbWidth(int thumbWidth) {
@@ -110,6 +166,104 @@ public class RangeSlider extends ViewGroup {
         mBgPaint.setColor(color);
     }
 
+    public void setWaveColor(int color) {
+        mWaveformRenderer.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * 以波形索引绘制游标后的波形
+     *
+     * @param reader 波形索引，null 清除波形
+     */
+    public void setWaveform(WaveformReader reader) {
+        mWaveformRenderer.setReader(reader);
+        invalidate();
+    }
+
+    /**
+     * 以峰值数组绘制游标后的波形，数组覆盖整个音频
+     *
+     * @param min 最小值 -1~1
+     * @param max 最大值 -1~1
+     */
+    public void setPeaks(float[] min, float[] max) {
+        mWaveformRenderer.setPeaks(min, max);
+        invalidate();
+    }
+
+    /**
+     * 设置缩放级别，可见部分为整体的 1/2^level，以视窗中心为基准
+     *
+     * @param level 0-6
+     */
+    public void setZoomLevel(int level) {
+        zoomTo(level, getRangeLength() / 2);
+    }
+
+    public int getZoomLevel() {
+        return mZoomLevel;
+    }
+
+    /**
+     * 设置音频总时长，之后按毫秒连续取值，松手不再吸附刻度
+     *
+     * @param duration ms，0 恢复按刻度吸附
+     */
+    public void setDuration(long duration) {
+        mDuration = Math.max(0, duration);
+    }
+
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * 设置区间最小时长
+     *
+     * @param minRangeTime ms
+     */
+    public void setMinRangeTime(long minRangeTime) {
+        mMinRangeTime = Math.max(0, minRangeTime);
+    }
+
+    /**
+     * 设置方向键微调步长，按住 shift 时为10倍
+     *
+     * @param step ms
+     */
+    public void setNudgeStep(long step) {
+        mNudgeStep = Math.max(1, step);
+    }
+
+    /**
+     * 设置区间
+     *
+     * @param leftTime  起点 ms
+     * @param rightTime 终点 ms
+     */
+    public void setRangeTime(long leftTime, long rightTime) {
+        if (mDuration <= 0) {
+            throw new IllegalStateException("setDuration must be called first");
+        }
+        double left = clamp((double) leftTime / mDuration);
+        double right = clamp((double) rightTime / mDuration);
+        if (left >= right) {
+            throw new IllegalArgumentException("leftTime " + leftTime + " must be less than rightTime " + rightTime);
+        }
+        moveThumbTo(mLeftThumb, left);
+        moveThumbTo(mRightThumb, right);
+        invalidate();
+    }
+
+    public long getLeftTime() {
+        return Math.round(mLeftThumb.getPosition() * mDuration);
+    }
+
+    public long getRightTime() {
+        return Math.round(mRightThumb.getPosition() * mDuration);
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         widthMeasureSpec = MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(widthMeasureSpec), MeasureSpec.EXACTLY);
@@ -128,8 +282,25 @@ public class RangeSlider extends ViewGroup {
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        moveThumbByIndex(mLeftThumb, mLeftThumb.getRangeIndex());
-        moveThumbByIndex(mRightThumb, mRightThumb.getRangeIndex());
+        layoutThumbs();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mScroller.abortAnimation();
+        if (mResetAnimator != null) {
+            mResetAnimator.cancel();
+        }
+        mWaveformRenderer.clear();
+    }
+
+    /**
+     * 视窗变化后按位置重新放置游标
+     */
+    private void layoutThumbs() {
+        mLeftThumb.setX(xOfFraction(mLeftThumb.getPosition()));
+        mRightThumb.setX(xOfFraction(mRightThumb.getPosition()));
     }
 
     @Override
@@ -144,6 +315,12 @@ public class RangeSlider extends ViewGroup {
         final float lineTop = mLineSize;
         final float lineBottom = height - mLineSize;
 
+        // waveform
+        Bitmap wave = mWaveformRenderer.get(mZoomLevel, mViewStart, getViewSpan(),
+                (int) getRangeLength(), height);
+        if (wave != null) {
+            canvas.drawBitmap(wave, mThumbWidth / 2f, 0, null);
+        }
 
         // top line
         canvas.drawRect(lThumbWidth + lThumbOffset, 0, rThumbOffset, lineTop, mLinePaint);
@@ -164,39 +341,24 @@ public class RangeSlider extends ViewGroup {
      * 对游标进行复位
      */
     public void resetRangePos() {
-        ValueAnimator leftValueAnimator = ValueAnimator.ofFloat(mLeftThumb.getX(), 0f);
-        leftValueAnimator.setDuration(200);
-        leftValueAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-        ValueAnimator rightValueAnimator = ValueAnimator.ofFloat(mRightThumb.getX(), this.getMeasuredWidth());
-
-        rightValueAnimator.setDuration(200);
-        rightValueAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-
-        leftValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                int moveX = (int) ((float) animation.getAnimatedValue() - mLeftThumb.getX());
-                if (moveX != 0) {
-                    moveLeftThumbByPixel(moveX);
+        if (mResetAnimator == null) {
+            mResetAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mResetAnimator.setDuration(200);
+            mResetAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+            mResetAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    float fraction = animation.getAnimatedFraction();
+                    moveThumbTo(mLeftThumb, mResetLeftFrom * (1 - fraction));
+                    moveThumbTo(mRightThumb, mResetRightFrom + (1 - mResetRightFrom) * fraction);
                     invalidate();
                 }
-            }
-        });
-        rightValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                Log.i(TAG, "right onAnimationUpdate: " + animation.getAnimatedValue());
-                int moveX = (int) ((float) animation.getAnimatedValue() - mRightThumb.getX());
-                Log.i(TAG, "move x = " + moveX);
-                if (moveX != 0) {
-                    moveRightThumbByPixel(moveX);
-                    invalidate();
-                }
-            }
-        });
-
-        leftValueAnimator.start();
-        rightValueAnimator.start();
+            });
+        }
+        mResetAnimator.cancel();
+        mResetLeftFrom = mLeftThumb.getPosition();
+        mResetRightFrom = mRightThumb.getPosition();
+        mResetAnimator.start();
     }
 
     @Override
@@ -207,7 +369,15 @@ public class RangeSlider extends ViewGroup {
 
         boolean handle = false;
 
-        switch (event.getAction()) {
+        if (!mLeftThumb.isPressed() && !mRightThumb.isPressed()) {
+            mScaleDetector.onTouchEvent(event);
+            if (mScaleDetector.isInProgress()) {
+                mIsPanning = false;
+                return true;
+            }
+        }
+
+        switch (event.getActionMasked()) {
 
             case MotionEvent.ACTION_DOWN:
                 int x = (int) event.getX();
@@ -215,46 +385,63 @@ public class RangeSlider extends ViewGroup {
 
                 mLastX = mOriginalX = x;
                 mIsDragging = false;
+                if (mFlingThumb != null) {
+                    mScroller.forceFinished(true);
+                    finishFling();
+                }
 
                 if (!mLeftThumb.isPressed() && mLeftThumb.inInTarget(x, y)) {
                     mLeftThumb.setPressed(true);
+                    mKeyThumb = mLeftThumb;
                     handle = true;
                     if (mRangeChangeListener != null) {
                         mRangeChangeListener.onKeyDown(TYPE_LEFT);
                     }
                 } else if (!mRightThumb.isPressed() && mRightThumb.inInTarget(x, y)) {
                     mRightThumb.setPressed(true);
+                    mKeyThumb = mRightThumb;
                     handle = true;
                     if (mRangeChangeListener != null) {
                         mRangeChangeListener.onKeyDown(TYPE_RIGHT);
                     }
+                } else if (mWaveformRenderer.hasData()) {
+                    //有波形时接收后续事件用于捏合缩放，放大后拖动空白处平移
+                    mIsPanning = mZoomLevel > 0;
+                    handle = true;
+                }
+                if (handle) {
+                    obtainVelocityTracker().addMovement(event);
                 }
                 break;
 
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_UP:
                 mIsDragging = false;
+                mIsPanning = false;
                 mOriginalX = mLastX = 0;
                 getParent().requestDisallowInterceptTouchEvent(false);
-                if (mLeftThumb.isPressed()) {
-                    releaseLeftThumb();
-                    invalidate();
+                ThumbView pressed = mLeftThumb.isPressed() ? mLeftThumb
+                        : mRightThumb.isPressed() ? mRightThumb : null;
+                if (pressed != null) {
                     handle = true;
-                    if (mRangeChangeListener != null) {
-                        mRangeChangeListener.onKeyUp(TYPE_LEFT, mLeftThumb.getRangeIndex(), mRightThumb.getRangeIndex());
+                    float velocity = 0;
+                    if (mVelocityTracker != null && event.getActionMasked() == MotionEvent.ACTION_UP) {
+                        mVelocityTracker.addMovement(event);
+                        mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                        velocity = mVelocityTracker.getXVelocity();
                     }
-                } else if (mRightThumb.isPressed()) {
-                    releaseRightThumb();
-                    invalidate();
-                    handle = true;
-                    if (mRangeChangeListener != null) {
-                        mRangeChangeListener.onKeyUp(TYPE_RIGHT, mLeftThumb.getRangeIndex(), mRightThumb.getRangeIndex());
+                    if (mDuration <= 0 || Math.abs(velocity) < mMinFlingVelocity || !startFling(pressed, velocity)) {
+                        releaseThumb(pressed);
                     }
                 }
+                recycleVelocityTracker();
                 break;
 
             case MotionEvent.ACTION_MOVE:
                 x = (int) event.getX();
+                if (mVelocityTracker != null) {
+                    mVelocityTracker.addMovement(event);
+                }
 
                 if (!mIsDragging && Math.abs(x - mOriginalX) > mTouchSlop) {
                     mIsDragging = true;
@@ -263,14 +450,20 @@ public class RangeSlider extends ViewGroup {
                     int moveX = x - mLastX;
                     if (mLeftThumb.isPressed()) {
                         getParent().requestDisallowInterceptTouchEvent(true);
+                        float oldX = mLeftThumb.getX();
                         moveLeftThumbByPixel(moveX);
                         handle = true;
-                        invalidate();
+                        invalidateThumb(oldX, mLeftThumb.getX());
                     } else if (mRightThumb.isPressed()) {
                         getParent().requestDisallowInterceptTouchEvent(true);
+                        float oldX = mRightThumb.getX();
                         moveRightThumbByPixel(moveX);
                         handle = true;
-                        invalidate();
+                        invalidateThumb(oldX, mRightThumb.getX());
+                    } else if (mIsPanning) {
+                        getParent().requestDisallowInterceptTouchEvent(true);
+                        panBy(moveX);
+                        handle = true;
                     }
                 }
 
@@ -281,6 +474,177 @@ public class RangeSlider extends ViewGroup {
         return handle;
     }
 
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (!isEnabled()) {
+            return super.onKeyDown(keyCode, event);
+        }
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                int direction = keyCode == KeyEvent.KEYCODE_DPAD_LEFT ? -1 : 1;
+                nudge(mKeyThumb, direction * (event.isShiftPressed() ? NUDGE_FAST_FACTOR : 1));
+                return true;
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                //切换方向键控制的游标
+                mKeyThumb = mKeyThumb == mLeftThumb ? mRightThumb : mLeftThumb;
+                return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    /**
+     * 方向键微调游标
+     *
+     * @param thumb 游标
+     * @param steps 步数，负数向左
+     */
+    private void nudge(ThumbView thumb, int steps) {
+        double step = mDuration > 0 ? (double) mNudgeStep / mDuration : 1.0 / mTickCount;
+        double target = constrain(thumb, thumb.getPosition() + steps * step);
+        if (target == thumb.getPosition()) return;
+        float oldX = thumb.getX();
+        int type = typeOf(thumb);
+        if (moveThumbTo(thumb, target)) {
+            notifyRangeChange(type);
+        }
+        notifyRangeMove(type);
+        invalidateThumb(oldX, thumb.getX());
+        notifyRangeChanged(type);
+    }
+
+    private VelocityTracker obtainVelocityTracker() {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        } else {
+            mVelocityTracker.clear();
+        }
+        return mVelocityTracker;
+    }
+
+    private void recycleVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * 松手后按速度甩动游标，在允许的范围内减速停止
+     *
+     * @return 范围为空时返回false
+     */
+    private boolean startFling(ThumbView thumb, float velocity) {
+        int minX = (int) Math.ceil(xOfFraction(constrain(thumb, 0)));
+        int maxX = (int) Math.floor(xOfFraction(constrain(thumb, 1)));
+        if (minX >= maxX) return false;
+        mFlingThumb = thumb;
+        mScroller.fling((int) thumb.getX(), 0, (int) velocity, 0, minX, maxX, 0, 0);
+        postInvalidateOnAnimation();
+        return true;
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mFlingThumb == null) return;
+        if (mScroller.computeScrollOffset()) {
+            ThumbView thumb = mFlingThumb;
+            float oldX = thumb.getX();
+            moveThumbToPixel(thumb, mScroller.getCurrX());
+            invalidateThumb(oldX, thumb.getX());
+            postInvalidateOnAnimation();
+        } else {
+            finishFling();
+        }
+    }
+
+    private void finishFling() {
+        ThumbView thumb = mFlingThumb;
+        mFlingThumb = null;
+        if (thumb != null) {
+            releaseThumb(thumb);
+        }
+    }
+
+    /**
+     * 只重绘游标移动经过的区域，遮罩和上下边线的变化都在其中
+     */
+    private void invalidateThumb(float oldX, float newX) {
+        int left = (int) Math.floor(Math.min(oldX, newX));
+        int right = (int) Math.ceil(Math.max(oldX, newX)) + mThumbWidth;
+        invalidate(left, 0, right, getHeight());
+    }
+
+    /**
+     * 平移视窗
+     *
+     * @param pixel 手指移动距离
+     */
+    private void panBy(int pixel) {
+        double start = mViewStart - pixel / (getRangeLength() * (1 << mZoomLevel));
+        setViewStart(start);
+    }
+
+    private void setViewStart(double start) {
+        start = Math.max(0, Math.min(1 - getViewSpan(), start));
+        if (start != mViewStart) {
+            mViewStart = start;
+            layoutThumbs();
+            invalidate();
+        }
+    }
+
+    /**
+     * 切换缩放级别，focusX 处的位置保持不动
+     */
+    private void zoomTo(int level, float focusX) {
+        level = Math.max(0, Math.min(MAX_ZOOM_LEVEL, level));
+        if (level == mZoomLevel) return;
+        double focus = fractionOfX(focusX);
+        mZoomLevel = level;
+        mViewStart = Math.max(0, Math.min(1 - getViewSpan(), focus - focusX / (getRangeLength() * (1 << level))));
+        layoutThumbs();
+        invalidate();
+    }
+
+    /**
+     * 可见部分占整体的比例
+     */
+    private double getViewSpan() {
+        return 1.0 / (1 << mZoomLevel);
+    }
+
+    private float xOfFraction(double fraction) {
+        return (float) ((fraction - mViewStart) * (1 << mZoomLevel) * getRangeLength());
+    }
+
+    private double fractionOfX(float x) {
+        float length = getRangeLength();
+        return length == 0 ? 0 : mViewStart + x / (length * (1 << mZoomLevel));
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            mScaleAccum = 1f;
+            return true;
+        }
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            mScaleAccum *= detector.getScaleFactor();
+            if (mScaleAccum >= 2f) {
+                zoomTo(mZoomLevel + 1, detector.getFocusX());
+                mScaleAccum = 1f;
+            } else if (mScaleAccum <= 0.5f) {
+                zoomTo(mZoomLevel - 1, detector.getFocusX());
+                mScaleAccum = 1f;
+            }
+            return true;
+        }
+    }
+
     private boolean isValidTickCount(int tickCount) {
         return (tickCount > 1);
     }
@@ -299,12 +663,8 @@ public class RangeSlider extends ViewGroup {
         return width - mThumbWidth;
     }
 
-    private float getIntervalLength() {
-        return getRangeLength() / mTickCount;
-    }
-
     public int getNearestIndex(float x) {
-        return Math.round(x / getIntervalLength());
+        return (int) Math.round(fractionOfX(x) * mTickCount);
     }
 
     public int getLeftIndex() {
@@ -315,9 +675,28 @@ public class RangeSlider extends ViewGroup {
         return mRightThumb.getRangeIndex();
     }
 
+    private int typeOf(ThumbView thumb) {
+        return thumb == mLeftThumb ? TYPE_LEFT : TYPE_RIGHT;
+    }
+
     private void notifyRangeChange(int type) {
+        if (mRangeMoveListener != null) {
+            mRangeMoveListener.onRangeChange(this, type, mLeftThumb.getRangeIndex(), mRightThumb.getRangeIndex());
+        }
+    }
+
+    private void notifyRangeMove(int type) {
+        if (mRangeTimeListener != null && mDuration > 0) {
+            mRangeTimeListener.onRangeMove(this, type, getLeftTime(), getRightTime());
+        }
+    }
+
+    private void notifyRangeChanged(int type) {
         if (mRangeChangeListener != null) {
-//            mRangeChangeListener.onRangeChange(this, type, mLeftThumb.getRangeIndex(), mRightThumb.getRangeIndex());
+            mRangeChangeListener.onKeyUp(type, mLeftThumb.getRangeIndex(), mRightThumb.getRangeIndex());
+        }
+        if (mRangeTimeListener != null && mDuration > 0) {
+            mRangeTimeListener.onRangeChanged(this, type, getLeftTime(), getRightTime());
         }
     }
 
@@ -325,6 +704,24 @@ public class RangeSlider extends ViewGroup {
         mRangeChangeListener = rangeChangeListener;
     }
 
+    /**
+     * 设置拖动过程中的区间变化监听，可配合 {@link com.core.audiomanager.PlaySession#previewSeek(long)} 试听
+     *
+     * @param rangeMoveListener 监听
+     */
+    public void setRangeMoveListener(OnRangeMoveListener rangeMoveListener) {
+        mRangeMoveListener = rangeMoveListener;
+    }
+
+    /**
+     * 设置按毫秒回调的区间监听，需先调用 {@link #setDuration(long)}
+     *
+     * @param rangeTimeListener 监听
+     */
+    public void setRangeTimeListener(OnRangeTimeListener rangeTimeListener) {
+        mRangeTimeListener = rangeTimeListener;
+    }
+
     /**
      * Sets the tick count in the RangeSlider.
      *
@@ -336,6 +733,7 @@ public class RangeSlider extends ViewGroup {
             mTickEnd = count;
             mTickCount = tickCount;
             mRightThumb.setTickIndex(mTickCount);
+            mRightThumb.setPosition(1);
         } else {
             throw new IllegalArgumentException("tickCount less than 2; invalid tickCount.");
         }
@@ -358,15 +756,29 @@ public class RangeSlider extends ViewGroup {
         } else {
             if (mLeftThumb.getRangeIndex() != leftIndex) {
                 mLeftThumb.setTickIndex(leftIndex);
+                mLeftThumb.setPosition((double) leftIndex / mTickCount);
             }
             if (mRightThumb.getRangeIndex() != rightIndex) {
                 mRightThumb.setTickIndex(rightIndex);
+                mRightThumb.setPosition((double) rightIndex / mTickCount);
             }
         }
     }
 
     private boolean moveThumbByIndex(ThumbView view, int index) {
-        view.setX(index * getIntervalLength());
+        return moveThumbTo(view, (double) index / mTickCount);
+    }
+
+    /**
+     * 移动游标到指定位置
+     *
+     * @param position 0-1
+     * @return 刻度索引是否变化
+     */
+    private boolean moveThumbTo(ThumbView view, double position) {
+        view.setPosition(position);
+        view.setX(xOfFraction(position));
+        int index = (int) Math.round(position * mTickCount);
         if (view.getRangeIndex() != index) {
             view.setTickIndex(index);
             return true;
@@ -374,36 +786,59 @@ public class RangeSlider extends ViewGroup {
         return false;
     }
 
-    private void moveLeftThumbByPixel(int pixel) {
-        float x = mLeftThumb.getX() + pixel;
-        float interval = getIntervalLength();
-        float start = mTickStart / mTickInterval * interval;
-        float end = mTickEnd / mTickInterval * interval;
-
-        if (x > start && x < end && x < mRightThumb.getX() - mThumbWidth) {
-            mLeftThumb.setX(x);
-            int index = getNearestIndex(x);
-            if (mLeftThumb.getRangeIndex() != index) {
-                mLeftThumb.setTickIndex(index);
-                notifyRangeChange(TYPE_LEFT);
-            }
+    /**
+     * 按像素移动游标，超出范围时停在边界
+     */
+    private void moveThumbToPixel(ThumbView view, float x) {
+        double position = constrain(view, fractionOfX(x));
+        if (position == view.getPosition()) return;
+        if (moveThumbTo(view, position)) {
+            notifyRangeChange(typeOf(view));
+        }
+        notifyRangeMove(typeOf(view));
+    }
+
+    /**
+     * 限制游标位置：两游标之间至少间隔一个游标宽度和最小区间时长
+     */
+    private double constrain(ThumbView view, double position) {
+        float length = getRangeLength();
+        double gap = length == 0 ? 0 : mThumbWidth / (length * (1 << mZoomLevel));
+        if (mDuration > 0) {
+            gap = Math.max(gap, (double) mMinRangeTime / mDuration);
+        }
+        if (view == mLeftThumb) {
+            return Math.max(0, Math.min(position, mRightThumb.getPosition() - gap));
         }
+        return Math.min(1, Math.max(position, mLeftThumb.getPosition() + gap));
+    }
+
+    private static double clamp(double position) {
+        return Math.max(0, Math.min(1, position));
+    }
+
+    private void moveLeftThumbByPixel(int pixel) {
+        moveThumbToPixel(mLeftThumb, mLeftThumb.getX() + pixel);
     }
 
     private void moveRightThumbByPixel(int pixel) {
-        float x = mRightThumb.getX() + pixel;
-        float interval = getIntervalLength();
-        float start = mTickStart / mTickInterval * interval;
-        float end = mTickEnd / mTickInterval * interval;
-
-        if (x > start && x < end && x > mLeftThumb.getX() + mThumbWidth) {
-            mRightThumb.setX(x);
-            int index = getNearestIndex(x);
-            if (mRightThumb.getRangeIndex() != index) {
-                mRightThumb.setTickIndex(index);
-                notifyRangeChange(TYPE_RIGHT);
+        moveThumbToPixel(mRightThumb, mRightThumb.getX() + pixel);
+    }
+
+    /**
+     * 松手：未设置时长时吸附到最近的刻度，之后回调区间变化
+     */
+    private void releaseThumb(ThumbView thumb) {
+        if (mDuration <= 0) {
+            if (thumb == mLeftThumb) {
+                releaseLeftThumb();
+            } else {
+                releaseRightThumb();
             }
         }
+        thumb.setPressed(false);
+        invalidate();
+        notifyRangeChanged(typeOf(thumb));
     }
 
     private void releaseLeftThumb() {
@@ -446,4 +881,26 @@ public class RangeSlider extends ViewGroup {
         void onKeyUp(int type, int leftPinIndex, int rightPinIndex);
     }
 
+    /**
+     * 拖动过程中游标索引变化时回调
+     */
+    public interface OnRangeMoveListener {
+        void onRangeChange(RangeSlider view, int type, int leftPinIndex, int rightPinIndex);
+    }
+
+    /**
+     * 按毫秒回调的区间监听
+     */
+    public interface OnRangeTimeListener {
+        /**
+         * 拖动、甩动或微调过程中区间变化
+         */
+        void onRangeMove(RangeSlider view, int type, long leftTime, long rightTime);
+
+        /**
+         * 松手、甩动结束或微调后区间确定
+         */
+        void onRangeChanged(RangeSlider view, int type, long leftTime, long rightTime);
+    }
+
 }
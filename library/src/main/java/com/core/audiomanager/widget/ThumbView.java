@@ -11,6 +11,8 @@ public class ThumbView extends View {
     private static final int EXTEND_TOUCH_SLOP = 15;
 
     private final int mExtendTouchSlop;
+    //触摸判断复用，避免每次按下都分配
+    private final Rect mHitRect = new Rect();
 
     private Drawable mThumbDrawable;
 
@@ -18,6 +20,8 @@ public class ThumbView extends View {
 
     private int mThumbWidth;
     private int mTickIndex;
+    //连续位置 0-1
+    private double mPosition;
 
     public ThumbView(Context context, int thumbWidth, Drawable drawable) {
         super(context);
@@ -45,7 +49,7 @@ public class ThumbView extends View {
     }
 
     public boolean inInTarget(int x, int y) {
-        Rect rect = new Rect();
+        Rect rect = mHitRect;
         getHitRect(rect);
         rect.left -= mExtendTouchSlop;
         rect.right += mExtendTouchSlop;
@@ -62,6 +66,14 @@ public class ThumbView extends View {
         mTickIndex = tickIndex;
     }
 
+    public double getPosition() {
+        return mPosition;
+    }
+
+    public void setPosition(double position) {
+        mPosition = position;
+    }
+
     @Override
     public boolean isPressed() {
         return mPressed;
@@ -0,0 +1,202 @@
+package com.core.audiomanager.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.core.audiomanager.waveform.WaveformReader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 波形光栅化，每个缩放级别缓存一张 Bitmap
+ * 拖动游标时视窗不变直接复用缓存；平移或尺寸变化时在原 Bitmap 上重绘，不重新分配
+ * Created by wangzhen on 2019/4/25.
+ */
+class WaveformRenderer {
+
+    //最多缓存的缩放级别数
+    private static final int MAX_CACHED = 4;
+
+    private final Paint mWavePaint = new Paint();
+    private final Canvas mCanvas = new Canvas();
+    //缩放级别 -> 缓存，按访问顺序
+    private final LinkedHashMap<Integer, Tile> mTiles = new LinkedHashMap<>(MAX_CACHED, 0.75f, true);
+
+    private WaveformReader mReader;
+    private float[] mPeakMin;
+    private float[] mPeakMax;
+
+    private float[] mColumnMin = new float[0];
+    private float[] mColumnMax = new float[0];
+    private float[] mLines = new float[0];
+
+    WaveformRenderer(int color) {
+        mWavePaint.setColor(color);
+        mWavePaint.setStrokeWidth(1);
+    }
+
+    void setColor(int color) {
+        mWavePaint.setColor(color);
+        invalidateAll();
+    }
+
+    /**
+     * 以波形索引为数据源，按缩放自动选择索引级别
+     */
+    void setReader(WaveformReader reader) {
+        mReader = reader;
+        mPeakMin = null;
+        mPeakMax = null;
+        invalidateAll();
+    }
+
+    /**
+     * 以覆盖整个音频的峰值数组为数据源
+     *
+     * @param min 最小值 -1~1
+     * @param max 最大值 -1~1，长度与 min 相同
+     */
+    void setPeaks(float[] min, float[] max) {
+        if (min != null && max != null && min.length != max.length)
+            throw new IllegalArgumentException("min/max length mismatch");
+        mReader = null;
+        mPeakMin = min;
+        mPeakMax = max;
+        invalidateAll();
+    }
+
+    boolean hasData() {
+        return mReader != null || (mPeakMin != null && mPeakMin.length > 0);
+    }
+
+    /**
+     * 获取缩放级别对应的波形
+     *
+     * @param level     缩放级别
+     * @param viewStart 视窗起点 0-1
+     * @param viewSpan  视窗长度 0-1
+     * @param width     宽
+     * @param height    高
+     * @return 没有数据时返回null
+     */
+    Bitmap get(int level, double viewStart, double viewSpan, int width, int height) {
+        if (!hasData() || width <= 0 || height <= 0) return null;
+        Tile tile = mTiles.get(level);
+        if (tile != null && tile.isValid && tile.viewStart == viewStart
+                && tile.bitmap.getWidth() == width && tile.bitmap.getHeight() == height) {
+            return tile.bitmap;
+        }
+        if (tile == null) {
+            tile = new Tile();
+            Bitmap spare = trim();
+            if (spare != null && spare.getWidth() == width && spare.getHeight() == height) {
+                tile.bitmap = spare;
+            } else if (spare != null) {
+                spare.recycle();
+            }
+            mTiles.put(level, tile);
+        }
+        if (tile.bitmap == null || tile.bitmap.getWidth() != width || tile.bitmap.getHeight() != height) {
+            if (tile.bitmap != null) tile.bitmap.recycle();
+            tile.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        render(tile.bitmap, viewStart, viewSpan, width, height);
+        tile.viewStart = viewStart;
+        tile.isValid = true;
+        return tile.bitmap;
+    }
+
+    /**
+     * 缓存超出时移除最久未用的级别，返回其 Bitmap 供复用
+     */
+    private Bitmap trim() {
+        if (mTiles.size() < MAX_CACHED) return null;
+        Iterator<Map.Entry<Integer, Tile>> it = mTiles.entrySet().iterator();
+        Tile eldest = it.next().getValue();
+        it.remove();
+        return eldest.bitmap;
+    }
+
+    private void render(Bitmap bitmap, double viewStart, double viewSpan, int width, int height) {
+        if (mColumnMin.length != width) {
+            mColumnMin = new float[width];
+            mColumnMax = new float[width];
+            mLines = new float[width * 4];
+        }
+        if (mReader != null) {
+            long duration = mReader.getDuration();
+            mReader.getPeaks((long) (viewStart * duration), (long) ((viewStart + viewSpan) * duration),
+                    mColumnMin, mColumnMax);
+        } else {
+            fillFromPeaks(viewStart, viewSpan, width);
+        }
+        float half = height / 2f;
+        for (int x = 0; x < width; x++) {
+            int i = x << 2;
+            float top = half - mColumnMax[x] * half;
+            float bottom = half - mColumnMin[x] * half;
+            if (bottom - top < 1) {
+                bottom = top + 1;
+            }
+            mLines[i] = x + 0.5f;
+            mLines[i + 1] = top;
+            mLines[i + 2] = x + 0.5f;
+            mLines[i + 3] = bottom;
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(bitmap);
+        mCanvas.drawLines(mLines, 0, mLines.length, mWavePaint);
+        mCanvas.setBitmap(null);
+    }
+
+    private void fillFromPeaks(double viewStart, double viewSpan, int width) {
+        int count = mPeakMin.length;
+        double perColumn = viewSpan * count / width;
+        double start = viewStart * count;
+        for (int x = 0; x < width; x++) {
+            int from = (int) (start + x * perColumn);
+            int to = Math.min(count, Math.max(from + 1, (int) Math.ceil(start + (x + 1) * perColumn)));
+            float lo = 0;
+            float hi = 0;
+            if (from < count) {
+                lo = Float.MAX_VALUE;
+                hi = -Float.MAX_VALUE;
+                for (int i = from; i < to; i++) {
+                    if (mPeakMin[i] < lo) lo = mPeakMin[i];
+                    if (mPeakMax[i] > hi) hi = mPeakMax[i];
+                }
+            }
+            mColumnMin[x] = lo;
+            mColumnMax[x] = hi;
+        }
+    }
+
+    /**
+     * 数据或颜色变化，缓存全部失效，Bitmap 保留复用
+     */
+    void invalidateAll() {
+        for (Tile tile : mTiles.values()) {
+            tile.isValid = false;
+        }
+    }
+
+    /**
+     * 释放全部 Bitmap
+     */
+    void clear() {
+        for (Tile tile : mTiles.values()) {
+            if (tile.bitmap != null) tile.bitmap.recycle();
+        }
+        mTiles.clear();
+    }
+
+    private static class Tile {
+        Bitmap bitmap;
+        double viewStart;
+        boolean isValid;
+    }
+}
@@ -0,0 +1,121 @@
+package com.core.audiomanager.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class AudioProxyServerTest {
+
+    private static final int LENGTH = 200 * 1024;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private byte[] mData;
+    private LocalOrigin mOrigin;
+    private DiskLruStore mStore;
+    private AudioProxyServer mProxy;
+
+    @Before
+    public void setUp() throws IOException {
+        mData = new byte[LENGTH];
+        new Random(7).nextBytes(mData);
+        mOrigin = new LocalOrigin(mData);
+        mStore = new DiskLruStore(mFolder.newFolder("cache"), 16 * 1024 * 1024);
+        mProxy = new AudioProxyServer(mStore);
+        mProxy.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mProxy.shutdown();
+        mOrigin.close();
+    }
+
+    @Test
+    public void fullRequestIsCachedAndServedFromDisk() throws Exception {
+        String url = mOrigin.url("a.mp3");
+        assertArrayEquals(mData, get(mProxy.getProxyUrl(url), null, 200));
+        File cached = awaitCached(url);
+        assertEquals(LENGTH, cached.length());
+
+        assertArrayEquals(mData, get(mProxy.getProxyUrl(url), null, 200));
+        assertEquals(1, mOrigin.ranges.size());
+    }
+
+    @Test
+    public void rangeRequestReturnsPartialContent() throws Exception {
+        String url = mOrigin.url("b.mp3");
+        byte[] body = get(mProxy.getProxyUrl(url), "bytes=1000-1999", 206);
+        assertArrayEquals(Arrays.copyOfRange(mData, 1000, 2000), body);
+
+        //上一个连接结束后下载被取消，这里从断点续传
+        body = get(mProxy.getProxyUrl(url), "bytes=" + (LENGTH - 10) + "-", 206);
+        assertArrayEquals(Arrays.copyOfRange(mData, LENGTH - 10, LENGTH), body);
+    }
+
+    @Test
+    public void partialDownloadResumesFromBreakpoint() throws Exception {
+        String url = mOrigin.url("c.mp3");
+        int offset = 3000;
+        FileOutputStream out = new FileOutputStream(mStore.getPartial(DiskLruStore.keyOf(url)));
+        try {
+            out.write(mData, 0, offset);
+        } finally {
+            out.close();
+        }
+
+        assertArrayEquals(mData, get(mProxy.getProxyUrl(url), null, 200));
+        assertEquals(1, mOrigin.ranges.size());
+        assertEquals("bytes=" + offset + "-", mOrigin.ranges.get(0));
+        assertEquals(LENGTH, awaitCached(url).length());
+    }
+
+    private File awaitCached(String url) throws InterruptedException {
+        String key = DiskLruStore.keyOf(url);
+        File file = null;
+        for (int i = 0; i < 200 && file == null; i++) {
+            file = mStore.get(key);
+            if (file == null) Thread.sleep(10);
+        }
+        assertNotNull("not committed", file);
+        return file;
+    }
+
+    private static byte[] get(String url, String range, int expectCode) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            if (range != null) {
+                conn.setRequestProperty("Range", range);
+            }
+            assertEquals(expectCode, conn.getResponseCode());
+            InputStream in = conn.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
+            return out.toByteArray();
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
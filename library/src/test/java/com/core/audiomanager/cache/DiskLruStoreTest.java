@@ -0,0 +1,59 @@
+package com.core.audiomanager.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskLruStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void missingFileIsSubtractedFromSize() throws IOException {
+        DiskLruStore store = new DiskLruStore(mFolder.newFolder(), 1024 * 1024);
+        write(store.getPartial("a"), 1000);
+        write(store.getPartial("b"), 500);
+        File a = store.commit("a");
+        assertNotNull(store.commit("b"));
+        assertEquals(1500, store.size());
+
+        assertTrue(a.delete());
+        assertNull(store.get("a"));
+        assertEquals(500, store.size());
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsed() throws IOException {
+        DiskLruStore store = new DiskLruStore(mFolder.newFolder(), 2500);
+        write(store.getPartial("a"), 1000);
+        store.commit("a");
+        write(store.getPartial("b"), 1000);
+        store.commit("b");
+        assertNotNull(store.get("a"));
+        write(store.getPartial("c"), 1000);
+        store.commit("c");
+
+        assertNull(store.get("b"));
+        assertNotNull(store.get("a"));
+        assertEquals(2000, store.size());
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.core.audiomanager.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用源站，支持 Range，记录每次请求的 Range 头
+ */
+class LocalOrigin {
+
+    private final byte[] mData;
+    private final ServerSocket mServer;
+    //每次请求的 Range 头，没有时为空串
+    final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    LocalOrigin(byte[] data) throws IOException {
+        mData = data;
+        mServer = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServer.isClosed()) {
+                    try {
+                        Socket socket = mServer.accept();
+                        try {
+                            handle(socket);
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }, "LocalOrigin");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    String url(String name) {
+        return "http://127.0.0.1:" + mServer.getLocalPort() + "/" + name;
+    }
+
+    void close() throws IOException {
+        mServer.close();
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        if (reader.readLine() == null) return;
+        String range = "";
+        String line;
+        while ((line = reader.readLine()) != null && line.length() > 0) {
+            if (line.toLowerCase(Locale.US).startsWith("range:")) {
+                range = line.substring(6).trim();
+            }
+        }
+        ranges.add(range);
+        OutputStream out = socket.getOutputStream();
+        int start = 0;
+        if (range.startsWith("bytes=")) {
+            start = Integer.parseInt(range.substring(6, range.indexOf('-')));
+        }
+        StringBuilder head = new StringBuilder();
+        if (start >= mData.length) {
+            head.append("HTTP/1.1 416 Range Not Satisfiable\r\nContent-Range: bytes */").append(mData.length)
+                    .append("\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+            out.write(head.toString().getBytes("US-ASCII"));
+            return;
+        }
+        if (range.length() > 0) {
+            head.append("HTTP/1.1 206 Partial Content\r\nContent-Range: bytes ").append(start).append('-')
+                    .append(mData.length - 1).append('/').append(mData.length).append("\r\n");
+        } else {
+            head.append("HTTP/1.1 200 OK\r\n");
+        }
+        head.append("Content-Type: audio/mpeg\r\nContent-Length: ").append(mData.length - start)
+                .append("\r\nConnection: close\r\n\r\n");
+        out.write(head.toString().getBytes("US-ASCII"));
+        out.write(mData, start, mData.length - start);
+        out.flush();
+    }
+}
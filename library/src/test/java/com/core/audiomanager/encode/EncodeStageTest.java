@@ -0,0 +1,135 @@
+package com.core.audiomanager.encode;
+
+import com.core.audiomanager.callback.AudioSegmentListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class EncodeStageTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        output = File.createTempFile("encode", ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        EncodeStage.deleteSegments(output.getPath());
+        output.delete();
+    }
+
+    @Test
+    public void writesWav() throws Exception {
+        short[] pcm = sine(SAMPLE_RATE * 2, 2);
+        EncodeStage stage = new EncodeStage(output.getPath(), EncodeConfig.wav(SAMPLE_RATE));
+        feed(stage, pcm, 2);
+
+        assertNull(stage.getError());
+        assertEquals(WavHeader.SIZE + pcm.length * 2, output.length());
+        ByteBuffer file = read(output);
+        assertEquals(2, file.getShort(22));
+        assertEquals(SAMPLE_RATE, file.getInt(24));
+        assertEquals(pcm.length * 2, file.getInt(40));
+        assertArrayEquals(pcm, samples(file));
+        assertEquals(pcm.length, stage.getEncodedSamples());
+        assertEquals(0, stage.getDroppedSamples());
+    }
+
+    @Test
+    public void rotatesSegmentsAndJoins() throws Exception {
+        short[] pcm = sine(SAMPLE_RATE, 1);
+        final List<String> events = new CopyOnWriteArrayList<>();
+        EncodeStage stage = new EncodeStage(output.getPath(), EncodeConfig.wav(SAMPLE_RATE));
+        stage.setSegmentDuration(300, new AudioSegmentListener() {
+            @Override
+            public void onSegment(int index, String path, long duration) {
+                events.add(index + " " + new File(path).getName() + " " + duration);
+            }
+        }, DIRECT);
+        feed(stage, pcm, 1);
+
+        assertNull(stage.getError());
+        assertEquals("[0 000.wav 300, 1 001.wav 300, 2 002.wav 300, 3 003.wav 100]", events.toString());
+        String[] segments = stage.getSegmentPaths();
+        assertEquals(4, segments.length);
+        assertEquals(WavHeader.SIZE + SAMPLE_RATE * 300 / 1000 * 2, new File(segments[0]).length());
+        assertArrayEquals(pcm, samples(read(output)));
+    }
+
+    @Test
+    public void cancelDeletesOutput() throws Exception {
+        EncodeStage stage = new EncodeStage(output.getPath(), EncodeConfig.wav(SAMPLE_RATE));
+        stage.setSegmentDuration(300, null);
+        stage.onStart(SAMPLE_RATE, 1);
+        short[] pcm = sine(SAMPLE_RATE, 1);
+        stage.onPcm(pcm, 0, pcm.length);
+        stage.onStop(true);
+
+        assertFalse(output.exists());
+        assertFalse(EncodeStage.segmentDirOf(output.getPath()).exists());
+    }
+
+    private static void feed(EncodeStage stage, short[] pcm, int channelCount) {
+        stage.onStart(SAMPLE_RATE, channelCount);
+        int block = SAMPLE_RATE * channelCount / 50;
+        for (int offset = 0; offset < pcm.length; offset += block) {
+            stage.onPcm(pcm, offset, Math.min(block, pcm.length - offset));
+        }
+        stage.onStop(false);
+    }
+
+    private static short[] sine(int frames, int channelCount) {
+        short[] pcm = new short[frames * channelCount];
+        for (int i = 0; i < frames; i++) {
+            short value = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 16000);
+            for (int c = 0; c < channelCount; c++) {
+                pcm[i * channelCount + c] = (short) (value >> c);
+            }
+        }
+        return pcm;
+    }
+
+    private static ByteBuffer read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static short[] samples(ByteBuffer wav) {
+        wav.position(WavHeader.SIZE);
+        short[] samples = new short[wav.remaining() / 2];
+        wav.asShortBuffer().get(samples);
+        return samples;
+    }
+}
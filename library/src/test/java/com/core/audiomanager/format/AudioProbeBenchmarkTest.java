@@ -0,0 +1,89 @@
+package com.core.audiomanager.format;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AudioProbe 批量读取耗时
+ * 生成一批一分钟的 AMR-NB 文件，分别测量清空结果缓存后的首次读取和命中缓存的读取
+ * 目标为 1000 个文件远小于 1 秒，断言按每个文件 1ms 的宽松上限；默认只生成 100 个文件
+ * 完整测量时通过 -Dprobe.bench.count=1000 调整文件数，系统页缓存无法在 JVM 中清除，首次读取不含磁盘冷启动
+ */
+public class AudioProbeBenchmarkTest {
+
+    private static final int FILE_COUNT = Integer.getInteger("probe.bench.count", 100);
+    //每个文件首次读取的耗时上限
+    private static final long MAX_NANOS_PER_FILE = 1000000L;
+    private static final int DURATION_MS = 60 * 1000;
+    //12.2kbps 模式，帧头 FT=7，帧长 32 字节
+    private static final int FRAME_HEADER = 7 << 3 | 0x04;
+    private static final int FRAME_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void probeOneMinuteAmrFiles() throws IOException {
+        String[] paths = createAmrFiles(mFolder.newFolder("amr"), FILE_COUNT);
+        AudioProbe probe = AudioProbe.get();
+        probe.setCacheSize(FILE_COUNT * 2);
+
+        //预热 JIT，不计入结果
+        probe.clearCache();
+        probeAll(probe, paths);
+
+        probe.clearCache();
+        long start = System.nanoTime();
+        long total = probeAll(probe, paths);
+        long missNanos = System.nanoTime() - start;
+        assertEquals((long) FILE_COUNT * DURATION_MS, total);
+
+        start = System.nanoTime();
+        probeAll(probe, paths);
+        long hitNanos = System.nanoTime() - start;
+
+        String result = FILE_COUNT + " x " + DURATION_MS / 1000 + "s AMR-NB: uncached "
+                + missNanos / 1000000 + "ms, cached " + hitNanos / 1000000 + "ms";
+        assertTrue(result, missNanos < FILE_COUNT * MAX_NANOS_PER_FILE);
+    }
+
+    private static long probeAll(AudioProbe probe, String[] paths) {
+        long total = 0;
+        for (String path : paths) {
+            AudioInfo info = probe.probe(path);
+            assertNotNull(path, info);
+            total += info.getDuration();
+        }
+        return total;
+    }
+
+    private static String[] createAmrFiles(File dir, int count) throws IOException {
+        int frames = DURATION_MS / AmrFormat.FRAME_DURATION;
+        byte[] data = new byte[AmrFormat.MAGIC_NB.length + frames * FRAME_SIZE];
+        System.arraycopy(AmrFormat.MAGIC_NB, 0, data, 0, AmrFormat.MAGIC_NB.length);
+        for (int i = 0; i < frames; i++) {
+            data[AmrFormat.MAGIC_NB.length + i * FRAME_SIZE] = (byte) FRAME_HEADER;
+        }
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) {
+            File file = new File(dir, i + ".amr");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            paths[i] = file.getPath();
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,161 @@
+package com.core.audiomanager.pcm;
+
+import com.core.audiomanager.callback.AudioRecordStateListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PcmRecorderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void sineWaveReachesConsumerThroughRing() throws Exception {
+        SineWaveSource source = new SineWaveSource(SAMPLE_RATE, 2, 440, 0.5, 1000, false);
+        PcmRecorder recorder = new PcmRecorder(source, DIRECT);
+        CollectingConsumer consumer = new CollectingConsumer();
+        recorder.addConsumer(consumer);
+        StateListener listener = new StateListener(1);
+        recorder.setRecordStateListener(listener);
+
+        recorder.startRecord();
+        assertTrue("not completed", listener.complete.await(5, TimeUnit.SECONDS));
+
+        short[] expected = new short[SAMPLE_RATE * 2];
+        SineWaveSource reference = new SineWaveSource(SAMPLE_RATE, 2, 440, 0.5, 1000, false);
+        reference.start();
+        assertEquals(expected.length, reference.read(expected, 0, expected.length));
+
+        assertEquals(Arrays.asList("start 16000/2", "stop false"), consumer.events);
+        assertArrayEquals(expected, consumer.samples());
+        assertEquals(expected.length, recorder.getCapturedSamples());
+        assertEquals(0, recorder.getOverrunSamples());
+        assertEquals(1, listener.prepared);
+        assertEquals(0, listener.errors);
+    }
+
+    @Test
+    public void restartDoesNotBlockCaller() throws Exception {
+        //释放数据源较慢，重新开始时不能在调用线程等待
+        SineWaveSource source = new SineWaveSource(SAMPLE_RATE, 1, 440, 0.5, -1, true) {
+            @Override
+            public void release() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        PcmRecorder recorder = new PcmRecorder(source, DIRECT);
+        CollectingConsumer consumer = new CollectingConsumer();
+        recorder.addConsumer(consumer);
+        StateListener listener = new StateListener(2);
+        recorder.setRecordStateListener(listener);
+
+        recorder.startRecord();
+        Thread.sleep(50);
+        recorder.stopRecord();
+        long begin = System.nanoTime();
+        recorder.startRecord();
+        long elapsedMs = (System.nanoTime() - begin) / 1000000;
+        assertTrue("startRecord blocked " + elapsedMs + "ms", elapsedMs < 100);
+        assertTrue(recorder.isRecording());
+
+        Thread.sleep(50);
+        recorder.stopRecord();
+        assertTrue("not completed", listener.complete.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("start 16000/1", "stop false", "start 16000/1", "stop false"), consumer.events);
+    }
+
+    @Test
+    public void cancelDiscardsOutput() throws Exception {
+        SineWaveSource source = new SineWaveSource(SAMPLE_RATE, 1, 440, 0.5, -1, true);
+        PcmRecorder recorder = new PcmRecorder(source, DIRECT);
+        CollectingConsumer consumer = new CollectingConsumer();
+        recorder.addConsumer(consumer);
+        StateListener listener = new StateListener(1);
+        recorder.setRecordStateListener(listener);
+
+        recorder.startRecord();
+        Thread.sleep(30);
+        recorder.cancelRecord();
+        assertTrue(consumer.stopped.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("start 16000/1", "stop true"), consumer.events);
+        assertEquals(1, listener.complete.getCount());
+    }
+
+    private static class CollectingConsumer implements PcmConsumer {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch stopped = new CountDownLatch(1);
+        private short[] mSamples = new short[4096];
+        private int mLength;
+
+        @Override
+        public void onStart(int sampleRate, int channelCount) {
+            events.add("start " + sampleRate + "/" + channelCount);
+        }
+
+        @Override
+        public void onPcm(short[] buffer, int offset, int length) {
+            if (mLength + length > mSamples.length) {
+                mSamples = Arrays.copyOf(mSamples, Math.max(mSamples.length * 2, mLength + length));
+            }
+            System.arraycopy(buffer, offset, mSamples, mLength, length);
+            mLength += length;
+        }
+
+        @Override
+        public void onStop(boolean cancelled) {
+            events.add("stop " + cancelled);
+            stopped.countDown();
+        }
+
+        synchronized short[] samples() {
+            return Arrays.copyOf(mSamples, mLength);
+        }
+    }
+
+    private static class StateListener implements AudioRecordStateListener {
+        final CountDownLatch complete;
+        volatile int prepared;
+        volatile int errors;
+
+        StateListener(int completions) {
+            complete = new CountDownLatch(completions);
+        }
+
+        @Override
+        public void onPrepared() {
+            prepared++;
+        }
+
+        @Override
+        public void onComplete(String path) {
+            complete.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            errors++;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.core.audiomanager.upload;
+
+import com.core.audiomanager.callback.SegmentUploadListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentUploaderTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private UploadOrigin origin;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = new UploadOrigin();
+        dir = File.createTempFile("segments", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        origin.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void uploadsInOrderAndRetriesFailures() throws Exception {
+        //第一段先失败一次，之后的分段等待重试完成
+        origin.respond(500);
+        SegmentUploader uploader = new SegmentUploader(origin.url(), DIRECT);
+        uploader.setRetryBackoff(10);
+        uploader.setHeader("X-Recording", "42");
+        Listener listener = new Listener(3);
+        uploader.setUploadListener(listener);
+
+        byte[][] data = {segment(100, 1), segment(2000, 2), segment(50000, 3)};
+        for (int i = 0; i < data.length; i++) {
+            uploader.onSegment(i, write(i + ".wav", data[i]), 1000);
+        }
+        uploader.finish();
+        assertTrue("upload thread still running", uploader.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(3, listener.uploaded.size());
+        assertEquals("0 1 2", join(listener.uploaded));
+        assertEquals(0, listener.failed.size());
+        assertEquals(4, origin.requests.size());
+        for (int i = 0; i < data.length; i++) {
+            UploadOrigin.Request request = origin.requests.get(i + 1);
+            assertEquals(String.valueOf(i), request.header("X-Segment-Index"));
+            assertEquals("42", request.header("X-Recording"));
+            assertEquals("audio/wav", request.header("Content-Type"));
+            assertArrayEquals(data[i], request.body);
+        }
+        assertEquals("0", origin.requests.get(0).header("X-Segment-Index"));
+        assertEquals(100 + 2000 + 50000, uploader.getUploadedBytes());
+    }
+
+    @Test
+    public void reportsFailureAfterRetries() throws Exception {
+        origin.respondAlways(503);
+        SegmentUploader uploader = new SegmentUploader(origin.url(), DIRECT);
+        uploader.setRetryBackoff(10);
+        uploader.setMaxRetries(2);
+        Listener listener = new Listener(1);
+        uploader.setUploadListener(listener);
+
+        uploader.onSegment(0, write("0.aac", segment(10, 0)), 1000);
+        uploader.finish();
+        assertTrue(uploader.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(3, origin.requests.size());
+        assertEquals(0, listener.uploaded.size());
+        assertEquals("0 http 503", listener.failed.get(0));
+    }
+
+    @Test
+    public void cancelInterruptsBackoff() throws Exception {
+        origin.respondAlways(500);
+        SegmentUploader uploader = new SegmentUploader(origin.url(), DIRECT);
+        uploader.setRetryBackoff(60 * 1000);
+        Listener listener = new Listener(1);
+        uploader.setUploadListener(listener);
+
+        uploader.onSegment(0, write("0.wav", segment(10, 0)), 1000);
+        uploader.onSegment(1, write("1.wav", segment(10, 1)), 1000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (origin.requests.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, origin.requests.size());
+
+        long start = System.nanoTime();
+        uploader.cancel();
+        assertTrue("backoff not interrupted", uploader.awaitTermination(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(1, origin.requests.size());
+        assertEquals(0, listener.failed.size());
+
+        //取消后不再接收分段
+        uploader.onSegment(2, write("2.wav", segment(10, 2)), 1000);
+        assertFalse(listener.done.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void finishDeletesUploadedSegmentDirs() throws Exception {
+        //第二个录音的分段重试后仍失败，保留分段目录
+        origin.respond(200, 500, 500);
+        File done = new File(dir, "1.wav.segments");
+        File failed = new File(dir, "2.wav.segments");
+        done.mkdirs();
+        failed.mkdirs();
+        SegmentUploader uploader = new SegmentUploader(origin.url(), DIRECT);
+        uploader.setRetryBackoff(10);
+        uploader.setMaxRetries(1);
+
+        uploader.onSegment(0, write("1.wav.segments/000.wav", segment(10, 0)), 1000);
+        uploader.onSegment(0, write("2.wav.segments/000.wav", segment(10, 1)), 1000);
+        uploader.finish();
+        assertTrue(uploader.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertFalse(done.exists());
+        assertTrue(new File(failed, "000.wav").exists());
+        new File(failed, "000.wav").delete();
+        failed.delete();
+    }
+
+    private static byte[] segment(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private String write(String name, byte[] data) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
+    private static String join(List<String> items) {
+        StringBuilder builder = new StringBuilder();
+        for (String item : items) {
+            if (builder.length() > 0) builder.append(' ');
+            builder.append(item);
+        }
+        return builder.toString();
+    }
+
+    private static class Listener implements SegmentUploadListener {
+        final List<String> uploaded = new CopyOnWriteArrayList<>();
+        final List<String> failed = new CopyOnWriteArrayList<>();
+        final CountDownLatch done;
+
+        Listener(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onUploaded(int index, String path) {
+            uploaded.add(String.valueOf(index));
+            done.countDown();
+        }
+
+        @Override
+        public void onUploadFailed(int index, String path, String error) {
+            failed.add(index + " " + error);
+            done.countDown();
+        }
+    }
+}
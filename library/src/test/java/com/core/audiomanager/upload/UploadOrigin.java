@@ -0,0 +1,121 @@
+package com.core.audiomanager.upload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用上传地址，记录每次请求的头和请求体，按预设的状态码依次响应，用完后返回 200
+ */
+class UploadOrigin {
+
+    static class Request {
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Request(Map<String, String> headers, byte[] body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private final ServerSocket mServer;
+    private final ConcurrentLinkedQueue<Integer> mCodes = new ConcurrentLinkedQueue<>();
+    private volatile int mDefaultCode = 200;
+    final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    UploadOrigin() throws IOException {
+        mServer = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServer.isClosed()) {
+                    try {
+                        Socket socket = mServer.accept();
+                        try {
+                            handle(socket);
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }, "UploadOrigin");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + mServer.getLocalPort() + "/upload";
+    }
+
+    /**
+     * 接下来的请求依次返回的状态码
+     */
+    void respond(Integer... codes) {
+        for (Integer code : codes) {
+            mCodes.add(code);
+        }
+    }
+
+    void respondAlways(int code) {
+        mDefaultCode = code;
+    }
+
+    void close() throws IOException {
+        mServer.close();
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        if (readLine(in) == null) return;
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        String length = headers.get("content-length");
+        byte[] body = new byte[length != null ? Integer.parseInt(length) : 0];
+        int offset = 0;
+        while (offset < body.length) {
+            int read = in.read(body, offset, body.length - offset);
+            if (read < 0) throw new IOException("truncated body");
+            offset += read;
+        }
+        requests.add(new Request(headers, body));
+        Integer code = mCodes.poll();
+        OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.1 " + (code != null ? code : mDefaultCode)
+                + " X\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,91 @@
+package com.core.audiomanager.waveform;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WaveformReaderTest {
+
+    private File audio;
+
+    @Before
+    public void setUp() throws IOException {
+        audio = File.createTempFile("waveform", ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        WaveformReader.delete(audio.getPath());
+        audio.delete();
+    }
+
+    @Test
+    public void opensValidIndex() throws IOException {
+        write(peakFile(1, 256, 4));
+        WaveformReader reader = WaveformReader.open(audio.getPath());
+        assertNotNull(reader);
+        assertEquals(1, reader.getLevelCount());
+        assertEquals(256, reader.getFramesPerPeak(0));
+    }
+
+    @Test
+    public void negativeLevelCountReturnsNull() throws IOException {
+        ByteBuffer file = peakFile(1, 256, 4);
+        file.putShort(6, (short) -1);
+        write(file);
+        assertNull(WaveformReader.open(audio.getPath()));
+    }
+
+    @Test
+    public void levelTablePastEndReturnsNull() throws IOException {
+        ByteBuffer file = peakFile(1, 256, 4);
+        file.putShort(6, (short) 1000);
+        write(file);
+        assertNull(WaveformReader.open(audio.getPath()));
+    }
+
+    @Test
+    public void negativeOffsetReturnsNull() throws IOException {
+        ByteBuffer file = peakFile(1, 256, 4);
+        file.putInt(PeakFile.HEADER_SIZE + 8, -8);
+        write(file);
+        assertNull(WaveformReader.open(audio.getPath()));
+    }
+
+    private static ByteBuffer peakFile(int levels, int framesPerPeak, int peakCount) {
+        int dataOffset = PeakFile.HEADER_SIZE + levels * PeakFile.LEVEL_ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + levels * peakCount * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, PeakFile.MAGIC);
+        buffer.putShort(4, PeakFile.VERSION);
+        buffer.putShort(6, (short) levels);
+        buffer.putInt(8, 16000);
+        buffer.putInt(12, 1);
+        buffer.putLong(16, (long) framesPerPeak * peakCount);
+        for (int i = 0; i < levels; i++) {
+            int entry = PeakFile.HEADER_SIZE + i * PeakFile.LEVEL_ENTRY_SIZE;
+            buffer.putInt(entry, framesPerPeak);
+            buffer.putInt(entry + 4, peakCount);
+            buffer.putInt(entry + 8, dataOffset + i * peakCount * 2);
+        }
+        return buffer;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        FileOutputStream out = new FileOutputStream(PeakFile.pathOf(audio.getPath()));
+        try {
+            out.write(buffer.array());
+        } finally {
+            out.close();
+        }
+    }
+}
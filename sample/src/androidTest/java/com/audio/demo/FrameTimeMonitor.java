@@ -0,0 +1,148 @@
+package com.audio.demo;
+
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * 帧耗时统计，通过 Choreographer 记录相邻两帧的间隔
+ * 记录过程不分配内存，超过帧周期1.5倍的计为掉帧
+ * Created by wangzhen on 2019/4/28.
+ */
+class FrameTimeMonitor implements Choreographer.FrameCallback {
+
+    //默认帧周期 60fps
+    private static final long DEFAULT_FRAME_PERIOD = 16666667L;
+    private static final int DEFAULT_CAPACITY = 600;
+
+    private final long[] mIntervals;
+    private final long[] mSorted;
+    private long mFramePeriod = DEFAULT_FRAME_PERIOD;
+    private boolean isRunning;
+    private long mLastFrameTime;
+    private int mCount;
+    private long mTotalFrames;
+    private long mJankFrames;
+    private long mMaxInterval;
+
+    FrameTimeMonitor() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 保留最近多少帧用于计算分位数
+     */
+    FrameTimeMonitor(int capacity) {
+        mIntervals = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    /**
+     * 设置屏幕帧周期
+     *
+     * @param framePeriod ns
+     */
+    public void setFramePeriod(long framePeriod) {
+        mFramePeriod = framePeriod;
+    }
+
+    /**
+     * 开始记录，只能在主线程调用
+     */
+    public void start() {
+        if (isRunning) return;
+        isRunning = true;
+        mLastFrameTime = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        if (!isRunning) return;
+        isRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public void reset() {
+        mCount = 0;
+        mTotalFrames = 0;
+        mJankFrames = 0;
+        mMaxInterval = 0;
+        mLastFrameTime = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isRunning) return;
+        if (mLastFrameTime > 0) {
+            record(frameTimeNanos - mLastFrameTime);
+        }
+        mLastFrameTime = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void record(long interval) {
+        mIntervals[(int) (mTotalFrames % mIntervals.length)] = interval;
+        mTotalFrames++;
+        if (mCount < mIntervals.length) {
+            mCount++;
+        }
+        if (interval > mFramePeriod * 3 / 2) {
+            mJankFrames++;
+        }
+        if (interval > mMaxInterval) {
+            mMaxInterval = interval;
+        }
+    }
+
+    public long getFrameCount() {
+        return mTotalFrames;
+    }
+
+    public long getJankCount() {
+        return mJankFrames;
+    }
+
+    /**
+     * 掉帧率
+     *
+     * @return 0-1
+     */
+    public float getJankRate() {
+        return mTotalFrames == 0 ? 0 : (float) mJankFrames / mTotalFrames;
+    }
+
+    /**
+     * 最长帧间隔 ns
+     */
+    public long getMaxFrameTime() {
+        return mMaxInterval;
+    }
+
+    /**
+     * 最近帧间隔的分位数
+     *
+     * @param percentile 0-100
+     * @return ns
+     */
+    public long getFrameTime(int percentile) {
+        if (mCount == 0) return 0;
+        System.arraycopy(mIntervals, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+        int index = Math.min(mCount - 1, mCount * Math.max(0, percentile) / 100);
+        return mSorted[index];
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTimeMonitor{frames=" + mTotalFrames
+                + ", jank=" + mJankFrames
+                + ", p50=" + getFrameTime(50) / 1000 + "us"
+                + ", p90=" + getFrameTime(90) / 1000 + "us"
+                + ", p99=" + getFrameTime(99) / 1000 + "us"
+                + ", max=" + mMaxInterval / 1000 + "us}";
+    }
+}
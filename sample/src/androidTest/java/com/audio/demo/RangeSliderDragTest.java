@@ -0,0 +1,97 @@
+package com.audio.demo;
+
+import android.app.Instrumentation;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import com.core.audiomanager.widget.RangeSlider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RangeSlider 拖动时的帧耗时，真机上运行
+ * 模拟一次完整拖动和松手甩动，统计期间 Choreographer 的帧间隔
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class RangeSliderDragTest {
+
+    private static final String TAG = "RangeSliderDragTest";
+    //拖动的 MOVE 事件数
+    private static final int MOVE_COUNT = 120;
+    //布局中的游标宽度
+    private static final float THUMB_WIDTH_DP = 9;
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule = new ActivityTestRule<>(MainActivity.class);
+
+    @Test
+    public void dragKeepsFrameTime() throws Throwable {
+        final MainActivity activity = mActivityRule.getActivity();
+        final RangeSlider slider = (RangeSlider) activity.findViewById(R.id.bgm_range_slider);
+        final FrameTimeMonitor monitor = new FrameTimeMonitor();
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        final long framePeriod = (long) (1000000000L / refreshRate);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                slider.setDuration(5 * 60 * 1000);
+                monitor.setFramePeriod(framePeriod);
+            }
+        });
+
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.waitForIdleSync();
+        int[] location = new int[2];
+        slider.getLocationOnScreen(location);
+        float density = activity.getResources().getDisplayMetrics().density;
+        float startX = location[0] + THUMB_WIDTH_DP * density / 2;
+        float endX = location[0] + slider.getWidth() * 0.8f;
+        float y = location[1] + slider.getHeight() / 2f;
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                monitor.start();
+            }
+        });
+        long downTime = SystemClock.uptimeMillis();
+        inject(instrumentation, downTime, MotionEvent.ACTION_DOWN, startX, y);
+        for (int i = 1; i <= MOVE_COUNT; i++) {
+            SystemClock.sleep(framePeriod / 1000000);
+            inject(instrumentation, downTime, MotionEvent.ACTION_MOVE, startX + (endX - startX) * i / MOVE_COUNT, y);
+        }
+        inject(instrumentation, downTime, MotionEvent.ACTION_UP, endX, y);
+        //等待甩动结束
+        SystemClock.sleep(1000);
+        instrumentation.waitForIdleSync();
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                monitor.stop();
+            }
+        });
+
+        Log.i(TAG, monitor.toString());
+        assertTrue(monitor.toString(), monitor.getFrameCount() > MOVE_COUNT / 2);
+        assertTrue(monitor.toString(), monitor.getFrameTime(90) <= framePeriod * 2);
+    }
+
+    private static void inject(Instrumentation instrumentation, long downTime, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        try {
+            instrumentation.sendPointerSync(event);
+        } finally {
+            event.recycle();
+        }
+    }
+}
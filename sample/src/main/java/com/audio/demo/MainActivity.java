@@ -10,7 +10,7 @@ import com.core.audiomanager.callback.AudioPlayStateListener;
 import com.core.audiomanager.callback.AudioRecordStateListener;
 import com.core.audiomanager.widget.RangeSlider;
 
-public class MainActivity extends AppCompatActivity implements View.OnClickListener, RangeSlider.OnRangeChangeListener {
+public class MainActivity extends AppCompatActivity implements View.OnClickListener, RangeSlider.OnRangeTimeListener {
 
     private AudioHelper mAudioHelper;
     private RangeSlider mRangeSlider;
@@ -30,7 +30,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         findViewById(R.id.btn_record_stop).setOnClickListener(this);
 
         mRangeSlider = findViewById(R.id.bgm_range_slider);
-        mRangeSlider.setRangeChangeListener(this);
+        mRangeSlider.setRangeTimeListener(this);
     }
 
     private void initAudio() {
@@ -39,6 +39,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             @Override
             public void onPrepared() {
                 Toast.makeText(MainActivity.this, "开始播放", Toast.LENGTH_SHORT).show();
+                if (mAudioHelper.getPlayer() != null) {
+                    mRangeSlider.setDuration(mAudioHelper.getPlayer().getDuration());
+                }
             }
 
             @Override
@@ -103,16 +106,15 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
 
     @Override
-    public void onKeyDown(int type) {
-
+    public void onRangeMove(RangeSlider view, int type, long leftTime, long rightTime) {
+        if (mAudioHelper != null) {
+            mAudioHelper.previewSeek(type == RangeSlider.TYPE_LEFT ? leftTime : rightTime);
+        }
     }
 
     @Override
-    public void onKeyUp(int type, int leftPinIndex, int rightPinIndex) {
-        if (mAudioHelper != null && mAudioHelper.getPlayer() != null) {
-            long duration = mAudioHelper.getPlayer().getDuration();
-            long leftTime = duration * leftPinIndex / 100;
-            long rightTime = duration * rightPinIndex / 100;
+    public void onRangeChanged(RangeSlider view, int type, long leftTime, long rightTime) {
+        if (mAudioHelper != null) {
             mAudioHelper.rangePlay(leftTime, rightTime);
         }
     }